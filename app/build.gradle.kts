@@ -42,6 +42,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    // Pruebas JVM: las llamadas a android.util.Log devuelven 0 en vez de lanzar excepción
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -80,4 +84,6 @@ dependencies {
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
+    // Servidor HTTP simulado para probar la sincronización (misma versión que logging-interceptor)
+    androidTestImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
 }
\ No newline at end of file
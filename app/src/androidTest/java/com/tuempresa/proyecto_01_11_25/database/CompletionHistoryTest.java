@@ -0,0 +1,149 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas del historial de completados: los conteos por día y el resumen mensual que mantienen
+ * los triggers coinciden con un recuento directo de las filas, también tras borrar.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompletionHistoryTest {
+
+    private static final long USER_ID = 1;
+    private static final long FROM_DAY = LocalDate.of(2025, 1, 1).toEpochDay();
+    private static final int DAYS = 120;
+
+    private Context context;
+    private HabitDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        new SessionManager(context).createLoginSession(USER_ID, "history@habitus.test");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        helper = new HabitDatabaseHelper(context);
+        // El reset diario crea la fila del usuario local
+        assertTrue(helper.resetDailyCompletedHabits());
+    }
+
+    @After
+    public void tearDown() {
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        new SessionManager(context).logoutUser();
+    }
+
+    @Test
+    public void rangeCounts_matchRowCounts() {
+        long read = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        long walk = helper.insertHabit("Caminar", "5000 pasos", "general", "WALK", 10);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        Random random = new Random(42);
+        List<Long> readDays = new ArrayList<>();
+        for (long day = FROM_DAY; day < FROM_DAY + DAYS; day++) {
+            if (random.nextBoolean()) {
+                insertCompletion(db, read, day);
+                readDays.add(day);
+            }
+            if (random.nextInt(3) == 0) {
+                insertCompletion(db, walk, day);
+            }
+        }
+        long toDay = FROM_DAY + DAYS - 1;
+
+        assertEquals(dailyCounts(FROM_DAY, toDay), helper.getDailyCompletionCounts(USER_ID, FROM_DAY, toDay));
+        assertEquals(monthlyCounts(202501, 202504), helper.getMonthlyCompletionCounts(USER_ID, 202501, 202504));
+        assertEquals(readDays, helper.getCompletionDays(read, USER_ID, FROM_DAY, toDay));
+
+        // Al borrar un mes entero de un hábito el resumen resta sus filas y no deja contadores a cero
+        db.execSQL("DELETE FROM habit_completions WHERE habit_id = ? AND day BETWEEN ? AND ?",
+                new Object[]{read, LocalDate.of(2025, 2, 1).toEpochDay(), LocalDate.of(2025, 2, 28).toEpochDay()});
+        assertEquals(monthlyCounts(202501, 202504), helper.getMonthlyCompletionCounts(USER_ID, 202501, 202504));
+        assertEquals(dailyCounts(FROM_DAY, toDay), helper.getDailyCompletionCounts(USER_ID, FROM_DAY, toDay));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM habit_completion_months WHERE completions <= 0"));
+    }
+
+    @Test
+    public void dailyReset_keepsPreviousDays() {
+        long read = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        insertCompletion(db, read, FROM_DAY);
+        insertCompletion(db, read, FROM_DAY + 1);
+
+        // Simula que el último reset fue ayer para que el de hoy se ejecute
+        db.execSQL("UPDATE users SET " + HabitDatabaseHelper.COLUMN_USER_LAST_RESET_DATE + " = "
+                + HabitDatabaseHelper.COLUMN_USER_LAST_RESET_DATE + " - 1");
+        assertTrue(helper.resetDailyCompletedHabits());
+        List<Long> expected = new ArrayList<>();
+        expected.add(FROM_DAY);
+        expected.add(FROM_DAY + 1);
+        assertEquals(expected, helper.getCompletionDays(read, USER_ID, FROM_DAY, FROM_DAY + 1));
+    }
+
+    private static void insertCompletion(SQLiteDatabase db, long habitId, long day) {
+        ContentValues values = new ContentValues();
+        values.put("habit_id", habitId);
+        values.put("user_id", USER_ID);
+        values.put("day", day);
+        db.insertOrThrow("habit_completions", null, values);
+    }
+
+    /**
+     * Recuento directo por día, sin índices ni resúmenes.
+     */
+    private Map<Long, Integer> dailyCounts(long fromDay, long toDay) {
+        Map<Long, Integer> counts = new TreeMap<>();
+        for (long day = fromDay; day <= toDay; day++) {
+            int n = count(helper.getReadableDatabase(),
+                    "SELECT COUNT(*) FROM habit_completions WHERE user_id = " + USER_ID + " AND day = " + day);
+            if (n > 0) {
+                counts.put(day, n);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Recuento directo por mes (yyyyMM) recorriendo los días de la tabla.
+     */
+    private Map<Integer, Integer> monthlyCounts(int fromMonth, int toMonth) {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (Map.Entry<Long, Integer> entry : dailyCounts(FROM_DAY, FROM_DAY + DAYS - 1).entrySet()) {
+            LocalDate date = LocalDate.ofEpochDay(entry.getKey());
+            int month = date.getYear() * 100 + date.getMonthValue();
+            if (month >= fromMonth && month <= toMonth) {
+                counts.merge(month, entry.getValue(), Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static int count(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+}
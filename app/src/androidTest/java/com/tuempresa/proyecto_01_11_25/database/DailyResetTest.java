@@ -0,0 +1,84 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.utils.DayClock;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas del reset diario de hábitos completados (una vez por día, con su propia marca)
+ * y del borrado de hábitos junto con la reconstrucción de la racha.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DailyResetTest {
+
+    private static final long USER_ID = 1;
+
+    private Context context;
+    private HabitDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        new SessionManager(context).createLoginSession(USER_ID, "reset@habitus.test");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        helper = new HabitDatabaseHelper(context);
+    }
+
+    @After
+    public void tearDown() {
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        new SessionManager(context).logoutUser();
+    }
+
+    @Test
+    public void reset_runsOncePerDay() {
+        long id = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        assertTrue(helper.resetDailyCompletedHabits());
+
+        // Completado que llega de la sincronización: no toca la racha ni last_activity_date
+        helper.updateHabitCompleted("Leer", true);
+        assertFalse(helper.resetDailyCompletedHabits());
+        assertFalse(helper.resetDailyCompletedHabits());
+        assertTrue(helper.getHabitById(id).isCompleted());
+    }
+
+    @Test
+    public void reset_onNewDayClearsCompleted() {
+        long id = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        assertTrue(helper.resetDailyCompletedHabits());
+        helper.updateHabitCompleted("Leer", true);
+        helper.saveHabitCompletion(id, USER_ID, 0, 0);
+
+        // El último reset fue ayer
+        helper.getWritableDatabase().execSQL("UPDATE users SET last_reset_date = ? WHERE user_id = ?",
+                new Object[]{DayClock.today() - 1, USER_ID});
+        assertTrue(helper.resetDailyCompletedHabits());
+        assertFalse(helper.getHabitById(id).isCompleted());
+        assertFalse(helper.resetDailyCompletedHabits());
+    }
+
+    @Test
+    public void deleteHabit_rebuildsStreak() {
+        long reading = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        long walking = helper.insertHabit("Caminar", "5000 pasos", "general", "WALK", 10);
+        helper.saveHabitCompletion(reading, USER_ID, 0, 0);
+        helper.saveHabitCompletion(walking, USER_ID, 0, 0);
+        assertEquals(2, helper.getDailyHabitsCompleted(USER_ID));
+
+        assertTrue(helper.deleteHabit(walking));
+        assertNull(helper.getHabitById(walking));
+        assertEquals(1, helper.getDailyHabitsCompleted(USER_ID));
+        assertFalse(helper.deleteHabit(walking));
+    }
+}
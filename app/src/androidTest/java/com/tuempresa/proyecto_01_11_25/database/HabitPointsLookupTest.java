@@ -0,0 +1,54 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de getHabitPoints con la sentencia compilada: mismos resultados que la consulta
+ * original (10 si el hábito no existe, 0 si sus puntos son NULL).
+ */
+@RunWith(AndroidJUnit4.class)
+public class HabitPointsLookupTest {
+
+    private Context context;
+    private HabitDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        new SessionManager(context).createLoginSession(1, "points@habitus.test");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        helper = new HabitDatabaseHelper(context);
+    }
+
+    @After
+    public void tearDown() {
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        new SessionManager(context).logoutUser();
+    }
+
+    @Test
+    public void getHabitPoints_keepsOriginalDefaults() {
+        helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 25);
+        helper.insertHabit("Meditar", "10 minutos", "general", "MEDITATE", 15);
+        helper.getWritableDatabase().execSQL("UPDATE habits SET points = NULL WHERE title = ?",
+                new Object[]{"Meditar"});
+
+        assertEquals(25, helper.getHabitPoints("Leer"));
+        assertEquals(0, helper.getHabitPoints("Meditar"));
+        assertEquals(10, helper.getHabitPoints("No existe"));
+        // La sentencia se reutiliza sin arrastrar el título anterior
+        assertEquals(25, helper.getHabitPoints("Leer"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de los avisos de cambios en habits: solo se envían cuando la transacción se confirma,
+ * nunca cuando se revierte (la caché de hábitos se invalidaría con datos que no cambiaron).
+ */
+@RunWith(AndroidJUnit4.class)
+public class HabitsChangedNotificationTest {
+
+    private static final long USER_ID = 1;
+
+    private Context context;
+    private HabitDatabaseHelper helper;
+    private final List<Long> notified = new CopyOnWriteArrayList<>();
+    private final HabitDatabaseHelper.HabitsChangedListener listener = notified::add;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        new SessionManager(context).createLoginSession(USER_ID, "notify@habitus.test");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        helper = new HabitDatabaseHelper(context);
+        HabitDatabaseHelper.addHabitsChangedListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        HabitDatabaseHelper.removeHabitsChangedListener(listener);
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        new SessionManager(context).logoutUser();
+    }
+
+    @Test
+    public void deleteUser_notifiesAfterCommit() {
+        helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        // El reset diario crea la fila del usuario local
+        assertTrue(helper.resetDailyCompletedHabits());
+        notified.clear();
+
+        assertTrue(helper.deleteUser(USER_ID));
+        assertEquals(1, notified.size());
+        assertEquals(HabitDatabaseHelper.ALL_HABITS, (long) notified.get(0));
+        assertTrue(helper.getAllHabits().isEmpty());
+    }
+
+    @Test
+    public void deleteUser_rolledBack_doesNotNotify() {
+        long id = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        // Sin la tabla del diario el borrado falla a mitad de la transacción
+        helper.getWritableDatabase().execSQL("DROP TABLE diary_entries");
+        notified.clear();
+
+        assertFalse(helper.deleteUser(USER_ID));
+        assertTrue(notified.isEmpty());
+        assertNotNull(helper.getHabitById(id));
+    }
+
+    @Test
+    public void runInTransaction_rolledBack_doesNotNotify() {
+        notified.clear();
+        try {
+            helper.runInTransaction(() -> {
+                helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+                throw new IllegalStateException("fallo a mitad del lote");
+            });
+            fail("se esperaba la excepción del lote");
+        } catch (IllegalStateException expected) {
+            // el lote se revierte
+        }
+        assertTrue(notified.isEmpty());
+        assertTrue(helper.getAllHabits().isEmpty());
+
+        helper.runInTransaction(() -> helper.insertHabit("Caminar", "5000 pasos", "general", "WALK", 10));
+        assertEquals(1, notified.size());
+    }
+
+    @Test
+    public void deleteOtherUsersHabits_notifiesAfterCommit() {
+        helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        new SessionManager(context).createLoginSession(2, "otro@habitus.test");
+        notified.clear();
+
+        helper.deleteHabitsNotBelongingToCurrentUser();
+        assertEquals(1, notified.size());
+        assertTrue(helper.getAllHabits().isEmpty());
+
+        // Si falla a mitad (sin tabla del diario) se revierte todo y no se avisa
+        new SessionManager(context).createLoginSession(USER_ID, "notify@habitus.test");
+        long id = helper.insertHabit("Meditar", "10 minutos", "general", "MEDITATE", 10);
+        new SessionManager(context).createLoginSession(2, "otro@habitus.test");
+        helper.getWritableDatabase().execSQL("DROP TABLE diary_entries");
+        notified.clear();
+
+        helper.deleteHabitsNotBelongingToCurrentUser();
+        assertTrue(notified.isEmpty());
+        new SessionManager(context).createLoginSession(USER_ID, "notify@habitus.test");
+        assertNotNull(helper.getHabitById(id));
+    }
+}
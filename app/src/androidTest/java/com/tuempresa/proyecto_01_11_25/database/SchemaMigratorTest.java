@@ -0,0 +1,141 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas del motor de migraciones dentro de la transacción de SQLiteOpenHelper: los pasos se
+ * aplican en orden, la versión la fija el helper y un paso fallido revierte toda la actualización.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SchemaMigratorTest {
+
+    private static final String DATABASE_NAME = "schema_migrator_test.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void migrate_appliesPendingStepsInOrder() {
+        createVersion1();
+
+        List<Integer> applied = new ArrayList<>();
+        TestHelper helper = new TestHelper(context, 4, false);
+        helper.applied = applied;
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals(4, db.getVersion());
+        assertEquals(3, count(db, "steps"));
+        assertEquals("[2, 3, 4]", applied.toString());
+        helper.close();
+
+        // Una base de datos ya migrada no repite ningún paso
+        applied.clear();
+        helper = new TestHelper(context, 4, false);
+        helper.applied = applied;
+        assertEquals(4, helper.getWritableDatabase().getVersion());
+        assertTrue(applied.isEmpty());
+        helper.close();
+    }
+
+    @Test
+    public void failedStep_rollsBackWholeUpgrade() {
+        createVersion1();
+
+        TestHelper failing = new TestHelper(context, 4, true);
+        try {
+            failing.getWritableDatabase();
+            fail("la migración debía fallar");
+        } catch (IllegalStateException expected) {
+            // el paso 3 falla
+        }
+        failing.close();
+
+        // Ni los pasos 2 y 3 ni user_version quedaron confirmados
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(context.getDatabasePath(DATABASE_NAME).getPath(),
+                null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            assertEquals(1, db.getVersion());
+            assertEquals(0, count(db, "steps"));
+        } finally {
+            db.close();
+        }
+
+        // El siguiente arranque vuelve a migrar desde la versión 1
+        TestHelper helper = new TestHelper(context, 4, false);
+        assertEquals(4, helper.getWritableDatabase().getVersion());
+        assertEquals(3, count(helper.getReadableDatabase(), "steps"));
+        helper.close();
+    }
+
+    private void createVersion1() {
+        TestHelper helper = new TestHelper(context, 1, false);
+        helper.getWritableDatabase();
+        helper.close();
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    /**
+     * Helper mínimo: la versión 1 crea la tabla y cada paso posterior inserta su número.
+     */
+    private static final class TestHelper extends SQLiteOpenHelper {
+        private final boolean failAtVersion3;
+        List<Integer> applied = new ArrayList<>();
+
+        TestHelper(Context context, int version, boolean failAtVersion3) {
+            super(context, DATABASE_NAME, null, version);
+            this.failAtVersion3 = failAtVersion3;
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE steps (version INTEGER)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            SchemaMigrator migrator = new SchemaMigrator();
+            for (int version = 2; version <= 4; version++) {
+                int step = version;
+                migrator.add(step, database -> {
+                    if (step == 3 && failAtVersion3) {
+                        throw new IllegalStateException("fallo en la versión 3");
+                    }
+                    database.execSQL("INSERT INTO steps VALUES (" + step + ")");
+                    applied.add(step);
+                });
+            }
+            migrator.migrate(db, oldVersion, newVersion);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.model.UserRanking;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de los agregados de puntos: tras una secuencia aleatoria de altas, cambios y bajas de
+ * scores, el total, los puntos por día y semana y el ranking coinciden con recalcular sobre scores.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScoreAggregatesTest {
+
+    private static final long USER_ID = 1;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2025, 3, 1);
+    private static final int DAYS = 60;
+    private static final String[] TITLES = {"Leer", "Caminar", "Meditar", "Beber agua"};
+
+    private Context context;
+    private HabitDatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        new SessionManager(context).createLoginSession(USER_ID, "scores@habitus.test");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        helper = new HabitDatabaseHelper(context);
+        // El reset diario crea la fila del usuario local
+        assertTrue(helper.resetDailyCompletedHabits());
+    }
+
+    @After
+    public void tearDown() {
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        new SessionManager(context).logoutUser();
+    }
+
+    @Test
+    public void randomScoreChanges_matchRecompute() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        Random random = new Random(42);
+        for (int step = 0; step < 400; step++) {
+            int action = random.nextInt(10);
+            if (action < 6) {
+                LocalDate day = FIRST_DAY.plusDays(random.nextInt(DAYS));
+                long date = day.atStartOfDay(ZoneId.systemDefault()).plusSeconds(random.nextInt(86_400))
+                        .toEpochSecond();
+                helper.restoreScore(TITLES[random.nextInt(TITLES.length)], 1 + random.nextInt(50), date);
+            } else if (action < 8) {
+                db.execSQL("UPDATE scores SET points = ? WHERE id = (SELECT id FROM scores ORDER BY RANDOM() LIMIT 1)",
+                        new Object[]{random.nextInt(50)});
+            } else if (action < 9) {
+                // Mover un score a otro día resta del periodo anterior y suma al nuevo
+                db.execSQL("UPDATE scores SET day = ? WHERE id = (SELECT id FROM scores ORDER BY RANDOM() LIMIT 1)",
+                        new Object[]{FIRST_DAY.plusDays(random.nextInt(DAYS)).toEpochDay()});
+            } else {
+                db.execSQL("DELETE FROM scores WHERE id = (SELECT id FROM scores ORDER BY RANDOM() LIMIT 1)");
+            }
+        }
+
+        assertEquals(sum(db, "SELECT SUM(points) FROM scores WHERE user_id = " + USER_ID), helper.getTotalScore());
+        for (int i = 0; i < DAYS; i++) {
+            long day = FIRST_DAY.plusDays(i).toEpochDay();
+            assertEquals("día " + day, sum(db, "SELECT SUM(points) FROM scores WHERE user_id = " + USER_ID
+                    + " AND day = " + day), helper.getPointsForDay(USER_ID, day));
+            long monday = FIRST_DAY.plusDays(i).with(DayOfWeek.MONDAY).toEpochDay();
+            assertEquals("semana de " + day, sum(db, "SELECT SUM(points) FROM scores WHERE user_id = " + USER_ID
+                    + " AND day BETWEEN " + monday + " AND " + (monday + 6)), helper.getPointsForWeek(USER_ID, day));
+        }
+        // No quedan filas de periodo vacías tras las bajas
+        assertEquals(0, sum(db, "SELECT COUNT(*) FROM user_score_periods WHERE score_count <= 0"));
+    }
+
+    @Test
+    public void ranking_readsTotalsAndCompletedHabits() {
+        helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        helper.insertHabit("Caminar", "5000 pasos", "general", "WALK", 10);
+        helper.updateHabitCompleted("Leer", true);
+        long date = FIRST_DAY.atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        helper.restoreScore("Leer", 30, date);
+        helper.restoreScore("Caminar", 12, date + 86_400);
+
+        List<UserRanking> ranking = helper.getUsersRanking();
+        assertEquals(1, ranking.size());
+        assertEquals(42, ranking.get(0).getTotalScore());
+        assertEquals(1, ranking.get(0).getHabitsCompletedCount());
+
+        helper.updateHabitCompleted("Leer", false);
+        helper.getWritableDatabase().execSQL("DELETE FROM scores WHERE habit_title = 'Leer'");
+        ranking = helper.getUsersRanking();
+        assertEquals(12, ranking.get(0).getTotalScore());
+        assertEquals(0, ranking.get(0).getHabitsCompletedCount());
+    }
+
+    private static int sum(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark de la fusión de una instantánea grande del servidor (5000 hábitos) en una sola
+ * transacción: la descarga inicial y una segunda instantánea con cambios, altas y bajas.
+ * Cada caso debe quedar por debajo de 300 ms (mejor de varias rondas, tras calentar).
+ */
+@RunWith(AndroidJUnit4.class)
+public class ServerMergeBenchmarkTest {
+
+    private static final String TAG = "ServerMergeBench";
+    private static final long USER_ID = 1;
+    private static final int HABITS = 5000;
+    private static final int WARMUP = 2;
+    private static final int ROUNDS = 3;
+    private static final long BUDGET_MS = 300;
+
+    private Context context;
+    private HabitDatabaseHelperSync helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        new SessionManager(context).createLoginSession(USER_ID, "merge@habitus.test");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        helper = new HabitDatabaseHelperSync(context);
+    }
+
+    @After
+    public void tearDown() {
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        new SessionManager(context).logoutUser();
+    }
+
+    @Test
+    public void mergeSnapshot_5000Habits_underBudget() {
+        List<Habit> initial = snapshot(1, HABITS, "");
+        // Segunda instantánea: 500 bajas (1..500), 4500 cambios y 500 altas
+        List<Habit> changed = snapshot(501, HABITS + 500, " v2");
+
+        // Calentamiento: abre la conexión, crea el esquema y recorre la fusión completa antes de medir
+        for (int i = 0; i < WARMUP; i++) {
+            mergeCycle(initial, changed);
+        }
+        long initialMs = Long.MAX_VALUE;
+        long changedMs = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long[] times = mergeCycle(initial, changed);
+            initialMs = Math.min(initialMs, times[0]);
+            changedMs = Math.min(changedMs, times[1]);
+        }
+
+        Log.i(TAG, "Instantánea de " + HABITS + " hábitos (mejor de " + ROUNDS + "): inicial " + initialMs
+                + " ms, con cambios " + changedMs + " ms");
+        assertTrue("inicial " + initialMs + " ms", initialMs < BUDGET_MS);
+        assertTrue("con cambios " + changedMs + " ms", changedMs < BUDGET_MS);
+
+        assertEquals(HABITS, helper.getAllHabits().size());
+        assertNull(helper.getHabitByServerId(1));
+        assertEquals("Hábito 501 v2", helper.getHabitByServerId(501).getTitle());
+    }
+
+    /**
+     * Parte de la base de datos vacía, aplica la instantánea inicial y luego la que tiene cambios.
+     * Devuelve los milisegundos de cada fusión.
+     */
+    private long[] mergeCycle(List<Habit> initial, List<Habit> changed) {
+        helper.mergeServerSnapshot(new ArrayList<>(), new HashSet<>());
+        assertTrue(helper.getAllHabits().isEmpty());
+
+        long start = System.nanoTime();
+        HabitDatabaseHelperSync.MergeResult first = helper.mergeServerSnapshot(initial, ids(1, HABITS));
+        long initialMs = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(HABITS, first.inserted);
+
+        start = System.nanoTime();
+        HabitDatabaseHelperSync.MergeResult second = helper.mergeServerSnapshot(changed, ids(501, HABITS + 500));
+        long changedMs = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(500, second.deleted);
+        assertEquals(HABITS - 500, second.updated);
+        assertEquals(500, second.inserted);
+        return new long[]{initialMs, changedMs};
+    }
+
+    /**
+     * Hábitos del servidor con serverId en [from, to]; el id del modelo es el serverId.
+     */
+    private static List<Habit> snapshot(long from, long to, String suffix) {
+        Habit.HabitType[] types = {Habit.HabitType.READ_BOOK, Habit.HabitType.WATER, Habit.HabitType.WALK,
+                Habit.HabitType.MEDITATE};
+        List<Habit> habits = new ArrayList<>();
+        for (long serverId = from; serverId <= to; serverId++) {
+            Habit habit = new Habit("Hábito " + serverId + suffix, "Meta " + serverId, "general",
+                    types[(int) (serverId % types.length)]);
+            habit.setId(serverId);
+            habit.setUserId(USER_ID);
+            habit.setPoints(10);
+            habits.add(habit);
+        }
+        return habits;
+    }
+
+    private static Set<Long> ids(long from, long to) {
+        Set<Long> ids = new HashSet<>();
+        for (long serverId = from; serverId <= to; serverId++) {
+            ids.add(serverId);
+        }
+        return ids;
+    }
+}
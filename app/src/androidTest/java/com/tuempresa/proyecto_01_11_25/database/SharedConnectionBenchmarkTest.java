@@ -0,0 +1,103 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Micro-benchmark de la conexión compartida frente a abrir y cerrar la base de datos en cada
+ * llamada (lo que hacía cada helper antes), y comprobación de que deleteLocalDatabase cierra la
+ * conexión compartida antes de borrar el archivo.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SharedConnectionBenchmarkTest {
+
+    private static final String TAG = "SharedConnectionBench";
+    private static final String DATABASE_NAME = "habitus.db";
+    private static final int WARMUP = 20;
+    private static final int CALLS = 200;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        new SessionManager(context).createLoginSession(1, "bench@habitus.test");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+    }
+
+    @After
+    public void tearDown() {
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        new SessionManager(context).logoutUser();
+    }
+
+    @Test
+    public void sharedConnection_isFasterThanOpenPerCall() {
+        HabitDatabaseHelper helper = new HabitDatabaseHelper(context);
+        long id = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        String path = context.getDatabasePath(DATABASE_NAME).getPath();
+
+        for (int i = 0; i < WARMUP; i++) {
+            readTitleOpenPerCall(path, id);
+            new HabitDatabaseHelper(context).getHabitById(id);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            assertEquals("Leer", readTitleOpenPerCall(path, id));
+        }
+        long openPerCallNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            // Un helper nuevo por llamada, como hacen las pantallas: reutiliza la conexión compartida
+            assertEquals("Leer", new HabitDatabaseHelper(context).getHabitById(id).getTitle());
+        }
+        long sharedNanos = System.nanoTime() - start;
+
+        Log.i(TAG, "Abrir por llamada: " + openPerCallNanos / CALLS / 1000 + " µs/llamada, compartida: "
+                + sharedNanos / CALLS / 1000 + " µs/llamada");
+        assertTrue("compartida " + sharedNanos + " ns, abrir por llamada " + openPerCallNanos + " ns",
+                sharedNanos < openPerCallNanos);
+    }
+
+    @Test
+    public void deleteLocalDatabase_closesSharedConnection() {
+        HabitDatabaseHelper helper = new HabitDatabaseHelper(context);
+        long id = helper.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        SQLiteDatabase before = helper.getWritableDatabase();
+
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+
+        assertFalse(before.isOpen());
+        assertFalse(context.getDatabasePath(DATABASE_NAME).exists());
+        // El mismo helper vuelve a abrir una base de datos nueva y vacía
+        assertNull(helper.getHabitById(id));
+        assertTrue(helper.getWritableDatabase().isOpen());
+        assertNotSame(before, helper.getWritableDatabase());
+    }
+
+    private static String readTitleOpenPerCall(String path, long id) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READWRITE);
+        try (Cursor cursor = db.rawQuery("SELECT title FROM habits WHERE id = ?",
+                new String[]{String.valueOf(id)})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            db.close();
+        }
+    }
+}
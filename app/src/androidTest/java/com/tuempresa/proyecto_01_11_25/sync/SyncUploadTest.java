@@ -0,0 +1,125 @@
+package com.tuempresa.proyecto_01_11_25.sync;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.api.HabitApiClient;
+import com.tuempresa.proyecto_01_11_25.api.HabitApiHelper;
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
+import com.tuempresa.proyecto_01_11_25.network.ConnectionMonitor;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de la subida de hábitos contra un servidor simulado: el lote confirma solo una parte,
+ * el resto se sube uno a uno y solo cuentan los que el servidor confirmó.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncUploadTest {
+
+    private static final long USER_ID = 7;
+
+    private Context context;
+    private SessionManager session;
+    private MockWebServer server;
+    private String previousBaseUrl;
+    private SyncManager syncManager;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        session = new SessionManager(context);
+        session.createLoginSession(USER_ID, "upload@habitus.test", "token", "Upload");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+
+        server = new MockWebServer();
+        server.setDispatcher(new FakeHabitsApi());
+        server.start();
+        HabitApiClient client = HabitApiClient.getInstance(context);
+        previousBaseUrl = client.getBaseUrl();
+        client.setBaseUrl(server.url("/api/v1/").toString());
+        syncManager = new SyncManager(context, new HabitApiHelper(context));
+
+        ConnectionMonitor monitor = ConnectionMonitor.getInstance(context);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!monitor.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue("sin red en el dispositivo de pruebas", monitor.isConnected());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HabitApiClient.getInstance(context).setBaseUrl(previousBaseUrl);
+        server.shutdown();
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        session.logoutUser();
+    }
+
+    @Test
+    public void fallbackUploads_countOnlyConfirmed() {
+        HabitDatabaseHelperSync db = new HabitDatabaseHelperSync(context);
+        db.insertHabit("Leer", "20 páginas", "general", "READ_BOOK", 10);
+        db.insertHabit("Caminar", "5000 pasos", "general", "WALK", 10);
+        long failing = db.insertHabit("Meditar", "10 minutos", "general", "MEDITATE", 10);
+
+        SyncResult result = syncManager.syncAllBlocking(10, TimeUnit.SECONDS);
+        assertTrue(result.toString(), result.isSuccess());
+        // Leer por lote, Caminar individualmente; Meditar falla y no cuenta
+        assertEquals(2, result.getUploadedCount());
+
+        assertNotNull(db.getHabitByServerId(201));
+        assertNotNull(db.getHabitByServerId(202));
+        assertEquals(1, db.getUnsyncedHabits().size());
+        assertEquals(failing, db.getUnsyncedHabits().get(0).getId());
+    }
+
+    /**
+     * El lote solo devuelve "Leer"; POST habits crea "Caminar" y rechaza "Meditar".
+     */
+    private static final class FakeHabitsApi extends Dispatcher {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String path = request.getPath();
+            String body = request.getBody().readUtf8();
+            if ("POST".equals(request.getMethod()) && "/api/v1/habits/sync".equals(path)) {
+                return json("{\"success\":true,\"habits\":[" + habit(201, "Leer", "READ_BOOK") + "]}");
+            }
+            if ("POST".equals(request.getMethod()) && "/api/v1/habits".equals(path)) {
+                if (body.contains("\"Caminar\"")) {
+                    return json(habit(202, "Caminar", "WALK"));
+                }
+                return new MockResponse().setResponseCode(500);
+            }
+            if ("GET".equals(request.getMethod()) && path != null && path.startsWith("/api/v1/habits?since=")) {
+                return json("{\"success\":true,\"habits\":[" + habit(201, "Leer", "READ_BOOK") + ","
+                        + habit(202, "Caminar", "WALK") + "],\"serverTime\":1000}");
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static String habit(long serverId, String title, String type) {
+        return "{\"id\":" + serverId + ",\"userId\":" + USER_ID + ",\"title\":\"" + title + "\",\"goal\":\"\","
+                + "\"category\":\"general\",\"type\":\"" + type + "\",\"completed\":false,\"points\":10}";
+    }
+}
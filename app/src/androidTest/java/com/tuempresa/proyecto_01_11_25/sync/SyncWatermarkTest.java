@@ -0,0 +1,149 @@
+package com.tuempresa.proyecto_01_11_25.sync;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.api.HabitApiClient;
+import com.tuempresa.proyecto_01_11_25.api.HabitApiHelper;
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
+import com.tuempresa.proyecto_01_11_25.network.ConnectionMonitor;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de la descarga incremental contra un servidor simulado: la primera sincronización
+ * guarda la marca, la siguiente la envía en since= y aplica solo los cambios, y borrar los
+ * datos locales obliga a descargar todo otra vez.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncWatermarkTest {
+
+    private static final long USER_ID = 7;
+
+    private Context context;
+    private SessionManager session;
+    private MockWebServer server;
+    private String previousBaseUrl;
+    private SyncManager syncManager;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        session = new SessionManager(context);
+        session.createLoginSession(USER_ID, "sync@habitus.test", "token", "Sync");
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+
+        server = new MockWebServer();
+        server.start();
+        HabitApiClient client = HabitApiClient.getInstance(context);
+        previousBaseUrl = client.getBaseUrl();
+        client.setBaseUrl(server.url("/api/v1/").toString());
+        syncManager = new SyncManager(context, new HabitApiHelper(context));
+
+        ConnectionMonitor monitor = ConnectionMonitor.getInstance(context);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!monitor.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue("sin red en el dispositivo de pruebas", monitor.isConnected());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HabitApiClient.getInstance(context).setBaseUrl(previousBaseUrl);
+        server.shutdown();
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        session.logoutUser();
+    }
+
+    @Test
+    public void secondSync_sendsWatermarkAndAppliesOnlyChanges() throws Exception {
+        server.enqueue(json("{\"success\":true,\"habits\":[" + habit(101, "Leer", "READ_BOOK") + ","
+                + habit(102, "Caminar", "WALK") + "],\"serverTime\":1000}"));
+        SyncResult first = sync();
+        assertTrue(first.toString(), first.isSuccess());
+        assertEquals("/api/v1/habits?since=0", takeRequest().getPath());
+        assertEquals(1000, session.getSyncWatermark());
+
+        HabitDatabaseHelperSync db = new HabitDatabaseHelperSync(context);
+        assertEquals("Leer", db.getHabitByServerId(101).getTitle());
+        assertEquals("Caminar", db.getHabitByServerId(102).getTitle());
+        assertEquals(2, db.getAllHabits().size());
+
+        // Solo el hábito cambiado y el eliminado desde la marca
+        server.enqueue(json("{\"success\":true,\"habits\":[" + habit(101, "Leer más", "READ_BOOK") + "],"
+                + "\"deletedIds\":[102],\"serverTime\":2000}"));
+        SyncResult second = sync();
+        assertTrue(second.toString(), second.isSuccess());
+        assertEquals("/api/v1/habits?since=1000", takeRequest().getPath());
+        assertEquals(2000, session.getSyncWatermark());
+        assertEquals(1, second.getDownloadedCount());
+        assertEquals(1, second.getDeletedCount());
+
+        assertEquals("Leer más", db.getHabitByServerId(101).getTitle());
+        assertNull(db.getHabitByServerId(102));
+        assertEquals(1, db.getAllHabits().size());
+    }
+
+    @Test
+    public void deleteLocalDatabase_forcesFullDownload() throws Exception {
+        server.enqueue(json("{\"success\":true,\"habits\":[" + habit(101, "Leer", "READ_BOOK") + "],\"serverTime\":1000}"));
+        assertTrue(sync().isSuccess());
+        assertEquals("/api/v1/habits?since=0", takeRequest().getPath());
+        assertEquals(1000, session.getSyncWatermark());
+
+        HabitDatabaseHelperSync.deleteLocalDatabase(context);
+        assertEquals(0, session.getSyncWatermark());
+
+        server.enqueue(json("{\"success\":true,\"habits\":[" + habit(101, "Leer", "READ_BOOK") + "],\"serverTime\":3000}"));
+        assertTrue(sync().isSuccess());
+        assertEquals("/api/v1/habits?since=0", takeRequest().getPath());
+        assertEquals("Leer", new HabitDatabaseHelperSync(context).getHabitByServerId(101).getTitle());
+    }
+
+    @Test
+    public void deletingOtherUsersHabits_clearsTheirWatermarks() {
+        session.setSyncWatermark(1000);
+        session.createLoginSession(8, "otro@habitus.test", "token", "Otro");
+        session.setSyncWatermark(5000);
+
+        new HabitDatabaseHelperSync(context).deleteHabitsNotBelongingToCurrentUser();
+        assertEquals(5000, session.getSyncWatermark());
+
+        session.createLoginSession(USER_ID, "sync@habitus.test", "token", "Sync");
+        assertEquals(0, session.getSyncWatermark());
+    }
+
+    private SyncResult sync() {
+        return syncManager.syncAllBlocking(10, TimeUnit.SECONDS);
+    }
+
+    private RecordedRequest takeRequest() throws InterruptedException {
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull("el servidor no recibió la petición", request);
+        return request;
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static String habit(long serverId, String title, String type) {
+        return "{\"id\":" + serverId + ",\"userId\":" + USER_ID + ",\"title\":\"" + title + "\",\"goal\":\"\","
+                + "\"category\":\"general\",\"type\":\"" + type + "\",\"completed\":false,\"points\":10}";
+    }
+}
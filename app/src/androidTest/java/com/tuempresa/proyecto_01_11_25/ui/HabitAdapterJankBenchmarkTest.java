@@ -0,0 +1,188 @@
+package com.tuempresa.proyecto_01_11_25.ui;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark de tiempo de frame del adaptador del Dashboard: cuánto bloquea el hilo principal
+ * cada lista nueva con 500 hábitos, frente a leer el progreso hábito por hábito en el hilo
+ * principal (un SimpleDateFormat y una lectura de SharedPreferences por hábito, como antes).
+ */
+@RunWith(AndroidJUnit4.class)
+public class HabitAdapterJankBenchmarkTest {
+
+    private static final String TAG = "HabitAdapterJankBench";
+    private static final String PREFS_NAME = "habit_progress";
+    private static final int HABITS = 500;
+    private static final int WARMUP = 5;
+    private static final int UPDATES = 30;
+    // Presupuesto de un frame a 60 Hz
+    private static final long FRAME_BUDGET_NANOS = 16_000_000L;
+
+    private Instrumentation instrumentation;
+    private Context context;
+    private List<Habit> habits;
+
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        context = instrumentation.getTargetContext();
+        habits = new ArrayList<>(HABITS);
+        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear();
+        for (int i = 1; i <= HABITS; i++) {
+            Habit habit;
+            switch (i % 3) {
+                case 0:
+                    habit = new Habit("Leer " + i, "Leer", "general", Habit.HabitType.READ_BOOK);
+                    habit.setPagesPerDay(20);
+                    editor.putInt("read_" + i + "_" + today, i % 20);
+                    break;
+                case 1:
+                    habit = new Habit("Agua " + i, "Beber agua", "salud", Habit.HabitType.WATER);
+                    habit.setWaterGoalGlasses(8);
+                    editor.putInt("water_" + i + "_" + today, i % 8);
+                    break;
+                default:
+                    habit = new Habit("Caminar " + i, "Caminar", "salud", Habit.HabitType.WALK);
+                    habit.setWalkGoalSteps(5000);
+                    editor.putInt("walk_steps_" + i + "_" + today, i);
+                    break;
+            }
+            habit.setId(i);
+            habits.add(habit);
+        }
+        editor.commit();
+    }
+
+    @After
+    public void tearDown() {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    @Test
+    public void submit_staysUnderFrameBudget() throws Exception {
+        HabitAdapter[] adapter = new HabitAdapter[1];
+        instrumentation.runOnMainSync(() -> adapter[0] = new HabitAdapter(context, new ArrayList<>(), habit -> { }));
+
+        long[] submitNanos = new long[UPDATES];
+        long[] legacyNanos = new long[UPDATES];
+        instrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < WARMUP; i++) {
+                adapter[0].updateHabits(habits);
+                legacyProgressOnMainThread(habits);
+            }
+            for (int i = 0; i < UPDATES; i++) {
+                long start = System.nanoTime();
+                adapter[0].updateHabits(new ArrayList<>(habits));
+                submitNanos[i] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                legacyProgressOnMainThread(habits);
+                legacyNanos[i] = System.nanoTime() - start;
+            }
+        });
+
+        long submitWorst = max(submitNanos);
+        long legacyTotal = sum(legacyNanos);
+        Log.i(TAG, "Hilo principal por lista de " + HABITS + ": " + sum(submitNanos) / UPDATES / 1000
+                + " µs (peor " + submitWorst / 1000 + " µs, " + overBudget(submitNanos) + " frames perdidos), "
+                + "progreso por hábito: " + legacyTotal / UPDATES / 1000 + " µs ("
+                + overBudget(legacyNanos) + " frames perdidos)");
+        assertTrue("peor lista " + submitWorst + " ns", submitWorst < FRAME_BUDGET_NANOS);
+        assertTrue("lista " + sum(submitNanos) + " ns, por hábito " + legacyTotal + " ns",
+                sum(submitNanos) < legacyTotal);
+
+        // El progreso leído en segundo plano llega a la lista (se aplica solo la última)
+        long deadline = System.currentTimeMillis() + 5000;
+        while (adapter[0].getItemCount() != HABITS && System.currentTimeMillis() < deadline) {
+            instrumentation.waitForIdleSync();
+            Thread.sleep(10);
+        }
+        assertEquals(HABITS, adapter[0].getItemCount());
+    }
+
+    @Test
+    public void readTodayProgress_usesEachRowKey() {
+        List<HabitAdapter.HabitRow> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rows.add(new HabitAdapter.HabitRow(habits.get(i), 0));
+        }
+        List<HabitAdapter.HabitRow> result = HabitAdapter.readTodayProgress(context, rows);
+        assertEquals(1, result.get(0).todayProgress);    // agua: 1 % 8
+        assertEquals(2, result.get(1).todayProgress);    // pasos: 2
+        assertEquals(3, result.get(2).todayProgress);    // páginas: 3 % 20
+        assertSame(habits.get(0), result.get(0).habit);
+
+        Habit meditate = new Habit("Meditar", "10 minutos", "salud", Habit.HabitType.MEDITATE);
+        HabitAdapter.HabitRow plain = new HabitAdapter.HabitRow(meditate, 0);
+        assertNull(plain.progressKey());
+    }
+
+    /**
+     * Lectura del progreso como se hacía antes: formateo de la fecha y SharedPreferences por hábito.
+     */
+    private int legacyProgressOnMainThread(List<Habit> list) {
+        int total = 0;
+        for (Habit habit : list) {
+            String key;
+            if (habit.getType() == Habit.HabitType.READ_BOOK) {
+                key = "read_" + habit.getId();
+            } else if (habit.getType() == Habit.HabitType.WATER) {
+                key = "water_" + habit.getId();
+            } else {
+                key = "walk_steps_" + habit.getId();
+            }
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String todayKey = key + "_" + new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+            total += prefs.getInt(todayKey, 0);
+        }
+        return total;
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static long max(long[] values) {
+        long result = 0;
+        for (long value : values) {
+            result = Math.max(result, value);
+        }
+        return result;
+    }
+
+    private static int overBudget(long[] values) {
+        int count = 0;
+        for (long value : values) {
+            if (value > FRAME_BUDGET_NANOS) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -42,6 +42,14 @@ public class HabitApiHelper {
         void onError(String error);
     }
 
+    /**
+     * Interfaz para callback cuando se obtienen los cambios incrementales.
+     */
+    public interface OnHabitsChangedListener {
+        void onSuccess(HabitsResponse changes);
+        void onError(String error);
+    }
+
     /**
      * Interfaz para callback cuando se obtiene un hábito.
      */
@@ -104,6 +112,37 @@ public class HabitApiHelper {
         });
     }
 
+    /**
+     * Obtiene los hábitos modificados y eliminados desde la marca indicada.
+     * @param since Marca de la sincronización anterior (0 para descargar todo)
+     * @param listener Callback para manejar la respuesta
+     */
+    public void getHabitsChangedSince(long since, OnHabitsChangedListener listener) {
+        Call<HabitsResponse> call = apiService.getHabitsChangedSince(since);
+        call.enqueue(new Callback<HabitsResponse>() {
+            @Override
+            public void onResponse(Call<HabitsResponse> call, Response<HabitsResponse> response) {
+                if (response.isSuccessful() && response.body() != null) {
+                    HabitsResponse habitsResponse = response.body();
+                    if (habitsResponse.isSuccess()) {
+                        listener.onSuccess(habitsResponse);
+                    } else {
+                        listener.onError(habitsResponse.getMessage() != null ? 
+                                habitsResponse.getMessage() : "Error desconocido");
+                    }
+                } else {
+                    listener.onError("Error al obtener cambios: " + response.code());
+                }
+            }
+
+            @Override
+            public void onFailure(Call<HabitsResponse> call, Throwable t) {
+                Log.e(TAG, "Error al obtener cambios de hábitos", t);
+                listener.onError("Error de conexión: " + t.getMessage());
+            }
+        });
+    }
+
     /**
      * Obtiene un hábito específico por su ID.
      * @param id ID del hábito
@@ -12,6 +12,7 @@ import retrofit2.http.GET;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
 
 /**
  * Interfaz de servicio Retrofit para las operaciones CRUD de hábitos.
@@ -26,6 +27,14 @@ public interface HabitApiService {
     @GET("habits")
     Call<HabitsResponse> getAllHabits();
 
+    /**
+     * Obtiene solo los hábitos modificados o eliminados desde la marca indicada.
+     * @param since Marca de tiempo (serverTime de la sincronización anterior); 0 devuelve todos
+     * @return Call con los hábitos cambiados, los serverIds eliminados y la nueva marca
+     */
+    @GET("habits")
+    Call<HabitsResponse> getHabitsChangedSince(@Query("since") long since);
+
     /**
      * Obtiene un hábito específico por su ID.
      * @param id ID del hábito
@@ -5,9 +5,13 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import com.tuempresa.proyecto_01_11_25.model.Habit;
 import com.tuempresa.proyecto_01_11_25.model.Friend;
+import com.tuempresa.proyecto_01_11_25.utils.DayClock;
+import com.tuempresa.proyecto_01_11_25.utils.GeoHash;
+import com.tuempresa.proyecto_01_11_25.utils.StreakEngine;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,7 +19,7 @@ import java.util.List;
 public class HabitDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "habitus.db";
-    private static final int DATABASE_VERSION = 14;
+    private static final int DATABASE_VERSION = 24;
     private final Context context;
 
     // Tabla de hábitos (protected para que HabitDatabaseHelperSync pueda acceder)
@@ -65,11 +69,13 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
     protected static final String COLUMN_USER_FIRST_NAME = "first_name";
     protected static final String COLUMN_USER_LAST_NAME = "last_name";
     protected static final String COLUMN_USER_PHONE = "phone";
-    // Campos para racha diaria
+    // Campos para racha diaria (estado de StreakEngine; las fechas son días desde 1970-01-01, 0 = ninguno)
     protected static final String COLUMN_USER_CURRENT_STREAK = "current_streak";
     protected static final String COLUMN_USER_LAST_STREAK_DATE = "last_streak_date";
     protected static final String COLUMN_USER_DAILY_HABITS_COMPLETED = "daily_habits_completed";
     protected static final String COLUMN_USER_LAST_ACTIVITY_DATE = "last_activity_date";
+    // Último día (epoch day) en que se resetearon los hábitos completados; lo escribe solo el reset diario
+    protected static final String COLUMN_USER_LAST_RESET_DATE = "last_reset_date";
 
     // Nuevas columnas para Habits (según esquema)
     protected static final String COLUMN_HABIT_USER_ID = "user_id";
@@ -81,6 +87,9 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
     // Nuevas columnas para Scores (según esquema)
     protected static final String COLUMN_SCORE_USER_ID = "user_id";
     protected static final String COLUMN_SCORE_NOTE = "note";
+    // Día local del score (LocalDate.toEpochDay()), fijado al insertarlo: los totales por día
+    // y semana se indexan con él, así un cambio de zona horaria no los descuadra
+    protected static final String COLUMN_SCORE_DAY = "day";
 
     // Tabla de entradas del diario
     protected static final String TABLE_DIARY_ENTRIES = "diary_entries";
@@ -109,14 +118,220 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
     protected static final String COLUMN_COMPLETION_ID = "id";
     protected static final String COLUMN_COMPLETION_HABIT_ID = "habit_id";
     protected static final String COLUMN_COMPLETION_USER_ID = "user_id";
+    // Fecha en texto 'YYYY-MM-DD': solo la usan las migraciones anteriores a la versión 22
     protected static final String COLUMN_COMPLETION_DATE = "completion_date";
     protected static final String COLUMN_COMPLETION_LAT = "latitude";
     protected static final String COLUMN_COMPLETION_LNG = "longitude";
     protected static final String COLUMN_COMPLETION_CREATED_AT = "created_at";
+    protected static final String COLUMN_COMPLETION_GEOHASH = "geohash";
+    // Día del completado en días desde 1970-01-01 (fecha local), para consultar rangos por índice
+    protected static final String COLUMN_COMPLETION_DAY = "day";
+
+    // Resumen mensual de completados, mantenido por triggers sobre habit_completions
+    protected static final String TABLE_COMPLETION_MONTHS = "habit_completion_months";
+    protected static final String COLUMN_MONTH_USER_ID = "user_id";
+    protected static final String COLUMN_MONTH_KEY = "month"; // yyyyMM, por ejemplo 202511
+    protected static final String COLUMN_MONTH_HABIT_ID = "habit_id";
+    protected static final String COLUMN_MONTH_COMPLETIONS = "completions";
+
+    // Totales de puntos por usuario, mantenidos por triggers sobre scores y habits
+    protected static final String TABLE_SCORE_TOTALS = "user_score_totals";
+    protected static final String COLUMN_TOTALS_USER_ID = "user_id";
+    protected static final String COLUMN_TOTALS_POINTS = "total_points";
+    protected static final String COLUMN_TOTALS_SCORE_COUNT = "score_count";
+    protected static final String COLUMN_TOTALS_HABITS_COMPLETED = "habits_completed";
+
+    // Puntos por usuario y día o semana (start_day = día, o lunes de la semana, desde 1970-01-01)
+    protected static final String TABLE_SCORE_PERIODS = "user_score_periods";
+    protected static final String COLUMN_PERIOD_USER_ID = "user_id";
+    protected static final String COLUMN_PERIOD_TYPE = "period";
+    protected static final String COLUMN_PERIOD_START_DAY = "start_day";
+    protected static final String COLUMN_PERIOD_POINTS = "points";
+    protected static final String COLUMN_PERIOD_SCORE_COUNT = "score_count";
+    protected static final int SCORE_PERIOD_DAY = 0;
+    protected static final int SCORE_PERIOD_WEEK = 1;
+    // Máximo de celdas geohash (rangos del índice) por búsqueda por área
+    private static final int MAX_GEOHASH_CELLS_PER_QUERY = 16;
+
+    // Consultas puntuales precompiladas (la cadena es también la clave en StatementCache)
+    private static final String SQL_SCORE_EXISTS_SINCE = "SELECT EXISTS(SELECT 1 FROM " + TABLE_SCORES +
+            " WHERE " + COLUMN_SCORE_USER_ID + "=? AND " + COLUMN_SCORE_HABIT_TITLE + "=? AND " +
+            COLUMN_SCORE_DATE + ">=?)";
+    private static final String SQL_SCORE_EXISTS_AT = "SELECT EXISTS(SELECT 1 FROM " + TABLE_SCORES +
+            " WHERE " + COLUMN_SCORE_USER_ID + "=? AND " + COLUMN_SCORE_HABIT_TITLE + "=? AND " +
+            COLUMN_SCORE_DATE + "=?)";
+    // Sin hábito: 10 por defecto; hábito con points NULL: 0 (como getInt sobre un valor NULL)
+    private static final String SQL_HABIT_POINTS_BY_TITLE = "SELECT IFNULL((SELECT IFNULL(" + COLUMN_HABIT_POINTS +
+            ", 0) FROM " + TABLE_HABITS + " WHERE " + COLUMN_HABIT_TITLE + "=? LIMIT 1), 10)";
+    private static final String SQL_HABIT_ID_BY_TITLE = "SELECT IFNULL((SELECT " + COLUMN_HABIT_ID +
+            " FROM " + TABLE_HABITS + " WHERE " + COLUMN_HABIT_TITLE + "=? LIMIT 1), -1)";
+    private static final String SQL_HABIT_COMPLETED_BY_TITLE_USER = "SELECT IFNULL((SELECT " + COLUMN_HABIT_COMPLETED +
+            " FROM " + TABLE_HABITS + " WHERE " + COLUMN_HABIT_TITLE + "=? AND " + COLUMN_HABIT_USER_ID +
+            "=? LIMIT 1), -1)";
+    private static final String SQL_UPDATE_HABIT_COMPLETED = "UPDATE " + TABLE_HABITS + " SET " +
+            COLUMN_HABIT_COMPLETED + "=? WHERE " + COLUMN_HABIT_TITLE + "=? AND " + COLUMN_HABIT_USER_ID + "=?";
+    private static final String SQL_STREAK_STATE = "SELECT " + COLUMN_USER_LAST_ACTIVITY_DATE + ", " +
+            COLUMN_USER_DAILY_HABITS_COMPLETED + ", " + COLUMN_USER_CURRENT_STREAK + ", " + COLUMN_USER_LAST_STREAK_DATE +
+            " FROM " + TABLE_USERS + " WHERE " + COLUMN_USER_ID + "=?";
+    private static final String SQL_UPDATE_STREAK_STATE = "UPDATE " + TABLE_USERS + " SET " +
+            COLUMN_USER_LAST_ACTIVITY_DATE + "=?, " + COLUMN_USER_DAILY_HABITS_COMPLETED + "=?, " +
+            COLUMN_USER_CURRENT_STREAK + "=?, " + COLUMN_USER_LAST_STREAK_DATE + "=? WHERE " + COLUMN_USER_ID + "=?";
+    private static final String SQL_LAST_RESET_DAY = "SELECT IFNULL((SELECT " + COLUMN_USER_LAST_RESET_DATE +
+            " FROM " + TABLE_USERS + " WHERE " + COLUMN_USER_ID + "=?), 0)";
+    private static final String SQL_COMPLETIONS_ON_DAY = "SELECT COUNT(*) FROM " + TABLE_HABIT_COMPLETIONS +
+            " WHERE " + COLUMN_COMPLETION_USER_ID + "=? AND " + COLUMN_COMPLETION_DAY + "=?";
+    private static final String SQL_TOTAL_POINTS = "SELECT IFNULL((SELECT " + COLUMN_TOTALS_POINTS +
+            " FROM " + TABLE_SCORE_TOTALS + " WHERE " + COLUMN_TOTALS_USER_ID + "=?), 0)";
+    private static final String SQL_PERIOD_POINTS = "SELECT IFNULL((SELECT " + COLUMN_PERIOD_POINTS +
+            " FROM " + TABLE_SCORE_PERIODS + " WHERE " + COLUMN_PERIOD_USER_ID + "=? AND " + COLUMN_PERIOD_TYPE +
+            "=? AND " + COLUMN_PERIOD_START_DAY + "=?), 0)";
+    private static final String SQL_COMPLETION_EXISTS = "SELECT EXISTS(SELECT 1 FROM " + TABLE_HABIT_COMPLETIONS +
+            " WHERE " + COLUMN_COMPLETION_HABIT_ID + "=? AND " + COLUMN_COMPLETION_USER_ID + "=? AND " +
+            COLUMN_COMPLETION_DAY + "=?)";
+
+    // Helper compartido por todo el proceso: es el único que abre habitus.db.
+    // Las demás instancias (una por Activity, sensor, etc.) le delegan la conexión.
+    private static HabitDatabaseHelper sharedHelper;
+
+    // Sentencias compiladas de las consultas puntuales más frecuentes (ver StatementCache)
+    private static final StatementCache statementCache = new StatementCache();
+
+    /**
+     * Recibe un aviso cada vez que se confirma un cambio en la tabla habits.
+     */
+    public interface HabitsChangedListener {
+        /**
+         * @param localId hábito modificado, o {@link #ALL_HABITS} si cambiaron varios a la vez
+         */
+        void onHabitsChanged(long localId);
+    }
+
+    public static final long ALL_HABITS = -1;
+    private static final java.util.List<HabitsChangedListener> habitsChangedListeners =
+            new java.util.concurrent.CopyOnWriteArrayList<>();
+    // Avisos pendientes de la transacción agrupada en curso en este hilo (ver runInTransaction)
+    private static final ThreadLocal<boolean[]> batchPendingNotify = new ThreadLocal<>();
 
     public HabitDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         this.context = context;
+        // WAL: las lecturas no bloquean a la escritura. SQLiteDatabase mantiene un pool
+        // con una conexión de escritura y varias de solo lectura sobre el mismo handle.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static void addHabitsChangedListener(HabitsChangedListener listener) {
+        habitsChangedListeners.add(listener);
+    }
+
+    public static void removeHabitsChangedListener(HabitsChangedListener listener) {
+        habitsChangedListeners.remove(listener);
+    }
+
+    /**
+     * Notifica a los listeners registrados. Se llama después de confirmar la escritura.
+     */
+    protected static void notifyHabitsChanged(long localId) {
+        boolean[] batchPending = batchPendingNotify.get();
+        if (batchPending != null) {
+            // Dentro de runInTransaction: se avisa una sola vez, al confirmar
+            batchPending[0] = true;
+            return;
+        }
+        for (HabitsChangedListener listener : habitsChangedListeners) {
+            listener.onHabitsChanged(localId);
+        }
+    }
+
+    /**
+     * Obtiene el helper que mantiene abierta la conexión compartida.
+     * Se crea como HabitDatabaseHelperSync para que onCreate/onUpgrade incluyan siempre
+     * las columnas y tablas de sincronización, sin importar qué pantalla abra primero la BD.
+     */
+    private static synchronized HabitDatabaseHelper getSharedHelper(Context context) {
+        if (sharedHelper == null) {
+            sharedHelper = new HabitDatabaseHelperSync(context.getApplicationContext());
+        }
+        return sharedHelper;
+    }
+
+    /**
+     * Devuelve la conexión compartida (abierta una sola vez por proceso).
+     * No se debe cerrar la instancia devuelta.
+     */
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        HabitDatabaseHelper shared = getSharedHelper(context);
+        if (shared != this) {
+            return shared.getWritableDatabase();
+        }
+        return super.getWritableDatabase();
+    }
+
+    /**
+     * Devuelve la conexión compartida. En modo WAL las consultas se ejecutan
+     * en las conexiones de lectura del pool, en paralelo a las escrituras.
+     */
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        HabitDatabaseHelper shared = getSharedHelper(context);
+        if (shared != this) {
+            return shared.getReadableDatabase();
+        }
+        return super.getReadableDatabase();
+    }
+
+    /**
+     * La conexión compartida vive lo mismo que el proceso; cerrar un helper no la libera
+     * (evita "attempt to re-open an already-closed object" entre hilos).
+     * Para cerrarla de verdad, por ejemplo antes de borrar la base de datos, usar closeSharedConnection().
+     */
+    @Override
+    public synchronized void close() {
+        // No-op
+    }
+
+    /**
+     * Cierra la conexión compartida y sus sentencias compiladas, y descarta el helper compartido.
+     * La siguiente llamada a getWritableDatabase()/getReadableDatabase() abre una conexión nueva.
+     * Quien vaya a borrar el archivo debe hacerlo sincronizado sobre HabitDatabaseHelper.class,
+     * para que ningún hilo abra la base de datos entre el cierre y el borrado.
+     */
+    public static synchronized void closeSharedConnection() {
+        statementCache.closeAll();
+        if (sharedHelper != null) {
+            sharedHelper.closeDatabase();
+            sharedHelper = null;
+        }
+    }
+
+    private void closeDatabase() {
+        super.close();
+    }
+
+    /**
+     * Caché de sentencias compiladas compartida. Expone los contadores de hits/misses
+     * para comprobar que las consultas puntuales reutilizan su sentencia.
+     */
+    public static StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Verifica con una sentencia compilada si ya hay un score del hábito desde la fecha indicada.
+     */
+    private boolean scoreExistsSince(SQLiteDatabase db, long userId, String habitTitle, long sinceTimestamp) {
+        SQLiteStatement statement = statementCache.acquire(db, SQL_SCORE_EXISTS_SINCE);
+        synchronized (statement) {
+            statement.bindLong(1, userId);
+            statement.bindString(2, habitTitle);
+            statement.bindLong(3, sinceTimestamp);
+            try {
+                return statement.simpleQueryForLong() == 1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
     }
 
     @Override
@@ -134,7 +349,8 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 COLUMN_USER_CURRENT_STREAK + " INTEGER DEFAULT 0, " +
                 COLUMN_USER_LAST_STREAK_DATE + " INTEGER DEFAULT 0, " +
                 COLUMN_USER_DAILY_HABITS_COMPLETED + " INTEGER DEFAULT 0, " +
-                COLUMN_USER_LAST_ACTIVITY_DATE + " INTEGER DEFAULT 0" +
+                COLUMN_USER_LAST_ACTIVITY_DATE + " INTEGER DEFAULT 0, " +
+                COLUMN_USER_LAST_RESET_DATE + " INTEGER DEFAULT 0" +
                 ")";
         db.execSQL(createUsersTable);
 
@@ -236,11 +452,14 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 COLUMN_SCORE_POINTS + " INTEGER NOT NULL, " +
                 COLUMN_SCORE_DATE + " INTEGER DEFAULT (strftime('%s', 'now')), " +
                 COLUMN_SCORE_NOTE + " TEXT, " +
+                COLUMN_SCORE_DAY + " INTEGER, " +
                 "FOREIGN KEY(" + COLUMN_SCORE_HABIT_ID + ") REFERENCES " + TABLE_HABITS + "(" + COLUMN_HABIT_ID + "), "
                 +
                 "FOREIGN KEY(" + COLUMN_SCORE_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + ")" +
                 ")";
         db.execSQL(createScoresTable);
+        db.execSQL("CREATE INDEX idx_scores_user_title_date ON " + TABLE_SCORES +
+                "(" + COLUMN_SCORE_USER_ID + ", " + COLUMN_SCORE_HABIT_TITLE + ", " + COLUMN_SCORE_DATE + ")");
 
         // Crear tabla de entradas del diario
         String createDiaryTable = "CREATE TABLE " + TABLE_DIARY_ENTRIES + " (" +
@@ -273,7 +492,213 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(createFriendsTable);
 
         // Crear tabla de completados de hábitos (para el mapa)
-        String createCompletionsTable = "CREATE TABLE " + TABLE_HABIT_COMPLETIONS + " (" +
+        db.execSQL(createCompletionsTableSql(TABLE_HABIT_COMPLETIONS));
+
+        // Crear índices para optimización
+        createCompletionIndexes(db);
+        createCompletionHistorySchema(db);
+        createScoreAggregateTables(db);
+        createScoreAggregateTriggers(db);
+
+        // Crear triggers para limpieza automática
+        createCompletionCleanupTriggers(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        SchemaMigrator migrator = new SchemaMigrator();
+        registerMigrations(migrator);
+        migrator.migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Registra los pasos de migración, cada uno con la versión de esquema que produce.
+     * Las subclases pueden añadir los suyos llamando primero a super.
+     */
+    protected void registerMigrations(SchemaMigrator migrator) {
+        migrator.add(2, this::migrateToVersion2);
+        migrator.add(3, this::migrateToVersion3);
+        migrator.add(4, this::migrateToVersion4);
+        migrator.add(5, this::migrateToVersion5);
+        migrator.add(6, this::migrateToVersion6);
+        migrator.add(7, this::migrateToVersion7);
+        migrator.add(8, this::migrateToVersion8);
+        migrator.add(9, this::migrateToVersion9);
+        migrator.add(10, this::migrateToVersion10);
+        migrator.add(11, this::migrateToVersion11);
+        migrator.add(12, this::migrateToVersion12);
+        migrator.add(14, this::migrateToVersion14);
+        migrator.add(15, this::migrateToVersion15);
+        migrator.add(17, this::migrateToVersion17);
+        migrator.add(18, this::migrateToVersion18);
+        migrator.add(19, this::migrateToVersion19);
+        migrator.add(20, this::migrateToVersion20);
+        migrator.add(21, this::migrateToVersion21);
+        migrator.add(22, this::migrateToVersion22);
+        migrator.add(23, this::migrateToVersion23);
+        migrator.add(24, this::migrateToVersion24);
+    }
+
+    private void migrateToVersion2(SQLiteDatabase db) {
+        try {
+            db.execSQL(
+                    "ALTER TABLE " + TABLE_HABITS + " ADD COLUMN " + COLUMN_HABIT_TARGET_VALUE + " REAL DEFAULT 0");
+        } catch (Exception e) {
+        }
+        try {
+            db.execSQL("ALTER TABLE " + TABLE_HABITS + " ADD COLUMN " + COLUMN_HABIT_TARGET_UNIT + " TEXT");
+        } catch (Exception e) {
+        }
+    }
+
+    private void migrateToVersion3(SQLiteDatabase db) {
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_PAGES_PER_DAY, "INTEGER");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_REMINDER_TIMES, "TEXT");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_DURATION_MINUTES, "INTEGER");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_DND_MODE, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_MUSIC_ID, "INTEGER");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_JOURNAL_ENABLED, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_GYM_DAYS, "TEXT");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_WATER_GOAL_GLASSES, "INTEGER");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_WALK_GOAL_METERS, "INTEGER");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_WALK_GOAL_STEPS, "INTEGER");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_ONE_CLICK_COMPLETE, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_ENGLISH_MODE, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_CODING_MODE, "INTEGER DEFAULT 0");
+    }
+
+    private void migrateToVersion4(SQLiteDatabase db) {
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_ICON, "TEXT");
+    }
+
+    private void migrateToVersion5(SQLiteDatabase db) {
+        // Migración a versión 5: Implementar esquema completo
+
+        // 1. Crear tabla USERS
+        String createUsersTable = "CREATE TABLE " + TABLE_USERS + " (" +
+                COLUMN_USER_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_USER_EMAIL + " TEXT UNIQUE, " +
+                COLUMN_USER_PASSWORD_HASH + " TEXT, " +
+                COLUMN_USER_FIRST_NAME + " TEXT, " +
+                COLUMN_USER_LAST_NAME + " TEXT, " +
+                COLUMN_USER_PHONE + " TEXT, " +
+                COLUMN_USER_CREATED_AT + " INTEGER, " +
+                COLUMN_USER_IS_ACTIVE + " INTEGER DEFAULT 1" +
+                ")";
+        db.execSQL(createUsersTable);
+
+        // 2. Crear usuario por defecto (para migrar datos existentes)
+        ContentValues defaultUser = new ContentValues();
+        defaultUser.put(COLUMN_USER_EMAIL, "default@local.com");
+        defaultUser.put(COLUMN_USER_IS_ACTIVE, 1);
+        defaultUser.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
+        long defaultUserId = db.insert(TABLE_USERS, null, defaultUser);
+
+        // 3. Actualizar tabla HABITS
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_USER_ID, "INTEGER DEFAULT " + defaultUserId);
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_IS_ACTIVE, "INTEGER DEFAULT 1");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_POINTS_PER_COMPLETION, "INTEGER DEFAULT 10");
+
+        // Sincronizar points_per_completion con points existente
+        db.execSQL("UPDATE " + TABLE_HABITS + " SET " + COLUMN_HABIT_POINTS_PER_COMPLETION + " = "
+                + COLUMN_HABIT_POINTS);
+
+        // 4. Actualizar tabla SCORES
+        addColumnIfNotExists(db, TABLE_SCORES, COLUMN_SCORE_USER_ID, "INTEGER DEFAULT " + defaultUserId);
+        addColumnIfNotExists(db, TABLE_SCORES, COLUMN_SCORE_NOTE, "TEXT");
+    }
+
+    private void migrateToVersion6(SQLiteDatabase db) {
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_FIRST_NAME, "TEXT");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_NAME, "TEXT");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_PHONE, "TEXT");
+    }
+
+    private void migrateToVersion7(SQLiteDatabase db) {
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_STREAK_COUNT, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_LAST_COMPLETED_DATE, "INTEGER DEFAULT 0");
+
+        // Crear trigger en actualización
+        db.execSQL("DROP TRIGGER IF EXISTS update_streak");
+        db.execSQL("CREATE TRIGGER update_streak AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + " ON " + TABLE_HABITS
+                +
+                " FOR EACH ROW WHEN NEW." + COLUMN_HABIT_COMPLETED + " = 1 " +
+                " BEGIN " +
+                "   UPDATE " + TABLE_HABITS + " SET " +
+                "     " + COLUMN_HABIT_STREAK_COUNT + " = CASE " +
+                "       WHEN (strftime('%J', 'now') - strftime('%J', datetime(" + COLUMN_HABIT_LAST_COMPLETED_DATE
+                + ", 'unixepoch'))) >= 1.0 AND (strftime('%J', 'now') - strftime('%J', datetime("
+                + COLUMN_HABIT_LAST_COMPLETED_DATE + ", 'unixepoch'))) < 2.0 THEN " + COLUMN_HABIT_STREAK_COUNT
+                + " + 1 " +
+                "       WHEN (strftime('%J', 'now') - strftime('%J', datetime(" + COLUMN_HABIT_LAST_COMPLETED_DATE
+                + ", 'unixepoch'))) >= 2.0 THEN 1 " +
+                "       WHEN " + COLUMN_HABIT_LAST_COMPLETED_DATE + " = 0 THEN 1 " +
+                "       ELSE " + COLUMN_HABIT_STREAK_COUNT + " " +
+                "     END, " +
+                "     " + COLUMN_HABIT_LAST_COMPLETED_DATE + " = strftime('%s', 'now') " +
+                "   WHERE " + COLUMN_HABIT_ID + " = NEW." + COLUMN_HABIT_ID + "; " +
+                " END;");
+    }
+
+    private void migrateToVersion8(SQLiteDatabase db) {
+        // Migración a versión 8: Agregar columnas de sincronización
+        // Estas columnas son necesarias para HabitDatabaseHelperSync
+        addColumnIfNotExists(db, TABLE_HABITS, "synced", "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_HABITS, "server_id", "INTEGER");
+        addColumnIfNotExists(db, TABLE_HABITS, "updated_at", "INTEGER DEFAULT 0");
+        // Actualizar valores existentes con timestamp actual
+        db.execSQL("UPDATE " + TABLE_HABITS + " SET updated_at = " + (System.currentTimeMillis() / 1000) + " WHERE updated_at = 0 OR updated_at IS NULL");
+    }
+
+    private void migrateToVersion9(SQLiteDatabase db) {
+        // Migración a versión 9: Crear tabla de entradas del diario
+        String createDiaryTable = "CREATE TABLE IF NOT EXISTS " + TABLE_DIARY_ENTRIES + " (" +
+                COLUMN_DIARY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_DIARY_HABIT_ID + " INTEGER NOT NULL, " +
+                COLUMN_DIARY_USER_ID + " INTEGER, " +
+                COLUMN_DIARY_CONTENT + " TEXT NOT NULL, " +
+                COLUMN_DIARY_DATE + " INTEGER DEFAULT (strftime('%s', 'now')), " +
+                COLUMN_DIARY_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
+                "FOREIGN KEY(" + COLUMN_DIARY_HABIT_ID + ") REFERENCES " + TABLE_HABITS + "(" + COLUMN_HABIT_ID + "), " +
+                "FOREIGN KEY(" + COLUMN_DIARY_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + ")" +
+                ")";
+        db.execSQL(createDiaryTable);
+    }
+
+    private void migrateToVersion10(SQLiteDatabase db) {
+        // Migración a versión 10: Agregar campos de racha diaria a usuarios
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_STREAK_DATE, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_ACTIVITY_DATE, "INTEGER DEFAULT 0");
+    }
+
+    private void migrateToVersion11(SQLiteDatabase db) {
+        // Migración a versión 11: Agregar columna title a diary_entries
+        addColumnIfNotExists(db, TABLE_DIARY_ENTRIES, COLUMN_DIARY_TITLE, "TEXT NOT NULL DEFAULT 'Nota'");
+    }
+
+    private void migrateToVersion12(SQLiteDatabase db) {
+        // Migración a versión 12: Crear tabla de amigos
+        String createFriendsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_FRIENDS + " (" +
+                COLUMN_FRIEND_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_FRIEND_USER_ID + " INTEGER NOT NULL, " +
+                COLUMN_FRIEND_FRIEND_USER_ID + " INTEGER, " +
+                COLUMN_FRIEND_EMAIL + " TEXT NOT NULL, " +
+                COLUMN_FRIEND_NAME + " TEXT, " +
+                COLUMN_FRIEND_TOTAL_HABITS + " INTEGER DEFAULT 0, " +
+                COLUMN_FRIEND_TOTAL_POINTS + " INTEGER DEFAULT 0, " +
+                COLUMN_FRIEND_CURRENT_STREAK + " INTEGER DEFAULT 0, " +
+                COLUMN_FRIEND_ADDED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
+                "FOREIGN KEY(" + COLUMN_FRIEND_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + "), " +
+                "UNIQUE(" + COLUMN_FRIEND_USER_ID + ", " + COLUMN_FRIEND_EMAIL + ")" +
+                ")";
+        db.execSQL(createFriendsTable);
+    }
+
+    private void migrateToVersion14(SQLiteDatabase db) {
+        // Migración a versión 14: Crear tabla de completados de hábitos
+        String createCompletionsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_HABIT_COMPLETIONS + " (" +
                 COLUMN_COMPLETION_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_COMPLETION_HABIT_ID + " INTEGER NOT NULL, " +
                 COLUMN_COMPLETION_USER_ID + " INTEGER NOT NULL, " +
@@ -287,14 +712,14 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 ")";
         db.execSQL(createCompletionsTable);
 
-        // Crear índices para optimización
-        db.execSQL("CREATE INDEX idx_completions_user_date ON " + TABLE_HABIT_COMPLETIONS +
+        // Crear índices
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_user_date ON " + TABLE_HABIT_COMPLETIONS +
                 "(" + COLUMN_COMPLETION_USER_ID + ", " + COLUMN_COMPLETION_DATE + ")");
-        db.execSQL("CREATE INDEX idx_completions_habit ON " + TABLE_HABIT_COMPLETIONS +
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_habit ON " + TABLE_HABIT_COMPLETIONS +
                 "(" + COLUMN_COMPLETION_HABIT_ID + ")");
 
-        // Crear triggers para limpieza automática
-        // Trigger: Eliminar completado cuando se desmarca un hábito
+        // Crear triggers
+        db.execSQL("DROP TRIGGER IF EXISTS delete_completion_on_uncomplete");
         db.execSQL("CREATE TRIGGER delete_completion_on_uncomplete " +
                 "AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + " ON " + TABLE_HABITS + " " +
                 "FOR EACH ROW " +
@@ -306,7 +731,7 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 "  AND " + COLUMN_COMPLETION_DATE + " = date('now'); " +
                 "END;");
 
-        // Trigger: Eliminar completados cuando se borra un hábito
+        db.execSQL("DROP TRIGGER IF EXISTS delete_completions_on_habit_delete");
         db.execSQL("CREATE TRIGGER delete_completions_on_habit_delete " +
                 "AFTER DELETE ON " + TABLE_HABITS + " " +
                 "FOR EACH ROW " +
@@ -316,216 +741,458 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 "END;");
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < 2) {
-            try {
-                db.execSQL(
-                        "ALTER TABLE " + TABLE_HABITS + " ADD COLUMN " + COLUMN_HABIT_TARGET_VALUE + " REAL DEFAULT 0");
-            } catch (Exception e) {
+    private void migrateToVersion15(SQLiteDatabase db) {
+        // Migración a versión 15: garantizar una sola vez las columnas que antes se verificaban
+        // en cada llamada (rachas de usuario). A partir de aquí el esquema se considera completo.
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_STREAK_DATE, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_ACTIVITY_DATE, "INTEGER DEFAULT 0");
+    }
+
+    private void migrateToVersion17(SQLiteDatabase db) {
+        // Migración a versión 17: geohash de cada completado para buscar por área con índice
+        addColumnIfNotExists(db, TABLE_HABIT_COMPLETIONS, COLUMN_COMPLETION_GEOHASH, "TEXT");
+
+        // Calcular el geohash de los completados existentes que tienen GPS
+        Cursor cursor = db.query(TABLE_HABIT_COMPLETIONS,
+                new String[]{COLUMN_COMPLETION_ID, COLUMN_COMPLETION_LAT, COLUMN_COMPLETION_LNG},
+                COLUMN_COMPLETION_LAT + " != 0 OR " + COLUMN_COMPLETION_LNG + " != 0",
+                null, null, null, null);
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_HABIT_COMPLETIONS +
+                " SET " + COLUMN_COMPLETION_GEOHASH + " = ? WHERE " + COLUMN_COMPLETION_ID + " = ?");
+        try {
+            while (cursor.moveToNext()) {
+                update.bindString(1, GeoHash.encode(cursor.getDouble(1), cursor.getDouble(2)));
+                update.bindLong(2, cursor.getLong(0));
+                update.executeUpdateDelete();
             }
-            try {
-                db.execSQL("ALTER TABLE " + TABLE_HABITS + " ADD COLUMN " + COLUMN_HABIT_TARGET_UNIT + " TEXT");
-            } catch (Exception e) {
+        } finally {
+            cursor.close();
+            update.close();
+        }
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_user_geohash ON " + TABLE_HABIT_COMPLETIONS +
+                "(" + COLUMN_COMPLETION_USER_ID + ", " + COLUMN_COMPLETION_GEOHASH + ")");
+    }
+
+    private void migrateToVersion18(SQLiteDatabase db) {
+        // Migración a versión 18: índice para buscar scores de un hábito por fecha (duplicados diarios y restauración)
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_scores_user_title_date ON " + TABLE_SCORES +
+                "(" + COLUMN_SCORE_USER_ID + ", " + COLUMN_SCORE_HABIT_TITLE + ", " + COLUMN_SCORE_DATE + ")");
+    }
+
+    private void migrateToVersion19(SQLiteDatabase db) {
+        // Migración a versión 19: el historial de completados ya no se borra cada día.
+        // Clave de día entera, índice por (usuario, día) y resumen mensual.
+        addColumnIfNotExists(db, TABLE_HABIT_COMPLETIONS, COLUMN_COMPLETION_DAY, "INTEGER");
+        db.execSQL("UPDATE " + TABLE_HABIT_COMPLETIONS + " SET " + COLUMN_COMPLETION_DAY +
+                " = CAST(julianday(" + COLUMN_COMPLETION_DATE + ") - 2440587.5 AS INTEGER)" +
+                " WHERE julianday(" + COLUMN_COMPLETION_DATE + ") IS NOT NULL");
+
+        // Rellenar el resumen con el historial existente antes de crear los triggers que lo mantienen
+        db.execSQL(createCompletionMonthsTableSql());
+        db.execSQL("DELETE FROM " + TABLE_COMPLETION_MONTHS);
+        db.execSQL("INSERT INTO " + TABLE_COMPLETION_MONTHS + " SELECT " +
+                COLUMN_COMPLETION_USER_ID + ", " + monthKeySql(COLUMN_COMPLETION_DAY) + ", " +
+                COLUMN_COMPLETION_HABIT_ID + ", COUNT(*) FROM " + TABLE_HABIT_COMPLETIONS +
+                " WHERE " + COLUMN_COMPLETION_DAY + " IS NOT NULL GROUP BY 1, 2, 3");
+
+        createCompletionHistorySchema(db);
+
+        // Con el historial conservado, desmarcar solo debe borrar el completado del día local
+        // (date('now') es UTC y podía borrar el de ayer al resetear a medianoche)
+        db.execSQL("DROP TRIGGER IF EXISTS delete_completion_on_uncomplete");
+        db.execSQL("CREATE TRIGGER delete_completion_on_uncomplete " +
+                "AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + " ON " + TABLE_HABITS + " " +
+                "FOR EACH ROW " +
+                "WHEN NEW." + COLUMN_HABIT_COMPLETED + " = 0 AND OLD." + COLUMN_HABIT_COMPLETED + " = 1 " +
+                "BEGIN " +
+                "  DELETE FROM " + TABLE_HABIT_COMPLETIONS + " " +
+                "  WHERE " + COLUMN_COMPLETION_HABIT_ID + " = NEW." + COLUMN_HABIT_ID + " " +
+                "  AND " + COLUMN_COMPLETION_USER_ID + " = NEW." + COLUMN_HABIT_USER_ID + " " +
+                "  AND " + COLUMN_COMPLETION_DATE + " = date('now', 'localtime'); " +
+                "END;");
+    }
+
+    private void migrateToVersion20(SQLiteDatabase db) {
+        // Migración a versión 20: el estado de la racha pasa a claves de día (StreakEngine).
+        // last_activity_date y last_streak_date guardaban el timestamp (segundos) de las 00:00 locales.
+        db.execSQL("UPDATE " + TABLE_USERS + " SET " +
+                COLUMN_USER_LAST_ACTIVITY_DATE + " = " + epochDayFromSecondsSql(COLUMN_USER_LAST_ACTIVITY_DATE) + ", " +
+                COLUMN_USER_LAST_STREAK_DATE + " = " + epochDayFromSecondsSql(COLUMN_USER_LAST_STREAK_DATE));
+        // Antes la racha se sumaba con la primera actividad del día, aunque ese día aún no llegara
+        // al objetivo: esa racha en realidad termina ayer
+        db.execSQL("UPDATE " + TABLE_USERS + " SET " +
+                COLUMN_USER_CURRENT_STREAK + " = " + COLUMN_USER_CURRENT_STREAK + " - 1, " +
+                COLUMN_USER_LAST_STREAK_DATE + " = " + COLUMN_USER_LAST_STREAK_DATE + " - 1" +
+                " WHERE " + COLUMN_USER_CURRENT_STREAK + " > 0" +
+                " AND " + COLUMN_USER_LAST_STREAK_DATE + " = " + COLUMN_USER_LAST_ACTIVITY_DATE +
+                " AND " + COLUMN_USER_DAILY_HABITS_COMPLETED + " < " + StreakEngine.DAILY_GOAL);
+        // Días que cumplieron el objetivo sin que la racha se activara
+        db.execSQL("UPDATE " + TABLE_USERS + " SET " +
+                COLUMN_USER_CURRENT_STREAK + " = 1, " +
+                COLUMN_USER_LAST_STREAK_DATE + " = " + COLUMN_USER_LAST_ACTIVITY_DATE +
+                " WHERE " + COLUMN_USER_CURRENT_STREAK + " = 0 AND " + COLUMN_USER_LAST_ACTIVITY_DATE + " > 0" +
+                " AND " + COLUMN_USER_DAILY_HABITS_COMPLETED + " >= " + StreakEngine.DAILY_GOAL);
+        db.execSQL("UPDATE " + TABLE_USERS + " SET " + COLUMN_USER_LAST_STREAK_DATE + " = 0" +
+                " WHERE " + COLUMN_USER_CURRENT_STREAK + " <= 0");
+    }
+
+    private void migrateToVersion21(SQLiteDatabase db) {
+        // Migración a versión 21: totales de puntos materializados para getTotalScore y el ranking.
+        // Se rellenan con los datos existentes antes de crear los triggers que los mantienen.
+        createScoreAggregateTables(db);
+        db.execSQL("DELETE FROM " + TABLE_SCORE_TOTALS);
+        db.execSQL("DELETE FROM " + TABLE_SCORE_PERIODS);
+        db.execSQL("INSERT INTO " + TABLE_SCORE_TOTALS + " (" + COLUMN_TOTALS_USER_ID + ", " +
+                COLUMN_TOTALS_POINTS + ", " + COLUMN_TOTALS_SCORE_COUNT + ")" +
+                " SELECT " + COLUMN_SCORE_USER_ID + ", IFNULL(SUM(" + COLUMN_SCORE_POINTS + "), 0), COUNT(*)" +
+                " FROM " + TABLE_SCORES + " WHERE " + COLUMN_SCORE_USER_ID + " IS NOT NULL" +
+                " GROUP BY " + COLUMN_SCORE_USER_ID);
+        db.execSQL("INSERT OR IGNORE INTO " + TABLE_SCORE_TOTALS + " (" + COLUMN_TOTALS_USER_ID + ")" +
+                " SELECT DISTINCT " + COLUMN_HABIT_USER_ID + " FROM " + TABLE_HABITS +
+                " WHERE " + COLUMN_HABIT_COMPLETED + " = 1 AND " + COLUMN_HABIT_USER_ID + " IS NOT NULL");
+        db.execSQL("UPDATE " + TABLE_SCORE_TOTALS + " SET " + COLUMN_TOTALS_HABITS_COMPLETED +
+                " = (SELECT COUNT(*) FROM " + TABLE_HABITS + " WHERE " + COLUMN_HABIT_USER_ID + " = " +
+                TABLE_SCORE_TOTALS + "." + COLUMN_TOTALS_USER_ID + " AND " + COLUMN_HABIT_COMPLETED + " = 1)");
+        String day = epochDayFromSecondsSql(COLUMN_SCORE_DATE);
+        db.execSQL("INSERT INTO " + TABLE_SCORE_PERIODS + " SELECT " + COLUMN_SCORE_USER_ID + ", " + SCORE_PERIOD_DAY +
+                ", " + day + ", IFNULL(SUM(" + COLUMN_SCORE_POINTS + "), 0), COUNT(*) FROM " + TABLE_SCORES +
+                " WHERE " + COLUMN_SCORE_USER_ID + " IS NOT NULL GROUP BY 1, 3");
+        db.execSQL("INSERT INTO " + TABLE_SCORE_PERIODS + " SELECT " + COLUMN_SCORE_USER_ID + ", " + SCORE_PERIOD_WEEK +
+                ", " + weekStartSql(day) + ", IFNULL(SUM(" + COLUMN_SCORE_POINTS + "), 0), COUNT(*) FROM " + TABLE_SCORES +
+                " WHERE " + COLUMN_SCORE_USER_ID + " IS NOT NULL GROUP BY 1, 3");
+        createScoreAggregateTriggers(db);
+    }
+
+    private void migrateToVersion23(SQLiteDatabase db) {
+        // Migración a versión 23: los totales por día y semana se calculaban con 'localtime' cada
+        // vez que saltaba un trigger; si la zona cambiaba entre el INSERT y el DELETE de un score,
+        // la resta iba a otra fila. Ahora el día se guarda en el score y se recalculan los periodos.
+        addScoreDayColumn(db);
+        db.execSQL("DELETE FROM " + TABLE_SCORE_PERIODS);
+        populateScorePeriods(db);
+        createScoreAggregateTriggers(db);
+    }
+
+    private void migrateToVersion24(SQLiteDatabase db) {
+        // Migración a versión 24: el reset diario tiene su propia marca de día. Antes usaba
+        // last_activity_date, que ahora solo escribe la racha, y reseteaba en cada arranque.
+        // Se parte del último día con actividad para no borrar lo completado hoy.
+        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_RESET_DATE, "INTEGER DEFAULT 0");
+        db.execSQL("UPDATE " + TABLE_USERS + " SET " + COLUMN_USER_LAST_RESET_DATE + " = " + COLUMN_USER_LAST_ACTIVITY_DATE);
+    }
+
+    /**
+     * Añade la columna day a scores y la rellena a partir de la fecha (en la zona actual)
+     */
+    private void addScoreDayColumn(SQLiteDatabase db) {
+        addColumnIfNotExists(db, TABLE_SCORES, COLUMN_SCORE_DAY, "INTEGER");
+        db.execSQL("UPDATE " + TABLE_SCORES + " SET " + COLUMN_SCORE_DAY + " = " +
+                epochDayFromSecondsSql(COLUMN_SCORE_DATE) + " WHERE " + COLUMN_SCORE_DAY + " IS NULL");
+    }
+
+    /**
+     * Rellena los totales por día y semana con el día guardado en cada score (tabla vacía)
+     */
+    private void populateScorePeriods(SQLiteDatabase db) {
+        String where = " WHERE " + COLUMN_SCORE_USER_ID + " IS NOT NULL AND " + COLUMN_SCORE_DAY + " IS NOT NULL";
+        db.execSQL("INSERT INTO " + TABLE_SCORE_PERIODS + " SELECT " + COLUMN_SCORE_USER_ID + ", " + SCORE_PERIOD_DAY +
+                ", " + COLUMN_SCORE_DAY + ", IFNULL(SUM(" + COLUMN_SCORE_POINTS + "), 0), COUNT(*) FROM " + TABLE_SCORES +
+                where + " GROUP BY 1, 3");
+        db.execSQL("INSERT INTO " + TABLE_SCORE_PERIODS + " SELECT " + COLUMN_SCORE_USER_ID + ", " + SCORE_PERIOD_WEEK +
+                ", " + weekStartSql(COLUMN_SCORE_DAY) + ", IFNULL(SUM(" + COLUMN_SCORE_POINTS + "), 0), COUNT(*) FROM " +
+                TABLE_SCORES + where + " GROUP BY 1, 3");
+    }
+
+    private void migrateToVersion22(SQLiteDatabase db) {
+        // Migración a versión 22: la fecha del completado pasa a ser solo la clave de día entera.
+        // SQLite no puede quitar una columna ni cambiar la restricción única, así que la tabla
+        // se reconstruye. Los triggers de habits que la referencian se eliminan antes.
+        db.execSQL("DROP TRIGGER IF EXISTS delete_completion_on_uncomplete");
+        db.execSQL("DROP TRIGGER IF EXISTS delete_completions_on_habit_delete");
+
+        String rebuilt = TABLE_HABIT_COMPLETIONS + "_new";
+        db.execSQL("DROP TABLE IF EXISTS " + rebuilt);
+        db.execSQL(createCompletionsTableSql(rebuilt));
+        // Las filas sin día (fecha ilegible) lo toman de su created_at
+        String columns = COLUMN_COMPLETION_ID + ", " + COLUMN_COMPLETION_HABIT_ID + ", " + COLUMN_COMPLETION_USER_ID +
+                ", " + COLUMN_COMPLETION_LAT + ", " + COLUMN_COMPLETION_LNG + ", " + COLUMN_COMPLETION_CREATED_AT +
+                ", " + COLUMN_COMPLETION_GEOHASH;
+        db.execSQL("INSERT OR IGNORE INTO " + rebuilt + " (" + columns + ", " + COLUMN_COMPLETION_DAY + ")" +
+                " SELECT " + columns + ", IFNULL(" + COLUMN_COMPLETION_DAY + ", " +
+                epochDayFromSecondsSql(COLUMN_COMPLETION_CREATED_AT) + ")" +
+                " FROM " + TABLE_HABIT_COMPLETIONS + " ORDER BY " + COLUMN_COMPLETION_ID);
+        db.execSQL("DROP TABLE " + TABLE_HABIT_COMPLETIONS);
+        db.execSQL("ALTER TABLE " + rebuilt + " RENAME TO " + TABLE_HABIT_COMPLETIONS);
+
+        // Al borrar la tabla se borraron sus índices y triggers; el resumen mensual se recalcula
+        // porque las filas que no tenían día ahora cuentan
+        createCompletionIndexes(db);
+        db.execSQL(createCompletionMonthsTableSql());
+        db.execSQL("DELETE FROM " + TABLE_COMPLETION_MONTHS);
+        db.execSQL("INSERT INTO " + TABLE_COMPLETION_MONTHS + " SELECT " +
+                COLUMN_COMPLETION_USER_ID + ", " + monthKeySql(COLUMN_COMPLETION_DAY) + ", " +
+                COLUMN_COMPLETION_HABIT_ID + ", COUNT(*) FROM " + TABLE_HABIT_COMPLETIONS + " GROUP BY 1, 2, 3");
+        createCompletionHistorySchema(db);
+        createCompletionCleanupTriggers(db);
+    }
+
+    /**
+     * Tabla de completados. Cada completado se identifica por hábito, usuario y día
+     * (LocalDate.toEpochDay() en la zona del dispositivo): un completado por hábito y día.
+     */
+    private static String createCompletionsTableSql(String table) {
+        return "CREATE TABLE " + table + " (" +
+                COLUMN_COMPLETION_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_COMPLETION_HABIT_ID + " INTEGER NOT NULL, " +
+                COLUMN_COMPLETION_USER_ID + " INTEGER NOT NULL, " +
+                COLUMN_COMPLETION_DAY + " INTEGER NOT NULL, " +
+                COLUMN_COMPLETION_LAT + " REAL DEFAULT 0.0, " +
+                COLUMN_COMPLETION_LNG + " REAL DEFAULT 0.0, " +
+                COLUMN_COMPLETION_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
+                COLUMN_COMPLETION_GEOHASH + " TEXT, " +
+                "FOREIGN KEY(" + COLUMN_COMPLETION_HABIT_ID + ") REFERENCES " + TABLE_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE, " +
+                "FOREIGN KEY(" + COLUMN_COMPLETION_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + "), " +
+                "UNIQUE(" + COLUMN_COMPLETION_HABIT_ID + ", " + COLUMN_COMPLETION_USER_ID + ", " + COLUMN_COMPLETION_DAY + ")" +
+                ")";
+    }
+
+    /**
+     * Índices de completados por hábito y por (usuario, geohash). Los de día los crea
+     * createCompletionHistorySchema.
+     */
+    private void createCompletionIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_habit ON " + TABLE_HABIT_COMPLETIONS +
+                "(" + COLUMN_COMPLETION_HABIT_ID + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_user_geohash ON " + TABLE_HABIT_COMPLETIONS +
+                "(" + COLUMN_COMPLETION_USER_ID + ", " + COLUMN_COMPLETION_GEOHASH + ")");
+    }
+
+    /**
+     * Triggers de habits que borran completados: el de hoy al desmarcar un hábito y todos
+     * al borrarlo. El día de hoy se calcula en hora local, igual que DayClock.
+     */
+    private void createCompletionCleanupTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS delete_completion_on_uncomplete");
+        db.execSQL("CREATE TRIGGER delete_completion_on_uncomplete " +
+                "AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + " ON " + TABLE_HABITS + " " +
+                "FOR EACH ROW " +
+                "WHEN NEW." + COLUMN_HABIT_COMPLETED + " = 0 AND OLD." + COLUMN_HABIT_COMPLETED + " = 1 " +
+                "BEGIN " +
+                "  DELETE FROM " + TABLE_HABIT_COMPLETIONS + " " +
+                "  WHERE " + COLUMN_COMPLETION_HABIT_ID + " = NEW." + COLUMN_HABIT_ID + " " +
+                "  AND " + COLUMN_COMPLETION_USER_ID + " = NEW." + COLUMN_HABIT_USER_ID + " " +
+                "  AND " + COLUMN_COMPLETION_DAY + " = CAST(julianday(date('now', 'localtime')) - 2440587.5 AS INTEGER); " +
+                "END;");
+
+        db.execSQL("DROP TRIGGER IF EXISTS delete_completions_on_habit_delete");
+        db.execSQL("CREATE TRIGGER delete_completions_on_habit_delete " +
+                "AFTER DELETE ON " + TABLE_HABITS + " " +
+                "FOR EACH ROW " +
+                "BEGIN " +
+                "  DELETE FROM " + TABLE_HABIT_COMPLETIONS + " " +
+                "  WHERE " + COLUMN_COMPLETION_HABIT_ID + " = OLD." + COLUMN_HABIT_ID + "; " +
+                "END;");
+    }
+
+    private void createScoreAggregateTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SCORE_TOTALS + " (" +
+                COLUMN_TOTALS_USER_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_TOTALS_POINTS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_TOTALS_SCORE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_TOTALS_HABITS_COMPLETED + " INTEGER NOT NULL DEFAULT 0" +
+                ")");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SCORE_PERIODS + " (" +
+                COLUMN_PERIOD_USER_ID + " INTEGER NOT NULL, " +
+                COLUMN_PERIOD_TYPE + " INTEGER NOT NULL, " +
+                COLUMN_PERIOD_START_DAY + " INTEGER NOT NULL, " +
+                COLUMN_PERIOD_POINTS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_PERIOD_SCORE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY(" + COLUMN_PERIOD_USER_ID + ", " + COLUMN_PERIOD_TYPE + ", " + COLUMN_PERIOD_START_DAY + ")" +
+                ") WITHOUT ROWID");
+    }
+
+    /**
+     * Triggers que mantienen los totales: cada score insertado, borrado o modificado suma o resta
+     * sus puntos en el total del usuario y en su día y semana; cada hábito que cambia de
+     * completado ajusta habits_completed. Todo en la misma transacción que la escritura original.
+     * El día y la semana salen de la columna day del score, nunca de la zona horaria actual.
+     */
+    private void createScoreAggregateTriggers(SQLiteDatabase db) {
+        // Un score insertado sin día lo toma de su fecha una única vez. Ese UPDATE dispara
+        // score_totals_on_update, que lo suma a su día y semana (hasta entonces no contaba en ellos)
+        db.execSQL("DROP TRIGGER IF EXISTS score_day_on_insert");
+        db.execSQL("CREATE TRIGGER score_day_on_insert AFTER INSERT ON " + TABLE_SCORES + " FOR EACH ROW " +
+                "WHEN NEW." + COLUMN_SCORE_DAY + " IS NULL " +
+                "BEGIN " +
+                "  UPDATE " + TABLE_SCORES + " SET " + COLUMN_SCORE_DAY + " = " +
+                epochDayFromSecondsSql("NEW." + COLUMN_SCORE_DATE) + " WHERE " + COLUMN_SCORE_ID + " = NEW." + COLUMN_SCORE_ID + "; " +
+                "END;");
+        db.execSQL("DROP TRIGGER IF EXISTS score_totals_on_insert");
+        db.execSQL("CREATE TRIGGER score_totals_on_insert AFTER INSERT ON " + TABLE_SCORES + " FOR EACH ROW " +
+                "BEGIN " + scoreDeltaSql("NEW", "+") + "END;");
+        db.execSQL("DROP TRIGGER IF EXISTS score_totals_on_delete");
+        db.execSQL("CREATE TRIGGER score_totals_on_delete AFTER DELETE ON " + TABLE_SCORES + " FOR EACH ROW " +
+                "BEGIN " + scoreDeltaSql("OLD", "-") + "END;");
+        db.execSQL("DROP TRIGGER IF EXISTS score_totals_on_update");
+        db.execSQL("CREATE TRIGGER score_totals_on_update AFTER UPDATE OF " + COLUMN_SCORE_POINTS + ", " +
+                COLUMN_SCORE_USER_ID + ", " + COLUMN_SCORE_DAY + " ON " + TABLE_SCORES + " FOR EACH ROW " +
+                "BEGIN " + scoreDeltaSql("OLD", "-") + scoreDeltaSql("NEW", "+") + "END;");
+
+        db.execSQL("DROP TRIGGER IF EXISTS habit_totals_on_insert");
+        db.execSQL("CREATE TRIGGER habit_totals_on_insert AFTER INSERT ON " + TABLE_HABITS + " FOR EACH ROW " +
+                "WHEN NEW." + COLUMN_HABIT_COMPLETED + " = 1 " +
+                "BEGIN " + habitCompletedDeltaSql("NEW", "+") + "END;");
+        db.execSQL("DROP TRIGGER IF EXISTS habit_totals_on_delete");
+        db.execSQL("CREATE TRIGGER habit_totals_on_delete AFTER DELETE ON " + TABLE_HABITS + " FOR EACH ROW " +
+                "WHEN OLD." + COLUMN_HABIT_COMPLETED + " = 1 " +
+                "BEGIN " + habitCompletedDeltaSql("OLD", "-") + "END;");
+        db.execSQL("DROP TRIGGER IF EXISTS habit_totals_on_update");
+        db.execSQL("CREATE TRIGGER habit_totals_on_update AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + ", " +
+                COLUMN_HABIT_USER_ID + " ON " + TABLE_HABITS + " FOR EACH ROW " +
+                "WHEN OLD." + COLUMN_HABIT_COMPLETED + " IS NOT NEW." + COLUMN_HABIT_COMPLETED +
+                " OR OLD." + COLUMN_HABIT_USER_ID + " IS NOT NEW." + COLUMN_HABIT_USER_ID + " " +
+                "BEGIN " +
+                "  UPDATE " + TABLE_SCORE_TOTALS + " SET " + COLUMN_TOTALS_HABITS_COMPLETED + " = " +
+                COLUMN_TOTALS_HABITS_COMPLETED + " - 1 WHERE " + COLUMN_TOTALS_USER_ID + " = OLD." + COLUMN_HABIT_USER_ID +
+                " AND OLD." + COLUMN_HABIT_COMPLETED + " = 1; " +
+                "  INSERT OR IGNORE INTO " + TABLE_SCORE_TOTALS + " (" + COLUMN_TOTALS_USER_ID + ") SELECT NEW." +
+                COLUMN_HABIT_USER_ID + " WHERE NEW." + COLUMN_HABIT_USER_ID + " IS NOT NULL AND NEW." +
+                COLUMN_HABIT_COMPLETED + " = 1; " +
+                "  UPDATE " + TABLE_SCORE_TOTALS + " SET " + COLUMN_TOTALS_HABITS_COMPLETED + " = " +
+                COLUMN_TOTALS_HABITS_COMPLETED + " + 1 WHERE " + COLUMN_TOTALS_USER_ID + " = NEW." + COLUMN_HABIT_USER_ID +
+                " AND NEW." + COLUMN_HABIT_COMPLETED + " = 1; " +
+                "END;");
+    }
+
+    /**
+     * Sentencias de trigger que suman (sign "+") o restan ("-") el score row (NEW u OLD)
+     * al total del usuario y a su día y semana. Las filas de periodo vacías se borran.
+     * Un score sin día solo cuenta en el total (con day NULL ninguna fila de periodo coincide).
+     */
+    private static String scoreDeltaSql(String row, String sign) {
+        String userId = row + "." + COLUMN_SCORE_USER_ID;
+        String points = "IFNULL(" + row + "." + COLUMN_SCORE_POINTS + ", 0)";
+        String day = row + "." + COLUMN_SCORE_DAY;
+        StringBuilder sql = new StringBuilder();
+        sql.append("  INSERT OR IGNORE INTO ").append(TABLE_SCORE_TOTALS).append(" (").append(COLUMN_TOTALS_USER_ID)
+                .append(") SELECT ").append(userId).append(" WHERE ").append(userId).append(" IS NOT NULL; ");
+        sql.append("  UPDATE ").append(TABLE_SCORE_TOTALS).append(" SET ")
+                .append(COLUMN_TOTALS_POINTS).append(" = ").append(COLUMN_TOTALS_POINTS).append(' ').append(sign).append(' ').append(points).append(", ")
+                .append(COLUMN_TOTALS_SCORE_COUNT).append(" = ").append(COLUMN_TOTALS_SCORE_COUNT).append(' ').append(sign).append(" 1")
+                .append(" WHERE ").append(COLUMN_TOTALS_USER_ID).append(" = ").append(userId).append("; ");
+        int[] periods = {SCORE_PERIOD_DAY, SCORE_PERIOD_WEEK};
+        for (int period : periods) {
+            String startDay = period == SCORE_PERIOD_DAY ? day : weekStartSql(day);
+            String where = " WHERE " + COLUMN_PERIOD_USER_ID + " = " + userId + " AND " + COLUMN_PERIOD_TYPE + " = " +
+                    period + " AND " + COLUMN_PERIOD_START_DAY + " = " + startDay;
+            if ("+".equals(sign)) {
+                sql.append("  INSERT OR IGNORE INTO ").append(TABLE_SCORE_PERIODS).append(" (").append(COLUMN_PERIOD_USER_ID)
+                        .append(", ").append(COLUMN_PERIOD_TYPE).append(", ").append(COLUMN_PERIOD_START_DAY)
+                        .append(") SELECT ").append(userId).append(", ").append(period).append(", ").append(startDay)
+                        .append(" WHERE ").append(day).append(" IS NOT NULL; ");
+            }
+            sql.append("  UPDATE ").append(TABLE_SCORE_PERIODS).append(" SET ")
+                    .append(COLUMN_PERIOD_POINTS).append(" = ").append(COLUMN_PERIOD_POINTS).append(' ').append(sign).append(' ').append(points).append(", ")
+                    .append(COLUMN_PERIOD_SCORE_COUNT).append(" = ").append(COLUMN_PERIOD_SCORE_COUNT).append(' ').append(sign).append(" 1")
+                    .append(where).append("; ");
+            if ("-".equals(sign)) {
+                sql.append("  DELETE FROM ").append(TABLE_SCORE_PERIODS).append(where)
+                        .append(" AND ").append(COLUMN_PERIOD_SCORE_COUNT).append(" <= 0; ");
             }
         }
+        return sql.toString();
+    }
+
+    private static String habitCompletedDeltaSql(String row, String sign) {
+        String userId = row + "." + COLUMN_HABIT_USER_ID;
+        return "  INSERT OR IGNORE INTO " + TABLE_SCORE_TOTALS + " (" + COLUMN_TOTALS_USER_ID + ") SELECT " + userId +
+                " WHERE " + userId + " IS NOT NULL; " +
+                "  UPDATE " + TABLE_SCORE_TOTALS + " SET " + COLUMN_TOTALS_HABITS_COMPLETED + " = " +
+                COLUMN_TOTALS_HABITS_COMPLETED + " " + sign + " 1 WHERE " + COLUMN_TOTALS_USER_ID + " = " + userId + "; ";
+    }
+
+    /**
+     * Expresión SQL del lunes de la semana de una clave de día (el 1970-01-01 fue jueves)
+     */
+    private static String weekStartSql(String dayExpression) {
+        return "((" + dayExpression + ") - (((" + dayExpression + ") + 3) % 7))";
+    }
+
+    /**
+     * Expresión SQL que convierte un timestamp en segundos en la clave del día local (0 si es 0)
+     */
+    private static String epochDayFromSecondsSql(String column) {
+        return "CASE WHEN " + column + " > 0 THEN CAST(julianday(date(" + column +
+                ", 'unixepoch', 'localtime')) - 2440587.5 AS INTEGER) ELSE 0 END";
+    }
+
+    /**
+     * Índice por (usuario, día), tabla del resumen mensual y triggers que la mantienen al
+     * insertar o borrar completados. Así las consultas de historial no recorren la tabla entera.
+     */
+    private void createCompletionHistorySchema(SQLiteDatabase db) {
+        // Cubre los conteos por rango de días sin leer las filas de la tabla
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_user_day ON " + TABLE_HABIT_COMPLETIONS +
+                "(" + COLUMN_COMPLETION_USER_ID + ", " + COLUMN_COMPLETION_DAY + ", " + COLUMN_COMPLETION_HABIT_ID + ")");
+        db.execSQL(createCompletionMonthsTableSql());
+
+        db.execSQL("DROP TRIGGER IF EXISTS completion_months_on_insert");
+        db.execSQL("CREATE TRIGGER completion_months_on_insert " +
+                "AFTER INSERT ON " + TABLE_HABIT_COMPLETIONS + " " +
+                "FOR EACH ROW WHEN NEW." + COLUMN_COMPLETION_DAY + " IS NOT NULL " +
+                "BEGIN " +
+                "  INSERT OR IGNORE INTO " + TABLE_COMPLETION_MONTHS + " VALUES (NEW." + COLUMN_COMPLETION_USER_ID +
+                ", " + monthKeySql("NEW." + COLUMN_COMPLETION_DAY) + ", NEW." + COLUMN_COMPLETION_HABIT_ID + ", 0); " +
+                "  UPDATE " + TABLE_COMPLETION_MONTHS + " SET " + COLUMN_MONTH_COMPLETIONS + " = " +
+                COLUMN_MONTH_COMPLETIONS + " + 1" + monthRowSql("NEW") + "; " +
+                "END;");
+
+        db.execSQL("DROP TRIGGER IF EXISTS completion_months_on_delete");
+        db.execSQL("CREATE TRIGGER completion_months_on_delete " +
+                "AFTER DELETE ON " + TABLE_HABIT_COMPLETIONS + " " +
+                "FOR EACH ROW WHEN OLD." + COLUMN_COMPLETION_DAY + " IS NOT NULL " +
+                "BEGIN " +
+                "  UPDATE " + TABLE_COMPLETION_MONTHS + " SET " + COLUMN_MONTH_COMPLETIONS + " = " +
+                COLUMN_MONTH_COMPLETIONS + " - 1" + monthRowSql("OLD") + "; " +
+                "  DELETE FROM " + TABLE_COMPLETION_MONTHS + monthRowSql("OLD") +
+                " AND " + COLUMN_MONTH_COMPLETIONS + " <= 0; " +
+                "END;");
+    }
 
-        if (oldVersion < 3) {
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_PAGES_PER_DAY, "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_REMINDER_TIMES, "TEXT");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_DURATION_MINUTES, "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_DND_MODE, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_MUSIC_ID, "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_JOURNAL_ENABLED, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_GYM_DAYS, "TEXT");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_WATER_GOAL_GLASSES, "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_WALK_GOAL_METERS, "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_WALK_GOAL_STEPS, "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_ONE_CLICK_COMPLETE, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_ENGLISH_MODE, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_CODING_MODE, "INTEGER DEFAULT 0");
-        }
-
-        if (oldVersion < 4) {
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_ICON, "TEXT");
-        }
-
-        if (oldVersion < 5) {
-            // Migración a versión 5: Implementar esquema completo
-
-            // 1. Crear tabla USERS
-            String createUsersTable = "CREATE TABLE " + TABLE_USERS + " (" +
-                    COLUMN_USER_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_USER_EMAIL + " TEXT UNIQUE, " +
-                    COLUMN_USER_PASSWORD_HASH + " TEXT, " +
-                    COLUMN_USER_FIRST_NAME + " TEXT, " +
-                    COLUMN_USER_LAST_NAME + " TEXT, " +
-                    COLUMN_USER_PHONE + " TEXT, " +
-                    COLUMN_USER_CREATED_AT + " INTEGER, " +
-                    COLUMN_USER_IS_ACTIVE + " INTEGER DEFAULT 1" +
-                    ")";
-            db.execSQL(createUsersTable);
-
-            // 2. Crear usuario por defecto (para migrar datos existentes)
-            ContentValues defaultUser = new ContentValues();
-            defaultUser.put(COLUMN_USER_EMAIL, "default@local.com");
-            defaultUser.put(COLUMN_USER_IS_ACTIVE, 1);
-            defaultUser.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
-            long defaultUserId = db.insert(TABLE_USERS, null, defaultUser);
-
-            // 3. Actualizar tabla HABITS
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_USER_ID, "INTEGER DEFAULT " + defaultUserId);
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_IS_ACTIVE, "INTEGER DEFAULT 1");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_POINTS_PER_COMPLETION, "INTEGER DEFAULT 10");
-
-            // Sincronizar points_per_completion con points existente
-            db.execSQL("UPDATE " + TABLE_HABITS + " SET " + COLUMN_HABIT_POINTS_PER_COMPLETION + " = "
-                    + COLUMN_HABIT_POINTS);
-
-            // 4. Actualizar tabla SCORES
-            addColumnIfNotExists(db, TABLE_SCORES, COLUMN_SCORE_USER_ID, "INTEGER DEFAULT " + defaultUserId);
-            addColumnIfNotExists(db, TABLE_SCORES, COLUMN_SCORE_NOTE, "TEXT");
-        }
-
-        if (oldVersion < 6) {
-            addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_FIRST_NAME, "TEXT");
-            addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_NAME, "TEXT");
-            addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_PHONE, "TEXT");
-        }
-
-        if (oldVersion < 7) {
-
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_STREAK_COUNT, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_LAST_COMPLETED_DATE, "INTEGER DEFAULT 0");
-
-            // Crear trigger en actualización
-            db.execSQL("DROP TRIGGER IF EXISTS update_streak");
-            db.execSQL("CREATE TRIGGER update_streak AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + " ON " + TABLE_HABITS
-                    +
-                    " FOR EACH ROW WHEN NEW." + COLUMN_HABIT_COMPLETED + " = 1 " +
-                    " BEGIN " +
-                    "   UPDATE " + TABLE_HABITS + " SET " +
-                    "     " + COLUMN_HABIT_STREAK_COUNT + " = CASE " +
-                    "       WHEN (strftime('%J', 'now') - strftime('%J', datetime(" + COLUMN_HABIT_LAST_COMPLETED_DATE
-                    + ", 'unixepoch'))) >= 1.0 AND (strftime('%J', 'now') - strftime('%J', datetime("
-                    + COLUMN_HABIT_LAST_COMPLETED_DATE + ", 'unixepoch'))) < 2.0 THEN " + COLUMN_HABIT_STREAK_COUNT
-                    + " + 1 " +
-                    "       WHEN (strftime('%J', 'now') - strftime('%J', datetime(" + COLUMN_HABIT_LAST_COMPLETED_DATE
-                    + ", 'unixepoch'))) >= 2.0 THEN 1 " +
-                    "       WHEN " + COLUMN_HABIT_LAST_COMPLETED_DATE + " = 0 THEN 1 " +
-                    "       ELSE " + COLUMN_HABIT_STREAK_COUNT + " " +
-                    "     END, " +
-                    "     " + COLUMN_HABIT_LAST_COMPLETED_DATE + " = strftime('%s', 'now') " +
-                    "   WHERE " + COLUMN_HABIT_ID + " = NEW." + COLUMN_HABIT_ID + "; " +
-                    " END;");
-        }
-
-        if (oldVersion < 8) {
-            // Migración a versión 8: Agregar columnas de sincronización
-            // Estas columnas son necesarias para HabitDatabaseHelperSync
-            addColumnIfNotExists(db, TABLE_HABITS, "synced", "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_HABITS, "server_id", "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, "updated_at", "INTEGER DEFAULT 0");
-            // Actualizar valores existentes con timestamp actual
-            db.execSQL("UPDATE " + TABLE_HABITS + " SET updated_at = " + (System.currentTimeMillis() / 1000) + " WHERE updated_at = 0 OR updated_at IS NULL");
-        }
-
-        if (oldVersion < 9) {
-            // Migración a versión 9: Crear tabla de entradas del diario
-            String createDiaryTable = "CREATE TABLE IF NOT EXISTS " + TABLE_DIARY_ENTRIES + " (" +
-                    COLUMN_DIARY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_DIARY_HABIT_ID + " INTEGER NOT NULL, " +
-                    COLUMN_DIARY_USER_ID + " INTEGER, " +
-                    COLUMN_DIARY_CONTENT + " TEXT NOT NULL, " +
-                    COLUMN_DIARY_DATE + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                    COLUMN_DIARY_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                    "FOREIGN KEY(" + COLUMN_DIARY_HABIT_ID + ") REFERENCES " + TABLE_HABITS + "(" + COLUMN_HABIT_ID + "), " +
-                    "FOREIGN KEY(" + COLUMN_DIARY_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + ")" +
-                    ")";
-            db.execSQL(createDiaryTable);
-        }
-
-        if (oldVersion < 10) {
-            // Migración a versión 10: Agregar campos de racha diaria a usuarios
-            addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_STREAK_DATE, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_ACTIVITY_DATE, "INTEGER DEFAULT 0");
-        }
-
-        if (oldVersion < 12) {
-            // Migración a versión 12: Crear tabla de amigos
-            String createFriendsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_FRIENDS + " (" +
-                    COLUMN_FRIEND_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_FRIEND_USER_ID + " INTEGER NOT NULL, " +
-                    COLUMN_FRIEND_FRIEND_USER_ID + " INTEGER, " +
-                    COLUMN_FRIEND_EMAIL + " TEXT NOT NULL, " +
-                    COLUMN_FRIEND_NAME + " TEXT, " +
-                    COLUMN_FRIEND_TOTAL_HABITS + " INTEGER DEFAULT 0, " +
-                    COLUMN_FRIEND_TOTAL_POINTS + " INTEGER DEFAULT 0, " +
-                    COLUMN_FRIEND_CURRENT_STREAK + " INTEGER DEFAULT 0, " +
-                    COLUMN_FRIEND_ADDED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                    "FOREIGN KEY(" + COLUMN_FRIEND_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + "), " +
-                    "UNIQUE(" + COLUMN_FRIEND_USER_ID + ", " + COLUMN_FRIEND_EMAIL + ")" +
-                    ")";
-            db.execSQL(createFriendsTable);
-        }
-        if (oldVersion < 11) {
-            // Migración a versión 11: Agregar columna title a diary_entries
-            addColumnIfNotExists(db, TABLE_DIARY_ENTRIES, COLUMN_DIARY_TITLE, "TEXT NOT NULL DEFAULT 'Nota'");
-        }
-        
-        // Asegurar que las columnas de racha existan (por si acaso se saltaron migraciones)
-        // Esto es seguro porque addColumnIfNotExists verifica si la columna ya existe
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_STREAK_DATE, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_ACTIVITY_DATE, "INTEGER DEFAULT 0");
+    private static String createCompletionMonthsTableSql() {
+        return "CREATE TABLE IF NOT EXISTS " + TABLE_COMPLETION_MONTHS + " (" +
+                COLUMN_MONTH_USER_ID + " INTEGER NOT NULL, " +
+                COLUMN_MONTH_KEY + " INTEGER NOT NULL, " +
+                COLUMN_MONTH_HABIT_ID + " INTEGER NOT NULL, " +
+                COLUMN_MONTH_COMPLETIONS + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY(" + COLUMN_MONTH_USER_ID + ", " + COLUMN_MONTH_KEY + ", " + COLUMN_MONTH_HABIT_ID + ")" +
+                ") WITHOUT ROWID";
+    }
 
-        if (oldVersion < 14) {
-            // Migración a versión 14: Crear tabla de completados de hábitos
-            String createCompletionsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_HABIT_COMPLETIONS + " (" +
-                    COLUMN_COMPLETION_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_COMPLETION_HABIT_ID + " INTEGER NOT NULL, " +
-                    COLUMN_COMPLETION_USER_ID + " INTEGER NOT NULL, " +
-                    COLUMN_COMPLETION_DATE + " TEXT NOT NULL, " +
-                    COLUMN_COMPLETION_LAT + " REAL DEFAULT 0.0, " +
-                    COLUMN_COMPLETION_LNG + " REAL DEFAULT 0.0, " +
-                    COLUMN_COMPLETION_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                    "FOREIGN KEY(" + COLUMN_COMPLETION_HABIT_ID + ") REFERENCES " + TABLE_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE, " +
-                    "FOREIGN KEY(" + COLUMN_COMPLETION_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + "), " +
-                    "UNIQUE(" + COLUMN_COMPLETION_HABIT_ID + ", " + COLUMN_COMPLETION_USER_ID + ", " + COLUMN_COMPLETION_DATE + ")" +
-                    ")";
-            db.execSQL(createCompletionsTable);
-
-            // Crear índices
-            db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_user_date ON " + TABLE_HABIT_COMPLETIONS +
-                    "(" + COLUMN_COMPLETION_USER_ID + ", " + COLUMN_COMPLETION_DATE + ")");
-            db.execSQL("CREATE INDEX IF NOT EXISTS idx_completions_habit ON " + TABLE_HABIT_COMPLETIONS +
-                    "(" + COLUMN_COMPLETION_HABIT_ID + ")");
-
-            // Crear triggers
-            db.execSQL("DROP TRIGGER IF EXISTS delete_completion_on_uncomplete");
-            db.execSQL("CREATE TRIGGER delete_completion_on_uncomplete " +
-                    "AFTER UPDATE OF " + COLUMN_HABIT_COMPLETED + " ON " + TABLE_HABITS + " " +
-                    "FOR EACH ROW " +
-                    "WHEN NEW." + COLUMN_HABIT_COMPLETED + " = 0 AND OLD." + COLUMN_HABIT_COMPLETED + " = 1 " +
-                    "BEGIN " +
-                    "  DELETE FROM " + TABLE_HABIT_COMPLETIONS + " " +
-                    "  WHERE " + COLUMN_COMPLETION_HABIT_ID + " = NEW." + COLUMN_HABIT_ID + " " +
-                    "  AND " + COLUMN_COMPLETION_USER_ID + " = NEW." + COLUMN_HABIT_USER_ID + " " +
-                    "  AND " + COLUMN_COMPLETION_DATE + " = date('now'); " +
-                    "END;");
-
-            db.execSQL("DROP TRIGGER IF EXISTS delete_completions_on_habit_delete");
-            db.execSQL("CREATE TRIGGER delete_completions_on_habit_delete " +
-                    "AFTER DELETE ON " + TABLE_HABITS + " " +
-                    "FOR EACH ROW " +
-                    "BEGIN " +
-                    "  DELETE FROM " + TABLE_HABIT_COMPLETIONS + " " +
-                    "  WHERE " + COLUMN_COMPLETION_HABIT_ID + " = OLD." + COLUMN_HABIT_ID + "; " +
-                    "END;");
-        }
+    /**
+     * Condición WHERE de la fila del resumen que corresponde al completado NEW u OLD de un trigger
+     */
+    private static String monthRowSql(String row) {
+        return " WHERE " + COLUMN_MONTH_USER_ID + " = " + row + "." + COLUMN_COMPLETION_USER_ID +
+                " AND " + COLUMN_MONTH_KEY + " = " + monthKeySql(row + "." + COLUMN_COMPLETION_DAY) +
+                " AND " + COLUMN_MONTH_HABIT_ID + " = " + row + "." + COLUMN_COMPLETION_HABIT_ID;
+    }
+
+    /**
+     * Expresión SQL que convierte una clave de día (días desde 1970-01-01) en el mes yyyyMM
+     */
+    private static String monthKeySql(String dayExpression) {
+        return "CAST(strftime('%Y%m', " + dayExpression + " * 86400, 'unixepoch') AS INTEGER)";
+    }
+
+    /**
+     * Geohash de una ubicación, o null si no hay GPS (0, 0)
+     */
+    protected static String completionGeoHash(double lat, double lng) {
+        return lat != 0.0 || lng != 0.0 ? GeoHash.encode(lat, lng) : null;
     }
 
     protected void addColumnIfNotExists(SQLiteDatabase db, String table, String column, String type) {
@@ -566,7 +1233,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
         values.put(COLUMN_USER_IS_ACTIVE, 1);
         long id = db.insert(TABLE_USERS, null, values);
-        db.close();
         return id;
     }
 
@@ -596,125 +1262,9 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             user.setActive(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_IS_ACTIVE)) == 1);
         }
         cursor.close();
-        db.close();
         return user;
     }
 
-    /**
-     * Carga los campos adicionales de un hábito desde el cursor
-     */
-    private void loadHabitExtraFields(Cursor cursor, Habit habit) {
-        try {
-            // CRÍTICO: Cargar userId desde la BD
-            int userIdIndex = cursor.getColumnIndex(COLUMN_HABIT_USER_ID);
-            if (userIdIndex >= 0 && !cursor.isNull(userIdIndex)) {
-                long userId = cursor.getLong(userIdIndex);
-                habit.setUserId(userId);
-                android.util.Log.d("HabitDatabaseHelper", "✅ userId cargado desde BD: " + userId + " para hábito: " + habit.getTitle());
-            } else {
-                android.util.Log.w("HabitDatabaseHelper", "⚠️ No se encontró columna user_id en cursor para hábito: " + habit.getTitle());
-            }
-            
-            // Cargar points
-            int pointsIndex = cursor.getColumnIndex(COLUMN_HABIT_POINTS);
-            if (pointsIndex >= 0 && !cursor.isNull(pointsIndex)) {
-                habit.setPoints(cursor.getInt(pointsIndex));
-            }
-
-            int targetValueIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_VALUE);
-            int targetUnitIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_UNIT);
-            if (targetValueIndex >= 0 && !cursor.isNull(targetValueIndex)) {
-                habit.setTargetValue(cursor.getDouble(targetValueIndex));
-            }
-            if (targetUnitIndex >= 0 && !cursor.isNull(targetUnitIndex)) {
-                habit.setTargetUnit(cursor.getString(targetUnitIndex));
-            }
-
-            // Nuevos campos
-            int pagesPerDayIndex = cursor.getColumnIndex(COLUMN_HABIT_PAGES_PER_DAY);
-            if (pagesPerDayIndex >= 0 && !cursor.isNull(pagesPerDayIndex)) {
-                habit.setPagesPerDay(cursor.getInt(pagesPerDayIndex));
-            }
-
-            int reminderTimesIndex = cursor.getColumnIndex(COLUMN_HABIT_REMINDER_TIMES);
-            if (reminderTimesIndex >= 0 && !cursor.isNull(reminderTimesIndex)) {
-                habit.setReminderTimes(cursor.getString(reminderTimesIndex));
-            }
-
-            int durationMinutesIndex = cursor.getColumnIndex(COLUMN_HABIT_DURATION_MINUTES);
-            if (durationMinutesIndex >= 0 && !cursor.isNull(durationMinutesIndex)) {
-                habit.setDurationMinutes(cursor.getInt(durationMinutesIndex));
-            }
-
-            int dndModeIndex = cursor.getColumnIndex(COLUMN_HABIT_DND_MODE);
-            if (dndModeIndex >= 0 && !cursor.isNull(dndModeIndex)) {
-                habit.setDndMode(cursor.getInt(dndModeIndex) == 1);
-            }
-
-            int musicIdIndex = cursor.getColumnIndex(COLUMN_HABIT_MUSIC_ID);
-            if (musicIdIndex >= 0 && !cursor.isNull(musicIdIndex)) {
-                habit.setMusicId(cursor.getInt(musicIdIndex));
-            }
-
-            int journalEnabledIndex = cursor.getColumnIndex(COLUMN_HABIT_JOURNAL_ENABLED);
-            if (journalEnabledIndex >= 0 && !cursor.isNull(journalEnabledIndex)) {
-                habit.setJournalEnabled(cursor.getInt(journalEnabledIndex) == 1);
-            }
-
-            int gymDaysIndex = cursor.getColumnIndex(COLUMN_HABIT_GYM_DAYS);
-            if (gymDaysIndex >= 0 && !cursor.isNull(gymDaysIndex)) {
-                habit.setGymDays(cursor.getString(gymDaysIndex));
-            }
-
-            int waterGoalGlassesIndex = cursor.getColumnIndex(COLUMN_HABIT_WATER_GOAL_GLASSES);
-            if (waterGoalGlassesIndex >= 0 && !cursor.isNull(waterGoalGlassesIndex)) {
-                habit.setWaterGoalGlasses(cursor.getInt(waterGoalGlassesIndex));
-            }
-
-            int walkGoalMetersIndex = cursor.getColumnIndex(COLUMN_HABIT_WALK_GOAL_METERS);
-            if (walkGoalMetersIndex >= 0 && !cursor.isNull(walkGoalMetersIndex)) {
-                habit.setWalkGoalMeters(cursor.getInt(walkGoalMetersIndex));
-            }
-
-            int walkGoalStepsIndex = cursor.getColumnIndex(COLUMN_HABIT_WALK_GOAL_STEPS);
-            if (walkGoalStepsIndex >= 0 && !cursor.isNull(walkGoalStepsIndex)) {
-                habit.setWalkGoalSteps(cursor.getInt(walkGoalStepsIndex));
-            }
-
-            int oneClickCompleteIndex = cursor.getColumnIndex(COLUMN_HABIT_ONE_CLICK_COMPLETE);
-            if (oneClickCompleteIndex >= 0 && !cursor.isNull(oneClickCompleteIndex)) {
-                habit.setOneClickComplete(cursor.getInt(oneClickCompleteIndex) == 1);
-            }
-
-            int englishModeIndex = cursor.getColumnIndex(COLUMN_HABIT_ENGLISH_MODE);
-            if (englishModeIndex >= 0 && !cursor.isNull(englishModeIndex)) {
-                habit.setEnglishMode(cursor.getInt(englishModeIndex) == 1);
-            }
-
-            int codingModeIndex = cursor.getColumnIndex(COLUMN_HABIT_CODING_MODE);
-            if (codingModeIndex >= 0 && !cursor.isNull(codingModeIndex)) {
-                habit.setCodingMode(cursor.getInt(codingModeIndex) == 1);
-            }
-
-            int habitIconIndex = cursor.getColumnIndex(COLUMN_HABIT_ICON);
-            if (habitIconIndex >= 0 && !cursor.isNull(habitIconIndex)) {
-                habit.setHabitIcon(cursor.getString(habitIconIndex));
-            }
-
-            int streakIndex = cursor.getColumnIndex(COLUMN_HABIT_STREAK_COUNT);
-            if (streakIndex >= 0 && !cursor.isNull(streakIndex)) {
-                habit.setStreakCount(cursor.getInt(streakIndex));
-            }
-
-            int lastCompletedIndex = cursor.getColumnIndex(COLUMN_HABIT_LAST_COMPLETED_DATE);
-            if (lastCompletedIndex >= 0 && !cursor.isNull(lastCompletedIndex)) {
-                habit.setLastCompletedDate(cursor.getLong(lastCompletedIndex));
-            }
-        } catch (Exception e) {
-            // Si las columnas no existen, ignorar el error
-        }
-    }
-
     // ========== CRUD HÁBITOS ==========
 
     public long insertHabit(String title, String goal, String category, String type, int points) {
@@ -739,29 +1289,11 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
 
     public List<Habit> getAllHabits() {
         long userId = getCurrentUserId();
-        List<Habit> habits = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         // Filtrar por user_id
         Cursor cursor = db.query(TABLE_HABITS, null, COLUMN_HABIT_USER_ID + "=?",
                 new String[] { String.valueOf(userId) }, null, null, COLUMN_HABIT_CREATED_AT + " DESC");
-
-        if (cursor.moveToFirst()) {
-            do {
-                Habit habit = new Habit(
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_GOAL)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_CATEGORY)),
-                        Habit.HabitType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE))));
-                habit.setCompleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1);
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID));
-                habit.setId(id);
-                loadHabitExtraFields(cursor, habit);
-                habits.add(habit);
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        db.close();
-        return habits;
+        return HabitRowMapper.mapAll(cursor);
     }
 
     public long insertHabitFull(String title, String goal, String category, String type, int points,
@@ -823,7 +1355,9 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             values.put(COLUMN_HABIT_ICON, habitIcon);
 
         long id = db.insert(TABLE_HABITS, null, values);
-        db.close();
+        if (id != -1) {
+            notifyHabitsChanged(id);
+        }
         return id;
     }
 
@@ -837,18 +1371,10 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         
         // Verificar si ya existe un score para este hábito hoy (evitar duplicados)
-        long todayTimestamp = getTodayTimestamp();
-        Cursor cursor = db.query(TABLE_SCORES, new String[]{COLUMN_SCORE_ID},
-                COLUMN_SCORE_USER_ID + "=? AND " + COLUMN_SCORE_HABIT_TITLE + "=? AND " + COLUMN_SCORE_DATE + ">=?",
-                new String[]{String.valueOf(userId), habitTitle, String.valueOf(todayTimestamp)},
-                null, null, null);
-        
-        boolean scoreExistsToday = cursor.getCount() > 0;
-        cursor.close();
+        boolean scoreExistsToday = scoreExistsSince(db, userId, habitTitle, getTodayTimestamp());
         
         if (scoreExistsToday) {
             android.util.Log.d("HabitDatabaseHelper", "ℹ️ Score para hábito '" + habitTitle + "' ya existe hoy. No se guarda duplicado.");
-            db.close();
             return -1;
         }
         
@@ -856,9 +1382,10 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_SCORE_USER_ID, userId); // Asignar al usuario actual
         values.put(COLUMN_SCORE_HABIT_TITLE, habitTitle);
         values.put(COLUMN_SCORE_POINTS, points);
-        values.put(COLUMN_SCORE_DATE, System.currentTimeMillis() / 1000); // Fecha actual
+        long now = System.currentTimeMillis();
+        values.put(COLUMN_SCORE_DATE, now / 1000); // Fecha actual
+        values.put(COLUMN_SCORE_DAY, DayClock.dayOf(now));
         long id = db.insert(TABLE_SCORES, null, values);
-        db.close();
         
         if (id > 0) {
             android.util.Log.d("HabitDatabaseHelper", "✅ Score guardado: " + points + " puntos para hábito '" + habitTitle + "' (usuario " + userId + ", scoreId: " + id + ")");
@@ -869,20 +1396,51 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         return id;
     }
 
+    /**
+     * Puntos totales del usuario actual, leídos del total que mantienen los triggers (O(1))
+     */
     public int getTotalScore() {
         long userId = getCurrentUserId();
         SQLiteDatabase db = this.getReadableDatabase();
-        // Filtrar suma por usuario
-        Cursor cursor = db.rawQuery("SELECT SUM(" + COLUMN_SCORE_POINTS + ") as total FROM " + TABLE_SCORES + " WHERE "
-                + COLUMN_SCORE_USER_ID + "=?", new String[] { String.valueOf(userId) });
+        SQLiteStatement statement = statementCache.acquire(db, SQL_TOTAL_POINTS);
+        synchronized (statement) {
+            statement.bindLong(1, userId);
+            try {
+                return (int) statement.simpleQueryForLong();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
 
-        int total = 0;
-        if (cursor.moveToFirst()) {
-            total = cursor.getInt(cursor.getColumnIndexOrThrow("total"));
+    /**
+     * Puntos de un usuario en un día (LocalDate.toEpochDay())
+     */
+    public int getPointsForDay(long userId, long day) {
+        return getPeriodPoints(userId, SCORE_PERIOD_DAY, day);
+    }
+
+    /**
+     * Puntos de un usuario en la semana (de lunes a domingo) que contiene el día indicado
+     */
+    public int getPointsForWeek(long userId, long day) {
+        long monday = java.time.LocalDate.ofEpochDay(day).with(java.time.DayOfWeek.MONDAY).toEpochDay();
+        return getPeriodPoints(userId, SCORE_PERIOD_WEEK, monday);
+    }
+
+    private int getPeriodPoints(long userId, int period, long startDay) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        SQLiteStatement statement = statementCache.acquire(db, SQL_PERIOD_POINTS);
+        synchronized (statement) {
+            statement.bindLong(1, userId);
+            statement.bindLong(2, period);
+            statement.bindLong(3, startDay);
+            try {
+                return (int) statement.simpleQueryForLong();
+            } finally {
+                statement.clearBindings();
+            }
         }
-        cursor.close();
-        db.close();
-        return total;
     }
 
     public List<ScoreEntry> getAllScores() {
@@ -904,43 +1462,119 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return scores;
     }
 
-    public long getHabitIdByTitle(String title) {
+    /**
+     * Página de scores del usuario actual con id mayor que afterId, en orden de id.
+     * Paginar por id (y no con OFFSET) mantiene constante el coste de cada página.
+     */
+    public List<ScoreEntry> getScoresPage(long afterId, int limit) {
+        long userId = getCurrentUserId();
+        List<ScoreEntry> scores = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_HABITS, new String[] { COLUMN_HABIT_ID },
-                COLUMN_HABIT_TITLE + "=?", new String[] { title }, null, null, null);
+        Cursor cursor = db.query(TABLE_SCORES, null, COLUMN_SCORE_USER_ID + "=? AND " + COLUMN_SCORE_ID + ">?",
+                new String[] { String.valueOf(userId), String.valueOf(afterId) }, null, null,
+                COLUMN_SCORE_ID + " ASC", String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                scores.add(new ScoreEntry(
+                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SCORE_ID)),
+                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SCORE_HABIT_TITLE)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_SCORE_POINTS)),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SCORE_DATE))));
+            }
+        } finally {
+            cursor.close();
+        }
+        return scores;
+    }
 
-        long id = -1;
-        if (cursor.moveToFirst()) {
-            id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID));
+    /**
+     * Inserta un score con su fecha original (restauración de copias de seguridad).
+     * Si el usuario ya tiene un score de ese hábito con la misma fecha no se duplica.
+     * @param date Fecha en segundos, como en la tabla
+     * @return id del score, o -1 si ya existía o no hay usuario
+     */
+    public long restoreScore(String habitTitle, int points, long date) {
+        long userId = getCurrentUserId();
+        if (userId <= 0 || habitTitle == null) {
+            return -1;
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement statement = statementCache.acquire(db, SQL_SCORE_EXISTS_AT);
+        synchronized (statement) {
+            statement.bindLong(1, userId);
+            statement.bindString(2, habitTitle);
+            statement.bindLong(3, date);
+            try {
+                if (statement.simpleQueryForLong() == 1) {
+                    return -1;
+                }
+            } finally {
+                statement.clearBindings();
+            }
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SCORE_USER_ID, userId);
+        values.put(COLUMN_SCORE_HABIT_TITLE, habitTitle);
+        values.put(COLUMN_SCORE_POINTS, points);
+        values.put(COLUMN_SCORE_DATE, date);
+        values.put(COLUMN_SCORE_DAY, DayClock.dayOf(date * 1000));
+        return db.insert(TABLE_SCORES, null, values);
+    }
+
+    /**
+     * Ejecuta varias escrituras en una sola transacción (una única sincronización a disco).
+     * Los avisos de cambio de hábitos se agrupan y se envían una vez, tras confirmar.
+     * Puede anidarse; solo la transacción externa envía el aviso.
+     */
+    public void runInTransaction(Runnable writes) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        boolean outermost = batchPendingNotify.get() == null;
+        if (outermost) {
+            batchPendingNotify.set(new boolean[1]);
+        }
+        boolean[] pending = batchPendingNotify.get();
+        boolean committed = false;
+        try {
+            db.beginTransaction();
+            try {
+                writes.run();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = true;
+        } finally {
+            if (outermost) {
+                batchPendingNotify.remove();
+                // Si la transacción se revirtió no hay nada que avisar
+                if (committed && pending[0]) {
+                    notifyHabitsChanged(ALL_HABITS);
+                }
+            }
+        }
+    }
+
+    public long getHabitIdByTitle(String title) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        SQLiteStatement statement = statementCache.acquire(db, SQL_HABIT_ID_BY_TITLE);
+        synchronized (statement) {
+            statement.bindString(1, title);
+            try {
+                return statement.simpleQueryForLong();
+            } finally {
+                statement.clearBindings();
+            }
         }
-        cursor.close();
-        db.close();
-        return id;
     }
 
     public Habit getHabitById(long id) {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = db.query(TABLE_HABITS, null, COLUMN_HABIT_ID + "=?",
                 new String[] { String.valueOf(id) }, null, null, null);
-
-        Habit habit = null;
-        if (cursor.moveToFirst()) {
-            habit = new Habit(
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_GOAL)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_CATEGORY)),
-                    Habit.HabitType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE))));
-            habit.setId(id);
-            habit.setCompleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1);
-            loadHabitExtraFields(cursor, habit);
-        }
-        cursor.close();
-        db.close();
-        return habit;
+        return HabitRowMapper.mapFirst(cursor);
     }
 
     public boolean updateHabit(long id, String title, String goal, String category, String type, int points) {
@@ -1002,7 +1636,9 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             values.put(COLUMN_HABIT_ICON, habitIcon);
 
         int rowsAffected = db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(id) });
-        db.close();
+        if (rowsAffected > 0) {
+            notifyHabitsChanged(id);
+        }
         return rowsAffected > 0;
     }
 
@@ -1021,10 +1657,22 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         }
         cursor.close();
         
-        int rowsAffected = db.delete(TABLE_HABITS, COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(id) });
-        db.close();
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            rowsAffected = db.delete(TABLE_HABITS, COLUMN_HABIT_ID + "=?", new String[] { String.valueOf(id) });
+            if (rowsAffected > 0 && userId > 0) {
+                // El trigger borró los completados del hábito: la racha puede cambiar en cualquier día.
+                // Se reconstruye en la misma transacción para que nunca quede contando completados borrados
+                rebuildStreak(db, userId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         
         if (rowsAffected > 0) {
+            notifyHabitsChanged(id);
             android.util.Log.d("HabitDatabaseHelper", "✅ Hábito eliminado localmente: '" + habitTitle + "' (id: " + id + ", userId: " + userId + ")");
         } else {
             android.util.Log.w("HabitDatabaseHelper", "⚠️ No se pudo eliminar hábito (id: " + id + "). Puede que no exista.");
@@ -1044,58 +1692,51 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         
         // Verificar el estado actual del hábito antes de actualizar
         // IMPORTANTE: Filtrar por userId para evitar problemas al cambiar de cuenta
-        Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_COMPLETED, COLUMN_HABIT_USER_ID, COLUMN_HABIT_ID},
-                COLUMN_HABIT_TITLE + "=? AND " + COLUMN_HABIT_USER_ID + "=?", 
-                new String[]{title, String.valueOf(currentUserId)}, null, null, null);
-        
-        boolean wasAlreadyCompleted = false;
-        long userId = 0;
-        long habitId = 0;
+        long currentCompleted;
+        SQLiteStatement lookup = statementCache.acquire(db, SQL_HABIT_COMPLETED_BY_TITLE_USER);
+        synchronized (lookup) {
+            lookup.bindString(1, title);
+            lookup.bindLong(2, currentUserId);
+            try {
+                currentCompleted = lookup.simpleQueryForLong();
+            } finally {
+                lookup.clearBindings();
+            }
+        }
         
-        if (cursor.moveToFirst()) {
-            wasAlreadyCompleted = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1;
-            userId = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_USER_ID));
-            habitId = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID));
-        } else {
+        if (currentCompleted < 0) {
             // Si no se encontró el hábito, puede ser que pertenezca a otro usuario
             // o que no exista. En este caso, no hacemos nada.
             android.util.Log.w("HabitDatabaseHelper", "⚠️ Hábito '" + title + "' no encontrado para usuario " + currentUserId);
-            cursor.close();
-            db.close();
             return;
         }
-        cursor.close();
+        boolean wasAlreadyCompleted = currentCompleted == 1;
         
         // Actualizar el estado del hábito (solo para el usuario actual)
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_HABIT_COMPLETED, completed ? 1 : 0);
-        int rowsUpdated = db.update(TABLE_HABITS, values, 
-                COLUMN_HABIT_TITLE + "=? AND " + COLUMN_HABIT_USER_ID + "=?", 
-                new String[] { title, String.valueOf(currentUserId) });
-        db.close();
+        int rowsUpdated;
+        SQLiteStatement update = statementCache.acquire(db, SQL_UPDATE_HABIT_COMPLETED);
+        synchronized (update) {
+            update.bindLong(1, completed ? 1 : 0);
+            update.bindString(2, title);
+            update.bindLong(3, currentUserId);
+            try {
+                rowsUpdated = update.executeUpdateDelete();
+            } finally {
+                update.clearBindings();
+            }
+        }
         
         if (rowsUpdated == 0) {
             android.util.Log.w("HabitDatabaseHelper", "⚠️ No se pudo actualizar hábito '" + title + "' para usuario " + currentUserId);
             return;
         }
+        // La actualización es por título, que puede repetirse: se avisa como cambio general
+        notifyHabitsChanged(ALL_HABITS);
         
-        // CRÍTICO: Si se completó un hábito Y no estaba ya completado antes, incrementar contador diario para la racha
-        // IMPORTANTE: Incrementamos el contador cuando se marca como completado, independientemente de si ya existe un score
-        // El score se guarda después, y addScore() previene duplicados. Esto asegura que el contador se incremente correctamente.
-        if (completed && !wasAlreadyCompleted) {
-            // Usar el userId del hábito o el usuario actual
-            if (userId <= 0) {
-                userId = currentUserId;
-            }
-            
-            if (userId > 0 && userId == currentUserId) {
-                android.util.Log.d("HabitDatabaseHelper", "✅ Hábito '" + title + "' completado (nuevo). Incrementando contador diario para usuario " + userId);
-                incrementDailyHabitCompleted(userId);
-            } else {
-                android.util.Log.e("HabitDatabaseHelper", "⚠️ No se pudo obtener userId válido para incrementar contador diario. Hábito: " + title + ", userId: " + userId + ", currentUserId: " + currentUserId);
-            }
-        } else if (completed && wasAlreadyCompleted) {
-            android.util.Log.d("HabitDatabaseHelper", "ℹ️ Hábito '" + title + "' ya estaba completado. No se incrementa el contador (evita duplicados).");
+        // La racha cuenta los completados guardados con saveHabitCompletion. Al desmarcar, el trigger
+        // delete_completion_on_uncomplete borra el de hoy, así que hay que volver a contar el día.
+        if (!completed && wasAlreadyCompleted) {
+            refreshStreakDay(db, currentUserId, DayClock.today());
         }
     }
     
@@ -1103,30 +1744,20 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
      * Verifica si ya existe un score para un hábito hoy
      */
     private boolean checkScoreExistsToday(long habitId, String habitTitle, long userId) {
-        long todayTimestamp = getTodayTimestamp();
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_SCORES, new String[]{COLUMN_SCORE_ID},
-                COLUMN_SCORE_USER_ID + "=? AND " + COLUMN_SCORE_HABIT_TITLE + "=? AND " + COLUMN_SCORE_DATE + ">=?",
-                new String[]{String.valueOf(userId), habitTitle, String.valueOf(todayTimestamp)},
-                null, null, null);
-        boolean exists = cursor.getCount() > 0;
-        cursor.close();
-        db.close();
-        return exists;
+        return scoreExistsSince(this.getReadableDatabase(), userId, habitTitle, getTodayTimestamp());
     }
 
     public int getHabitPoints(String title) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_HABITS, new String[] { COLUMN_HABIT_POINTS },
-                COLUMN_HABIT_TITLE + "=?", new String[] { title }, null, null, null);
-
-        int points = 10; // default
-        if (cursor.moveToFirst()) {
-            points = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_POINTS));
+        SQLiteStatement statement = statementCache.acquire(db, SQL_HABIT_POINTS_BY_TITLE);
+        synchronized (statement) {
+            statement.bindString(1, title); // 10 puntos por defecto si no existe
+            try {
+                return (int) statement.simpleQueryForLong();
+            } finally {
+                statement.clearBindings();
+            }
         }
-        cursor.close();
-        db.close();
-        return points;
     }
 
     public static class ScoreEntry {
@@ -1183,31 +1814,14 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         
         SQLiteDatabase db = this.getWritableDatabase();
         try {
-            // CRÍTICO: NO eliminar hábitos con serverId válido aunque tengan userId: 0
-            // Estos hábitos se corregirán después en upsertHabitFromServer
-            // Solo eliminar hábitos que:
-            // 1. No tienen serverId Y (userId != currentUserId OR userId IS NULL OR userId = 0)
-            // 2. Tienen serverId Y userId != currentUserId Y userId > 0 (hábitos de otros usuarios con serverId)
-            
-            // Primero, verificar si existe la columna server_id (para compatibilidad con versiones antiguas)
-            boolean hasServerIdColumn = false;
+            db.beginTransaction();
             try {
-                android.database.Cursor cursor = db.rawQuery("PRAGMA table_info(" + TABLE_HABITS + ")", null);
-                if (cursor != null) {
-                    while (cursor.moveToNext()) {
-                        String columnName = cursor.getString(cursor.getColumnIndexOrThrow("name"));
-                        if ("server_id".equals(columnName)) {
-                            hasServerIdColumn = true;
-                            break;
-                        }
-                    }
-                    cursor.close();
-                }
-            } catch (Exception e) {
-                android.util.Log.w("HabitDatabaseHelper", "No se pudo verificar columna server_id, asumiendo que no existe", e);
-            }
+                // CRÍTICO: NO eliminar hábitos con serverId válido aunque tengan userId: 0
+                // Estos hábitos se corregirán después en upsertHabitFromServer
+                // Solo eliminar hábitos que:
+                // 1. No tienen serverId Y (userId != currentUserId OR userId IS NULL OR userId = 0)
+                // 2. Tienen serverId Y userId != currentUserId Y userId > 0 (hábitos de otros usuarios con serverId)
             
-            if (hasServerIdColumn) {
                 // Eliminar hábitos que NO tienen serverId Y no pertenecen al usuario actual
                 // O hábitos que tienen serverId Y pertenecen a otro usuario (userId > 0 y != currentUserId)
                 String deleteQuery = "DELETE FROM " + TABLE_HABITS + " WHERE " +
@@ -1217,79 +1831,84 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 db.execSQL(deleteQuery, new String[]{String.valueOf(currentUserId), String.valueOf(currentUserId)});
                 android.util.Log.d("HabitDatabaseHelper", "Eliminados hábitos que no pertenecen al usuario " + currentUserId + 
                     " (preservando hábitos con serverId válido aunque tengan userId: 0)");
-            } else {
-                // Si no existe la columna server_id, usar la lógica antigua
-                int deletedCount = db.delete(TABLE_HABITS, 
-                        COLUMN_HABIT_USER_ID + "!=? OR " + COLUMN_HABIT_USER_ID + " IS NULL OR " + COLUMN_HABIT_USER_ID + "=0", 
-                        new String[] { String.valueOf(currentUserId) });
-                android.util.Log.d("HabitDatabaseHelper", "Eliminados " + deletedCount + " hábitos que no pertenecen al usuario " + currentUserId);
-            }
             
-            // También eliminar scores que no pertenecen al usuario actual
-            int deletedScores = db.delete(TABLE_SCORES, 
-                    COLUMN_SCORE_USER_ID + "!=? OR " + COLUMN_SCORE_USER_ID + " IS NULL OR " + COLUMN_SCORE_USER_ID + "=0", 
-                    new String[] { String.valueOf(currentUserId) });
-            android.util.Log.d("HabitDatabaseHelper", "Eliminados " + deletedScores + " scores que no pertenecen al usuario " + currentUserId);
+                // También eliminar scores que no pertenecen al usuario actual
+                int deletedScores = db.delete(TABLE_SCORES, 
+                        COLUMN_SCORE_USER_ID + "!=? OR " + COLUMN_SCORE_USER_ID + " IS NULL OR " + COLUMN_SCORE_USER_ID + "=0", 
+                        new String[] { String.valueOf(currentUserId) });
+                android.util.Log.d("HabitDatabaseHelper", "Eliminados " + deletedScores + " scores que no pertenecen al usuario " + currentUserId);
             
-            // También eliminar entradas de diario que no pertenecen al usuario actual
-            int deletedDiaryEntries = db.delete(TABLE_DIARY_ENTRIES,
-                    COLUMN_DIARY_USER_ID + "!=? OR " + COLUMN_DIARY_USER_ID + " IS NULL OR " + COLUMN_DIARY_USER_ID + "=0",
-                    new String[] { String.valueOf(currentUserId) });
-            android.util.Log.d("HabitDatabaseHelper", "Eliminadas " + deletedDiaryEntries + " entradas de diario que no pertenecen al usuario " + currentUserId);
+                // También eliminar entradas de diario que no pertenecen al usuario actual
+                int deletedDiaryEntries = db.delete(TABLE_DIARY_ENTRIES,
+                        COLUMN_DIARY_USER_ID + "!=? OR " + COLUMN_DIARY_USER_ID + " IS NULL OR " + COLUMN_DIARY_USER_ID + "=0",
+                        new String[] { String.valueOf(currentUserId) });
+                android.util.Log.d("HabitDatabaseHelper", "Eliminadas " + deletedDiaryEntries + " entradas de diario que no pertenecen al usuario " + currentUserId);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         } catch (Exception e) {
             android.util.Log.e("HabitDatabaseHelper", "Error al eliminar hábitos de otros usuarios", e);
-        } finally {
-            db.close();
+            return;
         }
+        // Solo tras confirmar: si se revierte, la caché y los observadores no deben ver el borrado
+        notifyHabitsChanged(ALL_HABITS);
+        // Si alguno de esos usuarios vuelve a entrar, sus hábitos ya no están: descarga completa
+        new com.tuempresa.proyecto_01_11_25.utils.SessionManager(context).clearOtherUsersSyncWatermarks();
     }
 
     public boolean deleteUser(long userId) {
         SQLiteDatabase db = this.getWritableDatabase();
+        int rowsAffected;
         try {
             db.beginTransaction();
+            try {
+                // Eliminar todos los amigos del usuario (relaciones donde el usuario es el propietario)
+                db.delete(TABLE_FRIENDS, COLUMN_FRIEND_USER_ID + "=?", new String[] { String.valueOf(userId) });
 
-            // Eliminar todos los amigos del usuario (relaciones donde el usuario es el propietario)
-            db.delete(TABLE_FRIENDS, COLUMN_FRIEND_USER_ID + "=?", new String[] { String.valueOf(userId) });
+                // Eliminar todos los hábitos del usuario
+                db.delete(TABLE_HABITS, COLUMN_HABIT_USER_ID + "=?", new String[] { String.valueOf(userId) });
 
-            // Eliminar todos los hábitos del usuario
-            db.delete(TABLE_HABITS, COLUMN_HABIT_USER_ID + "=?", new String[] { String.valueOf(userId) });
+                // Eliminar todos los puntajes del usuario
+                db.delete(TABLE_SCORES, COLUMN_SCORE_USER_ID + "=?", new String[] { String.valueOf(userId) });
 
-            // Eliminar todos los puntajes del usuario
-            db.delete(TABLE_SCORES, COLUMN_SCORE_USER_ID + "=?", new String[] { String.valueOf(userId) });
+                // Eliminar entradas de diario del usuario
+                db.delete(TABLE_DIARY_ENTRIES, COLUMN_DIARY_USER_ID + "=?", new String[] { String.valueOf(userId) });
 
-            // Eliminar entradas de diario del usuario
-            db.delete(TABLE_DIARY_ENTRIES, COLUMN_DIARY_USER_ID + "=?", new String[] { String.valueOf(userId) });
+                // Eliminar los totales de puntos (los triggers ya los dejaron en cero)
+                db.delete(TABLE_SCORE_TOTALS, COLUMN_TOTALS_USER_ID + "=?", new String[] { String.valueOf(userId) });
+                db.delete(TABLE_SCORE_PERIODS, COLUMN_PERIOD_USER_ID + "=?", new String[] { String.valueOf(userId) });
 
-            // Eliminar el usuario
-            int rowsAffected = db.delete(TABLE_USERS, COLUMN_USER_ID + "=?", new String[] { String.valueOf(userId) });
+                // Eliminar el usuario
+                rowsAffected = db.delete(TABLE_USERS, COLUMN_USER_ID + "=?", new String[] { String.valueOf(userId) });
 
-            db.setTransactionSuccessful();
-            android.util.Log.d("HabitDatabaseHelper", "Usuario " + userId + " eliminado correctamente con todos sus datos relacionados");
-            return rowsAffected > 0;
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         } catch (Exception e) {
             android.util.Log.e("HabitDatabaseHelper", "Error al eliminar usuario " + userId, e);
             e.printStackTrace();
             return false;
-        } finally {
-            db.endTransaction();
-            db.close();
         }
+        // Solo tras confirmar: si se revierte, la caché y los observadores no deben ver el borrado
+        notifyHabitsChanged(ALL_HABITS);
+        android.util.Log.d("HabitDatabaseHelper", "Usuario " + userId + " eliminado correctamente con todos sus datos relacionados");
+        return rowsAffected > 0;
     }
 
     public List<com.tuempresa.proyecto_01_11_25.model.UserRanking> getUsersRanking() {
         List<com.tuempresa.proyecto_01_11_25.model.UserRanking> ranking = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
 
-        // Query compleja para obtener ranking
+        // Los totales ya están agregados: una fila por usuario, sin recorrer scores ni habits
         String query = "SELECT " +
                 "u." + COLUMN_USER_EMAIL + ", " +
                 "u." + COLUMN_USER_FIRST_NAME + ", " +
-                "IFNULL(SUM(s." + COLUMN_SCORE_POINTS + "), 0) as total_score, " +
-                "(SELECT COUNT(*) FROM " + TABLE_HABITS + " h WHERE h." + COLUMN_HABIT_USER_ID + " = u."
-                + COLUMN_USER_ID + " AND h." + COLUMN_HABIT_COMPLETED + " = 1) as habits_completed " +
+                "IFNULL(t." + COLUMN_TOTALS_POINTS + ", 0) as total_score, " +
+                "IFNULL(t." + COLUMN_TOTALS_HABITS_COMPLETED + ", 0) as habits_completed " +
                 "FROM " + TABLE_USERS + " u " +
-                "LEFT JOIN " + TABLE_SCORES + " s ON u." + COLUMN_USER_ID + " = s." + COLUMN_SCORE_USER_ID + " " +
-                "GROUP BY u." + COLUMN_USER_ID + " " +
+                "LEFT JOIN " + TABLE_SCORE_TOTALS + " t ON t." + COLUMN_TOTALS_USER_ID + " = u." + COLUMN_USER_ID + " " +
                 "ORDER BY total_score DESC";
 
         Cursor cursor = db.rawQuery(query, null);
@@ -1313,7 +1932,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return ranking;
     }
 
@@ -1349,7 +1967,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_DIARY_CREATED_AT, System.currentTimeMillis() / 1000);
         
         long id = db.insert(TABLE_DIARY_ENTRIES, null, values);
-        db.close();
         return id;
     }
 
@@ -1389,7 +2006,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return entries;
     }
 
@@ -1429,7 +2045,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return entries;
     }
 
@@ -1442,7 +2057,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_DIARY_CONTENT, content);
         int rowsAffected = db.update(TABLE_DIARY_ENTRIES, values, COLUMN_DIARY_ID + "=?",
                 new String[] { String.valueOf(entryId) });
-        db.close();
         return rowsAffected > 0;
     }
 
@@ -1453,7 +2067,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         int rowsAffected = db.delete(TABLE_DIARY_ENTRIES, COLUMN_DIARY_ID + "=?",
                 new String[] { String.valueOf(entryId) });
-        db.close();
         return rowsAffected > 0;
     }
 
@@ -1532,12 +2145,7 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
      * Obtiene la fecha actual sin hora (solo día) en timestamp
      */
     private long getTodayTimestamp() {
-        java.util.Calendar cal = java.util.Calendar.getInstance();
-        cal.set(java.util.Calendar.HOUR_OF_DAY, 0);
-        cal.set(java.util.Calendar.MINUTE, 0);
-        cal.set(java.util.Calendar.SECOND, 0);
-        cal.set(java.util.Calendar.MILLISECOND, 0);
-        return cal.getTimeInMillis() / 1000;
+        return DayClock.todayStartSeconds();
     }
 
     /**
@@ -1552,317 +2160,205 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             return false;
         }
         
-        // Verificar si es un nuevo día
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_USER_LAST_ACTIVITY_DATE},
-                COLUMN_USER_ID + "=?", new String[]{String.valueOf(currentUserId)}, null, null, null);
-        
-        long todayTimestamp = getTodayTimestamp();
-        boolean shouldReset = false;
-        
-        if (cursor.moveToFirst()) {
-            long lastActivityDate = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_USER_LAST_ACTIVITY_DATE));
-            // Si la última actividad fue antes de hoy, resetear hábitos
-            if (lastActivityDate < todayTimestamp) {
-                shouldReset = true;
+        // El día del último reset tiene su propia columna: last_activity_date lo mueve la racha,
+        // así que no sirve para saber si hoy ya se reseteó. Comprobación y reset van en una transacción
+        SQLiteDatabase db = this.getWritableDatabase();
+        long today = DayClock.today();
+        int rowsUpdated;
+        db.beginTransaction();
+        try {
+            long lastResetDay;
+            SQLiteStatement lookup = statementCache.acquire(db, SQL_LAST_RESET_DAY);
+            synchronized (lookup) {
+                lookup.bindLong(1, currentUserId);
+                try {
+                    lastResetDay = lookup.simpleQueryForLong();
+                } finally {
+                    lookup.clearBindings();
+                }
             }
-        } else {
-            // Si no hay registro de actividad, resetear (primera vez)
-            shouldReset = true;
-        }
-        cursor.close();
-        db.close();
-        
-        if (!shouldReset) {
-            android.util.Log.d("HabitDatabaseHelper", "ℹ️ No es necesario resetear hábitos (mismo día)");
-            return false;
+            if (lastResetDay >= today) {
+                android.util.Log.d("HabitDatabaseHelper", "ℹ️ No es necesario resetear hábitos (mismo día)");
+                return false;
+            }
+            
+            // Resetear solo hábitos del usuario actual
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_HABIT_COMPLETED, 0);
+            rowsUpdated = db.update(TABLE_HABITS, values, 
+                    COLUMN_HABIT_USER_ID + "=?", 
+                    new String[]{String.valueOf(currentUserId)});
+            
+            ensureLocalUser(db, currentUserId);
+            ContentValues resetDay = new ContentValues();
+            resetDay.put(COLUMN_USER_LAST_RESET_DATE, today);
+            db.update(TABLE_USERS, resetDay, COLUMN_USER_ID + "=?", new String[]{String.valueOf(currentUserId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
         
-        // Resetear hábitos completados
-        db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_HABIT_COMPLETED, 0);
-        
-        // Resetear solo hábitos del usuario actual
-        int rowsUpdated = db.update(TABLE_HABITS, values, 
-                COLUMN_HABIT_USER_ID + "=?", 
-                new String[]{String.valueOf(currentUserId)});
-        db.close();
-        
         if (rowsUpdated > 0) {
+            notifyHabitsChanged(ALL_HABITS);
             android.util.Log.d("HabitDatabaseHelper", "✅ " + rowsUpdated + " hábitos reseteados para el nuevo día (usuario " + currentUserId + ")");
         }
         
-        // Limpiar completados de días anteriores
-        cleanOldCompletions(currentUserId);
+        // Los completados de días anteriores se conservan como historial
         
         return true; // Retornar true para indicar que se hizo reset
     }
 
-    /**
-     * Verifica si es un nuevo día (después de las 00:00)
-     * y resetea el contador diario si es necesario
-     */
-    private void checkAndResetDailyCounter(long userId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        
-        // Asegurar que las columnas de racha existan antes de usarlas
-        // Esto es necesario porque bases de datos antiguas pueden no tenerlas
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_STREAK_DATE, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_ACTIVITY_DATE, "INTEGER DEFAULT 0");
-        
-        long todayTimestamp = getTodayTimestamp();
-        
-        // CRÍTICO: Verificar si el usuario existe, si no, crearlo
-        Cursor userCheck = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID},
-                COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)}, null, null, null);
-        boolean userExists = userCheck.moveToFirst();
-        userCheck.close();
-        
-        if (!userExists) {
-            // Crear usuario si no existe (usando datos de SessionManager)
-            com.tuempresa.proyecto_01_11_25.utils.SessionManager session = new com.tuempresa.proyecto_01_11_25.utils.SessionManager(context);
-            String userEmail = session.getUserEmail();
-            if (userEmail == null || userEmail.isEmpty()) {
-                userEmail = "user" + userId + "@local.com";
+    // ========== RACHA DIARIA ==========
+
+    /**
+     * Suma un completado nuevo a la racha del usuario (O(1): una lectura y una escritura).
+     * Debe llamarse dentro de la transacción que insertó el completado.
+     */
+    private void recordCompletionForStreak(SQLiteDatabase db, long userId, long day) {
+        StreakEngine.State state = StreakEngine.onCompletion(readStreakState(db, userId), day);
+        if (state == null) {
+            // Completado de un día anterior al guardado (por ejemplo, tras cambiar la hora)
+            rebuildStreak(db, userId);
+            return;
+        }
+        writeStreakState(db, userId, state);
+        android.util.Log.d("HabitDatabaseHelper", "🔥 Racha de usuario " + userId + ": " + state.getStreak() +
+                " días, completados hoy: " + state.getCompletedOnDay());
+    }
+
+    /**
+     * Vuelve a contar los completados de un día (tras borrar alguno) y ajusta la racha.
+     */
+    protected void refreshStreakDay(SQLiteDatabase db, long userId, long day) {
+        int count;
+        SQLiteStatement statement = statementCache.acquire(db, SQL_COMPLETIONS_ON_DAY);
+        synchronized (statement) {
+            statement.bindLong(1, userId);
+            statement.bindLong(2, day);
+            try {
+                count = (int) statement.simpleQueryForLong();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+        StreakEngine.State state = StreakEngine.withDayCount(readStreakState(db, userId), day, count);
+        if (state == null) {
+            rebuildStreak(db, userId);
+            return;
+        }
+        writeStreakState(db, userId, state);
+    }
+
+    /**
+     * Reconstruye la racha de un usuario desde el historial de completados en una sola pasada
+     * (los conteos por día salen del índice (user_id, day)).
+     */
+    public int rebuildStreak(long userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        StreakEngine.State state = rebuildStreak(db, userId);
+        return StreakEngine.currentStreak(state, DayClock.today());
+    }
+
+    private StreakEngine.State rebuildStreak(SQLiteDatabase db, long userId) {
+        StreakEngine.State state = StreakEngine.State.EMPTY;
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_COMPLETION_DAY + ", COUNT(*) FROM " + TABLE_HABIT_COMPLETIONS +
+                        " WHERE " + COLUMN_COMPLETION_USER_ID + " = ? AND " + COLUMN_COMPLETION_DAY + " > 0" +
+                        " GROUP BY " + COLUMN_COMPLETION_DAY + " ORDER BY " + COLUMN_COMPLETION_DAY,
+                new String[]{String.valueOf(userId)});
+        try {
+            while (cursor.moveToNext()) {
+                state = StreakEngine.withDayCount(state, cursor.getLong(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        writeStreakState(db, userId, state);
+        android.util.Log.d("HabitDatabaseHelper", "🔄 Racha reconstruida para usuario " + userId + ": " + state);
+        return state;
+    }
+
+    private StreakEngine.State readStreakState(SQLiteDatabase db, long userId) {
+        Cursor cursor = db.rawQuery(SQL_STREAK_STATE, new String[]{String.valueOf(userId)});
+        try {
+            if (!cursor.moveToFirst()) {
+                return StreakEngine.State.EMPTY;
             }
-            
-            ContentValues userValues = new ContentValues();
-            userValues.put(COLUMN_USER_ID, userId);
-            userValues.put(COLUMN_USER_EMAIL, userEmail);
-            userValues.put(COLUMN_USER_IS_ACTIVE, 1);
-            userValues.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
-            userValues.put(COLUMN_USER_CURRENT_STREAK, 0);
-            userValues.put(COLUMN_USER_LAST_STREAK_DATE, 0);
-            userValues.put(COLUMN_USER_DAILY_HABITS_COMPLETED, 0);
-            userValues.put(COLUMN_USER_LAST_ACTIVITY_DATE, 0);
-            
-            long insertedId = db.insert(TABLE_USERS, null, userValues);
-            android.util.Log.d("HabitDatabaseHelper", "✅ Usuario " + userId + " creado en tabla users local (insertedId: " + insertedId + ")");
+            return new StreakEngine.State(cursor.getLong(0), cursor.getInt(1), cursor.getInt(2), cursor.getLong(3));
+        } finally {
+            cursor.close();
         }
-        
-        Cursor cursor = db.query(TABLE_USERS, 
-                new String[]{COLUMN_USER_LAST_ACTIVITY_DATE, COLUMN_USER_DAILY_HABITS_COMPLETED, COLUMN_USER_CURRENT_STREAK, COLUMN_USER_LAST_STREAK_DATE},
-                COLUMN_USER_ID + "=?", 
-                new String[]{String.valueOf(userId)}, 
-                null, null, null);
-        
-        if (cursor.moveToFirst()) {
-            long lastActivityDate = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_USER_LAST_ACTIVITY_DATE));
-            
-            // Si la última actividad fue antes de hoy (00:00), resetear contador
-            // IMPORTANTE: lastActivityDate puede ser 0 (nunca inicializado), en cuyo caso también debemos resetear
-            // Pero si lastActivityDate == todayTimestamp, significa que ya hubo actividad hoy, NO resetear
-            if (lastActivityDate == 0 || lastActivityDate < todayTimestamp) {
-                ContentValues values = new ContentValues();
-                
-                // Si la última actividad fue ayer (mismo día calendario pero diferente timestamp)
-                // O si nunca hubo actividad (lastActivityDate == 0), simplemente resetear
-                if (lastActivityDate > 0) {
-                    long yesterdayTimestamp = todayTimestamp - 86400; // 24 horas en segundos
-                    
-                    if (lastActivityDate >= yesterdayTimestamp && lastActivityDate < todayTimestamp) {
-                        // Fue ayer, mantener la racha si se completaron 3+ hábitos
-                        int dailyHabitsCompleted = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_DAILY_HABITS_COMPLETED));
-                        int currentStreak = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_CURRENT_STREAK));
-                        
-                        if (dailyHabitsCompleted >= 3) {
-                            // Se mantuvo la racha, incrementar
-                            values.put(COLUMN_USER_CURRENT_STREAK, currentStreak + 1);
-                            values.put(COLUMN_USER_LAST_STREAK_DATE, todayTimestamp);
-                            android.util.Log.d("HabitDatabaseHelper", "✅ Racha incrementada de " + currentStreak + " a " + (currentStreak + 1) + " días (usuario completó 3+ hábitos ayer)");
-                        } else {
-                            // No se completaron 3 hábitos, resetear racha
-                            values.put(COLUMN_USER_CURRENT_STREAK, 0);
-                            android.util.Log.d("HabitDatabaseHelper", "⚠️ Racha reseteada a 0 (usuario no completó 3+ hábitos ayer)");
-                        }
-                    } else {
-                        // Fue hace más de un día, resetear racha
-                        values.put(COLUMN_USER_CURRENT_STREAK, 0);
-                        android.util.Log.d("HabitDatabaseHelper", "⚠️ Racha reseteada a 0 (última actividad fue hace más de un día)");
-                    }
-                } else {
-                    // Nunca hubo actividad, resetear racha
-                    values.put(COLUMN_USER_CURRENT_STREAK, 0);
-                    android.util.Log.d("HabitDatabaseHelper", "ℹ️ Inicializando racha (primera vez)");
-                }
-                
-                // Resetear contador diario
-                values.put(COLUMN_USER_DAILY_HABITS_COMPLETED, 0);
-                values.put(COLUMN_USER_LAST_ACTIVITY_DATE, todayTimestamp);
-                
-                db.update(TABLE_USERS, values, COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)});
-                android.util.Log.d("HabitDatabaseHelper", "✅ Contador diario reseteado para nuevo día (usuario " + userId + ")");
-            } else {
-                // lastActivityDate >= todayTimestamp, significa que ya hubo actividad hoy
-                // No resetear, solo verificar que todo esté correcto
-                android.util.Log.d("HabitDatabaseHelper", "ℹ️ No es necesario resetear contador (última actividad fue hoy)");
+    }
+
+    private void writeStreakState(SQLiteDatabase db, long userId, StreakEngine.State state) {
+        ensureLocalUser(db, userId);
+        SQLiteStatement update = statementCache.acquire(db, SQL_UPDATE_STREAK_STATE);
+        synchronized (update) {
+            update.bindLong(1, state.getDay());
+            update.bindLong(2, state.getCompletedOnDay());
+            update.bindLong(3, state.getStreak());
+            update.bindLong(4, state.getLastQualifiedDay());
+            update.bindLong(5, userId);
+            try {
+                update.executeUpdateDelete();
+            } finally {
+                update.clearBindings();
             }
-        } else {
-            android.util.Log.w("HabitDatabaseHelper", "⚠️ Usuario " + userId + " no encontrado en la base de datos");
         }
-        cursor.close();
-        db.close();
     }
 
     /**
-     * Incrementa el contador de hábitos completados hoy
-     * y actualiza la racha si se alcanzan 3 hábitos
+     * Crea la fila local del usuario si no existe (usando datos de SessionManager). Si el email
+     * ya está registrado con otro user_id, se corrige el user_id.
      */
-    public void incrementDailyHabitCompleted(long userId) {
-        checkAndResetDailyCounter(userId);
-        
-        SQLiteDatabase db = this.getWritableDatabase();
-        
-        // Asegurar que las columnas de racha existan antes de usarlas
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_STREAK_DATE, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_ACTIVITY_DATE, "INTEGER DEFAULT 0");
-        
-        long todayTimestamp = getTodayTimestamp();
-        
-        // CRÍTICO: Verificar si el usuario existe, si no, crearlo
+    private void ensureLocalUser(SQLiteDatabase db, long userId) {
         Cursor userCheck = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID},
                 COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)}, null, null, null);
         boolean userExists = userCheck.moveToFirst();
         userCheck.close();
-        
-        if (!userExists) {
-            // Crear usuario si no existe (usando datos de SessionManager)
-            com.tuempresa.proyecto_01_11_25.utils.SessionManager session = new com.tuempresa.proyecto_01_11_25.utils.SessionManager(context);
-            String userEmail = session.getUserEmail();
-            if (userEmail == null || userEmail.isEmpty()) {
-                userEmail = "user" + userId + "@local.com";
-            }
-            
-            ContentValues userValues = new ContentValues();
-            userValues.put(COLUMN_USER_ID, userId);
-            userValues.put(COLUMN_USER_EMAIL, userEmail);
-            userValues.put(COLUMN_USER_IS_ACTIVE, 1);
-            userValues.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
-            userValues.put(COLUMN_USER_CURRENT_STREAK, 0);
-            userValues.put(COLUMN_USER_LAST_STREAK_DATE, 0);
-            userValues.put(COLUMN_USER_DAILY_HABITS_COMPLETED, 0);
-            userValues.put(COLUMN_USER_LAST_ACTIVITY_DATE, 0);
-            
-            long insertedId = db.insert(TABLE_USERS, null, userValues);
-            android.util.Log.d("HabitDatabaseHelper", "✅ Usuario " + userId + " creado en tabla users local (insertedId: " + insertedId + ")");
-        }
-        
-        // Obtener valores actuales
-        Cursor cursor = db.query(TABLE_USERS, 
-                new String[]{COLUMN_USER_DAILY_HABITS_COMPLETED, COLUMN_USER_CURRENT_STREAK},
-                COLUMN_USER_ID + "=?", 
-                new String[]{String.valueOf(userId)}, 
-                null, null, null);
-        
-        int dailyHabitsCompleted = 0;
-        int currentStreak = 0;
-        
-        if (cursor.moveToFirst()) {
-            dailyHabitsCompleted = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_DAILY_HABITS_COMPLETED));
-            currentStreak = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_CURRENT_STREAK));
-        } else {
-            android.util.Log.e("HabitDatabaseHelper", "❌ ERROR CRÍTICO: Usuario " + userId + " no encontrado después de intentar crearlo");
-            cursor.close();
-            db.close();
+        if (userExists) {
             return;
         }
-        cursor.close();
-        
-        // Incrementar contador
-        dailyHabitsCompleted++;
-        
-        android.util.Log.d("HabitDatabaseHelper", "Incrementando contador diario. Antes: " + (dailyHabitsCompleted - 1) + ", Después: " + dailyHabitsCompleted + ", Racha actual: " + currentStreak);
-        
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_USER_DAILY_HABITS_COMPLETED, dailyHabitsCompleted);
-        values.put(COLUMN_USER_LAST_ACTIVITY_DATE, todayTimestamp);
-        
-        // Si se alcanzan 3 hábitos completados, activar o mantener la racha
-        if (dailyHabitsCompleted >= 3) {
-            if (currentStreak == 0) {
-                // Iniciar racha si no tiene una activa
-                values.put(COLUMN_USER_CURRENT_STREAK, 1);
-                values.put(COLUMN_USER_LAST_STREAK_DATE, todayTimestamp);
-                android.util.Log.d("HabitDatabaseHelper", "✅ RACHA INICIADA: usuario completó " + dailyHabitsCompleted + " hábitos hoy. Racha establecida en 1 día.");
-            } else {
-                // Si ya tiene racha, asegurar que la fecha de última racha sea hoy
-                // (esto es importante para mantener la racha activa)
-                values.put(COLUMN_USER_LAST_STREAK_DATE, todayTimestamp);
-                android.util.Log.d("HabitDatabaseHelper", "✅ RACHA MANTENIDA: usuario ya tiene racha de " + currentStreak + " días. Completó " + dailyHabitsCompleted + " hábitos hoy.");
-            }
-        } else {
-            android.util.Log.d("HabitDatabaseHelper", "⚠️ Racha no activada aún. Hábitos completados hoy: " + dailyHabitsCompleted + " (se necesitan 3)");
+
+        com.tuempresa.proyecto_01_11_25.utils.SessionManager session = new com.tuempresa.proyecto_01_11_25.utils.SessionManager(context);
+        String userEmail = session.getUserEmail();
+        if (userEmail == null || userEmail.isEmpty()) {
+            userEmail = "user" + userId + "@local.com";
         }
-        
-        db.update(TABLE_USERS, values, COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)});
-        db.close();
-        
-        // Verificar que la actualización se guardó correctamente
-        android.util.Log.d("HabitDatabaseHelper", "Actualización guardada en BD. Verificando...");
-        SQLiteDatabase verifyDb = this.getReadableDatabase();
-        Cursor verifyCursor = verifyDb.query(TABLE_USERS, 
-                new String[]{COLUMN_USER_DAILY_HABITS_COMPLETED, COLUMN_USER_CURRENT_STREAK},
-                COLUMN_USER_ID + "=?", 
-                new String[]{String.valueOf(userId)}, 
-                null, null, null);
-        if (verifyCursor.moveToFirst()) {
-            int verifyDaily = verifyCursor.getInt(verifyCursor.getColumnIndexOrThrow(COLUMN_USER_DAILY_HABITS_COMPLETED));
-            int verifyStreak = verifyCursor.getInt(verifyCursor.getColumnIndexOrThrow(COLUMN_USER_CURRENT_STREAK));
-            android.util.Log.d("HabitDatabaseHelper", "✅ Verificación: Hábitos completados hoy: " + verifyDaily + ", Racha actual: " + verifyStreak);
+
+        // Verificar si el usuario existe por email (puede haber sido creado con otro userId)
+        Cursor emailCheck = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID},
+                COLUMN_USER_EMAIL + "=?", new String[]{userEmail}, null, null, null);
+        long existingUserId = emailCheck.moveToFirst() ? emailCheck.getLong(0) : -1;
+        emailCheck.close();
+
+        if (existingUserId != -1) {
+            android.util.Log.w("HabitDatabaseHelper", "⚠️ Usuario con email " + userEmail + " existe con user_id " + existingUserId + ", pero necesitamos " + userId + ". Actualizando...");
+            ContentValues updateValues = new ContentValues();
+            updateValues.put(COLUMN_USER_ID, userId);
+            db.update(TABLE_USERS, updateValues, COLUMN_USER_EMAIL + "=?", new String[]{userEmail});
+            return;
         }
-        verifyCursor.close();
-        verifyDb.close();
+
+        ContentValues userValues = new ContentValues();
+        userValues.put(COLUMN_USER_ID, userId);
+        userValues.put(COLUMN_USER_EMAIL, userEmail);
+        userValues.put(COLUMN_USER_IS_ACTIVE, 1);
+        userValues.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
+        userValues.put(COLUMN_USER_CURRENT_STREAK, 0);
+        userValues.put(COLUMN_USER_LAST_STREAK_DATE, StreakEngine.NO_DAY);
+        userValues.put(COLUMN_USER_DAILY_HABITS_COMPLETED, 0);
+        userValues.put(COLUMN_USER_LAST_ACTIVITY_DATE, StreakEngine.NO_DAY);
+        long insertedId = db.insert(TABLE_USERS, null, userValues);
+        android.util.Log.d("HabitDatabaseHelper", "✅ Usuario " + userId + " creado en tabla users local (insertedId: " + insertedId + ")");
     }
 
     /**
      * Obtiene la racha actual del usuario
-     * @return La racha actual (0 si no tiene racha todavía)
+     * @return Días seguidos cumpliendo el objetivo diario, contando hoy o hasta ayer (0 si no tiene racha)
      */
     public int getCurrentStreak(long userId) {
-        // NO llamar a checkAndResetDailyCounter aquí porque puede resetear el contador
-        // justo después de que se recalcule. En su lugar, solo leer el valor.
-        
-        SQLiteDatabase db = this.getReadableDatabase();
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
-        
-        Cursor cursor = db.query(TABLE_USERS, 
-                new String[]{COLUMN_USER_CURRENT_STREAK, COLUMN_USER_DAILY_HABITS_COMPLETED},
-                COLUMN_USER_ID + "=?", 
-                new String[]{String.valueOf(userId)}, 
-                null, null, null);
-        
-        int streak = 0;
-        int dailyHabitsCompleted = 0;
-        if (cursor.moveToFirst()) {
-            streak = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_CURRENT_STREAK));
-            dailyHabitsCompleted = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_DAILY_HABITS_COMPLETED));
-        }
-        cursor.close();
-        db.close();
-        
-        // CRÍTICO: Si se completaron 3 o más hábitos hoy pero la racha es 0, forzar la activación
-        // Esto maneja casos donde el incremento no se guardó correctamente o hubo un error
-        if (dailyHabitsCompleted >= 3 && streak == 0) {
-            android.util.Log.w("HabitDatabaseHelper", "❌ PROBLEMA CRÍTICO: Usuario completó " + dailyHabitsCompleted + " hábitos pero la racha es 0. Forzando activación de racha.");
-            SQLiteDatabase writeDb = this.getWritableDatabase();
-            long todayTimestamp = getTodayTimestamp();
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_USER_CURRENT_STREAK, 1);
-            values.put(COLUMN_USER_LAST_STREAK_DATE, todayTimestamp);
-            int rowsUpdated = writeDb.update(TABLE_USERS, values, COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)});
-            writeDb.close();
-            android.util.Log.d("HabitDatabaseHelper", "✅ Racha forzada a 1 día. Usuario: " + userId + ", Filas actualizadas: " + rowsUpdated);
-            return 1; // Devolver 1 ya que la racha acaba de ser activada
-        }
-        
-        android.util.Log.d("HabitDatabaseHelper", "📊 getCurrentStreak() - Usuario: " + userId + ", Racha: " + streak + ", Hábitos completados: " + dailyHabitsCompleted);
-        return streak;
+        StreakEngine.State state = readStreakState(this.getReadableDatabase(), userId);
+        return StreakEngine.currentStreak(state, DayClock.today());
     }
 
     /**
@@ -1872,222 +2368,13 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         long userId = getCurrentUserId();
         return getCurrentStreak(userId);
     }
-    
-    /**
-     * Recalcula el contador de hábitos completados hoy basándose en los hábitos actualmente completados
-     * Útil cuando los hábitos se completaron antes de que se implementara el sistema de rachas
-     * o cuando hay inconsistencias en el contador
-     */
-    public void recalculateDailyHabitsCompleted(long userId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        
-        // Asegurar que las columnas de racha existan
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_CURRENT_STREAK, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_STREAK_DATE, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_LAST_ACTIVITY_DATE, "INTEGER DEFAULT 0");
-        
-        // Contar cuántos hábitos están completados hoy para este usuario
-        Cursor cursor = db.query(TABLE_HABITS, 
-                new String[]{COLUMN_HABIT_ID},
-                COLUMN_HABIT_USER_ID + "=? AND " + COLUMN_HABIT_COMPLETED + "=1",
-                new String[]{String.valueOf(userId)}, 
-                null, null, null);
-        
-        int completedHabitsCount = cursor.getCount();
-        cursor.close();
-        db.close();
-        
-        android.util.Log.d("HabitDatabaseHelper", "🔄 Recalculando hábitos completados: " + completedHabitsCount + " hábitos completados para usuario " + userId);
-        
-        // CRÍTICO: Verificar si el usuario existe por user_id, si no, crearlo
-        db = this.getWritableDatabase();
-        Cursor userCheck = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID},
-                COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)}, null, null, null);
-        boolean userExists = userCheck.moveToFirst();
-        userCheck.close();
-        
-        if (!userExists) {
-            // Crear usuario si no existe con este user_id específico
-            com.tuempresa.proyecto_01_11_25.utils.SessionManager session = new com.tuempresa.proyecto_01_11_25.utils.SessionManager(context);
-            String userEmail = session.getUserEmail();
-            if (userEmail == null || userEmail.isEmpty()) {
-                userEmail = "user" + userId + "@local.com";
-            }
-            
-            // Verificar si el usuario existe por email (puede haber sido creado con otro userId)
-            Cursor emailCheck = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID, COLUMN_USER_EMAIL},
-                    COLUMN_USER_EMAIL + "=?", new String[]{userEmail}, null, null, null);
-            boolean emailExists = emailCheck.moveToFirst();
-            long existingUserId = -1;
-            if (emailExists) {
-                existingUserId = emailCheck.getLong(emailCheck.getColumnIndexOrThrow(COLUMN_USER_ID));
-            }
-            emailCheck.close();
-            
-            if (emailExists && existingUserId != userId) {
-                // El usuario existe pero con otro user_id, actualizar el user_id
-                android.util.Log.w("HabitDatabaseHelper", "⚠️ Usuario con email " + userEmail + " existe con user_id " + existingUserId + ", pero necesitamos " + userId + ". Actualizando...");
-                ContentValues updateValues = new ContentValues();
-                updateValues.put(COLUMN_USER_ID, userId);
-                int updated = db.update(TABLE_USERS, updateValues, COLUMN_USER_EMAIL + "=?", new String[]{userEmail});
-                if (updated > 0) {
-                    android.util.Log.d("HabitDatabaseHelper", "✅ Usuario actualizado: user_id cambiado de " + existingUserId + " a " + userId);
-                } else {
-                    android.util.Log.e("HabitDatabaseHelper", "❌ No se pudo actualizar user_id del usuario con email " + userEmail);
-                }
-            } else if (!emailExists) {
-                // El usuario no existe, crearlo
-                ContentValues userValues = new ContentValues();
-                userValues.put(COLUMN_USER_ID, userId);
-                userValues.put(COLUMN_USER_EMAIL, userEmail);
-                userValues.put(COLUMN_USER_IS_ACTIVE, 1);
-                userValues.put(COLUMN_USER_CREATED_AT, System.currentTimeMillis());
-                userValues.put(COLUMN_USER_CURRENT_STREAK, 0);
-                userValues.put(COLUMN_USER_LAST_STREAK_DATE, 0);
-                userValues.put(COLUMN_USER_DAILY_HABITS_COMPLETED, 0);
-                userValues.put(COLUMN_USER_LAST_ACTIVITY_DATE, 0);
-                
-                long insertedId = db.insert(TABLE_USERS, null, userValues);
-                if (insertedId != -1) {
-                    android.util.Log.d("HabitDatabaseHelper", "✅ Usuario " + userId + " creado en recalculateDailyHabitsCompleted (insertedId: " + insertedId + ")");
-                } else {
-                    android.util.Log.e("HabitDatabaseHelper", "❌ No se pudo crear usuario " + userId + " (puede que ya exista)");
-                }
-            }
-        }
-        
-        long todayTimestamp = getTodayTimestamp();
-        
-        // Obtener valores actuales del usuario
-        Cursor userCursor = db.query(TABLE_USERS, 
-                new String[]{COLUMN_USER_DAILY_HABITS_COMPLETED, COLUMN_USER_CURRENT_STREAK, COLUMN_USER_LAST_ACTIVITY_DATE},
-                COLUMN_USER_ID + "=?", 
-                new String[]{String.valueOf(userId)}, 
-                null, null, null);
-        
-        int currentStreak = 0;
-        long lastActivityDate = 0;
-        if (userCursor.moveToFirst()) {
-            currentStreak = userCursor.getInt(userCursor.getColumnIndexOrThrow(COLUMN_USER_CURRENT_STREAK));
-            lastActivityDate = userCursor.getLong(userCursor.getColumnIndexOrThrow(COLUMN_USER_LAST_ACTIVITY_DATE));
-        }
-        userCursor.close();
-        
-        // CRÍTICO: Si la última actividad fue antes de hoy Y hay hábitos completados hoy,
-        // significa que es un nuevo día pero el usuario ya completó hábitos hoy.
-        // En este caso, NO resetear el contador, solo actualizarlo con los hábitos completados.
-        // Si la última actividad fue hoy, también actualizar normalmente.
-        
-        // Actualizar contador con el valor recalculado
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_USER_DAILY_HABITS_COMPLETED, completedHabitsCount);
-        values.put(COLUMN_USER_LAST_ACTIVITY_DATE, todayTimestamp);
-        
-        // Si la última actividad fue antes de hoy y hay hábitos completados, 
-        // verificar si debemos mantener o resetear la racha
-        if (lastActivityDate > 0 && lastActivityDate < todayTimestamp && completedHabitsCount > 0) {
-            // Es un nuevo día pero hay hábitos completados hoy
-            // Verificar si ayer se completaron 3+ hábitos para mantener la racha
-            long yesterdayTimestamp = todayTimestamp - 86400;
-            if (lastActivityDate >= yesterdayTimestamp && lastActivityDate < todayTimestamp) {
-                // Fue ayer, verificar si se completaron 3+ hábitos ayer
-                // (esto se maneja en checkAndResetDailyCounter, pero aquí solo actualizamos el contador de hoy)
-                android.util.Log.d("HabitDatabaseHelper", "ℹ️ Nuevo día detectado. Hábitos completados hoy: " + completedHabitsCount);
-            }
-        }
-        
-        // Si se alcanzan 3 hábitos completados, activar o mantener la racha
-        if (completedHabitsCount >= 3) {
-            if (currentStreak == 0) {
-                // Iniciar racha si no tiene una activa
-                values.put(COLUMN_USER_CURRENT_STREAK, 1);
-                values.put(COLUMN_USER_LAST_STREAK_DATE, todayTimestamp);
-                android.util.Log.d("HabitDatabaseHelper", "✅ RACHA INICIADA (recalculada): usuario tiene " + completedHabitsCount + " hábitos completados. Racha establecida en 1 día.");
-            } else {
-                // Si ya tiene racha, asegurar que la fecha de última racha sea hoy
-                values.put(COLUMN_USER_LAST_STREAK_DATE, todayTimestamp);
-                android.util.Log.d("HabitDatabaseHelper", "✅ RACHA MANTENIDA (recalculada): usuario ya tiene racha de " + currentStreak + " días. Tiene " + completedHabitsCount + " hábitos completados hoy.");
-            }
-        } else {
-            android.util.Log.d("HabitDatabaseHelper", "⚠️ Racha no activada (recalculada). Hábitos completados: " + completedHabitsCount + " (se necesitan 3)");
-        }
-        
-        int rowsUpdated = db.update(TABLE_USERS, values, COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)});
-        
-        if (rowsUpdated == 0) {
-            android.util.Log.w("HabitDatabaseHelper", "⚠️ No se actualizó ninguna fila. Verificando si el usuario existe...");
-            // Verificar si el usuario existe
-            Cursor verifyUser = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID},
-                    COLUMN_USER_ID + "=?", new String[]{String.valueOf(userId)}, null, null, null);
-            boolean userExistsInDb = verifyUser.moveToFirst();
-            verifyUser.close();
-            
-            if (!userExistsInDb) {
-                android.util.Log.e("HabitDatabaseHelper", "❌ Usuario " + userId + " no existe en la tabla users. No se puede actualizar la racha.");
-            } else {
-                android.util.Log.e("HabitDatabaseHelper", "❌ Usuario " + userId + " existe pero la actualización falló. Valores: " + values.toString());
-            }
-        } else {
-            android.util.Log.d("HabitDatabaseHelper", "✅ Recalculación completada. Filas actualizadas: " + rowsUpdated + ", Hábitos completados: " + completedHabitsCount + ", Racha: " + (completedHabitsCount >= 3 ? "1" : "0"));
-        }
-        
-        db.close();
-    }
 
     /**
      * Obtiene el número de hábitos completados hoy
      */
     public int getDailyHabitsCompleted(long userId) {
-        // NO llamar a checkAndResetDailyCounter aquí porque puede resetear el contador
-        // justo después de que se recalcule. En su lugar, recalcular si es necesario.
-        
-        SQLiteDatabase db = this.getReadableDatabase();
-        addColumnIfNotExists(db, TABLE_USERS, COLUMN_USER_DAILY_HABITS_COMPLETED, "INTEGER DEFAULT 0");
-        
-        Cursor cursor = db.query(TABLE_USERS, 
-                new String[]{COLUMN_USER_DAILY_HABITS_COMPLETED},
-                COLUMN_USER_ID + "=?", 
-                new String[]{String.valueOf(userId)}, 
-                null, null, null);
-        
-        int count = 0;
-        boolean userExists = cursor.moveToFirst();
-        if (userExists) {
-            count = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_DAILY_HABITS_COMPLETED));
-        }
-        cursor.close();
-        
-        // Si el usuario no existe o el contador es 0, verificar si hay hábitos completados
-        if (!userExists || count == 0) {
-            Cursor habitsCursor = db.query(TABLE_HABITS, 
-                    new String[]{COLUMN_HABIT_ID},
-                    COLUMN_HABIT_USER_ID + "=? AND " + COLUMN_HABIT_COMPLETED + "=1",
-                    new String[]{String.valueOf(userId)}, 
-                    null, null, null);
-            int completedHabits = habitsCursor.getCount();
-            habitsCursor.close();
-            
-            if (completedHabits > 0) {
-                android.util.Log.w("HabitDatabaseHelper", "⚠️ Contador es " + count + " pero hay " + completedHabits + " hábitos completados. Recalculando...");
-                db.close(); // Cerrar antes de recalcular
-                recalculateDailyHabitsCompleted(userId);
-                // Leer de nuevo
-                db = this.getReadableDatabase();
-                cursor = db.query(TABLE_USERS, 
-                        new String[]{COLUMN_USER_DAILY_HABITS_COMPLETED},
-                        COLUMN_USER_ID + "=?", 
-                        new String[]{String.valueOf(userId)}, 
-                        null, null, null);
-                if (cursor.moveToFirst()) {
-                    count = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_DAILY_HABITS_COMPLETED));
-                }
-                cursor.close();
-            }
-        }
-        
-        db.close();
-        return count;
+        StreakEngine.State state = readStreakState(this.getReadableDatabase(), userId);
+        return StreakEngine.completedOn(state, DayClock.today());
     }
 
     // ========== GESTIÓN DE AMIGOS ==========
@@ -2105,7 +2392,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_FRIEND_ADDED_AT, System.currentTimeMillis() / 1000);
         
         long id = db.insertWithOnConflict(TABLE_FRIENDS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
-        db.close();
         return id;
     }
 
@@ -2136,7 +2422,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return friends;
     }
 
@@ -2146,7 +2431,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
     public boolean deleteFriend(long friendId) {
         SQLiteDatabase db = this.getWritableDatabase();
         int rowsAffected = db.delete(TABLE_FRIENDS, COLUMN_FRIEND_ID + "=?", new String[]{String.valueOf(friendId)});
-        db.close();
         return rowsAffected > 0;
     }
 
@@ -2160,7 +2444,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_FRIEND_TOTAL_POINTS, totalPoints);
         values.put(COLUMN_FRIEND_CURRENT_STREAK, currentStreak);
         db.update(TABLE_FRIENDS, values, COLUMN_FRIEND_ID + "=?", new String[]{String.valueOf(friendId)});
-        db.close();
     }
 
     /**
@@ -2174,7 +2457,6 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
                 null, null, null);
         boolean exists = cursor.getCount() > 0;
         cursor.close();
-        db.close();
         return exists;
     }
 
@@ -2191,36 +2473,39 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
     public boolean saveHabitCompletion(long habitId, long userId, double lat, double lng) {
         SQLiteDatabase db = this.getWritableDatabase();
         
-        // Obtener fecha actual en formato 'YYYY-MM-DD'
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-        String today = sdf.format(new java.util.Date());
-        
         ContentValues values = new ContentValues();
         values.put(COLUMN_COMPLETION_HABIT_ID, habitId);
         values.put(COLUMN_COMPLETION_USER_ID, userId);
-        values.put(COLUMN_COMPLETION_DATE, today);
         values.put(COLUMN_COMPLETION_LAT, lat);
         values.put(COLUMN_COMPLETION_LNG, lng);
         values.put(COLUMN_COMPLETION_CREATED_AT, System.currentTimeMillis() / 1000);
+        values.put(COLUMN_COMPLETION_GEOHASH, completionGeoHash(lat, lng));
+        long day = DayClock.today();
+        values.put(COLUMN_COMPLETION_DAY, day);
         
+        db.beginTransaction();
         try {
             long result = db.insertWithOnConflict(TABLE_HABIT_COMPLETIONS, null, values, 
                     SQLiteDatabase.CONFLICT_IGNORE);
-            db.close();
+            if (result != -1) {
+                recordCompletionForStreak(db, userId, day);
+            }
+            db.setTransactionSuccessful();
             
             if (result != -1) {
                 android.util.Log.d("HabitDatabaseHelper", "✅ Completado guardado: habitId=" + habitId + 
-                        ", userId=" + userId + ", fecha=" + today);
+                        ", userId=" + userId + ", día=" + day);
                 return true;
             } else {
                 android.util.Log.d("HabitDatabaseHelper", "ℹ️ Completado ya existía (duplicado ignorado): habitId=" + 
-                        habitId + ", userId=" + userId + ", fecha=" + today);
+                        habitId + ", userId=" + userId + ", día=" + day);
                 return false;
             }
         } catch (Exception e) {
             android.util.Log.e("HabitDatabaseHelper", "Error al guardar completado", e);
-            db.close();
             return false;
+        } finally {
+            db.endTransaction();
         }
     }
     
@@ -2233,57 +2518,196 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         java.util.List<com.tuempresa.proyecto_01_11_25.model.HabitCompletion> completions = new java.util.ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
-        // Obtener fecha actual
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-        String today = sdf.format(new java.util.Date());
-        
         // Query con JOIN para obtener información del hábito
         String query = "SELECT c.*, h." + COLUMN_HABIT_TITLE + ", h." + COLUMN_HABIT_TYPE + ", h." + COLUMN_HABIT_ICON +
                 " FROM " + TABLE_HABIT_COMPLETIONS + " c " +
                 " INNER JOIN " + TABLE_HABITS + " h ON c." + COLUMN_COMPLETION_HABIT_ID + " = h." + COLUMN_HABIT_ID +
                 " WHERE c." + COLUMN_COMPLETION_USER_ID + " = ? " +
-                " AND c." + COLUMN_COMPLETION_DATE + " = ? " +
+                " AND c." + COLUMN_COMPLETION_DAY + " = ? " +
                 " ORDER BY c." + COLUMN_COMPLETION_CREATED_AT + " DESC";
         
-        Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(userId), today});
+        Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(userId), String.valueOf(DayClock.today())});
         
-        if (cursor.moveToFirst()) {
-            do {
-                com.tuempresa.proyecto_01_11_25.model.HabitCompletion completion = 
-                        new com.tuempresa.proyecto_01_11_25.model.HabitCompletion();
-                completion.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_ID)));
-                completion.setHabitId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_HABIT_ID)));
-                completion.setUserId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_USER_ID)));
-                completion.setCompletionDate(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_DATE)));
-                completion.setLatitude(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_LAT)));
-                completion.setLongitude(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_LNG)));
-                completion.setCreatedAt(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_CREATED_AT)) * 1000);
-                
-                // Información del hábito
-                completion.setHabitTitle(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)));
-                String typeStr = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE));
-                try {
-                    completion.setHabitType(Habit.HabitType.valueOf(typeStr));
-                } catch (Exception e) {
-                    completion.setHabitType(Habit.HabitType.DEMO);
-                }
-                
-                int iconIndex = cursor.getColumnIndex(COLUMN_HABIT_ICON);
-                if (iconIndex >= 0 && !cursor.isNull(iconIndex)) {
-                    completion.setHabitIcon(cursor.getString(iconIndex));
-                }
-                
-                completions.add(completion);
-            } while (cursor.moveToNext());
+        while (cursor.moveToNext()) {
+            completions.add(readCompletion(cursor));
         }
         
         cursor.close();
-        db.close();
         
         android.util.Log.d("HabitDatabaseHelper", "📊 Completados de hoy para usuario " + userId + ": " + completions.size());
         return completions;
     }
     
+    /**
+     * Lee un completado (con título, tipo e ícono del hábito) de la fila actual del cursor
+     */
+    private com.tuempresa.proyecto_01_11_25.model.HabitCompletion readCompletion(Cursor cursor) {
+        com.tuempresa.proyecto_01_11_25.model.HabitCompletion completion = 
+                new com.tuempresa.proyecto_01_11_25.model.HabitCompletion();
+        completion.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_ID)));
+        completion.setHabitId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_HABIT_ID)));
+        completion.setUserId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_USER_ID)));
+        completion.setCompletionDate(DayClock.format(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_DAY))));
+        completion.setLatitude(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_LAT)));
+        completion.setLongitude(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_LNG)));
+        completion.setCreatedAt(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMPLETION_CREATED_AT)) * 1000);
+        
+        // Información del hábito
+        completion.setHabitTitle(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)));
+        String typeStr = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE));
+        try {
+            completion.setHabitType(Habit.HabitType.valueOf(typeStr));
+        } catch (Exception e) {
+            completion.setHabitType(Habit.HabitType.DEMO);
+        }
+        
+        int iconIndex = cursor.getColumnIndex(COLUMN_HABIT_ICON);
+        if (iconIndex >= 0 && !cursor.isNull(iconIndex)) {
+            completion.setHabitIcon(cursor.getString(iconIndex));
+        }
+        return completion;
+    }
+
+    /**
+     * Obtiene los completados de un usuario dentro de un rectángulo y un rango de fechas.
+     * Usa el índice (user_id, geohash): el rectángulo se cubre con unas pocas celdas geohash
+     * y cada una es un rango del índice, así que no se recorre toda la tabla. Si west > east
+     * el rectángulo cruza el antimeridiano. Si el rectángulo es demasiado grande para cubrirlo
+     * con MAX_GEOHASH_CELLS_PER_QUERY celdas se recorren los completados del usuario y se filtra
+     * solo por latitud/longitud.
+     * @param fromDay Primer día incluido (LocalDate.toEpochDay())
+     * @param toDay Último día incluido (LocalDate.toEpochDay())
+     * @return Completados con información del hábito, más recientes primero
+     */
+    public java.util.List<com.tuempresa.proyecto_01_11_25.model.HabitCompletion> getCompletionsInArea(
+            long userId, double south, double west, double north, double east, long fromDay, long toDay) {
+        java.util.List<com.tuempresa.proyecto_01_11_25.model.HabitCompletion> completions = new java.util.ArrayList<>();
+        java.util.List<String> prefixes = GeoHash.coveringPrefixes(south, west, north, east, MAX_GEOHASH_CELLS_PER_QUERY);
+
+        StringBuilder cells = new StringBuilder();
+        java.util.List<String> args = new java.util.ArrayList<>(prefixes.size() * 3 + 7);
+        if (prefixes.isEmpty()) {
+            // Área demasiado grande para las celdas: un único rango del índice por usuario
+            cells.append("c.").append(COLUMN_COMPLETION_USER_ID).append(" = ?");
+            args.add(String.valueOf(userId));
+        }
+        for (String prefix : prefixes) {
+            if (cells.length() > 0) {
+                cells.append(" OR ");
+            }
+            // Cada término completo (usuario + rango) para que SQLite use el índice en cada uno
+            cells.append("(c.").append(COLUMN_COMPLETION_USER_ID).append(" = ? AND c.")
+                    .append(COLUMN_COMPLETION_GEOHASH).append(" >= ? AND c.")
+                    .append(COLUMN_COMPLETION_GEOHASH).append(" < ?)");
+            args.add(String.valueOf(userId));
+            args.add(prefix);
+            args.add(prefix + GeoHash.RANGE_END);
+        }
+        String longitudeFilter = west <= east
+                ? "c." + COLUMN_COMPLETION_LNG + " BETWEEN ? AND ?"
+                : "(c." + COLUMN_COMPLETION_LNG + " >= ? OR c." + COLUMN_COMPLETION_LNG + " <= ?)";
+        args.add(String.valueOf(south));
+        args.add(String.valueOf(north));
+        args.add(String.valueOf(west));
+        args.add(String.valueOf(east));
+        args.add(String.valueOf(fromDay));
+        args.add(String.valueOf(toDay));
+
+        String query = "SELECT c.*, h." + COLUMN_HABIT_TITLE + ", h." + COLUMN_HABIT_TYPE + ", h." + COLUMN_HABIT_ICON +
+                " FROM " + TABLE_HABIT_COMPLETIONS + " c " +
+                " INNER JOIN " + TABLE_HABITS + " h ON c." + COLUMN_COMPLETION_HABIT_ID + " = h." + COLUMN_HABIT_ID +
+                " WHERE (" + cells + ")" +
+                " AND c." + COLUMN_COMPLETION_LAT + " BETWEEN ? AND ?" +
+                " AND " + longitudeFilter +
+                " AND c." + COLUMN_COMPLETION_DAY + " BETWEEN ? AND ?" +
+                " ORDER BY c." + COLUMN_COMPLETION_CREATED_AT + " DESC";
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        long start = System.currentTimeMillis();
+        Cursor cursor = db.rawQuery(query, args.toArray(new String[0]));
+        try {
+            while (cursor.moveToNext()) {
+                completions.add(readCompletion(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        android.util.Log.d("HabitDatabaseHelper", "🗺️ Completados en área para usuario " + userId + ": " +
+                completions.size() + " (" + prefixes.size() + " celdas, " + (System.currentTimeMillis() - start) + " ms)");
+        return completions;
+    }
+
+    /**
+     * Cuenta los completados de un usuario por día. Se resuelve solo con el índice
+     * (user_id, day, habit_id), sin leer las filas de la tabla.
+     * @param fromDay Primer día incluido (LocalDate.toEpochDay())
+     * @param toDay Último día incluido (LocalDate.toEpochDay())
+     * @return Mapa día -> completados, en orden de día; los días sin completados no aparecen
+     */
+    public java.util.Map<Long, Integer> getDailyCompletionCounts(long userId, long fromDay, long toDay) {
+        java.util.Map<Long, Integer> counts = new java.util.LinkedHashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_COMPLETION_DAY + ", COUNT(*) FROM " + TABLE_HABIT_COMPLETIONS +
+                        " WHERE " + COLUMN_COMPLETION_USER_ID + " = ? AND " + COLUMN_COMPLETION_DAY + " BETWEEN ? AND ?" +
+                        " GROUP BY " + COLUMN_COMPLETION_DAY + " ORDER BY " + COLUMN_COMPLETION_DAY,
+                new String[]{String.valueOf(userId), String.valueOf(fromDay), String.valueOf(toDay)});
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getLong(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    /**
+     * Cuenta los completados de un usuario por mes a partir del resumen mensual, que los
+     * triggers mantienen al día: el coste no depende de cuánto historial haya.
+     * @param fromMonth Primer mes incluido (yyyyMM, por ejemplo 202501)
+     * @param toMonth Último mes incluido (yyyyMM)
+     * @return Mapa mes -> completados, en orden de mes; los meses sin completados no aparecen
+     */
+    public java.util.Map<Integer, Integer> getMonthlyCompletionCounts(long userId, int fromMonth, int toMonth) {
+        java.util.Map<Integer, Integer> counts = new java.util.LinkedHashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_MONTH_KEY + ", SUM(" + COLUMN_MONTH_COMPLETIONS + ") FROM " +
+                        TABLE_COMPLETION_MONTHS +
+                        " WHERE " + COLUMN_MONTH_USER_ID + " = ? AND " + COLUMN_MONTH_KEY + " BETWEEN ? AND ?" +
+                        " GROUP BY " + COLUMN_MONTH_KEY + " ORDER BY " + COLUMN_MONTH_KEY,
+                new String[]{String.valueOf(userId), String.valueOf(fromMonth), String.valueOf(toMonth)});
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getInt(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    /**
+     * Días (LocalDate.toEpochDay()) en que un hábito se completó dentro del rango, en orden
+     */
+    public java.util.List<Long> getCompletionDays(long habitId, long userId, long fromDay, long toDay) {
+        java.util.List<Long> days = new java.util.ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT DISTINCT " + COLUMN_COMPLETION_DAY + " FROM " + TABLE_HABIT_COMPLETIONS +
+                        " WHERE " + COLUMN_COMPLETION_USER_ID + " = ? AND " + COLUMN_COMPLETION_DAY + " BETWEEN ? AND ?" +
+                        " AND " + COLUMN_COMPLETION_HABIT_ID + " = ? ORDER BY " + COLUMN_COMPLETION_DAY,
+                new String[]{String.valueOf(userId), String.valueOf(fromDay), String.valueOf(toDay),
+                        String.valueOf(habitId)});
+        try {
+            while (cursor.moveToNext()) {
+                days.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return days;
+    }
+
     /**
      * Elimina el completado de HOY para un hábito específico
      * @param habitId ID del hábito
@@ -2291,18 +2715,17 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
      */
     public void deleteCompletion(long habitId, long userId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-        String today = sdf.format(new java.util.Date());
+        long today = DayClock.today();
         
         int deleted = db.delete(TABLE_HABIT_COMPLETIONS,
                 COLUMN_COMPLETION_HABIT_ID + " = ? AND " +
                 COLUMN_COMPLETION_USER_ID + " = ? AND " +
-                COLUMN_COMPLETION_DATE + " = ?",
-                new String[]{String.valueOf(habitId), String.valueOf(userId), today});
+                COLUMN_COMPLETION_DAY + " = ?",
+                new String[]{String.valueOf(habitId), String.valueOf(userId), String.valueOf(today)});
         
-        db.close();
         
         if (deleted > 0) {
+            refreshStreakDay(db, userId, today);
             android.util.Log.d("HabitDatabaseHelper", "✅ Completado eliminado: habitId=" + habitId + ", userId=" + userId);
         }
     }
@@ -2316,33 +2739,12 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
         int deleted = db.delete(TABLE_HABIT_COMPLETIONS,
                 COLUMN_COMPLETION_HABIT_ID + " = ?",
                 new String[]{String.valueOf(habitId)});
-        db.close();
         
         if (deleted > 0) {
             android.util.Log.d("HabitDatabaseHelper", "✅ " + deleted + " completados eliminados para habitId=" + habitId);
         }
     }
     
-    /**
-     * Limpia completados de días anteriores (mantiene solo hoy)
-     * @param userId ID del usuario
-     */
-    public void cleanOldCompletions(long userId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-        String today = sdf.format(new java.util.Date());
-        
-        int deleted = db.delete(TABLE_HABIT_COMPLETIONS,
-                COLUMN_COMPLETION_USER_ID + " = ? AND " + COLUMN_COMPLETION_DATE + " < ?",
-                new String[]{String.valueOf(userId), today});
-        
-        db.close();
-        
-        if (deleted > 0) {
-            android.util.Log.d("HabitDatabaseHelper", "🧹 " + deleted + " completados antiguos eliminados para usuario " + userId);
-        }
-    }
-    
     /**
      * Verifica si ya existe un completado hoy para un hábito
      * @param habitId ID del hábito
@@ -2351,20 +2753,18 @@ public class HabitDatabaseHelper extends SQLiteOpenHelper {
      */
     public boolean hasCompletionToday(long habitId, long userId) {
         SQLiteDatabase db = this.getReadableDatabase();
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-        String today = sdf.format(new java.util.Date());
-        
-        Cursor cursor = db.query(TABLE_HABIT_COMPLETIONS,
-                new String[]{COLUMN_COMPLETION_ID},
-                COLUMN_COMPLETION_HABIT_ID + " = ? AND " +
-                COLUMN_COMPLETION_USER_ID + " = ? AND " +
-                COLUMN_COMPLETION_DATE + " = ?",
-                new String[]{String.valueOf(habitId), String.valueOf(userId), today},
-                null, null, null);
+        long today = DayClock.today();
         
-        boolean exists = cursor.getCount() > 0;
-        cursor.close();
-        db.close();
-        return exists;
+        SQLiteStatement statement = statementCache.acquire(db, SQL_COMPLETION_EXISTS);
+        synchronized (statement) {
+            statement.bindLong(1, habitId);
+            statement.bindLong(2, userId);
+            statement.bindLong(3, today);
+            try {
+                return statement.simpleQueryForLong() == 1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
     }
 }
@@ -4,12 +4,23 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitCheckinDto;
+import com.tuempresa.proyecto_01_11_25.utils.DayClock;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Extensión de HabitDatabaseHelper para agregar funcionalidad de sincronización.
@@ -44,6 +55,12 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
     private static final String COLUMN_PENDING_RETRY_COUNT = "retry_count";
     private static final String COLUMN_PENDING_LAST_ERROR = "last_error";
     private static final String COLUMN_PENDING_PRIORITY = "priority";
+    private static final String COLUMN_PENDING_NEXT_ATTEMPT_AT = "next_attempt_at";
+    private static final String ENTITY_HABIT = "HABIT";
+
+    // Operaciones pendientes que se están enviando ahora mismo (compartido entre instancias)
+    private static final Set<Long> inFlightOperationIds = ConcurrentHashMap.newKeySet();
+    private static final Object compactionLock = new Object();
 
     public HabitDatabaseHelperSync(Context context) {
         // Llamar al constructor del padre que solo acepta Context
@@ -57,8 +74,14 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public static void deleteLocalDatabase(Context context) {
         try {
-            // Cerrar cualquier conexión abierta primero
-            context.deleteDatabase(DATABASE_NAME);
+            // Cerrar la conexión compartida antes de borrar los archivos (incluidos -wal y -shm):
+            // si siguiera abierta, las escrituras posteriores irían a archivos ya borrados
+            synchronized (HabitDatabaseHelper.class) {
+                closeSharedConnection();
+                context.deleteDatabase(DATABASE_NAME);
+            }
+            // Sin datos locales, la próxima sincronización tiene que descargar todo
+            new SessionManager(context).clearSyncWatermarks();
             Log.d(TAG, "Base de datos local eliminada: " + DATABASE_NAME);
         } catch (Exception e) {
             Log.e(TAG, "Error al eliminar base de datos local", e);
@@ -69,39 +92,30 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
     public void onCreate(SQLiteDatabase db) {
         // Llamar al onCreate del padre para crear las tablas base
         super.onCreate(db);
-        
-        // Agregar columnas de sincronización a la tabla habits
-        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SYNCED, "INTEGER DEFAULT 0");
-        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SERVER_ID, "INTEGER");
-        addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_UPDATED_AT, "INTEGER DEFAULT 0");
-
-        // Crear tabla de operaciones pendientes
-        String createPendingOpsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_OPERATIONS + " (" +
-                COLUMN_PENDING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
-                COLUMN_PENDING_ENTITY_TYPE + " TEXT NOT NULL, " +
-                COLUMN_PENDING_ENTITY_ID + " INTEGER NOT NULL, " +
-                COLUMN_PENDING_ENTITY_DATA + " TEXT, " +
-                COLUMN_PENDING_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                COLUMN_PENDING_RETRY_COUNT + " INTEGER DEFAULT 0, " +
-                COLUMN_PENDING_LAST_ERROR + " TEXT, " +
-                COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2" +
-                ")";
-        
-        db.execSQL(createPendingOpsTable);
-        Log.d(TAG, "Tabla de operaciones pendientes creada");
+        createSyncSchema(db);
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        super.onUpgrade(db, oldVersion, newVersion);
-        
-        // Agregar columnas de sincronización si no existen (para bases de datos existentes)
+    protected void registerMigrations(SchemaMigrator migrator) {
+        super.registerMigrations(migrator);
+        // Versión 15: el esquema de sincronización pasa a ser una migración más,
+        // en lugar de verificarse al abrir la base de datos o antes de cada operación
+        migrator.add(15, this::createSyncSchema);
+        // Versión 16: momento del próximo reintento de cada operación pendiente (backoff exponencial)
+        migrator.add(16, db -> addColumnIfNotExists(db, TABLE_PENDING_OPERATIONS,
+                COLUMN_PENDING_NEXT_ATTEMPT_AT, "INTEGER DEFAULT 0"));
+    }
+
+    /**
+     * Agrega las columnas de sincronización a habits y crea la tabla de operaciones pendientes.
+     * Solo se ejecuta desde onCreate o desde la migración correspondiente.
+     */
+    private void createSyncSchema(SQLiteDatabase db) {
         addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SYNCED, "INTEGER DEFAULT 0");
         addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SERVER_ID, "INTEGER");
         addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_UPDATED_AT, "INTEGER DEFAULT 0");
 
-        // Crear tabla de operaciones pendientes si no existe
+        // Crear tabla de operaciones pendientes
         String createPendingOpsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_OPERATIONS + " (" +
                 COLUMN_PENDING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
@@ -111,195 +125,53 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
                 COLUMN_PENDING_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
                 COLUMN_PENDING_RETRY_COUNT + " INTEGER DEFAULT 0, " +
                 COLUMN_PENDING_LAST_ERROR + " TEXT, " +
-                COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2" +
+                COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2, " +
+                COLUMN_PENDING_NEXT_ATTEMPT_AT + " INTEGER DEFAULT 0" +
                 ")";
         
-        try {
-            db.execSQL(createPendingOpsTable);
-            Log.d(TAG, "Tabla de operaciones pendientes creada/verificada");
-        } catch (Exception e) {
-            // La tabla ya existe, ignorar
-            Log.d(TAG, "Tabla de operaciones pendientes ya existe");
-        }
+        db.execSQL(createPendingOpsTable);
+        Log.d(TAG, "Esquema de sincronización creado");
     }
 
     // ========== MÉTODOS DE SINCRONIZACIÓN PARA HÁBITOS ==========
 
-    /**
-     * Verifica si una columna existe en la tabla
-     */
-    private boolean columnExists(SQLiteDatabase db, String table, String column) {
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
-            if (cursor != null) {
-                int columnIndex = cursor.getColumnIndex("name");
-                while (cursor.moveToNext()) {
-                    String name = cursor.getString(columnIndex);
-                    if (column.equals(name)) {
-                        return true;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error al verificar columna", e);
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Asegura que las columnas de sincronización existan
-     * Este método se ejecuta automáticamente antes de cualquier operación que use estas columnas
-     */
-    private void ensureSyncColumns(SQLiteDatabase db) {
-        try {
-            // Siempre intentar agregar las columnas (addColumnIfNotExists verifica internamente)
-            // Esto es más seguro que confiar solo en columnExists
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SYNCED, "INTEGER DEFAULT 0");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SERVER_ID, "INTEGER");
-            addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_UPDATED_AT, "INTEGER DEFAULT 0");
-            Log.d(TAG, "Columnas de sincronización verificadas");
-        } catch (Exception e) {
-            Log.e(TAG, "Error al asegurar columnas de sincronización", e);
-            // Intentar agregar las columnas de todas formas
-            try {
-                addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SYNCED, "INTEGER DEFAULT 0");
-                addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_SERVER_ID, "INTEGER");
-                addColumnIfNotExists(db, TABLE_HABITS, COLUMN_HABIT_UPDATED_AT, "INTEGER DEFAULT 0");
-            } catch (Exception e2) {
-                Log.e(TAG, "Error crítico al agregar columnas de sincronización", e2);
-            }
-        }
-    }
-    
-    /**
-     * Obtiene la base de datos de escritura asegurando que las columnas de sincronización existan
-     */
-    @Override
-    public SQLiteDatabase getWritableDatabase() {
-        SQLiteDatabase db = super.getWritableDatabase();
-        ensureSyncColumns(db);
-        return db;
-    }
-    
-    /**
-     * Obtiene la base de datos de lectura asegurando que las columnas de sincronización existan
-     */
-    @Override
-    public SQLiteDatabase getReadableDatabase() {
-        SQLiteDatabase db = super.getReadableDatabase();
-        ensureSyncColumns(db);
-        return db;
-    }
-
-    /**
-     * Verifica si una tabla existe
-     */
-    private boolean tableExists(SQLiteDatabase db, String tableName) {
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name=?", new String[]{tableName});
-            return cursor != null && cursor.getCount() > 0;
-        } catch (Exception e) {
-            Log.e(TAG, "Error al verificar tabla", e);
-            return false;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-    }
-
-    /**
-     * Asegura que la tabla de operaciones pendientes exista
-     */
-    private void ensurePendingOperationsTable(SQLiteDatabase db) {
-        if (!tableExists(db, TABLE_PENDING_OPERATIONS)) {
-            String createPendingOpsTable = "CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_OPERATIONS + " (" +
-                    COLUMN_PENDING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_PENDING_OPERATION_TYPE + " TEXT NOT NULL, " +
-                    COLUMN_PENDING_ENTITY_TYPE + " TEXT NOT NULL, " +
-                    COLUMN_PENDING_ENTITY_ID + " INTEGER NOT NULL, " +
-                    COLUMN_PENDING_ENTITY_DATA + " TEXT, " +
-                    COLUMN_PENDING_CREATED_AT + " INTEGER DEFAULT (strftime('%s', 'now')), " +
-                    COLUMN_PENDING_RETRY_COUNT + " INTEGER DEFAULT 0, " +
-                    COLUMN_PENDING_LAST_ERROR + " TEXT, " +
-                    COLUMN_PENDING_PRIORITY + " INTEGER DEFAULT 2" +
-                    ")";
-            
-            db.execSQL(createPendingOpsTable);
-            Log.d(TAG, "Tabla 'pending_operations' creada");
-        }
-    }
-
     /**
      * Obtiene hábitos no sincronizados del usuario actual
      */
     public List<Habit> getUnsyncedHabits() {
-        List<Habit> habits = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
-        // Asegurar que las columnas de sincronización existan
-        ensureSyncColumns(db);
-        
         // CRÍTICO: Filtrar por userId del usuario actual
         long currentUserId = getCurrentUserId();
         if (currentUserId <= 0) {
             Log.w(TAG, "⚠️ No se pueden obtener hábitos: userId inválido (" + currentUserId + ")");
-            return habits;
+            return new ArrayList<>();
         }
         
         Cursor cursor = db.query(TABLE_HABITS, null, 
                 COLUMN_HABIT_SYNCED + "=0 AND " + COLUMN_HABIT_USER_ID + "=?",
                 new String[]{String.valueOf(currentUserId)}, null, null, COLUMN_HABIT_CREATED_AT + " DESC");
-
-        if (cursor.moveToFirst()) {
-            do {
-                Habit habit = cursorToHabit(cursor);
-                habits.add(habit);
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        db.close();
-        return habits;
+        return HabitRowMapper.mapAll(cursor);
     }
 
     /**
      * Obtiene hábitos sincronizados (que tienen serverId) del usuario actual
      */
     public List<Habit> getSyncedHabits() {
-        List<Habit> habits = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
-        // Asegurar que las columnas de sincronización existan
-        ensureSyncColumns(db);
-        
         // CRÍTICO: Filtrar por userId del usuario actual
         long currentUserId = getCurrentUserId();
         if (currentUserId <= 0) {
             Log.w(TAG, "⚠️ No se pueden obtener hábitos sincronizados: userId inválido (" + currentUserId + ")");
-            return habits;
+            return new ArrayList<>();
         }
         
         // Obtener hábitos que tienen serverId (están sincronizados) Y pertenecen al usuario actual
         Cursor cursor = db.query(TABLE_HABITS, null, 
                 COLUMN_HABIT_SYNCED + "=1 AND " + COLUMN_HABIT_SERVER_ID + " IS NOT NULL AND " + COLUMN_HABIT_USER_ID + "=?", 
                 new String[]{String.valueOf(currentUserId)}, null, null, COLUMN_HABIT_CREATED_AT + " DESC");
-
-        if (cursor.moveToFirst()) {
-            do {
-                Habit habit = cursorToHabit(cursor);
-                habits.add(habit);
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        // NO cerrar db aquí - HabitDatabaseHelper maneja la conexión automáticamente
-        // db.close(); // ELIMINADO: causa "attempt to re-open an already-closed object"
-        return habits;
+        return HabitRowMapper.mapAll(cursor);
     }
 
     /**
@@ -307,30 +179,63 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public void markHabitAsSynced(long localId, long serverId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        // ensureSyncColumns ya se ejecuta en getWritableDatabase(), pero lo llamamos de nuevo por seguridad
-        ensureSyncColumns(db);
         try {
             ContentValues values = new ContentValues();
             values.put(COLUMN_HABIT_SYNCED, 1);
             values.put(COLUMN_HABIT_SERVER_ID, serverId);
             values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
             db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)});
+            notifyHabitsChanged(localId);
         } catch (Exception e) {
             Log.e(TAG, "Error al marcar hábito como sincronizado", e);
-            // Si falla, intentar agregar las columnas y reintentar
-            ensureSyncColumns(db);
-            try {
-                ContentValues values = new ContentValues();
-                values.put(COLUMN_HABIT_SYNCED, 1);
-                values.put(COLUMN_HABIT_SERVER_ID, serverId);
-                values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
-                db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)});
-            } catch (Exception e2) {
-                Log.e(TAG, "Error crítico al marcar hábito como sincronizado", e2);
+        }
+    }
+
+    /**
+     * Marca varios hábitos como sincronizados en una sola transacción.
+     * Los observadores solo se notifican si la transacción se confirmó.
+     * @param serverIdsByLocalId mapa localId → serverId devuelto por el servidor
+     * @return true si se guardaron todos; false si la transacción se revirtió y ninguno quedó marcado
+     */
+    public boolean markHabitsAsSynced(Map<Long, Long> serverIdsByLocalId) {
+        if (serverIdsByLocalId.isEmpty()) {
+            return true;
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        long now = System.currentTimeMillis() / 1000;
+        SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_HABITS + " SET "
+                + COLUMN_HABIT_SYNCED + " = 1, " + COLUMN_HABIT_SERVER_ID + " = ?, "
+                + COLUMN_HABIT_UPDATED_AT + " = ? WHERE " + COLUMN_HABIT_ID + " = ?");
+        boolean committed = false;
+        db.beginTransaction();
+        try {
+            for (Map.Entry<Long, Long> entry : serverIdsByLocalId.entrySet()) {
+                statement.bindLong(1, entry.getValue());
+                statement.bindLong(2, now);
+                statement.bindLong(3, entry.getKey());
+                statement.executeUpdateDelete();
             }
+            db.setTransactionSuccessful();
+            committed = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error al marcar hábitos como sincronizados", e);
         } finally {
-            db.close();
+            try {
+                db.endTransaction();
+            } catch (Exception e) {
+                // El commit falló (p. ej. disco lleno): la transacción quedó revertida
+                Log.e(TAG, "Error al confirmar hábitos sincronizados", e);
+                committed = false;
+            }
+            statement.close();
+        }
+        if (!committed) {
+            return false;
+        }
+        for (Long localId : serverIdsByLocalId.keySet()) {
+            notifyHabitsChanged(localId);
         }
+        return true;
     }
 
     /**
@@ -338,34 +243,20 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public void markHabitAsUnsynced(long localId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        // ensureSyncColumns ya se ejecuta en getWritableDatabase(), pero lo llamamos de nuevo por seguridad
-        ensureSyncColumns(db);
         try {
             ContentValues values = new ContentValues();
             values.put(COLUMN_HABIT_SYNCED, 0);
             values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
             db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)});
+            notifyHabitsChanged(localId);
         } catch (Exception e) {
             Log.e(TAG, "Error al marcar hábito como no sincronizado", e);
-            // Si falla, intentar agregar las columnas y reintentar
-            ensureSyncColumns(db);
-            try {
-                ContentValues values = new ContentValues();
-                values.put(COLUMN_HABIT_SYNCED, 0);
-                values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
-                db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)});
-            } catch (Exception e2) {
-                Log.e(TAG, "Error crítico al marcar hábito como no sincronizado", e2);
-            }
-        } finally {
-            db.close();
         }
     }
 
     /**
      * Obtiene un hábito por serverId
      * @param serverId El ID del servidor
-     * @param db Instancia opcional de SQLiteDatabase. Si se proporciona, no se cerrará.
      * @return El hábito encontrado o null
      */
     public Habit getHabitByServerId(long serverId) {
@@ -375,32 +266,20 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
     /**
      * Obtiene un hábito por serverId usando una instancia de base de datos existente
      * @param serverId El ID del servidor
-     * @param db Instancia opcional de SQLiteDatabase. Si se proporciona, no se cerrará.
+     * @param db Instancia opcional de SQLiteDatabase. Si es null se usa la conexión compartida.
      * @return El hábito encontrado o null
      */
     private Habit getHabitByServerId(long serverId, SQLiteDatabase db) {
-        boolean shouldClose = false;
         if (db == null) {
             db = this.getReadableDatabase();
-            shouldClose = true;
         }
-        ensureSyncColumns(db);
         
         // CRÍTICO: Filtrar también por userId para asegurar que solo se obtengan hábitos del usuario actual
         long currentUserId = getCurrentUserId();
         Cursor cursor = db.query(TABLE_HABITS, null, 
                 COLUMN_HABIT_SERVER_ID + "=? AND " + COLUMN_HABIT_USER_ID + "=?",
                 new String[]{String.valueOf(serverId), String.valueOf(currentUserId)}, null, null, null);
-
-        Habit habit = null;
-        if (cursor.moveToFirst()) {
-            habit = cursorToHabit(cursor);
-        }
-        cursor.close();
-        if (shouldClose) {
-            db.close();
-        }
-        return habit;
+        return HabitRowMapper.mapFirst(cursor);
     }
 
     /**
@@ -410,7 +289,6 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public long upsertHabitFromServer(Habit habit, long serverId) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ensureSyncColumns(db);
         
         // Obtener el userId actual del usuario logueado
         long currentUserId = getCurrentUserId();
@@ -436,56 +314,24 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             };
             
             Cursor cursor = db.query(TABLE_HABITS, null, selection, selectionArgs, null, null, null, "1");
-            if (cursor != null && cursor.moveToFirst()) {
+            existing = HabitRowMapper.mapFirst(cursor);
+            if (existing != null) {
                 // Encontrar un hábito local que coincide
-                long localId = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID));
-                // Obtener el hábito completo usando cursorToHabit
-                existing = cursorToHabit(cursor);
-                cursor.close();
+                long localId = existing.getId();
                 Log.d(TAG, "Encontrado hábito local que coincide (evitando duplicado): " + existing.getTitle() + 
                       " (localId: " + localId + ", serverId actual: " + getServerId(localId) + 
                       ", nuevo serverId: " + serverId + ")");
-            } else if (cursor != null) {
-                cursor.close();
             }
         }
         
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_HABIT_TITLE, habit.getTitle());
-        values.put(COLUMN_HABIT_GOAL, habit.getGoal());
-        values.put(COLUMN_HABIT_CATEGORY, habit.getCategory());
-        values.put(COLUMN_HABIT_TYPE, habit.getType().name());
-        values.put(COLUMN_HABIT_COMPLETED, habit.isCompleted() ? 1 : 0);
-        values.put(COLUMN_HABIT_POINTS, habit.getPoints());
-        values.put(COLUMN_HABIT_TARGET_VALUE, habit.getTargetValue());
-        if (habit.getTargetUnit() != null) values.put(COLUMN_HABIT_TARGET_UNIT, habit.getTargetUnit());
-        if (habit.getPagesPerDay() != null) values.put(COLUMN_HABIT_PAGES_PER_DAY, habit.getPagesPerDay());
-        if (habit.getReminderTimes() != null) values.put(COLUMN_HABIT_REMINDER_TIMES, habit.getReminderTimes());
-        if (habit.getDurationMinutes() != null) values.put(COLUMN_HABIT_DURATION_MINUTES, habit.getDurationMinutes());
-        if (habit.getDndMode() != null) values.put(COLUMN_HABIT_DND_MODE, habit.getDndMode() ? 1 : 0);
-        if (habit.getMusicId() != null) values.put(COLUMN_HABIT_MUSIC_ID, habit.getMusicId());
-        if (habit.getJournalEnabled() != null) values.put(COLUMN_HABIT_JOURNAL_ENABLED, habit.getJournalEnabled() ? 1 : 0);
-        if (habit.getGymDays() != null) values.put(COLUMN_HABIT_GYM_DAYS, habit.getGymDays());
-        if (habit.getWaterGoalGlasses() != null) values.put(COLUMN_HABIT_WATER_GOAL_GLASSES, habit.getWaterGoalGlasses());
-        if (habit.getWalkGoalMeters() != null) values.put(COLUMN_HABIT_WALK_GOAL_METERS, habit.getWalkGoalMeters());
-        if (habit.getWalkGoalSteps() != null) values.put(COLUMN_HABIT_WALK_GOAL_STEPS, habit.getWalkGoalSteps());
-        if (habit.getOneClickComplete() != null) values.put(COLUMN_HABIT_ONE_CLICK_COMPLETE, habit.getOneClickComplete() ? 1 : 0);
-        if (habit.getEnglishMode() != null) values.put(COLUMN_HABIT_ENGLISH_MODE, habit.getEnglishMode() ? 1 : 0);
-        if (habit.getCodingMode() != null) values.put(COLUMN_HABIT_CODING_MODE, habit.getCodingMode() ? 1 : 0);
-        if (habit.getHabitIcon() != null) values.put(COLUMN_HABIT_ICON, habit.getHabitIcon());
-        
-        // IMPORTANTE: Establecer el userId del usuario actual
-        values.put(COLUMN_HABIT_USER_ID, currentUserId);
-        
-        values.put(COLUMN_HABIT_SYNCED, 1);
-        values.put(COLUMN_HABIT_SERVER_ID, serverId);
-        values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
+        ContentValues values = buildServerHabitValues(habit, serverId, currentUserId);
         
         long id;
         if (existing != null) {
             // Actualizar existente (ya sea por serverId o por coincidencia local)
             id = existing.getId();
             db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(id)});
+            notifyHabitsChanged(id);
             Log.d(TAG, "Hábito actualizado desde servidor: " + habit.getTitle() + " (localId: " + id + ", serverId: " + serverId + ")");
         } else {
             // Insertar nuevo usando insertHabitFull
@@ -517,16 +363,266 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             Log.d(TAG, "Hábito nuevo insertado desde servidor: " + habit.getTitle() + " (localId: " + id + ", serverId: " + serverId + ")");
         }
         
-        db.close();
         return id;
     }
 
+    /**
+     * Aplica de una vez una instantánea completa del servidor: actualiza, inserta y elimina
+     * hábitos del usuario actual dentro de una única transacción.
+     * Los hábitos locales se resuelven con un mapa serverId → localId construido con una sola
+     * consulta, en lugar de buscar cada hábito por separado.
+     *
+     * @param serverHabits hábitos del servidor ya filtrados para el usuario actual
+     * @param serverIds todos los serverIds presentes en la instantánea; los hábitos locales
+     *                  sincronizados cuyo serverId no esté aquí se eliminan
+     */
+    public MergeResult mergeServerSnapshot(List<Habit> serverHabits, Set<Long> serverIds) {
+        return mergeServerHabits(serverHabits, serverIds, null);
+    }
+
+    /**
+     * Aplica un cambio incremental del servidor en una única transacción: actualiza o inserta
+     * los hábitos modificados y elimina los hábitos sincronizados cuyo serverId llega como eliminado.
+     * Los hábitos que no aparecen en el cambio no se tocan.
+     *
+     * @param changedHabits hábitos modificados desde la última marca, ya filtrados para el usuario actual
+     * @param deletedServerIds serverIds eliminados en el servidor desde la última marca
+     */
+    public MergeResult applyServerChanges(List<Habit> changedHabits, Collection<Long> deletedServerIds) {
+        if (changedHabits.isEmpty() && deletedServerIds.isEmpty()) {
+            return new MergeResult();
+        }
+        return mergeServerHabits(changedHabits, null, deletedServerIds);
+    }
+
+    /**
+     * Con snapshotIds se eliminan los hábitos sincronizados ausentes de la instantánea;
+     * con deletedServerIds solo los indicados.
+     */
+    private MergeResult mergeServerHabits(List<Habit> serverHabits, Set<Long> snapshotIds,
+                                          Collection<Long> deletedServerIds) {
+        MergeResult result = new MergeResult();
+        long currentUserId = getCurrentUserId();
+        if (currentUserId <= 0) {
+            Log.w(TAG, "⚠️ No se pueden aplicar hábitos del servidor: userId inválido (" + currentUserId + ")");
+            return result;
+        }
+
+        long start = System.currentTimeMillis();
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            // 1. Mapas de hábitos locales del usuario: por serverId y, para los que aún no
+            // se han subido, por título + tipo (para no duplicar hábitos creados offline)
+            Map<Long, Long> localIdsByServerId = new HashMap<>();
+            Set<Long> syncedLocalIds = new HashSet<>();
+            Map<String, Long> unsyncedIdsByKey = new HashMap<>();
+            Cursor cursor = db.query(TABLE_HABITS,
+                    new String[]{COLUMN_HABIT_ID, COLUMN_HABIT_SERVER_ID, COLUMN_HABIT_SYNCED,
+                            COLUMN_HABIT_TITLE, COLUMN_HABIT_TYPE},
+                    COLUMN_HABIT_USER_ID + "=?", new String[]{String.valueOf(currentUserId)},
+                    null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    long localId = cursor.getLong(0);
+                    long serverId = cursor.isNull(1) ? 0 : cursor.getLong(1);
+                    if (serverId > 0) {
+                        localIdsByServerId.put(serverId, localId);
+                        if (cursor.getInt(2) == 1) {
+                            syncedLocalIds.add(localId);
+                        }
+                    } else {
+                        String key = matchKey(cursor.getString(3), cursor.getString(4));
+                        if (!unsyncedIdsByKey.containsKey(key)) {
+                            unsyncedIdsByKey.put(key, localId);
+                        }
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // 2. Eliminar hábitos sincronizados que ya no existen en el servidor
+            String[] idArg = new String[1];
+            if (snapshotIds != null) {
+                for (Map.Entry<Long, Long> entry : localIdsByServerId.entrySet()) {
+                    long localId = entry.getValue();
+                    if (!snapshotIds.contains(entry.getKey()) && syncedLocalIds.contains(localId)) {
+                        idArg[0] = String.valueOf(localId);
+                        result.deleted += db.delete(TABLE_HABITS, COLUMN_HABIT_ID + "=?", idArg);
+                    }
+                }
+            } else {
+                for (Long serverId : deletedServerIds) {
+                    Long localId = localIdsByServerId.remove(serverId);
+                    if (localId != null && syncedLocalIds.contains(localId)) {
+                        idArg[0] = String.valueOf(localId);
+                        result.deleted += db.delete(TABLE_HABITS, COLUMN_HABIT_ID + "=?", idArg);
+                    }
+                }
+            }
+
+            // 3. Actualizar o insertar cada hábito del servidor
+            for (Habit habit : serverHabits) {
+                long serverId = habit.getId();
+                ContentValues values = buildServerHabitValues(habit, serverId, currentUserId);
+                Long localId = localIdsByServerId.get(serverId);
+                if (localId == null) {
+                    localId = unsyncedIdsByKey.remove(matchKey(habit.getTitle(), habit.getType().name()));
+                }
+                if (localId != null) {
+                    idArg[0] = String.valueOf(localId);
+                    db.update(TABLE_HABITS, values, COLUMN_HABIT_ID + "=?", idArg);
+                    result.updated++;
+                } else {
+                    values.put(COLUMN_HABIT_POINTS_PER_COMPLETION, habit.getPoints());
+                    localId = db.insert(TABLE_HABITS, null, values);
+                    if (localId > 0) {
+                        result.inserted++;
+                    }
+                }
+                localIdsByServerId.put(serverId, localId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (result.getAppliedCount() + result.deleted > 0) {
+            notifyHabitsChanged(ALL_HABITS);
+        }
+        Log.d(TAG, "Hábitos del servidor aplicados (" + (snapshotIds != null ? "instantánea" : "incremental") + ") en " + (System.currentTimeMillis() - start) + " ms: "
+                + result.inserted + " insertados, " + result.updated + " actualizados, "
+                + result.deleted + " eliminados");
+        return result;
+    }
+
+    private static String matchKey(String title, String type) {
+        return title + '\u0000' + type;
+    }
+
+    /**
+     * Valores de un hábito recibido del servidor, asignado al usuario actual y marcado como sincronizado.
+     */
+    private ContentValues buildServerHabitValues(Habit habit, long serverId, long currentUserId) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_HABIT_TITLE, habit.getTitle());
+        values.put(COLUMN_HABIT_GOAL, habit.getGoal());
+        values.put(COLUMN_HABIT_CATEGORY, habit.getCategory());
+        values.put(COLUMN_HABIT_TYPE, habit.getType().name());
+        values.put(COLUMN_HABIT_COMPLETED, habit.isCompleted() ? 1 : 0);
+        values.put(COLUMN_HABIT_POINTS, habit.getPoints());
+        values.put(COLUMN_HABIT_TARGET_VALUE, habit.getTargetValue());
+        if (habit.getTargetUnit() != null) values.put(COLUMN_HABIT_TARGET_UNIT, habit.getTargetUnit());
+        if (habit.getPagesPerDay() != null) values.put(COLUMN_HABIT_PAGES_PER_DAY, habit.getPagesPerDay());
+        if (habit.getReminderTimes() != null) values.put(COLUMN_HABIT_REMINDER_TIMES, habit.getReminderTimes());
+        if (habit.getDurationMinutes() != null) values.put(COLUMN_HABIT_DURATION_MINUTES, habit.getDurationMinutes());
+        if (habit.getDndMode() != null) values.put(COLUMN_HABIT_DND_MODE, habit.getDndMode() ? 1 : 0);
+        if (habit.getMusicId() != null) values.put(COLUMN_HABIT_MUSIC_ID, habit.getMusicId());
+        if (habit.getJournalEnabled() != null) values.put(COLUMN_HABIT_JOURNAL_ENABLED, habit.getJournalEnabled() ? 1 : 0);
+        if (habit.getGymDays() != null) values.put(COLUMN_HABIT_GYM_DAYS, habit.getGymDays());
+        if (habit.getWaterGoalGlasses() != null) values.put(COLUMN_HABIT_WATER_GOAL_GLASSES, habit.getWaterGoalGlasses());
+        if (habit.getWalkGoalMeters() != null) values.put(COLUMN_HABIT_WALK_GOAL_METERS, habit.getWalkGoalMeters());
+        if (habit.getWalkGoalSteps() != null) values.put(COLUMN_HABIT_WALK_GOAL_STEPS, habit.getWalkGoalSteps());
+        if (habit.getOneClickComplete() != null) values.put(COLUMN_HABIT_ONE_CLICK_COMPLETE, habit.getOneClickComplete() ? 1 : 0);
+        if (habit.getEnglishMode() != null) values.put(COLUMN_HABIT_ENGLISH_MODE, habit.getEnglishMode() ? 1 : 0);
+        if (habit.getCodingMode() != null) values.put(COLUMN_HABIT_CODING_MODE, habit.getCodingMode() ? 1 : 0);
+        if (habit.getHabitIcon() != null) values.put(COLUMN_HABIT_ICON, habit.getHabitIcon());
+        values.put(COLUMN_HABIT_SYNCED, 1);
+        values.put(COLUMN_HABIT_SERVER_ID, serverId);
+        values.put(COLUMN_HABIT_UPDATED_AT, System.currentTimeMillis() / 1000);
+        // IMPORTANTE: Establecer el userId del usuario actual
+        values.put(COLUMN_HABIT_USER_ID, currentUserId);
+        return values;
+    }
+
+    /**
+     * Obtiene en una sola consulta el serverId de todos los hábitos del usuario actual que lo tienen.
+     * @return mapa localId → serverId
+     */
+    public Map<Long, Long> getServerIdsByLocalId() {
+        Map<Long, Long> serverIds = new HashMap<>();
+        long currentUserId = getCurrentUserId();
+        if (currentUserId <= 0) {
+            return serverIds;
+        }
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_ID, COLUMN_HABIT_SERVER_ID},
+                COLUMN_HABIT_USER_ID + "=? AND " + COLUMN_HABIT_SERVER_ID + " > 0",
+                new String[]{String.valueOf(currentUserId)}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                serverIds.put(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return serverIds;
+    }
+
+    /**
+     * Obtiene en una sola consulta el localId de todos los hábitos del usuario actual con serverId.
+     * @return mapa serverId → localId
+     */
+    public Map<Long, Long> getLocalIdsByServerId() {
+        Map<Long, Long> localIds = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : getServerIdsByLocalId().entrySet()) {
+            localIds.put(entry.getValue(), entry.getKey());
+        }
+        return localIds;
+    }
+
+    /**
+     * Guarda en una única transacción los completados de hoy recibidos del servidor.
+     * Los check-ins cuyo hábito no existe localmente se ignoran, igual que los que ya
+     * estaban guardados (restricción única hábito/usuario/día).
+     *
+     * @param localIdsByServerId mapa serverId → localId de {@link #getLocalIdsByServerId()}
+     * @return número de completados nuevos
+     */
+    public int saveTodayCheckins(long userId, List<HabitCheckinDto> checkins, Map<Long, Long> localIdsByServerId) {
+        long now = System.currentTimeMillis() / 1000;
+        long day = DayClock.today();
+
+        int inserted = 0;
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (HabitCheckinDto checkin : checkins) {
+                Long localHabitId = checkin.getHabitId() != null ? localIdsByServerId.get(checkin.getHabitId()) : null;
+                if (localHabitId == null) {
+                    continue;
+                }
+                values.clear();
+                values.put(COLUMN_COMPLETION_HABIT_ID, localHabitId);
+                values.put(COLUMN_COMPLETION_USER_ID, userId);
+                double lat = checkin.getLatitude() != null ? checkin.getLatitude() : 0.0;
+                double lng = checkin.getLongitude() != null ? checkin.getLongitude() : 0.0;
+                values.put(COLUMN_COMPLETION_LAT, lat);
+                values.put(COLUMN_COMPLETION_LNG, lng);
+                values.put(COLUMN_COMPLETION_CREATED_AT, now);
+                values.put(COLUMN_COMPLETION_GEOHASH, completionGeoHash(lat, lng));
+                values.put(COLUMN_COMPLETION_DAY, day);
+                if (db.insertWithOnConflict(TABLE_HABIT_COMPLETIONS, null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    inserted++;
+                }
+            }
+            if (inserted > 0) {
+                // Un solo ajuste de la racha para todo el lote
+                refreshStreakDay(db, userId, day);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return inserted;
+    }
+
     /**
      * Obtiene el serverId de un hábito local
      */
     public Long getServerId(long localId) {
         SQLiteDatabase db = this.getReadableDatabase();
-        ensureSyncColumns(db);
         Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_SERVER_ID}, 
                 COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(localId)}, null, null, null);
         
@@ -535,7 +631,6 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             serverId = cursor.getLong(0);
         }
         cursor.close();
-        db.close();
         return serverId;
     }
 
@@ -544,7 +639,6 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public Long getLocalHabitIdByServerId(long serverId) {
         SQLiteDatabase db = this.getReadableDatabase();
-        ensureSyncColumns(db);
         Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_ID}, 
                 COLUMN_HABIT_SERVER_ID + "=?", new String[]{String.valueOf(serverId)}, null, null, null);
         
@@ -553,7 +647,6 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             localId = cursor.getLong(0);
         }
         cursor.close();
-        db.close();
         return localId;
     }
 
@@ -562,7 +655,6 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public boolean isHabitSynced(long id) {
         SQLiteDatabase db = this.getReadableDatabase();
-        ensureSyncColumns(db);
         Cursor cursor = db.query(TABLE_HABITS, new String[]{COLUMN_HABIT_SYNCED}, 
                 COLUMN_HABIT_ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
         
@@ -571,21 +663,18 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
             synced = cursor.getInt(0) == 1;
         }
         cursor.close();
-        db.close();
         return synced;
     }
 
     // ========== MÉTODOS PARA OPERACIONES PENDIENTES ==========
 
     /**
-     * Guarda una operación pendiente
+     * Guarda una operación pendiente y compacta las operaciones pendientes de la misma entidad.
+     * @return id de la operación insertada (puede haberse fusionado con otra durante la compactación)
      */
     public long savePendingOperation(String operationType, String entityType, long entityId, String entityData) {
         SQLiteDatabase db = this.getWritableDatabase();
         
-        // Asegurar que la tabla exista
-        ensurePendingOperationsTable(db);
-        
         ContentValues values = new ContentValues();
         values.put(COLUMN_PENDING_OPERATION_TYPE, operationType);
         values.put(COLUMN_PENDING_ENTITY_TYPE, entityType);
@@ -594,11 +683,179 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         values.put(COLUMN_PENDING_CREATED_AT, System.currentTimeMillis() / 1000);
         values.put(COLUMN_PENDING_PRIORITY, 2); // Prioridad media por defecto
         
-        long id = db.insert(TABLE_PENDING_OPERATIONS, null, values);
-        db.close();
+        long id;
+        synchronized (compactionLock) {
+            db.beginTransaction();
+            try {
+                id = db.insert(TABLE_PENDING_OPERATIONS, null, values);
+                if (ENTITY_HABIT.equals(entityType)) {
+                    compactPendingOperations(db, entityId);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
         return id;
     }
 
+    /**
+     * Compacta todas las operaciones pendientes de hábitos antes de reproducirlas.
+     * @return número de operaciones eliminadas
+     */
+    public int compactPendingOperations() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        int eliminated;
+        synchronized (compactionLock) {
+            db.beginTransaction();
+            try {
+                eliminated = compactPendingOperations(db, null);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        if (eliminated > 0) {
+            Log.d(TAG, "Operaciones pendientes compactadas: " + eliminated + " eliminadas");
+        }
+        return eliminated;
+    }
+
+    /**
+     * Fusiona operaciones consecutivas de un mismo hábito (o de todos si entityId es null):
+     * UPDATE + UPDATE → último UPDATE, CREATE + UPDATE → CREATE con los datos más recientes,
+     * UPDATE + DELETE → DELETE y CREATE + DELETE → nada.
+     * Solo se compactan hábitos: en CHECKIN el entity_id es el del hábito y no identifica un check-in.
+     * Las entidades con una operación en curso no se tocan.
+     */
+    private int compactPendingOperations(SQLiteDatabase db, Long entityId) {
+        String selection = COLUMN_PENDING_ENTITY_TYPE + "=?";
+        String[] selectionArgs = new String[]{ENTITY_HABIT};
+        if (entityId != null) {
+            selection += " AND " + COLUMN_PENDING_ENTITY_ID + "=?";
+            selectionArgs = new String[]{ENTITY_HABIT, String.valueOf(entityId)};
+        }
+        Cursor cursor = db.query(TABLE_PENDING_OPERATIONS,
+                new String[]{COLUMN_PENDING_ID, COLUMN_PENDING_OPERATION_TYPE, COLUMN_PENDING_ENTITY_ID, COLUMN_PENDING_ENTITY_DATA},
+                selection, selectionArgs, null, null,
+                COLUMN_PENDING_ENTITY_ID + " ASC, " + COLUMN_PENDING_ID + " ASC");
+
+        Map<Long, List<PendingOperation>> byEntity = new LinkedHashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                PendingOperation op = new PendingOperation();
+                op.id = cursor.getLong(0);
+                op.operationType = cursor.getString(1);
+                op.entityId = cursor.getLong(2);
+                op.entityData = cursor.getString(3);
+                List<PendingOperation> group = byEntity.get(op.entityId);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    byEntity.put(op.entityId, group);
+                }
+                group.add(op);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<Long> toDelete = new ArrayList<>();
+        Map<Long, String> dataToUpdate = new HashMap<>();
+        for (List<PendingOperation> group : byEntity.values()) {
+            if (group.size() < 2 || hasOperationInFlight(group)) {
+                continue;
+            }
+            List<PendingOperation> compacted = new ArrayList<>();
+            for (PendingOperation op : group) {
+                mergeInto(compacted, op, toDelete, dataToUpdate);
+            }
+        }
+
+        String[] idArg = new String[1];
+        for (Map.Entry<Long, String> entry : dataToUpdate.entrySet()) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_PENDING_ENTITY_DATA, entry.getValue());
+            idArg[0] = String.valueOf(entry.getKey());
+            db.update(TABLE_PENDING_OPERATIONS, values, COLUMN_PENDING_ID + "=?", idArg);
+        }
+        int eliminated = 0;
+        for (Long id : toDelete) {
+            idArg[0] = String.valueOf(id);
+            eliminated += db.delete(TABLE_PENDING_OPERATIONS, COLUMN_PENDING_ID + "=?", idArg);
+        }
+        return eliminated;
+    }
+
+    private static boolean hasOperationInFlight(List<PendingOperation> group) {
+        for (PendingOperation op : group) {
+            if (inFlightOperationIds.contains(op.id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void mergeInto(List<PendingOperation> compacted, PendingOperation op,
+                                  List<Long> toDelete, Map<Long, String> dataToUpdate) {
+        while (!compacted.isEmpty()) {
+            PendingOperation last = compacted.get(compacted.size() - 1);
+            if ("UPDATE".equals(op.operationType) && "UPDATE".equals(last.operationType)) {
+                // UPDATE + UPDATE: basta con el último
+                compacted.remove(compacted.size() - 1);
+                toDelete.add(last.id);
+                dataToUpdate.remove(last.id);
+            } else if ("UPDATE".equals(op.operationType) && "CREATE".equals(last.operationType)) {
+                // CREATE + UPDATE: crear directamente con los datos actualizados
+                last.entityData = op.entityData;
+                dataToUpdate.put(last.id, op.entityData);
+                toDelete.add(op.id);
+                return;
+            } else if ("DELETE".equals(op.operationType) && "UPDATE".equals(last.operationType)) {
+                // UPDATE + DELETE: la actualización ya no importa
+                compacted.remove(compacted.size() - 1);
+                toDelete.add(last.id);
+                dataToUpdate.remove(last.id);
+            } else if ("DELETE".equals(op.operationType) && "CREATE".equals(last.operationType)) {
+                // CREATE + DELETE: el servidor nunca llegó a conocer la entidad
+                compacted.remove(compacted.size() - 1);
+                toDelete.add(last.id);
+                dataToUpdate.remove(last.id);
+                toDelete.add(op.id);
+                return;
+            } else {
+                break;
+            }
+        }
+        compacted.add(op);
+    }
+
+    /**
+     * Marca una operación como en curso para que la compactación no la fusione ni la elimine,
+     * y recarga sus datos por si una compactación anterior le fusionó cambios más recientes.
+     * @return false si la operación ya no existe (fue compactada) y no debe enviarse
+     */
+    public boolean beginPendingOperation(PendingOperation op) {
+        synchronized (compactionLock) {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, new String[]{COLUMN_PENDING_ENTITY_DATA},
+                    COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(op.id)}, null, null, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return false;
+                }
+                op.entityData = cursor.getString(0);
+            } finally {
+                cursor.close();
+            }
+            inFlightOperationIds.add(op.id);
+            return true;
+        }
+    }
+
+    public void endPendingOperation(long id) {
+        inFlightOperationIds.remove(id);
+    }
+
     /**
      * Obtiene todas las operaciones pendientes
      */
@@ -606,9 +863,6 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         List<PendingOperation> operations = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
-        // Asegurar que la tabla exista
-        ensurePendingOperationsTable(db);
-        
         Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, null, null, null, null, null, 
                 COLUMN_PENDING_PRIORITY + " ASC, " + COLUMN_PENDING_CREATED_AT + " ASC");
 
@@ -624,11 +878,11 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
                 op.retryCount = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PENDING_RETRY_COUNT));
                 op.lastError = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PENDING_LAST_ERROR));
                 op.priority = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PENDING_PRIORITY));
+                op.nextAttemptAt = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PENDING_NEXT_ATTEMPT_AT));
                 operations.add(op);
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return operations;
     }
 
@@ -637,152 +891,27 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
      */
     public void deletePendingOperation(long id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ensurePendingOperationsTable(db);
         db.delete(TABLE_PENDING_OPERATIONS, COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(id)});
-        db.close();
     }
 
     /**
      * Incrementa el contador de reintentos
      */
     public void incrementRetryCount(long id, String error) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ensurePendingOperationsTable(db);
-        ContentValues values = new ContentValues();
-        Cursor cursor = db.query(TABLE_PENDING_OPERATIONS, new String[]{COLUMN_PENDING_RETRY_COUNT}, 
-                COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
-        
-        int retryCount = 0;
-        if (cursor.moveToFirst()) {
-            retryCount = cursor.getInt(0);
-        }
-        cursor.close();
-        
-        values.put(COLUMN_PENDING_RETRY_COUNT, retryCount + 1);
-        values.put(COLUMN_PENDING_LAST_ERROR, error);
-        db.update(TABLE_PENDING_OPERATIONS, values, COLUMN_PENDING_ID + "=?", new String[]{String.valueOf(id)});
-        db.close();
-    }
-
-    // ========== MÉTODOS AUXILIARES ==========
-
-    private Habit cursorToHabit(Cursor cursor) {
-        Habit habit = new Habit(
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TITLE)),
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_GOAL)),
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_CATEGORY)),
-                Habit.HabitType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HABIT_TYPE)))
-        );
-        habit.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HABIT_ID)));
-        habit.setCompleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_COMPLETED)) == 1);
-        habit.setPoints(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HABIT_POINTS)));
-        
-        // Cargar campos adicionales
-        loadHabitExtraFields(cursor, habit);
-        
-        return habit;
+        scheduleRetry(id, error, 0);
     }
 
-
-    private void loadHabitExtraFields(Cursor cursor, Habit habit) {
-        try {
-            // CRÍTICO: Cargar userId desde la BD
-            int userIdIndex = cursor.getColumnIndex(COLUMN_HABIT_USER_ID);
-            if (userIdIndex >= 0 && !cursor.isNull(userIdIndex)) {
-                long userId = cursor.getLong(userIdIndex);
-                habit.setUserId(userId);
-                Log.d(TAG, "✅ userId cargado desde BD: " + userId + " para hábito: " + habit.getTitle());
-            } else {
-                Log.w(TAG, "⚠️ No se encontró columna user_id en cursor para hábito: " + habit.getTitle());
-            }
-            
-            // Cargar points
-            int pointsIndex = cursor.getColumnIndex(COLUMN_HABIT_POINTS);
-            if (pointsIndex >= 0 && !cursor.isNull(pointsIndex)) {
-                habit.setPoints(cursor.getInt(pointsIndex));
-            }
-            
-            int targetValueIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_VALUE);
-            int targetUnitIndex = cursor.getColumnIndex(COLUMN_HABIT_TARGET_UNIT);
-            if (targetValueIndex >= 0 && !cursor.isNull(targetValueIndex)) {
-                habit.setTargetValue(cursor.getDouble(targetValueIndex));
-            }
-            if (targetUnitIndex >= 0 && !cursor.isNull(targetUnitIndex)) {
-                habit.setTargetUnit(cursor.getString(targetUnitIndex));
-            }
-            
-            int pagesPerDayIndex = cursor.getColumnIndex(COLUMN_HABIT_PAGES_PER_DAY);
-            if (pagesPerDayIndex >= 0 && !cursor.isNull(pagesPerDayIndex)) {
-                habit.setPagesPerDay(cursor.getInt(pagesPerDayIndex));
-            }
-            
-            int reminderTimesIndex = cursor.getColumnIndex(COLUMN_HABIT_REMINDER_TIMES);
-            if (reminderTimesIndex >= 0 && !cursor.isNull(reminderTimesIndex)) {
-                habit.setReminderTimes(cursor.getString(reminderTimesIndex));
-            }
-            
-            int durationMinutesIndex = cursor.getColumnIndex(COLUMN_HABIT_DURATION_MINUTES);
-            if (durationMinutesIndex >= 0 && !cursor.isNull(durationMinutesIndex)) {
-                habit.setDurationMinutes(cursor.getInt(durationMinutesIndex));
-            }
-            
-            int dndModeIndex = cursor.getColumnIndex(COLUMN_HABIT_DND_MODE);
-            if (dndModeIndex >= 0 && !cursor.isNull(dndModeIndex)) {
-                habit.setDndMode(cursor.getInt(dndModeIndex) == 1);
-            }
-            
-            int musicIdIndex = cursor.getColumnIndex(COLUMN_HABIT_MUSIC_ID);
-            if (musicIdIndex >= 0 && !cursor.isNull(musicIdIndex)) {
-                habit.setMusicId(cursor.getInt(musicIdIndex));
-            }
-            
-            int journalEnabledIndex = cursor.getColumnIndex(COLUMN_HABIT_JOURNAL_ENABLED);
-            if (journalEnabledIndex >= 0 && !cursor.isNull(journalEnabledIndex)) {
-                habit.setJournalEnabled(cursor.getInt(journalEnabledIndex) == 1);
-            }
-            
-            int gymDaysIndex = cursor.getColumnIndex(COLUMN_HABIT_GYM_DAYS);
-            if (gymDaysIndex >= 0 && !cursor.isNull(gymDaysIndex)) {
-                habit.setGymDays(cursor.getString(gymDaysIndex));
-            }
-            
-            int waterGoalGlassesIndex = cursor.getColumnIndex(COLUMN_HABIT_WATER_GOAL_GLASSES);
-            if (waterGoalGlassesIndex >= 0 && !cursor.isNull(waterGoalGlassesIndex)) {
-                habit.setWaterGoalGlasses(cursor.getInt(waterGoalGlassesIndex));
-            }
-            
-            int walkGoalMetersIndex = cursor.getColumnIndex(COLUMN_HABIT_WALK_GOAL_METERS);
-            if (walkGoalMetersIndex >= 0 && !cursor.isNull(walkGoalMetersIndex)) {
-                habit.setWalkGoalMeters(cursor.getInt(walkGoalMetersIndex));
-            }
-            
-            int walkGoalStepsIndex = cursor.getColumnIndex(COLUMN_HABIT_WALK_GOAL_STEPS);
-            if (walkGoalStepsIndex >= 0 && !cursor.isNull(walkGoalStepsIndex)) {
-                habit.setWalkGoalSteps(cursor.getInt(walkGoalStepsIndex));
-            }
-            
-            int oneClickCompleteIndex = cursor.getColumnIndex(COLUMN_HABIT_ONE_CLICK_COMPLETE);
-            if (oneClickCompleteIndex >= 0 && !cursor.isNull(oneClickCompleteIndex)) {
-                habit.setOneClickComplete(cursor.getInt(oneClickCompleteIndex) == 1);
-            }
-            
-            int englishModeIndex = cursor.getColumnIndex(COLUMN_HABIT_ENGLISH_MODE);
-            if (englishModeIndex >= 0 && !cursor.isNull(englishModeIndex)) {
-                habit.setEnglishMode(cursor.getInt(englishModeIndex) == 1);
-            }
-            
-            int codingModeIndex = cursor.getColumnIndex(COLUMN_HABIT_CODING_MODE);
-            if (codingModeIndex >= 0 && !cursor.isNull(codingModeIndex)) {
-                habit.setCodingMode(cursor.getInt(codingModeIndex) == 1);
-            }
-            
-            int habitIconIndex = cursor.getColumnIndex(COLUMN_HABIT_ICON);
-            if (habitIconIndex >= 0 && !cursor.isNull(habitIconIndex)) {
-                habit.setHabitIcon(cursor.getString(habitIconIndex));
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error al cargar campos adicionales", e);
-        }
+    /**
+     * Incrementa el contador de reintentos y pospone la operación hasta el momento indicado.
+     * @param nextAttemptAt Segundos epoch a partir de los cuales se puede reintentar (0 = inmediato)
+     */
+    public void scheduleRetry(long id, String error, long nextAttemptAt) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL("UPDATE " + TABLE_PENDING_OPERATIONS + " SET "
+                        + COLUMN_PENDING_RETRY_COUNT + " = " + COLUMN_PENDING_RETRY_COUNT + " + 1, "
+                        + COLUMN_PENDING_LAST_ERROR + " = ?, "
+                        + COLUMN_PENDING_NEXT_ATTEMPT_AT + " = ? WHERE " + COLUMN_PENDING_ID + " = ?",
+                new Object[]{error, nextAttemptAt, id});
     }
 
     /**
@@ -798,6 +927,20 @@ public class HabitDatabaseHelperSync extends HabitDatabaseHelper {
         public int retryCount;
         public String lastError;
         public int priority;
+        public long nextAttemptAt; // segundos epoch; 0 = sin espera
+    }
+
+    /**
+     * Resultado de aplicar una instantánea del servidor
+     */
+    public static class MergeResult {
+        public int inserted;
+        public int updated;
+        public int deleted;
+
+        public int getAppliedCount() {
+            return inserted + updated;
+        }
     }
 }
 
@@ -0,0 +1,142 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.database.Cursor;
+
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Convierte filas de la tabla habits en objetos Habit.
+ * Los índices de columna se resuelven una sola vez al crear el mapper, así que cada fila
+ * se lee sin buscar columnas por nombre. Columnas ausentes (índice -1) se ignoran.
+ */
+class HabitRowMapper {
+    private final int idIndex;
+    private final int userIdIndex;
+    private final int titleIndex;
+    private final int goalIndex;
+    private final int categoryIndex;
+    private final int typeIndex;
+    private final int completedIndex;
+    private final int pointsIndex;
+    private final int targetValueIndex;
+    private final int targetUnitIndex;
+    private final int pagesPerDayIndex;
+    private final int reminderTimesIndex;
+    private final int durationMinutesIndex;
+    private final int dndModeIndex;
+    private final int musicIdIndex;
+    private final int journalEnabledIndex;
+    private final int gymDaysIndex;
+    private final int waterGoalGlassesIndex;
+    private final int walkGoalMetersIndex;
+    private final int walkGoalStepsIndex;
+    private final int oneClickCompleteIndex;
+    private final int englishModeIndex;
+    private final int codingModeIndex;
+    private final int habitIconIndex;
+    private final int streakIndex;
+    private final int lastCompletedIndex;
+
+    HabitRowMapper(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_ID);
+        titleIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_TITLE);
+        goalIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_GOAL);
+        categoryIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_CATEGORY);
+        typeIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_TYPE);
+        completedIndex = cursor.getColumnIndexOrThrow(HabitDatabaseHelper.COLUMN_HABIT_COMPLETED);
+        userIdIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_USER_ID);
+        pointsIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_POINTS);
+        targetValueIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_TARGET_VALUE);
+        targetUnitIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_TARGET_UNIT);
+        pagesPerDayIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_PAGES_PER_DAY);
+        reminderTimesIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_REMINDER_TIMES);
+        durationMinutesIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_DURATION_MINUTES);
+        dndModeIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_DND_MODE);
+        musicIdIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_MUSIC_ID);
+        journalEnabledIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_JOURNAL_ENABLED);
+        gymDaysIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_GYM_DAYS);
+        waterGoalGlassesIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_WATER_GOAL_GLASSES);
+        walkGoalMetersIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_WALK_GOAL_METERS);
+        walkGoalStepsIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_WALK_GOAL_STEPS);
+        oneClickCompleteIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_ONE_CLICK_COMPLETE);
+        englishModeIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_ENGLISH_MODE);
+        codingModeIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_CODING_MODE);
+        habitIconIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_ICON);
+        streakIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_STREAK_COUNT);
+        lastCompletedIndex = cursor.getColumnIndex(HabitDatabaseHelper.COLUMN_HABIT_LAST_COMPLETED_DATE);
+    }
+
+    /**
+     * Lee todas las filas del cursor (desde la posición actual) y lo cierra.
+     */
+    static List<Habit> mapAll(Cursor cursor) {
+        List<Habit> habits = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        try {
+            if (cursor.moveToFirst()) {
+                HabitRowMapper mapper = new HabitRowMapper(cursor);
+                do {
+                    habits.add(mapper.map(cursor));
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+        return habits;
+    }
+
+    /**
+     * Lee la primera fila del cursor (o null si está vacío) y lo cierra.
+     */
+    static Habit mapFirst(Cursor cursor) {
+        try {
+            if (cursor.moveToFirst()) {
+                return new HabitRowMapper(cursor).map(cursor);
+            }
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Crea un Habit a partir de la fila actual del cursor.
+     */
+    Habit map(Cursor cursor) {
+        Habit habit = new Habit(
+                cursor.getString(titleIndex),
+                cursor.getString(goalIndex),
+                cursor.getString(categoryIndex),
+                Habit.HabitType.valueOf(cursor.getString(typeIndex)));
+        habit.setId(cursor.getLong(idIndex));
+        habit.setCompleted(cursor.getInt(completedIndex) == 1);
+
+        if (hasValue(cursor, userIdIndex)) habit.setUserId(cursor.getLong(userIdIndex));
+        if (hasValue(cursor, pointsIndex)) habit.setPoints(cursor.getInt(pointsIndex));
+        if (hasValue(cursor, targetValueIndex)) habit.setTargetValue(cursor.getDouble(targetValueIndex));
+        if (hasValue(cursor, targetUnitIndex)) habit.setTargetUnit(cursor.getString(targetUnitIndex));
+        if (hasValue(cursor, pagesPerDayIndex)) habit.setPagesPerDay(cursor.getInt(pagesPerDayIndex));
+        if (hasValue(cursor, reminderTimesIndex)) habit.setReminderTimes(cursor.getString(reminderTimesIndex));
+        if (hasValue(cursor, durationMinutesIndex)) habit.setDurationMinutes(cursor.getInt(durationMinutesIndex));
+        if (hasValue(cursor, dndModeIndex)) habit.setDndMode(cursor.getInt(dndModeIndex) == 1);
+        if (hasValue(cursor, musicIdIndex)) habit.setMusicId(cursor.getInt(musicIdIndex));
+        if (hasValue(cursor, journalEnabledIndex)) habit.setJournalEnabled(cursor.getInt(journalEnabledIndex) == 1);
+        if (hasValue(cursor, gymDaysIndex)) habit.setGymDays(cursor.getString(gymDaysIndex));
+        if (hasValue(cursor, waterGoalGlassesIndex)) habit.setWaterGoalGlasses(cursor.getInt(waterGoalGlassesIndex));
+        if (hasValue(cursor, walkGoalMetersIndex)) habit.setWalkGoalMeters(cursor.getInt(walkGoalMetersIndex));
+        if (hasValue(cursor, walkGoalStepsIndex)) habit.setWalkGoalSteps(cursor.getInt(walkGoalStepsIndex));
+        if (hasValue(cursor, oneClickCompleteIndex)) habit.setOneClickComplete(cursor.getInt(oneClickCompleteIndex) == 1);
+        if (hasValue(cursor, englishModeIndex)) habit.setEnglishMode(cursor.getInt(englishModeIndex) == 1);
+        if (hasValue(cursor, codingModeIndex)) habit.setCodingMode(cursor.getInt(codingModeIndex) == 1);
+        if (hasValue(cursor, habitIconIndex)) habit.setHabitIcon(cursor.getString(habitIconIndex));
+        if (hasValue(cursor, streakIndex)) habit.setStreakCount(cursor.getInt(streakIndex));
+        if (hasValue(cursor, lastCompletedIndex)) habit.setLastCompletedDate(cursor.getLong(lastCompletedIndex));
+        return habit;
+    }
+
+    private static boolean hasValue(Cursor cursor, int index) {
+        return index >= 0 && !cursor.isNull(index);
+    }
+}
@@ -0,0 +1,60 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Motor de migraciones de esquema versionadas.
+ * Cada paso se registra con la versión que produce y solo se ejecuta al pasar de una
+ * versión anterior a ella. La versión queda en PRAGMA user_version, así que una base de
+ * datos ya migrada no repite ninguna verificación de columnas.
+ */
+public class SchemaMigrator {
+    private static final String TAG = "SchemaMigrator";
+
+    /**
+     * Un paso de migración. Se ejecuta dentro de la transacción de onUpgrade.
+     */
+    public interface Migration {
+        void apply(SQLiteDatabase db);
+    }
+
+    private final TreeMap<Integer, List<Migration>> steps = new TreeMap<>();
+
+    /**
+     * Registra un paso que lleva el esquema a la versión indicada.
+     * Varios pasos pueden compartir versión; se ejecutan en el orden de registro.
+     */
+    public SchemaMigrator add(int version, Migration migration) {
+        List<Migration> migrations = steps.get(version);
+        if (migrations == null) {
+            migrations = new ArrayList<>();
+            steps.put(version, migrations);
+        }
+        migrations.add(migration);
+        return this;
+    }
+
+    /**
+     * Aplica en orden los pasos con versión en (oldVersion, newVersion].
+     * SQLiteOpenHelper llama a onUpgrade dentro de su propia transacción y fija user_version
+     * a newVersion al confirmarla, así que aquí no se abre otra ni se toca la versión: la
+     * actualización completa es atómica. Si un paso falla, el error se propaga, se revierte todo
+     * y el siguiente arranque vuelve a migrar desde oldVersion.
+     */
+    public void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (Map.Entry<Integer, List<Migration>> entry : steps.subMap(oldVersion, false, newVersion, true).entrySet()) {
+            int version = entry.getKey();
+            long start = System.currentTimeMillis();
+            for (Migration migration : entry.getValue()) {
+                migration.apply(db);
+            }
+            Log.d(TAG, "✅ Esquema migrado a versión " + version + " en " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.tuempresa.proyecto_01_11_25.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de sentencias compiladas (SQLiteStatement) para las consultas puntuales más usadas.
+ * La clave es el SQL con parámetros (la "forma" de la consulta), así que cada consulta se
+ * compila una sola vez y luego solo se le enlazan los valores.
+ *
+ * Un SQLiteStatement guarda sus bindings, por lo que quien lo use debe sincronizar sobre
+ * la propia sentencia mientras enlaza y ejecuta.
+ *
+ * Las sentencias que salen de la caché (por LRU o en clear()) no se cierran: otro hilo puede
+ * haberla obtenido justo antes y estar ejecutándola. Un SQLiteStatement no retiene la conexión
+ * entre ejecuciones, así que basta con soltar la referencia; la conexión libera su sentencia
+ * preparada al cerrarse o al salir de su propia caché.
+ */
+public class StatementCache {
+    private static final String TAG = "StatementCache";
+    private static final int MAX_STATEMENTS = 32;
+
+    private final Map<String, SQLiteStatement> statements =
+            new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                    // Sin close(): puede estar en uso por otro hilo (ver comentario de la clase)
+                    return size() > MAX_STATEMENTS;
+                }
+            };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private SQLiteDatabase ownerDb;
+
+    /**
+     * Obtiene la sentencia compilada para el SQL dado, compilándola si aún no existe.
+     * Si la base de datos se reabrió, las sentencias anteriores se descartan.
+     */
+    public synchronized SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        if (ownerDb != db) {
+            clear();
+            ownerDb = db;
+        }
+        SQLiteStatement statement = statements.get(sql);
+        if (statement != null) {
+            hits.incrementAndGet();
+            return statement;
+        }
+        misses.incrementAndGet();
+        statement = db.compileStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Elimina todas las sentencias compiladas (sin cerrarlas: pueden estar en uso).
+     */
+    public synchronized void clear() {
+        statements.clear();
+    }
+
+    /**
+     * Cierra y elimina todas las sentencias compiladas. Solo para cuando se cierra la
+     * conexión a la que pertenecen (ver HabitDatabaseHelper.closeSharedConnection).
+     */
+    public synchronized void closeAll() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+        ownerDb = null;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public void logStats() {
+        Log.d(TAG, "📊 Sentencias compiladas: " + size() + ", hits: " + hits.get() + ", misses: " + misses.get());
+    }
+}
@@ -69,6 +69,37 @@ public class Habit {
         this.completed = false;
     }
 
+    /**
+     * Copia superficial (todos los campos son inmutables), para entregar hábitos cacheados
+     * sin que los cambios de un llamador afecten a los demás.
+     */
+    public Habit copy() {
+        Habit copy = new Habit(title, goal, category, type);
+        copy.id = id;
+        copy.userId = userId;
+        copy.completed = completed;
+        copy.points = points;
+        copy.targetValue = targetValue;
+        copy.targetUnit = targetUnit;
+        copy.pagesPerDay = pagesPerDay;
+        copy.reminderTimes = reminderTimes;
+        copy.durationMinutes = durationMinutes;
+        copy.dndMode = dndMode;
+        copy.musicId = musicId;
+        copy.journalEnabled = journalEnabled;
+        copy.gymDays = gymDays;
+        copy.waterGoalGlasses = waterGoalGlasses;
+        copy.walkGoalMeters = walkGoalMeters;
+        copy.walkGoalSteps = walkGoalSteps;
+        copy.oneClickComplete = oneClickComplete;
+        copy.englishMode = englishMode;
+        copy.codingMode = codingMode;
+        copy.habitIcon = habitIcon;
+        copy.streakCount = streakCount;
+        copy.lastCompletedDate = lastCompletedDate;
+        return copy;
+    }
+
     public long getId() {
         return id;
     }
@@ -3,121 +3,424 @@ package com.tuempresa.proyecto_01_11_25.model;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import com.tuempresa.proyecto_01_11_25.utils.AppExecutors;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Registro de eventos en un archivo de solo-añadir: una línea JSON por evento.
+ * Añadir un evento escribe solo esa línea y el arranque no lee el archivo, así que ambos
+ * tardan lo mismo con 10 eventos que con 50.000. Las lecturas recorren el archivo bajo demanda.
+ * Cada cierto número de eventos se compacta en segundo plano: se descartan líneas dañadas
+ * (una escritura interrumpida) y los eventos más antiguos por encima de MAX_EVENTS.
+ */
 public class HabitEventStore {
+    private static final String TAG = "HabitEventStore";
     private static final String PREFS_NAME = "HabitEventStore";
-    private static final String KEY_EVENTS = "habit_events";
-    private static final List<HabitEvent> events = new ArrayList<>();
-    private static SharedPreferences prefs;
+    private static final String KEY_EVENTS = "habit_events"; // Formato anterior, solo para migrar
+    private static final String LOG_FILE = "habit_events.log";
+    private static final String COMPACT_FILE = "habit_events.log.tmp";
+    private static final String OLD_FILE = "habit_events.log.old"; // Registro apartado al compactar
+    // Eventos que se conservan al compactar
+    private static final int MAX_EVENTS = 50_000;
+    // Eventos añadidos entre compactaciones
+    private static final int COMPACT_EVERY_APPENDS = 1_000;
+
+    private static File logFile;
+    private static Writer writer;
+    private static int count = -1; // -1: aún no contado
+    private static int appendsSinceCompaction;
+    private static boolean compacting;
+    private static boolean discardCompaction;
 
     /**
      * Inicializa el store con el contexto de la aplicación
      * Debe llamarse en onCreate de la actividad principal
      */
-    public static void init(Context ctx) {
+    public static synchronized void init(Context ctx) {
         // Usar ApplicationContext para evitar memory leak
         Context appContext = ctx.getApplicationContext();
-        prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        loadEvents();
+        if (logFile != null) {
+            return;
+        }
+        logFile = new File(appContext.getFilesDir(), LOG_FILE);
+        recoverInterruptedCompaction();
+        migrateFromPreferences(appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
     }
 
     /**
      * Agrega un evento y lo persiste inmediatamente
      */
     public static synchronized void add(HabitEvent e) {
-        events.add(e);
-        saveEvents();
-        android.util.Log.d("HabitEventStore", "Evento agregado y guardado: " + e.getNote());
+        if (logFile == null) {
+            android.util.Log.w(TAG, "No se puede guardar: store no inicializado");
+            return;
+        }
+        try {
+            if (writer == null) {
+                boolean danglingLine = endsWithPartialLine(logFile);
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(logFile, true), StandardCharsets.UTF_8));
+                if (danglingLine) {
+                    // Cerrar la línea de una escritura interrumpida para no mezclarla con esta
+                    writer.write('\n');
+                }
+            }
+            writer.write(toJson(e).toString());
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException | JSONException ex) {
+            android.util.Log.e(TAG, "Error al guardar evento", ex);
+            closeWriter();
+            return;
+        }
+        if (count >= 0) {
+            count++;
+        }
+        if (++appendsSinceCompaction >= COMPACT_EVERY_APPENDS) {
+            appendsSinceCompaction = 0;
+            AppExecutors.getInstance().diskWrite().execute(HabitEventStore::compact);
+        }
+        android.util.Log.d(TAG, "Evento agregado y guardado: " + e.getNote());
     }
 
     /**
      * Obtiene todos los eventos
      */
     public static synchronized List<HabitEvent> all() {
-        return new ArrayList<>(events);
+        return page(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Obtiene hasta limit eventos a partir de la posición offset (del más antiguo al más reciente).
+     * Solo se convierten a objetos los eventos de la página.
+     */
+    public static synchronized List<HabitEvent> page(int offset, int limit) {
+        List<HabitEvent> page = new ArrayList<>();
+        if (logFile == null || limit <= 0) {
+            return page;
+        }
+        int index = 0;
+        for (File segment : segments()) {
+            try (BufferedReader reader = openReader(segment)) {
+                String line;
+                while (page.size() < limit && (line = reader.readLine()) != null) {
+                    HabitEvent event = parse(line);
+                    if (event == null) {
+                        continue;
+                    }
+                    if (index++ >= offset) {
+                        page.add(event);
+                    }
+                }
+            } catch (IOException e) {
+                android.util.Log.e(TAG, "Error al leer eventos", e);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Número de eventos guardados (se cuenta una vez y después se mantiene al añadir)
+     */
+    public static synchronized int count() {
+        if (count < 0 && logFile != null) {
+            int total = 0;
+            for (File segment : segments()) {
+                total += countValidLines(segment);
+            }
+            count = total;
+        }
+        return count;
     }
 
     /**
      * Limpia todos los eventos
      */
     public static synchronized void clear() {
-        events.clear();
-        if (prefs != null) {
-            prefs.edit().remove(KEY_EVENTS).apply();
+        closeWriter();
+        if (logFile != null && logFile.exists() && !logFile.delete()) {
+            android.util.Log.w(TAG, "No se pudo eliminar el registro de eventos");
+        }
+        if (logFile != null && !compacting) {
+            // Registro apartado por una compactación que no se pudo terminar
+            new File(logFile.getParentFile(), OLD_FILE).delete();
         }
-        android.util.Log.d("HabitEventStore", "Eventos eliminados");
+        // Si hay una compactación en curso, su resultado se descarta al terminar
+        discardCompaction = compacting;
+        count = 0;
+        appendsSinceCompaction = 0;
+        android.util.Log.d(TAG, "Eventos eliminados");
     }
 
     /**
-     * Guarda los eventos en SharedPreferences como JSON
+     * Reescribe el registro sin líneas dañadas y con como mucho MAX_EVENTS eventos (los más recientes).
+     * El registro actual se aparta (un rename) y se copia sin tener el lock, así que add()
+     * sigue escribiendo en un registro nuevo mientras tanto; al final se unen los dos.
      */
-    private static synchronized void saveEvents() {
-        if (prefs == null) {
-            android.util.Log.w("HabitEventStore", "No se puede guardar: SharedPreferences no inicializado");
-            return;
+    public static void compact() {
+        File old;
+        synchronized (HabitEventStore.class) {
+            if (compacting || logFile == null || !logFile.exists()) {
+                return;
+            }
+            closeWriter();
+            old = new File(logFile.getParentFile(), OLD_FILE);
+            // Un registro apartado que quedó de una compactación fallida se une antes de
+            // apartar el actual (si no, el rename lo sobrescribiría)
+            if (old.exists()) {
+                recoverInterruptedCompaction();
+                if (old.exists()) {
+                    return;
+                }
+            }
+            if (!logFile.renameTo(old)) {
+                android.util.Log.e(TAG, "No se pudo apartar el registro para compactarlo");
+                return;
+            }
+            compacting = true;
         }
 
-        try {
-            JSONArray jsonArray = new JSONArray();
-            for (HabitEvent event : events) {
-                JSONObject jsonEvent = new JSONObject();
-                jsonEvent.put("lat", event.getLat());
-                jsonEvent.put("lng", event.getLng());
-                jsonEvent.put("note", event.getNote());
-                jsonEvent.put("type", event.getType().name());
-                jsonEvent.put("timestamp", event.getTimestamp());
-                jsonArray.put(jsonEvent);
+        long start = System.currentTimeMillis();
+        File tmp = new File(old.getParentFile(), COMPACT_FILE);
+        int total = countValidLines(old);
+        int skip = Math.max(0, total - MAX_EVENTS);
+        boolean copied = false;
+        try (BufferedReader reader = openReader(old);
+             Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            int index = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (parse(line) == null || index++ < skip) {
+                    continue;
+                }
+                out.write(line);
+                out.write('\n');
             }
+            copied = true;
+        } catch (IOException e) {
+            android.util.Log.e(TAG, "Error al compactar eventos", e);
+        }
 
-            prefs.edit().putString(KEY_EVENTS, jsonArray.toString()).apply();
-            android.util.Log.d("HabitEventStore", "Eventos guardados: " + events.size());
-        } catch (JSONException e) {
-            android.util.Log.e("HabitEventStore", "Error al guardar eventos", e);
+        synchronized (HabitEventStore.class) {
+            compacting = false;
+            if (discardCompaction) {
+                discardCompaction = false;
+                tmp.delete();
+                old.delete();
+                return;
+            }
+            closeWriter();
+            if (!copied) {
+                // Sin copia compactada: el registro apartado vuelve a unirse tal cual
+                tmp.delete();
+                recoverInterruptedCompaction();
+                return;
+            }
+            try {
+                // Eventos añadidos durante la compactación
+                appendFile(logFile, tmp);
+                if (!tmp.renameTo(logFile)) {
+                    throw new IOException("rename");
+                }
+            } catch (IOException e) {
+                // El registro apartado se conserva: se une de nuevo en la próxima compactación
+                // o al iniciar la app. logFile no se modificó (appendFile solo lo lee)
+                android.util.Log.e(TAG, "No se pudo reemplazar el registro compactado", e);
+                tmp.delete();
+                return;
+            }
+            // Solo ahora el registro apartado deja de ser necesario
+            if (!old.delete()) {
+                android.util.Log.w(TAG, "No se pudo eliminar el registro apartado tras compactar");
+            }
+            if (count >= 0) {
+                count -= skip;
+            }
+            android.util.Log.d(TAG, "Registro compactado: " + (total - skip) + " eventos conservados (" + skip
+                    + " descartados) en " + (System.currentTimeMillis() - start) + " ms");
         }
     }
 
     /**
-     * Carga los eventos desde SharedPreferences
+     * Si la app se cerró a mitad de una compactación (o esta no pudo terminar), vuelve a unir
+     * el registro apartado con los eventos añadidos después. Si falla, el registro apartado
+     * queda como estaba para reintentarlo más tarde: nunca se borra sin haberlo renombrado.
      */
-    private static synchronized void loadEvents() {
-        if (prefs == null) {
-            android.util.Log.w("HabitEventStore", "No se puede cargar: SharedPreferences no inicializado");
+    private static void recoverInterruptedCompaction() {
+        File old = new File(logFile.getParentFile(), OLD_FILE);
+        new File(logFile.getParentFile(), COMPACT_FILE).delete();
+        if (!old.exists()) {
             return;
         }
+        long oldLength = old.length();
+        try {
+            appendFile(logFile, old);
+            if (!old.renameTo(logFile)) {
+                throw new IOException("rename");
+            }
+            android.util.Log.w(TAG, "Registro recuperado de una compactación interrumpida");
+        } catch (IOException e) {
+            android.util.Log.e(TAG, "Error al recuperar el registro de eventos", e);
+            // Quitar lo que se llegó a añadir, para no duplicar esos eventos en el próximo intento
+            try (RandomAccessFile raf = new RandomAccessFile(old, "rw")) {
+                raf.setLength(oldLength);
+            } catch (IOException truncateError) {
+                android.util.Log.e(TAG, "No se pudo restaurar el registro apartado", truncateError);
+            }
+        }
+    }
 
-        events.clear();
-        String eventsJson = prefs.getString(KEY_EVENTS, null);
-        
-        if (eventsJson == null || eventsJson.isEmpty()) {
-            android.util.Log.d("HabitEventStore", "No hay eventos guardados");
+    /**
+     * Añade el contenido de source (si existe) al final de target, empezando en línea nueva
+     */
+    private static void appendFile(File source, File target) throws IOException {
+        if (!source.exists()) {
             return;
         }
+        boolean danglingLine = endsWithPartialLine(target);
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(target, true)) {
+            if (danglingLine) {
+                out.write('\n');
+            }
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
 
-        try {
+    /**
+     * Pasa al registro los eventos guardados con el formato anterior (un único JSON en
+     * SharedPreferences) y borra la clave. Solo hace trabajo la primera vez.
+     */
+    private static void migrateFromPreferences(SharedPreferences prefs) {
+        String eventsJson = prefs.getString(KEY_EVENTS, null);
+        if (eventsJson == null) {
+            return;
+        }
+        int migrated = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(logFile, true), StandardCharsets.UTF_8))) {
             JSONArray jsonArray = new JSONArray(eventsJson);
             for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject jsonEvent = jsonArray.getJSONObject(i);
-                
-                double lat = jsonEvent.getDouble("lat");
-                double lng = jsonEvent.getDouble("lng");
-                String note = jsonEvent.getString("note");
-                HabitEvent.HabitType type = HabitEvent.HabitType.valueOf(jsonEvent.getString("type"));
-                long timestamp = jsonEvent.optLong("timestamp", System.currentTimeMillis());
-                
-                // Crear evento con el timestamp guardado
-                HabitEvent event = new HabitEvent(lat, lng, note, type, timestamp);
-                events.add(event);
-            }
-            
-            android.util.Log.d("HabitEventStore", "Eventos cargados: " + events.size());
-        } catch (JSONException e) {
-            android.util.Log.e("HabitEventStore", "Error al cargar eventos", e);
+                out.write(jsonArray.getJSONObject(i).toString());
+                out.write('\n');
+                migrated++;
+            }
+        } catch (IOException | JSONException e) {
+            android.util.Log.e(TAG, "Error al migrar eventos anteriores", e);
+            return;
+        }
+        prefs.edit().remove(KEY_EVENTS).apply();
+        android.util.Log.d(TAG, "Eventos migrados al registro: " + migrated);
+    }
+
+    private static JSONObject toJson(HabitEvent event) throws JSONException {
+        JSONObject jsonEvent = new JSONObject();
+        jsonEvent.put("lat", event.getLat());
+        jsonEvent.put("lng", event.getLng());
+        jsonEvent.put("note", event.getNote());
+        jsonEvent.put("type", event.getType().name());
+        jsonEvent.put("timestamp", event.getTimestamp());
+        return jsonEvent;
+    }
+
+    /**
+     * Convierte una línea del registro en evento, o null si está vacía o dañada
+     */
+    private static HabitEvent parse(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        try {
+            JSONObject jsonEvent = new JSONObject(line);
+            double lat = jsonEvent.getDouble("lat");
+            double lng = jsonEvent.getDouble("lng");
+            String note = jsonEvent.getString("note");
+            HabitEvent.HabitType type = HabitEvent.HabitType.valueOf(jsonEvent.getString("type"));
+            long timestamp = jsonEvent.optLong("timestamp", System.currentTimeMillis());
+            return new HabitEvent(lat, lng, note, type, timestamp);
+        } catch (JSONException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Archivos con eventos, del más antiguo al más reciente (dos durante una compactación)
+     */
+    private static List<File> segments() {
+        List<File> segments = new ArrayList<>(2);
+        File old = new File(logFile.getParentFile(), OLD_FILE);
+        // Durante una compactación, o si una anterior no pudo volver a unirlo
+        if (!discardCompaction && old.exists()) {
+            segments.add(old);
+        }
+        if (logFile.exists()) {
+            segments.add(logFile);
+        }
+        return segments;
+    }
+
+    private static int countValidLines(File file) {
+        if (file == null || !file.exists()) {
+            return 0;
+        }
+        int valid = 0;
+        try (BufferedReader reader = openReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (parse(line) != null) {
+                    valid++;
+                }
+            }
+        } catch (IOException e) {
+            android.util.Log.e(TAG, "Error al contar eventos", e);
+        }
+        return valid;
+    }
+
+    private static boolean endsWithPartialLine(File file) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(file.length() - 1);
+            return raf.read() != '\n';
+        }
+    }
+
+    private static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            android.util.Log.w(TAG, "Error al cerrar el registro de eventos", e);
         }
+        writer = null;
     }
 }
@@ -1,5 +1,7 @@
 package com.tuempresa.proyecto_01_11_25.model;
 
+import com.google.gson.annotations.SerializedName;
+
 import java.util.List;
 
 /**
@@ -11,6 +13,13 @@ public class HabitsResponse {
     private String message;
     private List<Habit> habits;
     private int count;
+    // Sincronización incremental: serverIds eliminados desde la marca "since" (tombstones)
+    // y hora del servidor a usar como próxima marca. serverTime = 0 indica que el servidor
+    // no soporta consultas incrementales y devolvió la lista completa.
+    @SerializedName(value = "deletedIds", alternate = {"DeletedIds", "deleted_ids"})
+    private List<Long> deletedIds;
+    @SerializedName(value = "serverTime", alternate = {"ServerTime", "server_time"})
+    private long serverTime;
 
     // Constructor sin parámetros para Gson
     public HabitsResponse() {
@@ -55,5 +64,20 @@ public class HabitsResponse {
     public void setCount(int count) {
         this.count = count;
     }
-}
 
+    public List<Long> getDeletedIds() {
+        return deletedIds;
+    }
+
+    public void setDeletedIds(List<Long> deletedIds) {
+        this.deletedIds = deletedIds;
+    }
+
+    public long getServerTime() {
+        return serverTime;
+    }
+
+    public void setServerTime(long serverTime) {
+        this.serverTime = serverTime;
+    }
+}
@@ -0,0 +1,238 @@
+package com.tuempresa.proyecto_01_11_25.repository;
+
+import android.util.Log;
+
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Caché en memoria de los hábitos del usuario actual, indexada por id local, serverId y tipo.
+ * Se invalida con los avisos de HabitDatabaseHelper: el cambio de un hábito solo recarga esa fila
+ * en la siguiente lectura, y los cambios masivos (fusiones de sincronización, reseteo diario,
+ * cambio de usuario) recargan la lista completa. El TTL cubre cualquier escritura sin aviso.
+ * Siempre entrega copias, así los llamadores pueden modificar los hábitos sin afectar a la caché.
+ */
+class HabitCache implements HabitDatabaseHelper.HabitsChangedListener {
+    private static final String TAG = "HabitCache";
+    private static final long TTL_MS = 60_000;
+
+    /**
+     * Origen de los datos de la caché. En la app son SQLite y la sesión; separado para poder probarlo.
+     */
+    interface Source {
+        long getUserId();
+
+        List<Habit> getAllHabits();
+
+        Map<Long, Long> getServerIdsByLocalId();
+
+        Habit getHabitById(long localId);
+
+        Long getServerId(long localId);
+    }
+
+    private final Source source;
+    private final LongSupplier clock;
+
+    private Snapshot snapshot;
+    private final Set<Long> dirtyIds = new HashSet<>();
+
+    HabitCache(HabitDatabaseHelperSync dbHelper, SessionManager sessionManager) {
+        this(new Source() {
+            @Override
+            public long getUserId() {
+                return sessionManager.getUserId();
+            }
+
+            @Override
+            public List<Habit> getAllHabits() {
+                return dbHelper.getAllHabits();
+            }
+
+            @Override
+            public Map<Long, Long> getServerIdsByLocalId() {
+                return dbHelper.getServerIdsByLocalId();
+            }
+
+            @Override
+            public Habit getHabitById(long localId) {
+                return dbHelper.getHabitById(localId);
+            }
+
+            @Override
+            public Long getServerId(long localId) {
+                return dbHelper.getServerId(localId);
+            }
+        }, System::currentTimeMillis);
+        HabitDatabaseHelper.addHabitsChangedListener(this);
+    }
+
+    /**
+     * Caché sin registrar en HabitDatabaseHelper: los avisos se entregan llamando a onHabitsChanged.
+     */
+    HabitCache(Source source, LongSupplier clock) {
+        this.source = source;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized void onHabitsChanged(long localId) {
+        if (localId == HabitDatabaseHelper.ALL_HABITS) {
+            invalidate();
+        } else if (snapshot != null) {
+            dirtyIds.add(localId);
+        }
+    }
+
+    /**
+     * Descarta todo el contenido; la siguiente lectura recarga desde SQLite.
+     */
+    synchronized void invalidate() {
+        snapshot = null;
+        dirtyIds.clear();
+    }
+
+    List<Habit> getAll() {
+        List<Habit> habits = current().habits;
+        List<Habit> copies = new ArrayList<>(habits.size());
+        for (Habit habit : habits) {
+            copies.add(habit.copy());
+        }
+        return copies;
+    }
+
+    Habit getById(long localId) {
+        return copyOf(current().byId.get(localId));
+    }
+
+    Habit getByServerId(long serverId) {
+        return copyOf(current().byServerId.get(serverId));
+    }
+
+    /**
+     * Primer hábito del tipo indicado (el más reciente), o null si no hay ninguno.
+     */
+    Habit getFirstByType(Habit.HabitType type) {
+        List<Habit> habits = current().byType.get(type);
+        return habits != null ? copyOf(habits.get(0)) : null;
+    }
+
+    List<Habit> getByType(Habit.HabitType type) {
+        List<Habit> habits = current().byType.get(type);
+        List<Habit> copies = new ArrayList<>();
+        if (habits != null) {
+            for (Habit habit : habits) {
+                copies.add(habit.copy());
+            }
+        }
+        return copies;
+    }
+
+    private static Habit copyOf(Habit habit) {
+        return habit != null ? habit.copy() : null;
+    }
+
+    private synchronized Snapshot current() {
+        long userId = source.getUserId();
+        long now = clock.getAsLong();
+        if (snapshot == null || snapshot.userId != userId || now - snapshot.loadedAt > TTL_MS) {
+            long start = System.currentTimeMillis();
+            snapshot = new Snapshot(userId, now, source.getAllHabits(), source.getServerIdsByLocalId());
+            dirtyIds.clear();
+            Log.d(TAG, "Caché de hábitos cargada: " + snapshot.habits.size() + " hábitos en "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } else if (!dirtyIds.isEmpty()) {
+            snapshot = reload(snapshot, dirtyIds);
+            dirtyIds.clear();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Vuelve a leer solo los hábitos modificados y reconstruye los índices.
+     * Conserva el orden (más recientes primero): los hábitos nuevos se colocan al principio.
+     */
+    private Snapshot reload(Snapshot previous, Set<Long> changedIds) {
+        List<Habit> habits = new ArrayList<>(previous.habits);
+        Map<Long, Long> serverIds = new HashMap<>(previous.serverIdsByLocalId);
+        for (Long localId : changedIds) {
+            Habit fresh = source.getHabitById(localId);
+            int index = indexOf(habits, localId);
+            if (fresh == null || fresh.getUserId() != previous.userId) {
+                if (index >= 0) {
+                    habits.remove(index);
+                }
+                serverIds.remove(localId);
+                continue;
+            }
+            if (index >= 0) {
+                habits.set(index, fresh);
+            } else {
+                habits.add(0, fresh);
+            }
+            Long serverId = source.getServerId(localId);
+            if (serverId != null && serverId > 0) {
+                serverIds.put(localId, serverId);
+            } else {
+                serverIds.remove(localId);
+            }
+        }
+        return new Snapshot(previous.userId, previous.loadedAt, habits, serverIds);
+    }
+
+    private static int indexOf(List<Habit> habits, long localId) {
+        for (int i = 0; i < habits.size(); i++) {
+            if (habits.get(i).getId() == localId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Contenido inmutable de la caché para un usuario.
+     */
+    private static final class Snapshot {
+        final long userId;
+        final long loadedAt;
+        final List<Habit> habits;
+        final Map<Long, Long> serverIdsByLocalId;
+        final Map<Long, Habit> byId = new HashMap<>();
+        final Map<Long, Habit> byServerId = new HashMap<>();
+        final Map<Habit.HabitType, List<Habit>> byType = new EnumMap<>(Habit.HabitType.class);
+
+        Snapshot(long userId, long loadedAt, List<Habit> habits, Map<Long, Long> serverIdsByLocalId) {
+            this.userId = userId;
+            this.loadedAt = loadedAt;
+            this.habits = Collections.unmodifiableList(habits);
+            this.serverIdsByLocalId = serverIdsByLocalId;
+            for (Habit habit : habits) {
+                byId.put(habit.getId(), habit);
+                Long serverId = serverIdsByLocalId.get(habit.getId());
+                if (serverId != null) {
+                    byServerId.put(serverId, habit);
+                }
+                if (habit.getType() != null) {
+                    List<Habit> sameType = byType.get(habit.getType());
+                    if (sameType == null) {
+                        sameType = new ArrayList<>(1);
+                        byType.put(habit.getType(), sameType);
+                    }
+                    sameType.add(habit);
+                }
+            }
+        }
+    }
+}
@@ -3,10 +3,14 @@ package com.tuempresa.proyecto_01_11_25.repository;
 import android.content.Context;
 import android.util.Log;
 
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
 import com.google.gson.Gson;
 import com.tuempresa.proyecto_01_11_25.api.HabitApiHelper;
 import com.tuempresa.proyecto_01_11_25.api.HabitCheckinApiHelper;
 import com.tuempresa.proyecto_01_11_25.api.ScoreApiHelper;
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
 import com.tuempresa.proyecto_01_11_25.model.HabitCheckinDto;
@@ -14,11 +18,10 @@ import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
 import com.tuempresa.proyecto_01_11_25.model.Score;
 import com.tuempresa.proyecto_01_11_25.network.ConnectionMonitor;
 import com.tuempresa.proyecto_01_11_25.sync.SyncManager;
+import com.tuempresa.proyecto_01_11_25.utils.AppExecutors;
 import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Repository que unifica el acceso a datos locales (Room) y remotos (API).
@@ -27,6 +30,8 @@ import java.util.concurrent.Executors;
 public class  HabitRepository {
     private static final String TAG = "HabitRepository";
     private static HabitRepository instance;
+    // Ventana para agrupar ráfagas de cambios (p. ej. una fusión de sincronización) en una sola emisión
+    private static final long HABITS_COALESCE_MS = 150;
     
     private final Context context;
     private final HabitDatabaseHelperSync dbHelper;
@@ -35,7 +40,14 @@ public class  HabitRepository {
     private final HabitCheckinApiHelper checkinApiHelper;
     private final ConnectionMonitor connectionMonitor;
     private final SyncManager syncManager;
-    private final ExecutorService executorService;
+    private final AppExecutors executors;
+    private final HabitCache habitCache;
+    private final MutableLiveData<List<Habit>> habitsLiveData = new MutableLiveData<>();
+    private final java.util.concurrent.atomic.AtomicBoolean habitsRefreshPending = new java.util.concurrent.atomic.AtomicBoolean(false);
+    // Orden de las recargas: diskRead tiene varios hilos y dos recargas seguidas pueden terminar al revés
+    private final java.util.concurrent.atomic.AtomicLong habitsReloadSequence = new java.util.concurrent.atomic.AtomicLong();
+    private long lastEmittedHabitsReload; // Solo se usa en el hilo principal
+    private final android.os.Handler mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
     private final Gson gson;
     private final SessionManager sessionManager;
 
@@ -52,9 +64,13 @@ public class  HabitRepository {
         this.checkinApiHelper = new HabitCheckinApiHelper(context);
         this.connectionMonitor = ConnectionMonitor.getInstance(context);
         this.syncManager = SyncManager.getInstance(context);
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.executors = AppExecutors.getInstance();
         this.gson = new Gson();
         this.sessionManager = new SessionManager(context);
+        this.habitCache = new HabitCache(dbHelper, sessionManager);
+
+        // Cualquier cambio confirmado en la tabla habits (repositorio, UI o sincronización) emite la lista
+        HabitDatabaseHelper.addHabitsChangedListener(localId -> refreshHabits());
         
         // Agregar listener para sincronización automática cuando se restaure la conexión
         this.connectionMonitor.addListener(new ConnectionMonitor.ConnectionListener() {
@@ -79,14 +95,52 @@ public class  HabitRepository {
         return instance;
     }
 
+    /**
+     * Flujo observable con la lista de hábitos del usuario actual.
+     * Emite una vez por cambio confirmado (incluidas las fusiones de sincronización);
+     * las ráfagas de cambios se agrupan en una sola emisión.
+     */
+    public LiveData<List<Habit>> observeHabits() {
+        if (habitsLiveData.getValue() == null) {
+            refreshHabits();
+        }
+        return habitsLiveData;
+    }
+
+    /**
+     * Programa una emisión de la lista actual en {@link #observeHabits()}.
+     * Las llamadas que llegan mientras hay una emisión pendiente se agrupan con ella.
+     * Si una recarga termina después de otra que empezó más tarde, su lista (más antigua) se descarta.
+     */
+    public void refreshHabits() {
+        if (!habitsRefreshPending.compareAndSet(false, true)) {
+            return;
+        }
+        mainHandler.postDelayed(() -> executors.diskRead().execute(() -> {
+            habitsRefreshPending.set(false);
+            long sequence = habitsReloadSequence.incrementAndGet();
+            try {
+                List<Habit> habits = habitCache.getAll();
+                mainHandler.post(() -> {
+                    if (sequence > lastEmittedHabitsReload) {
+                        lastEmittedHabitsReload = sequence;
+                        habitsLiveData.setValue(habits);
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error al emitir hábitos", e);
+            }
+        }), HABITS_COALESCE_MS);
+    }
+
     /**
      * Obtiene todos los hábitos (primero desde local, luego sincroniza si hay conexión).
      */
     public void getAllHabits(RepositoryCallback<List<Habit>> callback) {
-        executorService.execute(() -> {
+        executors.diskRead().execute(() -> {
             try {
-                // 1. Obtener de base de datos local inmediatamente (SQLite)
-                List<Habit> habits = dbHelper.getAllHabits();
+                // 1. Obtener de la caché (o de SQLite si no está cargada)
+                List<Habit> habits = habitCache.getAll();
                 
                 // Notificar inmediatamente con datos locales
                 callback.onSuccess(habits);
@@ -102,8 +156,8 @@ public class  HabitRepository {
                         @Override
                         public void onSyncCompleted(int syncedCount) {
                             // Actualizar lista después de sincronizar
-                            executorService.execute(() -> {
-                                List<Habit> updatedHabits = dbHelper.getAllHabits();
+                            executors.diskRead().execute(() -> {
+                                List<Habit> updatedHabits = habitCache.getAll();
                                 Log.d(TAG, "Sincronización completada. Hábitos actualizados: " + updatedHabits.size());
                                 // Notificar en el hilo principal para actualizar UI
                                 new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
@@ -129,9 +183,9 @@ public class  HabitRepository {
      * Obtiene un hábito por ID.
      */
     public void getHabitById(long id, RepositoryCallback<Habit> callback) {
-        executorService.execute(() -> {
+        executors.diskRead().execute(() -> {
             try {
-                Habit habit = dbHelper.getHabitById(id);
+                Habit habit = habitCache.getById(id);
                 if (habit != null) {
                     callback.onSuccess(habit);
                 } else {
@@ -148,7 +202,7 @@ public class  HabitRepository {
      * Crea un nuevo hábito (local primero, luego sincroniza si hay conexión).
      */
     public void createHabit(Habit habit, RepositoryCallback<Habit> callback) {
-        executorService.execute(() -> {
+        executors.diskWrite().execute(() -> {
             try {
                 // Agregar userId antes de guardar
                 long userId = sessionManager.getUserId();
@@ -208,7 +262,7 @@ public class  HabitRepository {
      * Actualiza un hábito existente.
      */
     public void updateHabit(Habit habit, RepositoryCallback<Habit> callback) {
-        executorService.execute(() -> {
+        executors.diskWrite().execute(() -> {
             try {
                 // Actualizar en base de datos local
                 boolean updated = dbHelper.updateHabitFull(
@@ -263,7 +317,7 @@ public class  HabitRepository {
      * Elimina un hábito.
      */
     public void deleteHabit(long id, RepositoryCallback<Void> callback) {
-        executorService.execute(() -> {
+        executors.diskWrite().execute(() -> {
             try {
                 Habit habit = dbHelper.getHabitById(id);
                 if (habit == null) {
@@ -327,6 +381,37 @@ public class  HabitRepository {
         });
     }
 
+    /**
+     * Busca el primer hábito del tipo indicado del usuario actual (p. ej. el hábito WALK).
+     * Usa la caché en memoria; solo consulta SQLite si está vacía o caducada,
+     * así que debe evitarse en el hilo principal cuando la caché pueda estar fría.
+     * @return copia del hábito o null si no existe
+     */
+    public Habit getHabitByType(Habit.HabitType type) {
+        return habitCache.getFirstByType(type);
+    }
+
+    /**
+     * Todos los hábitos del tipo indicado, del más reciente al más antiguo.
+     */
+    public List<Habit> getHabitsByType(Habit.HabitType type) {
+        return habitCache.getByType(type);
+    }
+
+    /**
+     * Busca un hábito por el id que le asignó el servidor.
+     */
+    public Habit getHabitByServerId(long serverId) {
+        return habitCache.getByServerId(serverId);
+    }
+
+    /**
+     * Descarta la caché de hábitos; la siguiente lectura vuelve a SQLite.
+     */
+    public void invalidateHabitCache() {
+        habitCache.invalidate();
+    }
+
     private void syncHabitToServer(Habit habit, long localId, RepositoryCallback<Habit> callback) {
         // CRÍTICO: Asegurar que el userId esté establecido antes de enviar al servidor
         long userId = sessionManager.getUserId();
@@ -346,7 +431,7 @@ public class  HabitRepository {
             apiHelper.updateHabit(serverId, habit, new HabitApiHelper.OnHabitSavedListener() {
                 @Override
                 public void onSuccess(Habit updatedHabit) {
-                    executorService.execute(() -> {
+                    executors.diskWrite().execute(() -> {
                         // Marcar como sincronizado
                         dbHelper.markHabitAsSynced(localId, updatedHabit.getId());
                         callback.onSuccess(updatedHabit);
@@ -356,7 +441,7 @@ public class  HabitRepository {
                 @Override
                 public void onError(String error) {
                     Log.e(TAG, "Error al sincronizar hábito: " + error);
-                    executorService.execute(() -> {
+                    executors.diskWrite().execute(() -> {
                         // Marcar como no sincronizado y guardar como operación pendiente
                         dbHelper.markHabitAsUnsynced(localId);
                         String habitJson = gson.toJson(habit);
@@ -370,7 +455,7 @@ public class  HabitRepository {
             apiHelper.createHabit(habit, new HabitApiHelper.OnHabitSavedListener() {
                 @Override
                 public void onSuccess(Habit createdHabit) {
-                    executorService.execute(() -> {
+                    executors.diskWrite().execute(() -> {
                         try {
                             // CRÍTICO: Marcar como sincronizado ANTES de notificar éxito
                             // Esto previene que refreshHabitsList() descargue el hábito y cree un duplicado
@@ -392,7 +477,7 @@ public class  HabitRepository {
                 @Override
                 public void onError(String error) {
                     Log.e(TAG, "Error al crear hábito en servidor: " + error);
-                    executorService.execute(() -> {
+                    executors.diskWrite().execute(() -> {
                         // Marcar como no sincronizado y guardar como operación pendiente
                         dbHelper.markHabitAsUnsynced(localId);
                         String habitJson = gson.toJson(habit);
@@ -438,7 +523,7 @@ public class  HabitRepository {
      * Guarda localmente primero, luego sincroniza con la API si hay conexión.
      */
     public void addScore(long habitId, String habitTitle, int points, RepositoryCallback<Void> callback) {
-        executorService.execute(() -> {
+        executors.diskWrite().execute(() -> {
             try {
                 // 1. Guardar en base de datos local (SQLite)
                 long localScoreId = dbHelper.addScore(habitTitle, points);
@@ -495,7 +580,7 @@ public class  HabitRepository {
      * @param callback Callback para manejar la respuesta
      */
     public void saveHabitCompletion(long habitId, double latitude, double longitude, String note, RepositoryCallback<Void> callback) {
-        executorService.execute(() -> {
+        executors.diskWrite().execute(() -> {
             try {
                 long userId = sessionManager.getUserId();
                 if (userId <= 0) {
@@ -583,7 +668,7 @@ public class  HabitRepository {
      * @param callback Callback para manejar la respuesta
      */
     public void deleteHabitCompletion(long habitId, RepositoryCallback<Void> callback) {
-        executorService.execute(() -> {
+        executors.diskWrite().execute(() -> {
             try {
                 long userId = sessionManager.getUserId();
                 if (userId <= 0) {
@@ -632,7 +717,7 @@ public class  HabitRepository {
      * @param callback Callback para manejar la respuesta
      */
     public void getTodayCompletions(RepositoryCallback<List<HabitCompletion>> callback) {
-        executorService.execute(() -> {
+        executors.diskRead().execute(() -> {
             try {
                 long userId = sessionManager.getUserId();
                 if (userId <= 0) {
@@ -656,103 +741,9 @@ public class  HabitRepository {
                     checkinApiHelper.getTodayCheckins(new HabitCheckinApiHelper.OnCheckinsReceivedListener() {
                         @Override
                         public void onSuccess(List<HabitCheckinDto> serverCheckins) {
-                            executorService.execute(() -> {
+                            executors.diskWrite().execute(() -> {
                                 Log.d(TAG, "✅ Completados de hoy cargados del servidor: " + serverCheckins.size());
-                                
-                                // Convertir DTOs del servidor a HabitCompletion y guardar en local
-                                for (HabitCheckinDto dto : serverCheckins) {
-                                    // Buscar el habitId local correspondiente al serverHabitId
-                                    Long localHabitId = dbHelper.getLocalHabitIdByServerId(dto.getHabitId());
-                                    
-                                    if (localHabitId == null || localHabitId <= 0) {
-                                        // El hábito no existe localmente, intentar sincronizarlo primero
-                                        Log.w(TAG, "⚠️ Hábito con serverId " + dto.getHabitId() + " no encontrado localmente. Intentando sincronizar hábitos...");
-                                        
-                                        // Intentar obtener el hábito del servidor
-                                        apiHelper.getHabitById(dto.getHabitId(), new HabitApiHelper.OnHabitLoadedListener() {
-                                            @Override
-                                            public void onSuccess(Habit habit) {
-                                                executorService.execute(() -> {
-                                                    // Guardar el hábito localmente usando insertHabitFull
-                                                    long newLocalHabitId = dbHelper.insertHabitFull(
-                                                        habit.getTitle(),
-                                                        habit.getGoal(),
-                                                        habit.getCategory(),
-                                                        habit.getType().name(),
-                                                        habit.getPoints(),
-                                                        habit.getTargetValue(),
-                                                        habit.getTargetUnit(),
-                                                        habit.getPagesPerDay(),
-                                                        habit.getReminderTimes(),
-                                                        habit.getDurationMinutes(),
-                                                        habit.isDndMode(),
-                                                        habit.getMusicId(),
-                                                        habit.isJournalEnabled(),
-                                                        habit.getGymDays(),
-                                                        habit.getWaterGoalGlasses(),
-                                                        habit.getWalkGoalMeters(),
-                                                        habit.getWalkGoalSteps(),
-                                                        habit.isOneClickComplete(),
-                                                        habit.isEnglishMode(),
-                                                        habit.isCodingMode(),
-                                                        habit .getHabitIcon()
-                                                    );
-                                                    if (newLocalHabitId > 0) {
-                                                        // Marcar como sincronizado
-                                                        dbHelper.markHabitAsSynced(newLocalHabitId, dto.getHabitId());
-                                                        
-                                                        // Ahora guardar el completado
-                                                        if (!dbHelper.hasCompletionToday(newLocalHabitId, userId)) {
-                                                            dbHelper.saveHabitCompletion(
-                                                                newLocalHabitId,
-                                                                userId,
-                                                                dto.getLatitude() != null ? dto.getLatitude() : 0.0,
-                                                                dto.getLongitude() != null ? dto.getLongitude() : 0.0
-                                                            );
-                                                            Log.d(TAG, "✅ Completado guardado después de sincronizar hábito: " + habit.getTitle());
-                                                        }
-                                                    }
-                                                });
-                                            }
-
-                                            @Override
-                                            public void onError(String error) {
-                                                Log.e(TAG, "❌ Error al obtener hábito del servidor (serverId=" + dto.getHabitId() + "): " + error);
-                                                // Continuar con el siguiente checkin
-                                            }
-                                        });
-                                    } else {
-                                        // El hábito existe localmente, guardar el completado si no existe
-                                        if (!dbHelper.hasCompletionToday(localHabitId, userId)) {
-                                            // Obtener información del hábito local
-                                            Habit habit = dbHelper.getHabitById(localHabitId);
-                                            if (habit != null) {
-                                                dbHelper.saveHabitCompletion(
-                                                    localHabitId,
-                                                    userId,
-                                                    dto.getLatitude() != null ? dto.getLatitude() : 0.0,
-                                                    dto.getLongitude() != null ? dto.getLongitude() : 0.0
-                                                );
-                                                Log.d(TAG, "✅ Completado guardado: " + habit.getTitle());
-                                            }
-                                        }
-                                    }
-                                }
-
-                                // Esperar un poco para que se completen las sincronizaciones de hábitos
-                                try {
-                                    Thread.sleep(500); // 500ms para dar tiempo a las llamadas asíncronas
-                                } catch (InterruptedException e) {
-                                    Thread.currentThread().interrupt();
-                                }
-
-                                // Obtener lista actualizada
-                                List<HabitCompletion> updatedCompletions = dbHelper.getTodayCompletions(userId);
-                                
-                                // Notificar en el hilo principal para actualizar UI
-                                new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
-                                    callback.onSuccess(updatedCompletions);
-                                });
+                                mergeTodayCheckins(userId, serverCheckins, callback);
                             });
                         }
 
@@ -772,5 +763,108 @@ public class  HabitRepository {
             }
         });
     }
+
+    /**
+     * Obtiene los completados del usuario actual dentro de un área y rango de fechas
+     * (solo datos locales; busca con el índice geohash, sin recorrer toda la tabla).
+     * Si west > east el área cruza el antimeridiano.
+     * @param fromDay Primer día incluido (LocalDate.toEpochDay(), ver DayClock)
+     * @param toDay Último día incluido (LocalDate.toEpochDay())
+     */
+    public void getCompletionsInArea(double south, double west, double north, double east,
+                                     long fromDay, long toDay,
+                                     RepositoryCallback<List<HabitCompletion>> callback) {
+        executors.diskRead().execute(() -> {
+            try {
+                long userId = sessionManager.getUserId();
+                if (userId <= 0) {
+                    mainHandler.post(() -> callback.onError("Usuario no autenticado"));
+                    return;
+                }
+                List<HabitCompletion> completions = dbHelper.getCompletionsInArea(
+                        userId, south, west, north, east, fromDay, toDay);
+                mainHandler.post(() -> callback.onSuccess(completions));
+            } catch (Exception e) {
+                Log.e(TAG, "Error al obtener completados del área", e);
+                mainHandler.post(() -> callback.onError(e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Fusiona los check-ins de hoy del servidor con la base local.
+     * Los hábitos se resuelven con una sola consulta local; los que falten se descargan por
+     * serverId (en paralelo) y se guardan con el usuario actual antes de guardar los completados
+     * y notificar la lista final.
+     */
+    private void mergeTodayCheckins(long userId, List<HabitCheckinDto> serverCheckins,
+                                    RepositoryCallback<List<HabitCompletion>> callback) {
+        java.util.Map<Long, Long> localIds = dbHelper.getLocalIdsByServerId();
+        java.util.Set<Long> missingServerIds = new java.util.HashSet<>();
+        for (HabitCheckinDto dto : serverCheckins) {
+            if (dto.getHabitId() != null && dto.getHabitId() > 0 && !localIds.containsKey(dto.getHabitId())) {
+                missingServerIds.add(dto.getHabitId());
+            }
+        }
+
+        if (missingServerIds.isEmpty()) {
+            saveTodayCheckins(userId, serverCheckins, localIds, callback);
+            return;
+        }
+
+        Log.w(TAG, "⚠️ " + missingServerIds.size() + " hábitos de los completados no existen localmente. Descargándolos...");
+        List<Habit> missingHabits = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+        java.util.concurrent.atomic.AtomicInteger pending = new java.util.concurrent.atomic.AtomicInteger(missingServerIds.size());
+        Runnable onHabitDone = () -> {
+            if (pending.decrementAndGet() > 0) {
+                return;
+            }
+            executors.diskWrite().execute(() -> {
+                List<Habit> habits;
+                synchronized (missingHabits) {
+                    habits = new java.util.ArrayList<>(missingHabits);
+                }
+                // Son hábitos de los completados de este usuario: sin userId se guardarían con 0
+                // y CleanupHelper los borraría como huérfanos
+                for (Habit habit : habits) {
+                    habit.setUserId(userId);
+                }
+                dbHelper.applyServerChanges(habits, java.util.Collections.emptyList());
+                // Los completados cuyos hábitos no se pudieron descargar se omiten
+                saveTodayCheckins(userId, serverCheckins, dbHelper.getLocalIdsByServerId(), callback);
+            });
+        };
+        for (Long serverId : missingServerIds) {
+            apiHelper.getHabitById(serverId, new HabitApiHelper.OnHabitLoadedListener() {
+                @Override
+                public void onSuccess(Habit habit) {
+                    if (habit.getId() == serverId) {
+                        missingHabits.add(habit);
+                    }
+                    onHabitDone.run();
+                }
+
+                @Override
+                public void onError(String error) {
+                    Log.e(TAG, "❌ Error al obtener hábito " + serverId + " del servidor: " + error);
+                    onHabitDone.run();
+                }
+            });
+        }
+    }
+
+    private void saveTodayCheckins(long userId, List<HabitCheckinDto> serverCheckins, java.util.Map<Long, Long> localIds,
+                                   RepositoryCallback<List<HabitCompletion>> callback) {
+        int saved = dbHelper.saveTodayCheckins(userId, serverCheckins, localIds);
+        Log.d(TAG, "✅ Completados del servidor guardados: " + saved);
+
+        // Obtener lista actualizada
+        List<HabitCompletion> updatedCompletions = dbHelper.getTodayCompletions(userId);
+
+        // Notificar en el hilo principal para actualizar UI
+        new android.os.Handler(android.os.Looper.getMainLooper()).post(() -> {
+            callback.onSuccess(updatedCompletions);
+        });
+    }
 }
 
@@ -62,20 +62,17 @@ public class StepSensorManager {
      */
     private void loadWalkGoalFromHabit() {
         try {
-            HabitDatabaseHelper dbHelper = new HabitDatabaseHelper(ctx);
-            java.util.List<Habit> habits = dbHelper.getAllHabits();
-            for (Habit habit : habits) {
-                if (habit.getType() == Habit.HabitType.WALK) {
-                    if (habit.getWalkGoalSteps() != null && habit.getWalkGoalSteps() > 0) {
-                        useSteps = true;
-                        targetSteps = habit.getWalkGoalSteps();
-                        android.util.Log.d("StepSensor", "Meta de caminar configurada: " + targetSteps + " pasos");
-                    } else if (habit.getWalkGoalMeters() != null && habit.getWalkGoalMeters() > 0) {
-                        useSteps = false;
-                        targetMeters = habit.getWalkGoalMeters();
-                        android.util.Log.d("StepSensor", "Meta de caminar configurada: " + targetMeters + " metros");
-                    }
-                    break;
+            // Búsqueda por tipo en la caché del repositorio (sin recorrer todos los hábitos)
+            Habit habit = HabitRepository.getInstance(ctx).getHabitByType(Habit.HabitType.WALK);
+            if (habit != null) {
+                if (habit.getWalkGoalSteps() != null && habit.getWalkGoalSteps() > 0) {
+                    useSteps = true;
+                    targetSteps = habit.getWalkGoalSteps();
+                    android.util.Log.d("StepSensor", "Meta de caminar configurada: " + targetSteps + " pasos");
+                } else if (habit.getWalkGoalMeters() != null && habit.getWalkGoalMeters() > 0) {
+                    useSteps = false;
+                    targetMeters = habit.getWalkGoalMeters();
+                    android.util.Log.d("StepSensor", "Meta de caminar configurada: " + targetMeters + " metros");
                 }
             }
         } catch (Exception e) {
@@ -202,22 +199,18 @@ public class StepSensorManager {
      */
     private void saveWalkProgress(int meters, int steps) {
         try {
-            HabitDatabaseHelper dbHelper = new HabitDatabaseHelper(ctx);
-            java.util.List<Habit> habits = dbHelper.getAllHabits();
-            for (Habit habit : habits) {
-                if (habit.getType() == Habit.HabitType.WALK) {
-                    android.content.SharedPreferences prefs = ctx.getSharedPreferences("habit_progress", Context.MODE_PRIVATE);
-                    java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
-                    String todayKey = sdf.format(new java.util.Date());
-                    
-                    if (steps > 0) {
-                        String key = "walk_steps_" + habit.getId() + "_" + todayKey;
-                        prefs.edit().putInt(key, steps).apply();
-                    } else if (meters > 0) {
-                        String key = "walk_meters_" + habit.getId() + "_" + todayKey;
-                        prefs.edit().putInt(key, meters).apply();
-                    }
-                    break;
+            Habit habit = HabitRepository.getInstance(ctx).getHabitByType(Habit.HabitType.WALK);
+            if (habit != null) {
+                android.content.SharedPreferences prefs = ctx.getSharedPreferences("habit_progress", Context.MODE_PRIVATE);
+                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
+                String todayKey = sdf.format(new java.util.Date());
+                
+                if (steps > 0) {
+                    String key = "walk_steps_" + habit.getId() + "_" + todayKey;
+                    prefs.edit().putInt(key, steps).apply();
+                } else if (meters > 0) {
+                    String key = "walk_meters_" + habit.getId() + "_" + todayKey;
+                    prefs.edit().putInt(key, meters).apply();
                 }
             }
         } catch (Exception e) {
@@ -241,9 +234,9 @@ public class StepSensorManager {
             }
             
             // Buscar hábito de tipo WALK
-            java.util.List<Habit> habits = dbHelper.getAllHabits();
+            java.util.List<Habit> habits = habitRepository.getHabitsByType(Habit.HabitType.WALK);
             for (Habit habit : habits) {
-                if (habit.getType() == Habit.HabitType.WALK && !habit.isCompleted()) {
+                if (!habit.isCompleted()) {
                     habit.setCompleted(true);
                     dbHelper.updateHabitCompleted(habit.getTitle(), true);
                     
@@ -0,0 +1,174 @@
+package com.tuempresa.proyecto_01_11_25.sync;
+
+import android.util.Log;
+
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync.PendingOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Planificador de operaciones pendientes.
+ * Agrupa las operaciones por entidad: dentro de un grupo se ejecutan en el orden en que se
+ * encolaron y un fallo detiene el resto del grupo hasta el siguiente intento;
+ * grupos distintos se ejecutan en paralelo en el executor recibido, empezando por los de mayor prioridad.
+ * run() espera a los grupos, así que el executor no puede ser el mismo en el que corre quien llama.
+ * Los reintentos se espacian con backoff exponencial según retry_count.
+ */
+class PendingOperationScheduler {
+    private static final String TAG = "PendingOpScheduler";
+
+    static final int MAX_RETRIES = 8;
+    private static final long BASE_BACKOFF_SECONDS = 30;
+    private static final long MAX_BACKOFF_SECONDS = 6 * 60 * 60;
+
+    /**
+     * Ejecuta una operación y devuelve true solo cuando el servidor la confirmó.
+     */
+    interface OperationProcessor {
+        boolean process(PendingOperation op);
+    }
+
+    private final HabitDatabaseHelperSync dbHelper;
+    private final ExecutorService executor;
+
+    /**
+     * @param executor pool exclusivo para los grupos (ver AppExecutors.syncOperations())
+     */
+    PendingOperationScheduler(HabitDatabaseHelperSync dbHelper, ExecutorService executor) {
+        this.dbHelper = dbHelper;
+        this.executor = executor;
+    }
+
+    /**
+     * Procesa las operaciones y espera a que terminen todos los grupos.
+     * @return número de operaciones completadas con éxito
+     */
+    int run(List<PendingOperation> operations, OperationProcessor processor) {
+        AtomicInteger processedCount = new AtomicInteger();
+        long now = System.currentTimeMillis() / 1000;
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<PendingOperation> group : groupByEntity(operations)) {
+            futures.add(executor.submit(() -> runGroup(group, processor, now, processedCount)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error al procesar grupo de operaciones pendientes", e.getCause());
+            }
+        }
+        return processedCount.get();
+    }
+
+    private void runGroup(List<PendingOperation> group, OperationProcessor processor, long now,
+                          AtomicInteger processedCount) {
+        for (PendingOperation op : group) {
+            if (op.retryCount >= MAX_RETRIES) {
+                // Demasiados reintentos, eliminar
+                Log.w(TAG, "⚠️ Operación descartada tras " + op.retryCount + " reintentos: "
+                        + op.operationType + " " + op.entityType + " " + op.entityId + " (" + op.lastError + ")");
+                dbHelper.deletePendingOperation(op.id);
+                continue;
+            }
+            if (op.nextAttemptAt > now) {
+                // Aún en espera: las operaciones posteriores de esta entidad también esperan
+                return;
+            }
+            if (!dbHelper.beginPendingOperation(op)) {
+                // La compactación la eliminó o la fusionó con otra
+                continue;
+            }
+            boolean success;
+            String error = "Error en procesamiento";
+            try {
+                success = processor.process(op);
+            } catch (Exception e) {
+                Log.e(TAG, "Error al procesar operación pendiente", e);
+                success = false;
+                error = e.getMessage();
+            } finally {
+                dbHelper.endPendingOperation(op.id);
+            }
+            if (!success) {
+                long delay = backoffSeconds(op.retryCount);
+                dbHelper.scheduleRetry(op.id, error, now + delay);
+                Log.d(TAG, "Operación " + op.id + " reintentará en " + delay + " s");
+                return;
+            }
+            dbHelper.deletePendingOperation(op.id);
+            processedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Agrupa por entidad y ordena: cada grupo por orden de llegada (created_at y luego id,
+     * sin reordenar por tipo: un UPDATE encolado tras un DELETE debe ir después),
+     * y los grupos por la mejor prioridad que contienen y luego por antigüedad.
+     */
+    static List<List<PendingOperation>> groupByEntity(List<PendingOperation> operations) {
+        Map<String, List<PendingOperation>> groups = new LinkedHashMap<>();
+        for (PendingOperation op : operations) {
+            String key = op.entityType + ":" + op.entityId;
+            List<PendingOperation> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(op);
+        }
+
+        Comparator<PendingOperation> byArrival = Comparator
+                .<PendingOperation>comparingLong(op -> op.createdAt)
+                .thenComparingLong(op -> op.id);
+        List<List<PendingOperation>> ordered = new ArrayList<>(groups.values());
+        for (List<PendingOperation> group : ordered) {
+            Collections.sort(group, byArrival);
+        }
+        Collections.sort(ordered, Comparator
+                .<List<PendingOperation>>comparingInt(PendingOperationScheduler::bestPriority)
+                .thenComparingLong(PendingOperationScheduler::oldestCreatedAt));
+        return ordered;
+    }
+
+    /**
+     * Espera antes del siguiente intento: 30 s, 60 s, 120 s... hasta 6 h, con ±20 % de variación
+     * para que los dispositivos no reintenten todos a la vez.
+     */
+    static long backoffSeconds(int retryCount) {
+        long delay = BASE_BACKOFF_SECONDS << Math.min(retryCount, 20);
+        delay = Math.min(delay, MAX_BACKOFF_SECONDS);
+        long jitter = delay / 5;
+        return delay - jitter + ThreadLocalRandom.current().nextLong(2 * jitter + 1);
+    }
+
+    private static int bestPriority(List<PendingOperation> group) {
+        int best = Integer.MAX_VALUE;
+        for (PendingOperation op : group) {
+            best = Math.min(best, op.priority);
+        }
+        return best;
+    }
+
+    private static long oldestCreatedAt(List<PendingOperation> group) {
+        long oldest = Long.MAX_VALUE;
+        for (PendingOperation op : group) {
+            oldest = Math.min(oldest, op.createdAt);
+        }
+        return oldest;
+    }
+}
@@ -7,11 +7,11 @@ import com.google.gson.Gson;
 import com.tuempresa.proyecto_01_11_25.api.HabitApiHelper;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.model.HabitsResponse;
 import com.tuempresa.proyecto_01_11_25.network.ConnectionMonitor;
 
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Gestor de sincronización entre la base de datos local y la API remota.
@@ -20,31 +20,77 @@ import java.util.concurrent.Executors;
 public class SyncManager {
     private static final String TAG = "SyncManager";
     private static SyncManager instance;
+    private static final int UPLOAD_BATCH_SIZE = 50;
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+    // Marcador de lote sin respuesta a tiempo: el servidor pudo haberlo aplicado, así que no se reintenta individualmente
+    private static final List<Habit> BATCH_TIMED_OUT = java.util.Collections.unmodifiableList(new java.util.ArrayList<>());
     
     private final Context context;
     private final HabitDatabaseHelperSync dbHelper;
     private final HabitApiHelper apiHelper;
     private final ConnectionMonitor connectionMonitor;
+    // Carril de red compartido: la sincronización no ocupa los hilos de lectura/escritura de la UI
     private final ExecutorService executorService;
+    private final PendingOperationScheduler operationScheduler;
     private final Gson gson;
     private final com.tuempresa.proyecto_01_11_25.utils.SessionManager sessionManager;
     
-    private boolean isSyncing = false;
-    private final java.util.concurrent.locks.ReentrantLock syncLock = new java.util.concurrent.locks.ReentrantLock();
-    private SyncListener currentSyncListener;
+    private volatile boolean isSyncing = false;
+    // Se adquiere en syncAll y se libera al terminar (en el hilo que sea), a diferencia de un ReentrantLock
+    private final java.util.concurrent.atomic.AtomicBoolean syncRunning = new java.util.concurrent.atomic.AtomicBoolean(false);
 
     public interface SyncListener {
         void onSyncStarted();
         void onSyncCompleted(int syncedCount);
         void onSyncError(String error);
+
+        /**
+         * Se llama antes de reproducir las operaciones pendientes si la compactación eliminó alguna.
+         * @param eliminatedCount operaciones fusionadas o anuladas que ya no se enviarán
+         */
+        default void onPendingOperationsCompacted(int eliminatedCount) {
+        }
+
+        /**
+         * Se llama una sola vez al final de cada solicitud de sincronización, haya terminado bien o no.
+         */
+        default void onSyncFinished(SyncResult result) {
+        }
+    }
+
+    /**
+     * Estado de una sincronización: se crea en syncAll y viaja con sus tareas, que corren en
+     * hilos distintos (el del pool de red y los callbacks de la descarga).
+     */
+    private static final class SyncRun {
+        final SyncListener listener;
+        final long startedAt = System.currentTimeMillis();
+        final java.util.concurrent.atomic.AtomicInteger uploadedCount = new java.util.concurrent.atomic.AtomicInteger();
+        final java.util.concurrent.atomic.AtomicInteger compactedCount = new java.util.concurrent.atomic.AtomicInteger();
+
+        SyncRun(SyncListener listener) {
+            this.listener = listener;
+        }
     }
 
     private SyncManager(Context context) {
+        this(context, new HabitApiHelper(context)); // Pasar context para inicializar correctamente
+    }
+
+    /**
+     * Constructor con el cliente de la API indicado (por ejemplo, uno que apunte a un servidor de pruebas).
+     * Fuera de las pruebas usar getInstance.
+     */
+    SyncManager(Context context, HabitApiHelper apiHelper) {
         this.context = context.getApplicationContext();
         this.dbHelper = new HabitDatabaseHelperSync(context);
-        this.apiHelper = new HabitApiHelper(context); // Pasar context para inicializar correctamente
+        this.apiHelper = apiHelper;
         this.connectionMonitor = ConnectionMonitor.getInstance(context);
-        this.executorService = Executors.newSingleThreadExecutor();
+        // syncRunning garantiza una sola sincronización a la vez aunque el pool tenga varios hilos
+        this.executorService = com.tuempresa.proyecto_01_11_25.utils.AppExecutors.getInstance().network();
+        // Los grupos de operaciones van a su propio pool: la sincronización los espera desde network()
+        this.operationScheduler = new PendingOperationScheduler(dbHelper,
+                com.tuempresa.proyecto_01_11_25.utils.AppExecutors.getInstance().syncOperations());
         this.gson = new Gson();
         this.sessionManager = new com.tuempresa.proyecto_01_11_25.utils.SessionManager(context);
     }
@@ -58,126 +104,328 @@ public class SyncManager {
 
     /**
      * Sincroniza todos los datos pendientes con el servidor.
-     * Previene múltiples sincronizaciones simultáneas usando un lock.
+     * Previene múltiples sincronizaciones simultáneas: mientras una está en curso,
+     * las nuevas solicitudes se rechazan.
      */
     public void syncAll(SyncListener listener) {
-        // Intentar adquirir el lock (no bloqueante)
-        if (!syncLock.tryLock()) {
+        if (!syncRunning.compareAndSet(false, true)) {
             Log.d(TAG, "Sincronización ya en progreso, ignorando nueva solicitud");
             if (listener != null) {
                 listener.onSyncError("Sincronización ya en progreso");
+                listener.onSyncFinished(SyncResult.skipped("Sincronización ya en progreso"));
             }
             return;
         }
 
-        try {
-            if (isSyncing) {
-                Log.d(TAG, "Sincronización ya en progreso (verificación adicional)");
-                if (listener != null) {
-                    listener.onSyncError("Sincronización ya en progreso");
-                }
-                return;
-            }
-
-            if (!connectionMonitor.isConnected()) {
-                Log.d(TAG, "Sin conexión a la API, no se puede sincronizar");
-                if (listener != null) {
-                    listener.onSyncError("Sin conexión a la API");
-                }
-                return;
+        if (!connectionMonitor.isConnected()) {
+            Log.d(TAG, "Sin conexión a la API, no se puede sincronizar");
+            syncRunning.set(false);
+            if (listener != null) {
+                listener.onSyncError("Sin conexión a la API");
+                listener.onSyncFinished(SyncResult.failure("Sin conexión a la API", 0, 0, 0));
             }
+            return;
+        }
 
+        isSyncing = true;
+        SyncRun run = new SyncRun(listener);
+        try {
             executorService.execute(() -> {
                 try {
-                    isSyncing = true;
-                    currentSyncListener = listener;
                     if (listener != null) {
                         listener.onSyncStarted();
                     }
 
-                    int syncedCount = 0;
-
                     // 1. Sincronizar hábitos no sincronizados
-                    syncedCount += syncHabits();
+                    run.uploadedCount.addAndGet(syncHabits());
 
                     // 2. Sincronizar scores no sincronizados
-                    syncedCount += syncScores();
+                    run.uploadedCount.addAndGet(syncScores());
 
-                    // 3. Procesar operaciones pendientes
-                    syncedCount += processPendingOperations();
+                    // 3. Compactar y procesar operaciones pendientes
+                    int compacted = dbHelper.compactPendingOperations();
+                    run.compactedCount.set(compacted);
+                    if (compacted > 0 && listener != null) {
+                        listener.onPendingOperationsCompacted(compacted);
+                    }
+                    run.uploadedCount.addAndGet(processPendingOperations());
 
                     // 4. Descargar datos del servidor (esto es asíncrono, pero notificará cuando termine)
-                    downloadFromServer();
+                    downloadFromServer(run);
 
-                    // Nota: downloadFromServer es asíncrono, pero onSyncCompleted se llamará
-                    // después de que se complete la descarga en downloadFromServer
+                    // Nota: downloadFromServer es asíncrono; la sincronización termina
+                    // (completeSync o failSync) cuando se complete la descarga
                 } catch (Exception e) {
-                    isSyncing = false;
                     Log.e(TAG, "Error en sincronización", e);
-                    if (listener != null) {
-                        listener.onSyncError(e.getMessage());
-                    }
-                    // Liberar el lock en caso de error antes de downloadFromServer
-                    if (syncLock.isHeldByCurrentThread()) {
-                        syncLock.unlock();
-                        Log.d(TAG, "Lock de sincronización liberado (error antes de download)");
-                    }
+                    failSync(run, e.getMessage());
                 }
             });
         } catch (Exception e) {
-            // Si hay error al iniciar la sincronización, liberar el lock
-            if (syncLock.isHeldByCurrentThread()) {
-                syncLock.unlock();
-                Log.d(TAG, "Lock de sincronización liberado (error al iniciar)");
+            // Si hay error al iniciar la sincronización, liberar la sincronización en curso
+            failSync(run, "Error al iniciar sincronización: " + e.getMessage());
+            throw new RuntimeException("Error al iniciar sincronización", e);
+        }
+    }
+
+    /**
+     * Sincroniza y espera a que termine. No debe llamarse desde el hilo principal.
+     * @param timeout Tiempo máximo de espera; si se agota, la sincronización sigue en segundo plano
+     * @return Resultado con estado, duración y cantidad de elementos
+     */
+    public SyncResult syncAllBlocking(long timeout, java.util.concurrent.TimeUnit unit) {
+        long start = System.currentTimeMillis();
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicReference<SyncResult> result = new java.util.concurrent.atomic.AtomicReference<>();
+        syncAll(new SyncListener() {
+            @Override
+            public void onSyncStarted() {
             }
-            throw  new RuntimeException("Error al iniciar sincronización", e);
+
+            @Override
+            public void onSyncCompleted(int syncedCount) {
+            }
+
+            @Override
+            public void onSyncError(String error) {
+            }
+
+            @Override
+            public void onSyncFinished(SyncResult syncResult) {
+                result.set(syncResult);
+                latch.countDown();
+            }
+        });
+        try {
+            if (!latch.await(timeout, unit)) {
+                return SyncResult.timeout(System.currentTimeMillis() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SyncResult.timeout(System.currentTimeMillis() - start);
+        }
+        return result.get();
+    }
+
+    /**
+     * Termina la sincronización en curso con éxito y notifica al listener.
+     */
+    private void completeSync(SyncRun run, int downloadedCount, int deletedCount) {
+        SyncListener listener = run.listener;
+        SyncResult result = SyncResult.success(run.uploadedCount.get(), downloadedCount, deletedCount,
+                run.compactedCount.get(), System.currentTimeMillis() - run.startedAt);
+        isSyncing = false;
+        syncRunning.set(false);
+        if (listener != null) {
+            // Contar solo los hábitos descargados como elementos sincronizados
+            listener.onSyncCompleted(downloadedCount);
+            listener.onSyncFinished(result);
+        }
+        Log.d(TAG, "Sincronización completada: " + result);
+        com.tuempresa.proyecto_01_11_25.utils.AppExecutors.getInstance().logStats();
+    }
+
+    /**
+     * Termina la sincronización en curso con error y notifica al listener.
+     */
+    private void failSync(SyncRun run, String error) {
+        SyncListener listener = run.listener;
+        SyncResult result = SyncResult.failure(error, run.uploadedCount.get(), run.compactedCount.get(),
+                System.currentTimeMillis() - run.startedAt);
+        isSyncing = false;
+        syncRunning.set(false);
+        if (listener != null) {
+            listener.onSyncError(error);
+            listener.onSyncFinished(result);
         }
+        Log.e(TAG, "Sincronización fallida: " + result);
     }
 
     private int syncHabits() {
-        int syncedCount = 0;
         List<Habit> unsyncedHabits = dbHelper.getUnsyncedHabits();
+        if (unsyncedHabits.isEmpty()) {
+            return 0;
+        }
+        java.util.Map<Long, Long> serverIdsByLocalId = dbHelper.getServerIdsByLocalId();
         
-        for (Habit habit : unsyncedHabits) {
-            try {
-                Long serverId = dbHelper.getServerId(habit.getId());
-                
-                if (serverId != null && serverId > 0) {
-                    // Actualizar hábito existente
-                    apiHelper.updateHabit(serverId, habit, new HabitApiHelper.OnHabitSavedListener() {
-                        @Override
-                        public void onSuccess(Habit updatedHabit) {
-                            // Marcar como sincronizado
-                            dbHelper.markHabitAsSynced(habit.getId(), updatedHabit.getId());
-                        }
+        // Subir en lotes por POST habits/sync en lugar de una petición por hábito
+        int syncedCount = 0;
+        for (int start = 0; start < unsyncedHabits.size(); start += UPLOAD_BATCH_SIZE) {
+            List<Habit> chunk = unsyncedHabits.subList(start, Math.min(start + UPLOAD_BATCH_SIZE, unsyncedHabits.size()));
+            syncedCount += uploadHabitBatch(chunk, serverIdsByLocalId);
+        }
+        return syncedCount;
+    }
 
-                        @Override
-                        public void onError(String error) {
-                            Log.e(TAG, "Error al actualizar hábito: " + error);
-                        }
-                    });
+    /**
+     * Sube un lote de hábitos con una sola petición y marca como sincronizados los devueltos
+     * en una sola transacción. Cada hábito viaja con su serverId como id (0 si es nuevo).
+     * Los hábitos que el servidor no devuelve, o todo el lote si la petición falla,
+     * se suben uno a uno como antes.
+     * @return hábitos confirmados por el servidor y marcados como sincronizados localmente
+     */
+    private int uploadHabitBatch(List<Habit> chunk, java.util.Map<Long, Long> serverIdsByLocalId) {
+        long[] localIds = new long[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            Habit habit = chunk.get(i);
+            localIds[i] = habit.getId();
+            Long serverId = serverIdsByLocalId.get(habit.getId());
+            habit.setId(serverId != null ? serverId : 0);
+        }
+        
+        List<Habit> returnedHabits = awaitBatchUpload(chunk);
+        
+        // Restaurar los ids locales antes de usar los hábitos para el marcado o el reintento individual
+        for (int i = 0; i < chunk.size(); i++) {
+            chunk.get(i).setId(localIds[i]);
+        }
+        
+        if (returnedHabits == BATCH_TIMED_OUT) {
+            // Quedan sin sincronizar y se reintentarán en la próxima sincronización
+            return 0;
+        }
+        
+        java.util.Map<Long, Long> syncedIds = new java.util.HashMap<>();
+        List<Habit> fallback = new java.util.ArrayList<>();
+        if (returnedHabits == null) {
+            fallback.addAll(chunk);
+        } else {
+            // El servidor responde en el mismo orden; si no coincide, emparejar por título y tipo
+            java.util.Map<String, java.util.Deque<Long>> returnedByKey = new java.util.HashMap<>();
+            for (Habit returned : returnedHabits) {
+                returnedByKey.computeIfAbsent(uploadKey(returned), k -> new java.util.ArrayDeque<>()).add(returned.getId());
+            }
+            Long[] matched = new Long[chunk.size()];
+            for (int i = 0; i < chunk.size() && i < returnedHabits.size(); i++) {
+                Habit returned = returnedHabits.get(i);
+                String key = uploadKey(chunk.get(i));
+                if (returned.getId() > 0 && key.equals(uploadKey(returned))) {
+                    matched[i] = returned.getId();
+                    returnedByKey.get(key).remove(returned.getId());
+                }
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                Habit habit = chunk.get(i);
+                if (matched[i] == null) {
+                    java.util.Deque<Long> candidates = returnedByKey.get(uploadKey(habit));
+                    matched[i] = candidates != null ? candidates.poll() : null;
+                }
+                if (matched[i] != null && matched[i] > 0) {
+                    syncedIds.put(habit.getId(), matched[i]);
                 } else {
-                    // Crear nuevo hábito
-                    apiHelper.createHabit(habit, new HabitApiHelper.OnHabitSavedListener() {
-                        @Override
-                        public void onSuccess(Habit createdHabit) {
-                            // Marcar como sincronizado y guardar serverId
-                            dbHelper.markHabitAsSynced(habit.getId(), createdHabit.getId());
-                        }
-
-                        @Override
-                        public void onError(String error) {
-                            Log.e(TAG, "Error al crear hábito: " + error);
-                        }
-                    });
+                    fallback.add(habit);
                 }
-                syncedCount++;
-            } catch (Exception e) {
-                Log.e(TAG, "Error al sincronizar hábito " + habit.getId(), e);
             }
         }
         
-        return syncedCount;
+        int marked = syncedIds.size();
+        if (!dbHelper.markHabitsAsSynced(syncedIds)) {
+            // El servidor ya los tiene pero siguen sin server_id localmente: no cuentan como subidos
+            Log.e(TAG, "❌ No se pudieron guardar los server_id de " + syncedIds.size() + " hábitos del lote");
+            marked = 0;
+        }
+        Log.d(TAG, "Lote de " + chunk.size() + " hábitos subido: " + marked
+                + " sincronizados, " + fallback.size() + " se reintentan individualmente");
+        
+        return marked + uploadHabitsIndividually(fallback, serverIdsByLocalId);
+    }
+
+    /**
+     * Llama a HabitApiHelper.syncHabits y espera la respuesta (se ejecuta en el hilo de sincronización).
+     * @return hábitos devueltos por el servidor, null si la petición falló o BATCH_TIMED_OUT sin respuesta
+     */
+    private List<Habit> awaitBatchUpload(List<Habit> habits) {
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicReference<List<Habit>> result = new java.util.concurrent.atomic.AtomicReference<>();
+        apiHelper.syncHabits(new java.util.ArrayList<>(habits), new HabitApiHelper.OnHabitsLoadedListener() {
+            @Override
+            public void onSuccess(List<Habit> syncedHabits) {
+                result.set(syncedHabits != null ? syncedHabits : new java.util.ArrayList<>());
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "⚠️ Error en subida por lotes, se usará subida individual: " + error);
+                latch.countDown();
+            }
+        });
+        try {
+            if (!latch.await(REQUEST_TIMEOUT_SECONDS, java.util.concurrent.TimeUnit.SECONDS)) {
+                Log.w(TAG, "⚠️ Tiempo de espera agotado en subida por lotes");
+                return BATCH_TIMED_OUT;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return BATCH_TIMED_OUT;
+        }
+        return result.get();
+    }
+
+    private static String uploadKey(Habit habit) {
+        return habit.getTitle() + '\u0000' + (habit.getType() != null ? habit.getType().name() : "");
+    }
+
+    /**
+     * Sube los hábitos uno a uno (en paralelo) y espera las respuestas en el hilo de sincronización.
+     * Un hábito cuenta solo si el servidor lo confirmó y su server_id quedó guardado; si alguna
+     * respuesta llega después del tiempo de espera, se marca igualmente pero no se cuenta.
+     * @return hábitos subidos y marcados como sincronizados
+     */
+    private int uploadHabitsIndividually(List<Habit> habits, java.util.Map<Long, Long> serverIdsByLocalId) {
+        if (habits.isEmpty()) {
+            return 0;
+        }
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(habits.size());
+        java.util.concurrent.atomic.AtomicInteger uploaded = new java.util.concurrent.atomic.AtomicInteger();
+        for (Habit habit : habits) {
+            uploadHabitIndividually(habit, serverIdsByLocalId.get(habit.getId()), synced -> {
+                if (synced) {
+                    uploaded.incrementAndGet();
+                }
+                latch.countDown();
+            });
+        }
+        try {
+            if (!latch.await(REQUEST_TIMEOUT_SECONDS, java.util.concurrent.TimeUnit.SECONDS)) {
+                Log.w(TAG, "⚠️ Tiempo de espera agotado en subida individual: " + latch.getCount() + " sin respuesta");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return uploaded.get();
+    }
+
+    /**
+     * Crea o actualiza un hábito en el servidor y guarda su server_id.
+     * @param done recibe true si el servidor lo confirmó y quedó marcado como sincronizado
+     */
+    private void uploadHabitIndividually(Habit habit, Long serverId, java.util.function.Consumer<Boolean> done) {
+        HabitApiHelper.OnHabitSavedListener listener = new HabitApiHelper.OnHabitSavedListener() {
+            @Override
+            public void onSuccess(Habit savedHabit) {
+                // Marcar como sincronizado y guardar serverId
+                done.accept(savedHabit != null && savedHabit.getId() > 0
+                        && dbHelper.markHabitsAsSynced(java.util.Collections.singletonMap(habit.getId(), savedHabit.getId())));
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error al " + (serverId != null && serverId > 0 ? "actualizar" : "crear") + " hábito: " + error);
+                done.accept(false);
+            }
+        };
+        try {
+            if (serverId != null && serverId > 0) {
+                // Actualizar hábito existente
+                apiHelper.updateHabit(serverId, habit, listener);
+            } else {
+                // Crear nuevo hábito
+                apiHelper.createHabit(habit, listener);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al sincronizar hábito " + habit.getId(), e);
+            done.accept(false);
+        }
     }
 
     private int syncScores() {
@@ -188,34 +436,18 @@ public class SyncManager {
     }
 
     private int processPendingOperations() {
-        int processedCount = 0;
         List<HabitDatabaseHelperSync.PendingOperation> pendingOps = dbHelper.getAllPendingOperations();
-        
-        for (HabitDatabaseHelperSync.PendingOperation op : pendingOps) {
-            try {
-                if (op.retryCount >= 3) {
-                    // Demasiados reintentos, eliminar
-                    dbHelper.deletePendingOperation(op.id);
-                    continue;
-                }
-
-                // Procesar según el tipo de operación
-                boolean success = processOperation(op);
-                if (success) {
-                    dbHelper.deletePendingOperation(op.id);
-                    processedCount++;
-                } else {
-                    dbHelper.incrementRetryCount(op.id, "Error en procesamiento");
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error al procesar operación pendiente", e);
-                dbHelper.incrementRetryCount(op.id, e.getMessage());
-            }
+        if (pendingOps.isEmpty()) {
+            return 0;
         }
-        
-        return processedCount;
+        // Entidades distintas en paralelo (acotado por el pool), cada entidad en orden
+        return operationScheduler.run(pendingOps, this::processOperation);
     }
 
+    /**
+     * Ejecuta una operación pendiente y espera la respuesta del servidor.
+     * @return true solo si el servidor confirmó la operación
+     */
     private boolean processOperation(HabitDatabaseHelperSync.PendingOperation op) {
         try {
             if (op.entityType.equals("HABIT")) {
@@ -232,55 +464,24 @@ public class SyncManager {
                 }
                 
                 if (op.operationType.equals("CREATE")) {
-                    apiHelper.createHabit(habit, new HabitApiHelper.OnHabitSavedListener() {
-                        @Override
-                        public void onSuccess(Habit createdHabit) {
-                            executorService.execute(() -> {
-                                try {
-                                    dbHelper.markHabitAsSynced(op.entityId, createdHabit.getId());
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error al marcar hábito como sincronizado", e);
-                                }
-                            });
-                        }
-
-                        @Override
-                        public void onError(String error) {
-                            Log.e(TAG, "Error al procesar CREATE: " + error);
-                        }
-                    });
-                    return true;
+                    Habit createdHabit = awaitHabitSaved(listener -> apiHelper.createHabit(habit, listener), "CREATE");
+                    if (createdHabit != null) {
+                        dbHelper.markHabitAsSynced(op.entityId, createdHabit.getId());
+                        return true;
+                    }
                 } else if (op.operationType.equals("UPDATE")) {
                     Long serverId = dbHelper.getServerId(op.entityId);
                     if (serverId != null && serverId > 0) {
-                        apiHelper.updateHabit(serverId, habit, new HabitApiHelper.OnHabitSavedListener() {
-                            @Override
-                            public void onSuccess(Habit updatedHabit) {
-                                dbHelper.markHabitAsSynced(op.entityId, updatedHabit.getId());
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                Log.e(TAG, "Error al procesar UPDATE: " + error);
-                            }
-                        });
-                        return true;
+                        Habit updatedHabit = awaitHabitSaved(listener -> apiHelper.updateHabit(serverId, habit, listener), "UPDATE");
+                        if (updatedHabit != null) {
+                            dbHelper.markHabitAsSynced(op.entityId, updatedHabit.getId());
+                            return true;
+                        }
                     }
                 } else if (op.operationType.equals("DELETE")) {
                     Long serverId = dbHelper.getServerId(op.entityId);
                     if (serverId != null && serverId > 0) {
-                        apiHelper.deleteHabit(serverId, new HabitApiHelper.OnHabitDeletedListener() {
-                            @Override
-                            public void onSuccess() {
-                                // Ya está eliminado localmente
-                            }
-
-                            @Override
-                            public void onError(String error) {
-                                Log.e(TAG, "Error al procesar DELETE: " + error);
-                            }
-                        });
-                        return true;
+                        return awaitHabitDeleted(serverId);
                     }
                 }
             }
@@ -291,149 +492,209 @@ public class SyncManager {
         }
     }
 
-    private void downloadFromServer() {
-        // Descargar hábitos del servidor y actualizar base de datos local (SQLite)
-        apiHelper.getAllHabits(new HabitApiHelper.OnHabitsLoadedListener() {
+    /**
+     * Ejecuta una llamada de creación/actualización y espera su callback.
+     * @return el hábito devuelto por el servidor, o null si falló o no respondió a tiempo
+     */
+    private Habit awaitHabitSaved(java.util.function.Consumer<HabitApiHelper.OnHabitSavedListener> call, String operation) {
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicReference<Habit> result = new java.util.concurrent.atomic.AtomicReference<>();
+        call.accept(new HabitApiHelper.OnHabitSavedListener() {
+            @Override
+            public void onSuccess(Habit habit) {
+                result.set(habit);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error al procesar " + operation + ": " + error);
+                latch.countDown();
+            }
+        });
+        awaitLatch(latch);
+        return result.get();
+    }
+
+    private boolean awaitHabitDeleted(long serverId) {
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicBoolean deleted = new java.util.concurrent.atomic.AtomicBoolean();
+        apiHelper.deleteHabit(serverId, new HabitApiHelper.OnHabitDeletedListener() {
+            @Override
+            public void onSuccess() {
+                // Ya está eliminado localmente
+                deleted.set(true);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error al procesar DELETE: " + error);
+                latch.countDown();
+            }
+        });
+        awaitLatch(latch);
+        return deleted.get();
+    }
+
+    private void awaitLatch(java.util.concurrent.CountDownLatch latch) {
+        try {
+            if (!latch.await(REQUEST_TIMEOUT_SECONDS, java.util.concurrent.TimeUnit.SECONDS)) {
+                Log.w(TAG, "⚠️ Tiempo de espera agotado al procesar operación pendiente");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void downloadFromServer(SyncRun run) {
+        downloadChangesSince(run, sessionManager.getSyncWatermark());
+    }
+
+    /**
+     * Descarga los hábitos cambiados en el servidor desde la marca indicada.
+     * Con marca 0 (primera sincronización o resincronización) se descarga la lista completa;
+     * si una descarga incremental falla se reintenta una vez como descarga completa.
+     */
+    private void downloadChangesSince(SyncRun run, long since) {
+        apiHelper.getHabitsChangedSince(since, new HabitApiHelper.OnHabitsChangedListener() {
             @Override
-            public void onSuccess(List<Habit> serverHabits) {
+            public void onSuccess(HabitsResponse changes) {
                 executorService.execute(() -> {
                     try {
-                        // 1. Obtener todos los hábitos locales que están sincronizados (tienen serverId)
-                        List<Habit> localSyncedHabits = dbHelper.getSyncedHabits();
-                    
-                    // 2. Crear un conjunto de serverIds que vienen del servidor
-                    java.util.Set<Long> serverIds = new java.util.HashSet<>();
-                    for (Habit habit : serverHabits) {
-                        serverIds.add(habit.getId());
-                    }
-                    
-                    // 3. Eliminar hábitos locales que tienen serverId pero no están en el servidor
-                    int deletedCount = 0;
-                    for (Habit localHabit : localSyncedHabits) {
-                        Long serverId = dbHelper.getServerId(localHabit.getId());
-                        if (serverId != null && serverId > 0 && !serverIds.contains(serverId)) {
-                            // Este hábito existe localmente con serverId, pero no está en el servidor
-                            // Eliminarlo localmente
-                            dbHelper.deleteHabit(localHabit.getId());
-                            deletedCount++;
-                            Log.d(TAG, "Eliminado hábito local que ya no existe en servidor: " + localHabit.getTitle() + " (serverId: " + serverId + ")");
-                        }
-                    }
-                    
-                    // 4. Obtener el userId actual para filtrar hábitos
-                    long currentUserId = sessionManager.getUserId();
-                    
-                    // 5. Upsert de los hábitos del servidor (SOLO los del usuario actual)
-                    // CRÍTICO: Aceptar hábitos del usuario actual O hábitos con userId: 0 que tienen serverId válido
-                    // (estos últimos se corregirán en upsertHabitFromServer)
-                    int count = 0;
-                    int ignoredCount = 0;
-                    Log.d(TAG, "Procesando " + serverHabits.size() + " hábitos del servidor para usuario " + currentUserId);
-                    for (Habit habit : serverHabits) {
-                        // CRÍTICO: Si el userId es -1 (valor por defecto), significa que no se deserializó correctamente
-                        // Intentar corregirlo usando el userId del usuario actual
-                        if (habit.getUserId() == -1 || habit.getUserId() <= 0) {
-                            Log.w(TAG, "⚠️ Hábito con userId inválido (" + habit.getUserId() + ") después de deserialización, corrigiendo a " + currentUserId + 
-                                    ": " + habit.getTitle() + " (serverId: " + habit.getId() + ")");
-                            habit.setUserId(currentUserId);
-                        }
-                        
-                        Log.d(TAG, "Hábito del servidor: " + habit.getTitle() + " (userId: " + habit.getUserId() + ", serverId: " + habit.getId() + ")");
-                        // Verificar que el hábito pertenezca al usuario actual
-                        // Si tiene userId: 0 pero tiene un serverId válido, aceptarlo (se corregirá el userId)
-                        boolean shouldAccept = false;
-                        if (habit.getUserId() == currentUserId && habit.getUserId() > 0) {
-                            // Hábito del usuario actual con userId válido
-                            shouldAccept = true;
-                        } else if (habit.getUserId() == 0 && habit.getId() > 0) {
-                            // Hábito con userId: 0 pero con serverId válido (probablemente un error de deserialización)
-                            // Lo aceptamos y upsertHabitFromServer corregirá el userId
-                            Log.w(TAG, "⚠️ Hábito con userId: 0 pero serverId válido, corrigiendo userId: " + habit.getTitle() + 
-                                    " (serverId: " + habit.getId() + ", currentUserId: " + currentUserId + ")");
-                            habit.setUserId(currentUserId);
-                            shouldAccept = true;
-                        }
-                        
-                        if (shouldAccept) {
-                            // Upsert: actualizar si existe, insertar si no
-                            // upsertHabitFromServer corregirá el userId si es 0
-                            long localId = dbHelper.upsertHabitFromServer(habit, habit.getId());
-                            if (localId > 0) {
-                                count++;
-                            }
-                        } else {
-                            ignoredCount++;
-                            Log.w(TAG, "⚠️ Hábito del servidor ignorado (no pertenece al usuario actual): " + habit.getTitle() + 
-                                    " (userId: " + habit.getUserId() + ", currentUserId: " + currentUserId + ", serverId: " + habit.getId() + ")");
-                        }
-                    }
-                    
-                    // 6. Limpiar hábitos locales que NO pertenecen al usuario actual DESPUÉS de descargar
-                    // IMPORTANTE: Esto NO elimina hábitos locales sin serverId que pertenecen al usuario actual
-                    // Solo elimina hábitos de otros usuarios o con userId: 0
-                    // Los hábitos locales sin serverId se mantienen para sincronizarse después
-                    // CRÍTICO: Solo limpiar si el userId es válido
-                    if (currentUserId > 0) {
-                        dbHelper.deleteHabitsNotBelongingToCurrentUser();
-                        Log.d(TAG, "Limpiados hábitos locales que no pertenecen al usuario " + currentUserId + " (después de descarga)");
-                    } else {
-                        Log.w(TAG, "⚠️ No se puede limpiar hábitos: userId inválido (" + currentUserId + ")");
-                    }
-                    
-                    if (ignoredCount > 0) {
-                        Log.w(TAG, "⚠️ Total de hábitos ignorados: " + ignoredCount + " (no pertenecen al usuario " + currentUserId + ")");
-                    }
-                    
-                    Log.d(TAG, "Descargados " + count + " hábitos del servidor (de " + serverHabits.size() + " totales)");
-                    if (deletedCount > 0) {
-                        Log.d(TAG, "Eliminados " + deletedCount + " hábitos locales que ya no existen en el servidor");
-                    }
-                    
-                    // Obtener los hábitos actualizados de la base de datos local
-                    List<Habit> updatedHabits = dbHelper.getAllHabits();
-                    Log.d(TAG, "Hábitos en base de datos local después de descarga: " + updatedHabits.size());
-                    
-                    // Notificar que se completó la sincronización
-                    isSyncing = false;
-                    if (currentSyncListener != null) {
-                        // Contar solo los hábitos descargados como elementos sincronizados
-                        currentSyncListener.onSyncCompleted(count);
-                    }
-                    Log.d(TAG, "Sincronización completada: " + count + " hábitos descargados, " + deletedCount + " eliminados");
+                        applyDownloadedHabits(run, changes, since);
                     } catch (Exception e) {
                         Log.e(TAG, "Error crítico en downloadFromServer", e);
-                        isSyncing = false;
-                        if (currentSyncListener != null) {
-                            currentSyncListener.onSyncError("Error al descargar hábitos: " + e.getMessage());
-                        }
-                    } finally {
-                        // CRÍTICO: Liberar el lock cuando termine la sincronización
-                        if (syncLock.isHeldByCurrentThread()) {
-                            syncLock.unlock();
-                            Log.d(TAG, "Lock de sincronización liberado");
-                        }
+                        failSync(run, "Error al descargar hábitos: " + e.getMessage());
                     }
                 });
             }
 
             @Override
             public void onError(String error) {
-                Log.e(TAG, "Error al descargar hábitos: " + error);
-                isSyncing = false;
-                if (currentSyncListener != null) {
-                    currentSyncListener.onSyncError(error);
+                if (since > 0) {
+                    Log.w(TAG, "⚠️ Descarga incremental fallida (" + error + "), reintentando descarga completa");
+                    sessionManager.setSyncWatermark(0);
+                    downloadChangesSince(run, 0);
+                    return;
                 }
-                // CRÍTICO: Liberar el lock en caso de error
-                executorService.execute(() -> {
-                    if (syncLock.isHeldByCurrentThread()) {
-                        syncLock.unlock();
-                        Log.d(TAG, "Lock de sincronización liberado (error en downloadFromServer)");
-                    }
-                });
+                Log.e(TAG, "Error al descargar hábitos: " + error);
+                failSync(run, error);
             }
         });
     }
 
+    /**
+     * Aplica en la base de datos local la respuesta de descarga.
+     * Si se pidió desde una marca y el servidor devolvió serverTime, la respuesta es incremental
+     * (solo cambios y tombstones); en otro caso es la lista completa y se aplica como instantánea.
+     */
+    private void applyDownloadedHabits(SyncRun run, HabitsResponse response, long since) {
+        List<Habit> serverHabits = response.getHabits() != null ? response.getHabits() : new java.util.ArrayList<>();
+        boolean incremental = since > 0 && response.getServerTime() > 0;
+
+        // 1. Obtener el userId actual para filtrar hábitos
+        long currentUserId = sessionManager.getUserId();
+        
+        // 2. Seleccionar los hábitos del servidor que pertenecen al usuario actual
+        // CRÍTICO: Aceptar hábitos del usuario actual O hábitos con userId: 0 que tienen serverId válido
+        // (estos últimos se guardan con el userId actual)
+        List<Habit> acceptedHabits = new java.util.ArrayList<>(serverHabits.size());
+        int ignoredCount = 0;
+        Log.d(TAG, "Procesando " + serverHabits.size() + " hábitos del servidor para usuario " + currentUserId);
+        for (Habit habit : serverHabits) {
+            // CRÍTICO: Si el userId es -1 (valor por defecto), significa que no se deserializó correctamente
+            // Intentar corregirlo usando el userId del usuario actual
+            if (habit.getUserId() == -1 || habit.getUserId() <= 0) {
+                Log.w(TAG, "⚠️ Hábito con userId inválido (" + habit.getUserId() + ") después de deserialización, corrigiendo a " + currentUserId + 
+                        ": " + habit.getTitle() + " (serverId: " + habit.getId() + ")");
+                habit.setUserId(currentUserId);
+            }
+            
+            Log.d(TAG, "Hábito del servidor: " + habit.getTitle() + " (userId: " + habit.getUserId() + ", serverId: " + habit.getId() + ")");
+            // Verificar que el hábito pertenezca al usuario actual
+            // Si tiene userId: 0 pero tiene un serverId válido, aceptarlo (se corregirá el userId)
+            boolean shouldAccept = false;
+            if (habit.getUserId() == currentUserId && habit.getUserId() > 0) {
+                // Hábito del usuario actual con userId válido
+                shouldAccept = true;
+            } else if (habit.getUserId() == 0 && habit.getId() > 0) {
+                // Hábito con userId: 0 pero con serverId válido (probablemente un error de deserialización)
+                // Lo aceptamos y se guardará con el userId actual
+                Log.w(TAG, "⚠️ Hábito con userId: 0 pero serverId válido, corrigiendo userId: " + habit.getTitle() + 
+                        " (serverId: " + habit.getId() + ", currentUserId: " + currentUserId + ")");
+                habit.setUserId(currentUserId);
+                shouldAccept = true;
+            }
+            
+            if (shouldAccept) {
+                acceptedHabits.add(habit);
+            } else {
+                ignoredCount++;
+                Log.w(TAG, "⚠️ Hábito del servidor ignorado (no pertenece al usuario actual): " + habit.getTitle() + 
+                        " (userId: " + habit.getUserId() + ", currentUserId: " + currentUserId + ", serverId: " + habit.getId() + ")");
+            }
+        }
+        
+        // 3. Aplicar en una sola transacción
+        HabitDatabaseHelperSync.MergeResult mergeResult;
+        if (incremental) {
+            // Solo los hábitos cambiados y los eliminados (tombstones) desde la marca anterior
+            List<Long> deletedIds = response.getDeletedIds() != null ? response.getDeletedIds() : new java.util.ArrayList<>();
+            mergeResult = dbHelper.applyServerChanges(acceptedHabits, deletedIds);
+        } else {
+            // Lista completa: se eliminan los hábitos sincronizados que ya no están en el servidor
+            java.util.Set<Long> serverIds = new java.util.HashSet<>();
+            for (Habit habit : serverHabits) {
+                serverIds.add(habit.getId());
+            }
+            mergeResult = dbHelper.mergeServerSnapshot(acceptedHabits, serverIds);
+        }
+        int count = mergeResult.getAppliedCount();
+        int deletedCount = mergeResult.deleted;
+        
+        // 4. Limpiar hábitos locales que NO pertenecen al usuario actual DESPUÉS de una descarga completa
+        // IMPORTANTE: Esto NO elimina hábitos locales sin serverId que pertenecen al usuario actual
+        // Solo elimina hábitos de otros usuarios o con userId: 0
+        // Los hábitos locales sin serverId se mantienen para sincronizarse después
+        // En modo incremental no hace falta: la marca es por usuario, así que un cambio de usuario
+        // siempre empieza con una descarga completa
+        // CRÍTICO: Solo limpiar si el userId es válido
+        if (!incremental) {
+            if (currentUserId > 0) {
+                dbHelper.deleteHabitsNotBelongingToCurrentUser();
+                Log.d(TAG, "Limpiados hábitos locales que no pertenecen al usuario " + currentUserId + " (después de descarga)");
+            } else {
+                Log.w(TAG, "⚠️ No se puede limpiar hábitos: userId inválido (" + currentUserId + ")");
+            }
+        }
+        
+        if (ignoredCount > 0) {
+            Log.w(TAG, "⚠️ Total de hábitos ignorados: " + ignoredCount + " (no pertenecen al usuario " + currentUserId + ")");
+        }
+        
+        Log.d(TAG, "Descargados " + count + " hábitos del servidor (de " + serverHabits.size() + " totales, "
+                + (incremental ? "incremental desde " + since : "descarga completa") + ")");
+        if (deletedCount > 0) {
+            Log.d(TAG, "Eliminados " + deletedCount + " hábitos locales que ya no existen en el servidor");
+        }
+        
+        // 5. Guardar la nueva marca para la próxima descarga incremental
+        if (response.getServerTime() > 0) {
+            sessionManager.setSyncWatermark(response.getServerTime());
+        }
+        
+        // Notificar que se completó la sincronización
+        completeSync(run, count, deletedCount);
+    }
+
+    /**
+     * Descarta la marca incremental para que la próxima sincronización descargue la lista completa.
+     */
+    public void requestFullResync() {
+        sessionManager.setSyncWatermark(0);
+    }
+
     public boolean isSyncing() {
         return isSyncing;
     }
@@ -0,0 +1,93 @@
+package com.tuempresa.proyecto_01_11_25.sync;
+
+/**
+ * Resultado de una sincronización completa (subida, operaciones pendientes y descarga).
+ */
+public class SyncResult {
+    public enum Status {
+        SUCCESS,  // Sincronización terminada
+        FAILURE,  // Error real (sin conexión, error del servidor o de la base de datos)
+        SKIPPED,  // Ya había otra sincronización en curso
+        TIMEOUT   // No terminó dentro del tiempo de espera (sigue en segundo plano)
+    }
+
+    private final Status status;
+    private final int uploadedCount;
+    private final int downloadedCount;
+    private final int deletedCount;
+    private final int compactedCount;
+    private final long durationMs;
+    private final String error;
+
+    private SyncResult(Status status, int uploadedCount, int downloadedCount, int deletedCount,
+                       int compactedCount, long durationMs, String error) {
+        this.status = status;
+        this.uploadedCount = uploadedCount;
+        this.downloadedCount = downloadedCount;
+        this.deletedCount = deletedCount;
+        this.compactedCount = compactedCount;
+        this.durationMs = durationMs;
+        this.error = error;
+    }
+
+    static SyncResult success(int uploadedCount, int downloadedCount, int deletedCount,
+                              int compactedCount, long durationMs) {
+        return new SyncResult(Status.SUCCESS, uploadedCount, downloadedCount, deletedCount,
+                compactedCount, durationMs, null);
+    }
+
+    static SyncResult failure(String error, int uploadedCount, int compactedCount, long durationMs) {
+        return new SyncResult(Status.FAILURE, uploadedCount, 0, 0, compactedCount, durationMs, error);
+    }
+
+    static SyncResult skipped(String reason) {
+        return new SyncResult(Status.SKIPPED, 0, 0, 0, 0, 0, reason);
+    }
+
+    static SyncResult timeout(long durationMs) {
+        return new SyncResult(Status.TIMEOUT, 0, 0, 0, 0, durationMs, "Tiempo de espera agotado");
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    /** Hábitos y operaciones pendientes enviados al servidor */
+    public int getUploadedCount() {
+        return uploadedCount;
+    }
+
+    /** Hábitos insertados o actualizados desde el servidor */
+    public int getDownloadedCount() {
+        return downloadedCount;
+    }
+
+    /** Hábitos locales eliminados porque ya no existen en el servidor */
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    /** Operaciones pendientes eliminadas por la compactación */
+    public int getCompactedCount() {
+        return compactedCount;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncResult{" + status + ", subidos=" + uploadedCount + ", descargados=" + downloadedCount
+                + ", eliminados=" + deletedCount + ", compactados=" + compactedCount
+                + ", " + durationMs + " ms" + (error != null ? ", error=" + error : "") + "}";
+    }
+}
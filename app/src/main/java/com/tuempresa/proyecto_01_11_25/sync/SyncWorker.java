@@ -4,14 +4,26 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.work.Data;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Worker de WorkManager para sincronización automática en segundo plano.
  */
 public class SyncWorker extends Worker {
     private static final String TAG = "SyncWorker";
+    private static final long SYNC_TIMEOUT_MINUTES = 5;
+
+    // Claves de los datos de salida
+    public static final String KEY_STATUS = "status";
+    public static final String KEY_DURATION_MS = "duration_ms";
+    public static final String KEY_UPLOADED_COUNT = "uploaded_count";
+    public static final String KEY_DOWNLOADED_COUNT = "downloaded_count";
+    public static final String KEY_DELETED_COUNT = "deleted_count";
+    public static final String KEY_COMPACTED_COUNT = "compacted_count";
 
     public SyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
@@ -25,32 +37,29 @@ public class SyncWorker extends Worker {
         try {
             SyncManager syncManager = SyncManager.getInstance(getApplicationContext());
             
-            // Sincronizar de forma síncrona
-            syncManager.syncAll(new SyncManager.SyncListener() {
-                @Override
-                public void onSyncStarted() {
-                    Log.d(TAG, "Sincronización iniciada");
-                }
-
-                @Override
-                public void onSyncCompleted(int syncedCount) {
-                    Log.d(TAG, "Sincronización completada: " + syncedCount + " elementos");
-                }
-
-                @Override
-                public void onSyncError(String error) {
-                    Log.e(TAG, "Error en sincronización: " + error);
-                }
-            });
-            
-            // Esperar un poco para que la sincronización asíncrona termine
-            Thread.sleep(5000);
+            // Sincronizar y esperar exactamente hasta que termine (o se agote el tiempo)
+            SyncResult result = syncManager.syncAllBlocking(SYNC_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            Log.d(TAG, "Sincronización automática terminada: " + result);
             
-            return Result.success();
+            if (result.getStatus() == SyncResult.Status.FAILURE) {
+                return Result.retry(); // Reintentar solo si falló de verdad
+            }
+            // SKIPPED: otra sincronización ya está en curso; TIMEOUT: sigue en segundo plano
+            return Result.success(toOutputData(result));
         } catch (Exception e) {
             Log.e(TAG, "Error en SyncWorker", e);
             return Result.retry(); // Reintentar si falla
         }
     }
-}
 
+    private static Data toOutputData(SyncResult result) {
+        return new Data.Builder()
+                .putString(KEY_STATUS, result.getStatus().name())
+                .putLong(KEY_DURATION_MS, result.getDurationMs())
+                .putInt(KEY_UPLOADED_COUNT, result.getUploadedCount())
+                .putInt(KEY_DOWNLOADED_COUNT, result.getDownloadedCount())
+                .putInt(KEY_DELETED_COUNT, result.getDeletedCount())
+                .putInt(KEY_COMPACTED_COUNT, result.getCompactedCount())
+                .build();
+    }
+}
@@ -30,6 +30,7 @@ import com.tuempresa.proyecto_01_11_25.sensors.AccelerometerSensorManager;
 import com.tuempresa.proyecto_01_11_25.sensors.GyroSensorManager;
 import com.tuempresa.proyecto_01_11_25.sensors.LightSensorManager;
 import com.tuempresa.proyecto_01_11_25.sensors.StepSensorManager;
+import com.tuempresa.proyecto_01_11_25.sync.SyncManager;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -196,6 +197,8 @@ public class DashboardActivity extends AppCompatActivity {
             int cleanedCount = cleanupHelper.cleanupHabitsWithUserIdZero();
             if (cleanedCount > 0) {
                 android.util.Log.w("Dashboard", "⚠️ Eliminados " + cleanedCount + " hábitos con userId: 0 (hábitos huérfanos)");
+                // Pueden ser hábitos del servidor guardados sin usuario: volver a descargarlos completos
+                SyncManager.getInstance(this).requestFullResync();
             }
             
             // CRÍTICO: Limpiar hábitos de otros usuarios al iniciar Dashboard
@@ -228,20 +231,20 @@ public class DashboardActivity extends AppCompatActivity {
         // Inicializar Repository para consumo de API
         habitRepository = HabitRepository.getInstance(this);
 
-        // Cargar hábitos usando Repository (SQLite + API)
-        // Esto cargará solo los hábitos del usuario actual (filtrado por userId)
-        // IMPORTANTE: Después del reset, los hábitos se recargan desde la BD con el estado correcto
-        loadHabitsFromRepository();
-
         rv = findViewById(R.id.rvHabits);
         rv.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new HabitAdapter(new ArrayList<>(),
+        adapter = new HabitAdapter(this, new ArrayList<>(),
                 this::completeDemoHabit,
                 this::editHabit,
                 this::deleteHabit,
                 this::quickCompleteHabit);
         rv.setAdapter(adapter);
 
+        // Observar los hábitos del usuario actual: el Repository emite una vez por cada cambio
+        // confirmado en la BD (acciones de la UI, otras pantallas o sincronización)
+        // IMPORTANTE: Después del reset, los hábitos se recargan desde la BD con el estado correcto
+        habitRepository.observeHabits().observe(this, this::showHabits);
+
         btnMap = findViewById(R.id.btnMap);
         btnMap.setOnClickListener(v -> startActivity(new Intent(this, MapActivity.class)));
 
@@ -901,8 +904,7 @@ public class DashboardActivity extends AppCompatActivity {
             // Cámara desde botón principal (lectura)
             long habitId = data.getLongExtra("habit_id", -1);
             if (habitId > 0) {
-                // Página detectada y agregada, actualizar Dashboard
-                refreshHabitsList();
+                // Página detectada y agregada; onResume refresca el Dashboard
 
                 // Mostrar Snackbar de confirmación
                 com.google.android.material.snackbar.Snackbar.make(
@@ -918,22 +920,11 @@ public class DashboardActivity extends AppCompatActivity {
             }
         } else if ((requestCode == 300 || requestCode == 301 || requestCode == 302) && resultCode == RESULT_OK) {
             // HabitDetailActivity, JournalingActivity o MeditationActivity
-            // Recargar hábitos para actualizar progreso y estado
-            refreshHabitsList();
-        } else if (requestCode == 400 && resultCode == RESULT_OK) {
-            // ConfigureHabitActivity (edición)
-            // CRÍTICO: Pequeño delay para asegurar que el hábito se guardó completamente
-            mainHandler.postDelayed(() -> {
-                android.util.Log.d("Dashboard", "Refrescando lista después de editar hábito");
-                refreshHabitsList();
-            }, 500);
+            // No hace falta recargar: los cambios guardados llegan por observeHabits()
+            // y onResume refresca el progreso
         } else if (requestCode == 500 && resultCode == RESULT_OK) {
             // SelectHabitTypeActivity -> ConfigureHabitActivity (creación)
-            // CRÍTICO: Pequeño delay para asegurar que el hábito se guardó completamente
-            mainHandler.postDelayed(() -> {
-                android.util.Log.d("Dashboard", "Refrescando lista después de crear hábito");
-                refreshHabitsList();
-            }, 500);
+            // El hábito nuevo llega por observeHabits() cuando se guarda
 
             // Si se creó un hábito de leer desde el diálogo, abrir cámara automáticamente
             if (shouldOpenCameraAfterCreation) {
@@ -961,83 +952,51 @@ public class DashboardActivity extends AppCompatActivity {
             }
         }
 
-        // Recargar hábitos cuando se vuelve de crear/editar (para casos sin resultCode
-        // específico)
-        if (dbHelper != null && resultCode == RESULT_OK) {
-            // CRÍTICO: Pequeño delay para asegurar que el hábito se guardó completamente
-            mainHandler.postDelayed(() -> {
-                android.util.Log.d("Dashboard", "Refrescando lista después de operación genérica");
-                refreshHabitsList();
-            }, 500);
-        }
+        // Crear/editar (ConfigureHabitActivity, requestCode 400) y demás casos: los cambios
+        // llegan por observeHabits() y onResume refresca la lista, sin recargas con retardo
     }
 
     /**
-     * Carga hábitos usando Repository (SQLite + API)
+     * Pide al Repository que vuelva a emitir la lista de hábitos (ver showHabits)
      */
     private void loadHabitsFromRepository() {
         if (habitRepository == null) {
             habitRepository = HabitRepository.getInstance(this);
         }
+        habitRepository.refreshHabits();
+    }
 
+    /**
+     * Muestra la lista emitida por el Repository
+     */
+    private void showHabits(List<Habit> habitsList) {
         // Obtener userId actual para logging
         com.tuempresa.proyecto_01_11_25.utils.SessionManager sessionManager = 
             new com.tuempresa.proyecto_01_11_25.utils.SessionManager(this);
         long currentUserId = sessionManager.getUserId();
-        android.util.Log.d("Dashboard", "🔄 Cargando hábitos del usuario " + currentUserId + " desde Repository...");
-
-        habitRepository.getAllHabits(new HabitRepository.RepositoryCallback<List<Habit>>() {
-            @Override
-            public void onSuccess(List<Habit> habitsList) {
-                runOnUiThread(() -> {
-                    android.util.Log.d("Dashboard", "✅ Hábitos cargados desde Repository: " + habitsList.size() + " hábitos para userId: " + currentUserId);
-                    
-                    // CRÍTICO: Verificar que todos los hábitos pertenecen al usuario actual
-                    List<Habit> validHabits = new ArrayList<>();
-                    for (Habit habit : habitsList) {
-                        if (habit.getUserId() == currentUserId) {
-                            validHabits.add(habit);
-                        } else {
-                            android.util.Log.w("Dashboard", "⚠️ Hábito con userId incorrecto filtrado - HabitId: " + habit.getId() + ", UserId: " + habit.getUserId() + " (esperado: " + currentUserId + ")");
-                        }
-                    }
-                    
-                    if (validHabits.size() != habitsList.size()) {
-                        android.util.Log.w("Dashboard", "⚠️ Se filtraron " + (habitsList.size() - validHabits.size()) + " hábitos con userId incorrecto");
-                    }
-                    
-                    habits = validHabits;
-                    if (adapter != null) {
-                        adapter.updateHabits(validHabits);
-                        android.util.Log.d("Dashboard", "✅ Adapter actualizado con " + validHabits.size() + " hábitos válidos");
-                    } else {
-                        android.util.Log.w("Dashboard", "⚠️ Adapter es null, no se puede actualizar la lista");
-                    }
-                });
-            }
-
-            @Override
-            public void onError(String error) {
-                runOnUiThread(() -> {
-                    android.util.Log.e("Dashboard", "❌ Error al cargar hábitos desde Repository: " + error);
-                    // Fallback a SQLite local si falla la API
-                    if (dbHelper != null) {
-                        try {
-                            android.util.Log.d("Dashboard", "🔄 Fallback: Cargando hábitos desde SQLite local...");
-                            habits = dbHelper.getAllHabits();
-                            android.util.Log.d("Dashboard", "✅ Hábitos cargados desde SQLite: " + habits.size() + " hábitos para userId: " + currentUserId);
-                            
-                            if (adapter != null) {
-                                adapter.updateHabits(habits);
-                                android.util.Log.d("Dashboard", "✅ Adapter actualizado desde SQLite con " + habits.size() + " hábitos");
-                            }
-                        } catch (Exception e) {
-                            android.util.Log.e("Dashboard", "❌ Error al cargar desde SQLite", e);
-                        }
-                    }
-                });
+        android.util.Log.d("Dashboard", "✅ Hábitos recibidos del Repository: " + habitsList.size() + " hábitos para userId: " + currentUserId);
+        
+        // CRÍTICO: Verificar que todos los hábitos pertenecen al usuario actual
+        List<Habit> validHabits = new ArrayList<>();
+        for (Habit habit : habitsList) {
+            if (habit.getUserId() == currentUserId) {
+                validHabits.add(habit);
+            } else {
+                android.util.Log.w("Dashboard", "⚠️ Hábito con userId incorrecto filtrado - HabitId: " + habit.getId() + ", UserId: " + habit.getUserId() + " (esperado: " + currentUserId + ")");
             }
-        });
+        }
+        
+        if (validHabits.size() != habitsList.size()) {
+            android.util.Log.w("Dashboard", "⚠️ Se filtraron " + (habitsList.size() - validHabits.size()) + " hábitos con userId incorrecto");
+        }
+        
+        habits = validHabits;
+        if (adapter != null) {
+            adapter.updateHabits(validHabits);
+            android.util.Log.d("Dashboard", "✅ Adapter actualizado con " + validHabits.size() + " hábitos válidos");
+        } else {
+            android.util.Log.w("Dashboard", "⚠️ Adapter es null, no se puede actualizar la lista");
+        }
     }
 
     /**
@@ -1158,9 +1117,6 @@ public class DashboardActivity extends AppCompatActivity {
             return; // Salir temprano para evitar inicializar sensores antes de recrear
         }
 
-        // Recargar hábitos usando Repository (sincroniza con API si hay conexión)
-        loadHabitsFromRepository();
-
         // Reinicializar sensores solo si están habilitados y no existen
         if (darkModeSensors && lightSensor == null) {
             android.util.Log.d("Dashboard", "onResume - Inicializando sensor de luz (dark_mode_sensors activado)");
@@ -1348,12 +1304,7 @@ public class DashboardActivity extends AppCompatActivity {
                 }
 
                 // Actualizar UI
-                int position = habits.indexOf(habit);
-                if (position >= 0) {
-                    adapter.notifyItemChanged(position);
-                } else {
-                    adapter.notifyDataSetChanged();
-                }
+                adapter.refreshHabit(habit);
 
                 android.util.Log.d("Dashboard", "Hábito completado: " + habit.getTitle() + " (+" + points + " puntos)");
                 // Toast eliminado - usuario no quiere mensajes constantes
@@ -1378,12 +1329,7 @@ public class DashboardActivity extends AppCompatActivity {
             }
             
             saveHabitsState();
-            int position = habits.indexOf(h);
-            if (position >= 0) {
-                adapter.notifyItemChanged(position);
-            } else {
-                adapter.notifyDataSetChanged();
-            }
+            adapter.refreshHabit(h);
             return;
         }
         
@@ -1460,9 +1406,9 @@ public class DashboardActivity extends AppCompatActivity {
                     public void onSuccess(Void data) {
                         runOnUiThread(() -> {
                             // Animación visual de éxito
+                            adapter.refreshHabit(h);
                             int position = habits.indexOf(h);
                             if (position >= 0) {
-                                adapter.notifyItemChanged(position);
                                 
                                 // Mostrar feedback visual breve
                                 View itemView = rv.getLayoutManager().findViewByPosition(position);
@@ -1505,12 +1451,7 @@ public class DashboardActivity extends AppCompatActivity {
             }
             
             saveHabitsState();
-            int position = habits.indexOf(h);
-            if (position >= 0) {
-                adapter.notifyItemChanged(position);
-            } else {
-                adapter.notifyDataSetChanged();
-            }
+            adapter.refreshHabit(h);
             // Toast eliminado - usuario no quiere mensajes constantes
             return;
         }
@@ -1615,12 +1556,7 @@ public class DashboardActivity extends AppCompatActivity {
                             }
                         });
                 saveHabitsState();
-                int position = habits.indexOf(h);
-                if (position >= 0) {
-                    adapter.notifyItemChanged(position);
-                } else {
-                    adapter.notifyDataSetChanged();
-                }
+                adapter.refreshHabit(h);
                 // Toast eliminado - usuario no quiere mensajes constantes
                 break;
             case EXERCISE:
@@ -2,6 +2,8 @@ package com.tuempresa.proyecto_01_11_25.ui;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,15 +12,20 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.tuempresa.proyecto_01_11_25.R;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
+import com.tuempresa.proyecto_01_11_25.utils.AppExecutors;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
 
@@ -38,39 +45,117 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
         void onHabitQuickComplete(Habit habit);
     }
 
-    private final List<Habit> data;
+    // Payload de rebind parcial: solo cambió el estado/progreso del hábito (no título, meta, etc.)
+    static final Object PAYLOAD_PROGRESS = new Object();
+
+    // La diferencia entre listas se calcula en segundo plano; solo se rebindean las filas que cambian
+    private final AsyncListDiffer<HabitRow> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Última lista enviada: el progreso se lee en segundo plano y solo se aplica la más reciente
+    private List<Habit> latestHabits = new ArrayList<>();
+    private int submitGeneration;
     private final OnHabitClick listener;
     private final OnHabitEdit editListener;
     private final OnHabitDelete deleteListener;
     private final OnHabitQuickComplete quickCompleteListener;
 
-    public HabitAdapter(List<Habit> data, OnHabitClick listener) {
-        this(data, listener, null, null, null);
+    public HabitAdapter(Context context, List<Habit> data, OnHabitClick listener) {
+        this(context, data, listener, null, null, null);
     }
     
-    public HabitAdapter(List<Habit> data, OnHabitClick listener, OnHabitEdit editListener, OnHabitDelete deleteListener) {
-        this(data, listener, editListener, deleteListener, null);
+    public HabitAdapter(Context context, List<Habit> data, OnHabitClick listener, OnHabitEdit editListener, OnHabitDelete deleteListener) {
+        this(context, data, listener, editListener, deleteListener, null);
     }
     
-    public HabitAdapter(List<Habit> data, OnHabitClick listener, OnHabitEdit editListener, OnHabitDelete deleteListener, OnHabitQuickComplete quickCompleteListener) {
-        this.data = data;
+    public HabitAdapter(Context context, List<Habit> data, OnHabitClick listener, OnHabitEdit editListener, OnHabitDelete deleteListener, OnHabitQuickComplete quickCompleteListener) {
+        // El contexto se necesita desde la primera lista, antes de adjuntarse al RecyclerView
+        this.appContext = context.getApplicationContext();
         this.listener = listener;
         this.editListener = editListener;
         this.deleteListener = deleteListener;
         this.quickCompleteListener = quickCompleteListener;
+        setHasStableIds(true);
+        submitHabits(data);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).habit.getId();
     }
 
     @NonNull @Override
     public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_habit_card, parent, false);
-        return new VH(v);
+        VH h = new VH(v);
+
+        // Los listeners se asignan una sola vez y resuelven el hábito de la fila al hacer click,
+        // así siguen siendo válidos tras un rebind parcial
+        h.itemView.setOnClickListener(view -> {
+            Habit item = itemAt(h);
+            if (item != null && listener != null) listener.onHabitClicked(item);
+        });
+        
+        // Botón editar
+        if (h.btnEdit != null) {
+            h.btnEdit.setOnClickListener(view -> {
+                Habit item = itemAt(h);
+                if (item != null && editListener != null) {
+                    editListener.onHabitEdit(item);
+                }
+            });
+        }
+        
+        // Botón eliminar
+        if (h.btnDelete != null) {
+            h.btnDelete.setOnClickListener(view -> {
+                Habit item = itemAt(h);
+                if (item != null && deleteListener != null) {
+                    deleteListener.onHabitDelete(item);
+                }
+            });
+        }
+
+        // Botón de completado rápido
+        if (h.btnQuickComplete != null) {
+            h.btnQuickComplete.setOnClickListener(view -> {
+                Habit item = itemAt(h);
+                if (item != null && quickCompleteListener != null) {
+                    quickCompleteListener.onHabitQuickComplete(item);
+                }
+            });
+        }
+        return h;
+    }
+
+    private Habit itemAt(VH h) {
+        int pos = h.getAdapterPosition();
+        return pos != RecyclerView.NO_POSITION ? differ.getCurrentList().get(pos).habit : null;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull VH h, int pos, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(h, pos);
+            return;
+        }
+        // Solo cambió el progreso/completado: no se vuelve a asignar el título
+        bindProgress(h, differ.getCurrentList().get(pos));
     }
 
     @Override
     public void onBindViewHolder(@NonNull VH h, int pos) {
-        Habit item = data.get(pos);
-        h.txtName.setText(item.getTitle());
-        
+        HabitRow row = differ.getCurrentList().get(pos);
+        h.txtName.setText(row.habit.getTitle());
+        bindProgress(h, row);
+    }
+
+    /**
+     * Meta, progreso, color y botón de completado rápido: lo que cambia al completar un hábito.
+     * El progreso del día viene de la fila (leído en segundo plano), no de SharedPreferences.
+     */
+    private void bindProgress(@NonNull VH h, HabitRow row) {
+        Habit item = row.habit;
         // Mostrar meta con valor objetivo si existe
         String goalText = item.getGoal();
         
@@ -80,7 +165,7 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
         
         if (item.getType() == Habit.HabitType.READ_BOOK && item.getPagesPerDay() != null) {
             int pagesGoal = item.getPagesPerDay();
-            int pagesRead = getTodayProgress(h.itemView.getContext(), "read_" + item.getId(), 0);
+            int pagesRead = row.todayProgress;
             progressValue = pagesGoal > 0 ? (pagesRead * 100 / pagesGoal) : 0;
             if (progressValue > 100) progressValue = 100;
             goalText = goalText + " (" + pagesRead + "/" + pagesGoal + " páginas)";
@@ -90,7 +175,7 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
             }
         } else if (item.getType() == Habit.HabitType.WATER && item.getWaterGoalGlasses() != null) {
             int glassesGoal = item.getWaterGoalGlasses();
-            int glassesDrunk = getTodayProgress(h.itemView.getContext(), "water_" + item.getId(), 0);
+            int glassesDrunk = row.todayProgress;
             progressValue = glassesGoal > 0 ? (glassesDrunk * 100 / glassesGoal) : 0;
             if (progressValue > 100) progressValue = 100;
             goalText = goalText + " (" + glassesDrunk + "/" + glassesGoal + " vasos)";
@@ -102,7 +187,7 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
             // Mostrar progreso de caminar (metros o pasos)
             if (item.getWalkGoalSteps() != null && item.getWalkGoalSteps() > 0) {
                 int stepsGoal = item.getWalkGoalSteps();
-                int stepsWalked = getTodayProgress(h.itemView.getContext(), "walk_steps_" + item.getId(), 0);
+                int stepsWalked = row.todayProgress;
                 progressValue = stepsGoal > 0 ? (stepsWalked * 100 / stepsGoal) : 0;
                 if (progressValue > 100) progressValue = 100;
                 goalText = goalText + " (" + stepsWalked + "/" + stepsGoal + " pasos)";
@@ -111,7 +196,7 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
                 }
             } else if (item.getWalkGoalMeters() != null && item.getWalkGoalMeters() > 0) {
                 int metersGoal = item.getWalkGoalMeters();
-                int metersWalked = getTodayProgress(h.itemView.getContext(), "walk_meters_" + item.getId(), 0);
+                int metersWalked = row.todayProgress;
                 progressValue = metersGoal > 0 ? (metersWalked * 100 / metersGoal) : 0;
                 if (progressValue > 100) progressValue = 100;
                 goalText = goalText + " (" + metersWalked + "/" + metersGoal + " m)";
@@ -121,7 +206,7 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
             } else {
                 // Sin meta configurada, usar valor por defecto
                 int defaultMeters = 500;
-                int metersWalked = getTodayProgress(h.itemView.getContext(), "walk_meters_" + item.getId(), 0);
+                int metersWalked = row.todayProgress;
                 progressValue = defaultMeters > 0 ? (metersWalked * 100 / defaultMeters) : 0;
                 if (progressValue > 100) progressValue = 100;
                 goalText = goalText + " (" + metersWalked + "/" + defaultMeters + " m)";
@@ -175,41 +260,11 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
             );
             h.txtType.setTextColor(ContextCompat.getColor(h.itemView.getContext(), R.color.orangeEnd));
         }
-
-        h.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onHabitClicked(item);
-        });
-        
-        // Botón editar
-        if (h.btnEdit != null) {
-            h.btnEdit.setOnClickListener(v -> {
-                if (editListener != null) {
-                    editListener.onHabitEdit(item);
-                }
-            });
-        }
-        
-        // Botón eliminar
-        if (h.btnDelete != null) {
-            h.btnDelete.setOnClickListener(v -> {
-                if (deleteListener != null) {
-                    deleteListener.onHabitDelete(item);
-                }
-            });
-        }
         
         // Botón de completado rápido (solo visible si no está completado y es un tipo que permite completado rápido)
         if (h.btnQuickComplete != null) {
             boolean canQuickComplete = !isCompleted && canQuickCompleteHabit(item);
             h.btnQuickComplete.setVisibility(canQuickComplete ? View.VISIBLE : View.GONE);
-            
-            if (canQuickComplete) {
-                h.btnQuickComplete.setOnClickListener(v -> {
-                    if (quickCompleteListener != null) {
-                        quickCompleteListener.onHabitQuickComplete(item);
-                    }
-                });
-            }
         }
     }
     
@@ -235,25 +290,27 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
         }
     }
 
-    @Override public int getItemCount() { return data.size(); }
+    @Override public int getItemCount() { return differ.getCurrentList().size(); }
     
     /**
-     * Actualiza la lista completa de hábitos
+     * Actualiza la lista completa de hábitos.
+     * La diferencia se calcula en segundo plano y solo se rebindean las filas que cambiaron.
      */
     public void updateHabits(List<Habit> newHabits) {
-        this.data.clear();
-        this.data.addAll(newHabits);
-        notifyDataSetChanged();
+        submitHabits(newHabits);
     }
     
     /**
      * Elimina un hábito de la lista
      */
     public void removeHabit(Habit habit) {
-        int position = data.indexOf(habit);
-        if (position >= 0) {
-            data.remove(position);
-            notifyItemRemoved(position);
+        List<Habit> habits = currentHabits();
+        for (int i = 0; i < habits.size(); i++) {
+            if (habits.get(i).getId() == habit.getId()) {
+                habits.remove(i);
+                submitHabits(habits);
+                return;
+            }
         }
     }
     
@@ -261,33 +318,194 @@ public class HabitAdapter extends RecyclerView.Adapter<HabitAdapter.VH> {
      * Agrega un hábito a la lista
      */
     public void addHabit(Habit habit) {
-        data.add(habit);
-        notifyItemInserted(data.size() - 1);
+        List<Habit> habits = currentHabits();
+        habits.add(habit);
+        submitHabits(habits);
     }
     
     /**
      * Actualiza un hábito existente
      */
     public void updateHabit(Habit habit) {
-        int position = -1;
-        for (int i = 0; i < data.size(); i++) {
-            if (data.get(i).getId() == habit.getId()) {
-                position = i;
-                break;
+        List<Habit> habits = currentHabits();
+        for (int i = 0; i < habits.size(); i++) {
+            if (habits.get(i).getId() == habit.getId()) {
+                habits.set(i, habit);
+                submitHabits(habits);
+                return;
             }
         }
-        if (position >= 0) {
-            data.set(position, habit);
-            notifyItemChanged(position);
+    }
+
+    /**
+     * Vuelve a leer el progreso de un hábito que se modificó en memoria (p. ej. al completarlo).
+     * DiffUtil detecta que solo cambió el progreso y hace un rebind parcial de esa fila.
+     */
+    public void refreshHabit(Habit habit) {
+        for (Habit current : latestHabits) {
+            if (current.getId() == habit.getId()) {
+                submitHabits(currentHabits());
+                return;
+            }
         }
     }
-    
-    private int getTodayProgress(Context context, String key, int defaultValue) {
+
+    private List<Habit> currentHabits() {
+        return new ArrayList<>(latestHabits);
+    }
+
+    /**
+     * Toma la instantánea de cada hábito en el hilo principal (es barata) y lee el progreso del
+     * día en segundo plano: una sola lectura de SharedPreferences y un solo formateo de la fecha
+     * por lista. Si mientras tanto llegó otra lista, el resultado se descarta.
+     */
+    private void submitHabits(List<Habit> habits) {
+        latestHabits = new ArrayList<>(habits);
+        List<HabitRow> rows = new ArrayList<>(habits.size());
+        for (Habit habit : habits) {
+            rows.add(new HabitRow(habit, 0));
+        }
+        int generation = ++submitGeneration;
+        AppExecutors.getInstance().diskRead().execute(() -> {
+            List<HabitRow> withProgress = readTodayProgress(appContext, rows);
+            mainHandler.post(() -> {
+                if (generation == submitGeneration) {
+                    differ.submitList(withProgress);
+                }
+            });
+        });
+    }
+
+    /**
+     * Copia las filas con el progreso del día guardado (páginas, vasos, pasos o metros).
+     */
+    static List<HabitRow> readTodayProgress(Context context, List<HabitRow> rows) {
         SharedPreferences prefs = context.getSharedPreferences("habit_progress", Context.MODE_PRIVATE);
-        String todayKey = key + "_" + new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        return prefs.getInt(todayKey, defaultValue);
+        // Mismo formato que usan las pantallas que guardan el progreso
+        String todaySuffix = "_" + new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+        List<HabitRow> result = new ArrayList<>(rows.size());
+        for (HabitRow row : rows) {
+            String key = row.progressKey();
+            result.add(key != null ? row.withProgress(prefs.getInt(key + todaySuffix, 0)) : row);
+        }
+        return result;
+    }
+
+    /**
+     * Fila de la lista: el hábito y una instantánea de los valores que se muestran,
+     * para que DiffUtil detecte cambios aunque el mismo objeto Habit se modifique en memoria.
+     */
+    static final class HabitRow {
+        final Habit habit;
+        final String title;
+        final String goal;
+        final String category;
+        final Habit.HabitType type;
+        final int points;
+        final double targetValue;
+        final String targetUnit;
+        final Integer pagesPerDay;
+        final Integer waterGoalGlasses;
+        final Integer walkGoalSteps;
+        final Integer walkGoalMeters;
+        final boolean completed;
+        final int streakCount;
+        final int todayProgress;
+
+        HabitRow(Habit habit, int todayProgress) {
+            this.habit = habit;
+            this.title = habit.getTitle();
+            this.goal = habit.getGoal();
+            this.category = habit.getCategory();
+            this.type = habit.getType();
+            this.points = habit.getPoints();
+            this.targetValue = habit.getTargetValue();
+            this.targetUnit = habit.getTargetUnit();
+            this.pagesPerDay = habit.getPagesPerDay();
+            this.waterGoalGlasses = habit.getWaterGoalGlasses();
+            this.walkGoalSteps = habit.getWalkGoalSteps();
+            this.walkGoalMeters = habit.getWalkGoalMeters();
+            this.completed = habit.isCompleted();
+            this.streakCount = habit.getStreakCount();
+            this.todayProgress = todayProgress;
+        }
+
+        private HabitRow(HabitRow row, int todayProgress) {
+            this.habit = row.habit;
+            this.title = row.title;
+            this.goal = row.goal;
+            this.category = row.category;
+            this.type = row.type;
+            this.points = row.points;
+            this.targetValue = row.targetValue;
+            this.targetUnit = row.targetUnit;
+            this.pagesPerDay = row.pagesPerDay;
+            this.waterGoalGlasses = row.waterGoalGlasses;
+            this.walkGoalSteps = row.walkGoalSteps;
+            this.walkGoalMeters = row.walkGoalMeters;
+            this.completed = row.completed;
+            this.streakCount = row.streakCount;
+            this.todayProgress = todayProgress;
+        }
+
+        HabitRow withProgress(int todayProgress) {
+            return new HabitRow(this, todayProgress);
+        }
+
+        /**
+         * Clave de SharedPreferences (sin la fecha) del progreso que muestra la fila, o null.
+         */
+        String progressKey() {
+            long id = habit.getId();
+            if (type == Habit.HabitType.READ_BOOK && pagesPerDay != null) {
+                return "read_" + id;
+            } else if (type == Habit.HabitType.WATER && waterGoalGlasses != null) {
+                return "water_" + id;
+            } else if (type == Habit.HabitType.WALK) {
+                return walkGoalSteps != null && walkGoalSteps > 0 ? "walk_steps_" + id : "walk_meters_" + id;
+            }
+            return null;
+        }
+
+        boolean sameDisplay(HabitRow other) {
+            return Objects.equals(title, other.title)
+                    && Objects.equals(goal, other.goal)
+                    && Objects.equals(category, other.category)
+                    && type == other.type
+                    && points == other.points
+                    && Double.compare(targetValue, other.targetValue) == 0
+                    && Objects.equals(targetUnit, other.targetUnit)
+                    && Objects.equals(pagesPerDay, other.pagesPerDay)
+                    && Objects.equals(waterGoalGlasses, other.waterGoalGlasses)
+                    && Objects.equals(walkGoalSteps, other.walkGoalSteps)
+                    && Objects.equals(walkGoalMeters, other.walkGoalMeters);
+        }
+
+        boolean sameProgress(HabitRow other) {
+            return completed == other.completed
+                    && streakCount == other.streakCount
+                    && todayProgress == other.todayProgress;
+        }
     }
 
+    private static final DiffUtil.ItemCallback<HabitRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<HabitRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull HabitRow oldRow, @NonNull HabitRow newRow) {
+            return oldRow.habit.getId() == newRow.habit.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull HabitRow oldRow, @NonNull HabitRow newRow) {
+            return oldRow.sameDisplay(newRow) && oldRow.sameProgress(newRow);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull HabitRow oldRow, @NonNull HabitRow newRow) {
+            // Si solo cambió el progreso basta con un rebind parcial; si no, rebind completo
+            return oldRow.sameDisplay(newRow) ? PAYLOAD_PROGRESS : null;
+        }
+    };
+
     static class VH extends RecyclerView.ViewHolder {
         TextView txtName, txtGoal, txtType;
         ProgressBar progress;
@@ -15,6 +15,7 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.material.button.MaterialButton;
@@ -26,13 +27,16 @@ import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
 import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
 import com.tuempresa.proyecto_01_11_25.repository.HabitRepository;
+import com.tuempresa.proyecto_01_11_25.utils.AppExecutors;
 import com.tuempresa.proyecto_01_11_25.utils.MapMarkerRenderer;
+import com.tuempresa.proyecto_01_11_25.utils.MarkerClusterEngine;
 import com.tuempresa.proyecto_01_11_25.utils.SessionManager;
 import androidx.core.content.ContextCompat;
 import android.Manifest;
 import android.content.pm.PackageManager;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -41,8 +45,14 @@ import java.util.Map;
 
 public class MapActivity extends AppCompatActivity implements OnMapReadyCallback, GoogleMap.OnMarkerClickListener {
 
+    // Máximo de marcadores ocultos guardados para reutilizar
+    private static final int MAX_RECYCLED_MARKERS = 200;
+
     private GoogleMap map;
-    private Map<Marker, HabitCompletion> markerCompletionMap = new HashMap<>();
+    private MarkerClusterEngine clusterEngine;
+    // Marcador de cada grupo visible, por celda
+    private Map<Long, Marker> visibleMarkers = new HashMap<>();
+    private final ArrayDeque<Marker> recycledMarkers = new ArrayDeque<>();
     private SessionManager sessionManager;
     private FusedLocationProviderClient fusedLocationClient;
     private HabitRepository habitRepository;
@@ -78,6 +88,7 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         // Configurar el mapa
         try {
             map.setOnMarkerClickListener(this);
+            map.setOnCameraIdleListener(this::renderVisibleClusters);
             map.getUiSettings().setZoomControlsEnabled(true);
             map.getUiSettings().setMyLocationButtonEnabled(false);
             android.util.Log.d("MapActivity", "Configuración del mapa completada");
@@ -127,85 +138,139 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
     }
     
     private void drawCompletionsOnMap(List<HabitCompletion> completions) {
-        
-        // Filtrar solo los que tienen coordenadas válidas
-        List<HabitCompletion> validCompletions = new java.util.ArrayList<>();
-        double sumLat = 0;
-        double sumLng = 0;
-        int validCount = 0;
-        
-        for (HabitCompletion completion : completions) {
-            if (completion.getLatitude() != 0.0 || completion.getLongitude() != 0.0) {
-                validCompletions.add(completion);
-                sumLat += completion.getLatitude();
-                sumLng += completion.getLongitude();
-                validCount++;
-                android.util.Log.d("MapActivity", "Completado válido: " + completion.getHabitTitle() + 
-                        " en (" + completion.getLatitude() + ", " + completion.getLongitude() + ")");
-            } else {
-                android.util.Log.d("MapActivity", "Completado sin GPS: " + completion.getHabitTitle());
+        // Filtrar y agrupar fuera del hilo principal (con miles de completados tarda varios ms)
+        AppExecutors.getInstance().diskRead().execute(() -> {
+            // Filtrar solo los que tienen coordenadas válidas
+            List<HabitCompletion> validCompletions = new java.util.ArrayList<>();
+            double sumLat = 0;
+            double sumLng = 0;
+            for (HabitCompletion completion : completions) {
+                if (completion.getLatitude() != 0.0 || completion.getLongitude() != 0.0) {
+                    validCompletions.add(completion);
+                    sumLat += completion.getLatitude();
+                    sumLng += completion.getLongitude();
+                }
             }
+            int validCount = validCompletions.size();
+            android.util.Log.d("MapActivity", "Completados válidos: " + validCount + ", Sin GPS: " +
+                    (completions.size() - validCount));
+
+            MarkerClusterEngine engine = new MarkerClusterEngine(validCompletions);
+            LatLng center = validCount > 0 ? new LatLng(sumLat / validCount, sumLng / validCount) : null;
+            runOnUiThread(() -> showClusteredCompletions(engine, center));
+        });
+    }
+
+    private void showClusteredCompletions(MarkerClusterEngine engine, LatLng center) {
+        if (isFinishing() || isDestroyed()) {
+            return;
         }
-        
-        android.util.Log.d("MapActivity", "Completados válidos: " + validCount + ", Sin GPS: " + 
-                (completions.size() - validCount));
-        
-        if (validCompletions.isEmpty()) {
+        if (engine.size() == 0) {
             // Si los completados no tienen GPS, mostrar ubicación actual del usuario
             android.widget.Toast.makeText(this, "Los hábitos completados no tienen ubicación GPS. Mostrando tu ubicación actual", 
                     android.widget.Toast.LENGTH_SHORT).show();
             showCurrentLocation();
             return;
         }
-        
+
         // Limpiar marcadores anteriores
-        markerCompletionMap.clear();
         map.clear();
-        
-        // Dibujar marcadores
-        int markersAdded = 0;
-        for (HabitCompletion completion : validCompletions) {
-            LatLng position = new LatLng(
-                completion.getLatitude(), 
-                completion.getLongitude()
-            );
-            
-            // Obtener ícono del hábito
-            Habit.HabitType habitType = completion.getHabitType();
-            BitmapDescriptor icon = MapMarkerRenderer.getMarkerIconForEventType(
-                this, habitType);
-            
-            Marker marker = map.addMarker(new MarkerOptions()
-                .position(position)
-                .title(completion.getHabitTitle())
-                .icon(icon));
-            
-            if (marker != null) {
-                markerCompletionMap.put(marker, completion);
-                markersAdded++;
+        visibleMarkers.clear();
+        recycledMarkers.clear();
+        clusterEngine = engine;
+
+        // Centrar mapa; los marcadores se dibujan al quedar quieta la cámara
+        int validCount = engine.size();
+        float zoom = validCount == 1 ? 16f : (validCount < 5 ? 14f : 12f);
+        android.util.Log.d("MapActivity", "Centrando mapa en: (" + center.latitude + ", " + 
+                center.longitude + ") con zoom: " + zoom);
+        map.moveCamera(CameraUpdateFactory.newLatLngZoom(center, zoom));
+        renderVisibleClusters();
+    }
+
+    /**
+     * Muestra solo los grupos del área visible. Los marcadores de celdas que siguen visibles
+     * se conservan; los que salen de pantalla se ocultan y se reutilizan para las celdas nuevas.
+     */
+    private void renderVisibleClusters() {
+        if (map == null || clusterEngine == null) {
+            return;
+        }
+        LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+        List<MarkerClusterEngine.Cluster> clusters = clusterEngine.getClusters(
+                bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude,
+                map.getCameraPosition().zoom);
+
+        Map<Long, Marker> previous = visibleMarkers;
+        visibleMarkers = new HashMap<>(clusters.size() * 2);
+        int created = 0;
+        for (MarkerClusterEngine.Cluster cluster : clusters) {
+            Marker marker = previous.remove(cluster.getKey());
+            if (marker == null) {
+                marker = recycledMarkers.poll();
+                LatLng position = new LatLng(cluster.getLatitude(), cluster.getLongitude());
+                BitmapDescriptor icon = cluster.isSingle()
+                        ? MapMarkerRenderer.getMarkerIconForEventType(this, cluster.getFirst().getHabitType())
+                        : MapMarkerRenderer.getClusterIcon(this, cluster.getCount());
+                String title = cluster.isSingle() ? cluster.getFirst().getHabitTitle()
+                        : cluster.getCount() + " hábitos completados";
+                if (marker != null) {
+                    marker.setPosition(position);
+                    marker.setIcon(icon);
+                    marker.setTitle(title);
+                    marker.setVisible(true);
+                } else {
+                    marker = map.addMarker(new MarkerOptions()
+                        .position(position)
+                        .title(title)
+                        .icon(icon));
+                    created++;
+                }
+                if (marker == null) {
+                    continue;
+                }
             }
+            marker.setTag(cluster);
+            visibleMarkers.put(cluster.getKey(), marker);
         }
-        
-        android.util.Log.d("MapActivity", "Marcadores agregados: " + markersAdded);
-        
-        // Centrar mapa
-        if (validCount > 0) {
-            LatLng center = new LatLng(sumLat / validCount, sumLng / validCount);
-            float zoom = validCount == 1 ? 16f : (validCount < 5 ? 14f : 12f);
-            android.util.Log.d("MapActivity", "Centrando mapa en: (" + center.latitude + ", " + 
-                    center.longitude + ") con zoom: " + zoom);
-            map.moveCamera(CameraUpdateFactory.newLatLngZoom(center, zoom));
+
+        // Celdas que ya no se ven: ocultar y guardar para reutilizar
+        for (Marker marker : previous.values()) {
+            if (recycledMarkers.size() < MAX_RECYCLED_MARKERS) {
+                marker.setVisible(false);
+                marker.setTag(null);
+                recycledMarkers.add(marker);
+            } else {
+                marker.remove();
+            }
         }
+        android.util.Log.d("MapActivity", "Grupos visibles: " + visibleMarkers.size() + " (" + created +
+                " marcadores nuevos, " + recycledMarkers.size() + " en reserva)");
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        // Los bitmaps de marcadores se vuelven a dibujar cuando hagan falta
+        MapMarkerRenderer.clearCache();
     }
 
     @Override
     public boolean onMarkerClick(@NonNull Marker marker) {
-        HabitCompletion completion = markerCompletionMap.get(marker);
-        if (completion != null) {
-            showHabitDetailBottomSheet(completion);
-            return true;
+        Object tag = marker.getTag();
+        if (!(tag instanceof MarkerClusterEngine.Cluster)) {
+            return false;
+        }
+        MarkerClusterEngine.Cluster cluster = (MarkerClusterEngine.Cluster) tag;
+        float zoom = map.getCameraPosition().zoom;
+        if (cluster.isSingle() || zoom >= map.getMaxZoomLevel() - 1) {
+            showHabitDetailBottomSheet(cluster.getFirst());
+        } else {
+            // Acercar para separar el grupo
+            map.animateCamera(CameraUpdateFactory.newLatLngZoom(marker.getPosition(), zoom + 2));
         }
-        return false;
+        return true;
     }
 
     /**
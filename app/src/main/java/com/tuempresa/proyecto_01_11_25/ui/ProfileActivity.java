@@ -114,7 +114,6 @@ public class ProfileActivity extends AppCompatActivity {
                     try {
                         android.database.sqlite.SQLiteDatabase db = dbHelper.getWritableDatabase();
                         db.delete("habits", null, null);
-                        db.close();
                         android.util.Log.d("ProfileActivity", "✅ Todos los hábitos eliminados de la BD local después del logout");
                     } catch (Exception e) {
                         android.util.Log.e("ProfileActivity", "Error al limpiar hábitos en logout", e);
@@ -481,7 +481,6 @@ public class SettingsActivity extends AppCompatActivity {
                     try {
                         android.database.sqlite.SQLiteDatabase db = dbHelper.getWritableDatabase();
                         db.delete("habits", null, null);
-                        db.close();
                         android.util.Log.d("SettingsActivity", "✅ Todos los hábitos eliminados de la BD local después del logout");
                     } catch (Exception e) {
                         android.util.Log.e("SettingsActivity", "Error al limpiar hábitos en logout", e);
@@ -625,8 +624,6 @@ public class SettingsActivity extends AppCompatActivity {
                 Toast.makeText(this, "✅ " + finalDeletedCount + " hábitos eliminados. Se sincronizarán al reconectar.", Toast.LENGTH_LONG).show();
                 finish();
             }
-            
-            dbHelper.close();
         } catch (Exception e) {
             Toast.makeText(this, "Error al eliminar hábitos: " + e.getMessage(), Toast.LENGTH_LONG).show();
             android.util.Log.e("SettingsActivity", "Error al eliminar hábitos", e);
@@ -0,0 +1,148 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import android.util.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors compartidos por toda la app, separados por tipo de trabajo:
+ * - diskRead: lecturas locales (varios hilos, WAL permite leer en paralelo)
+ * - diskWrite: escrituras locales, en un único hilo para mantener el orden
+ * - network: sincronización y llamadas que esperan al servidor
+ * - syncOperations: grupos de operaciones pendientes que la sincronización lanza y espera
+ * Así una lectura de la UI nunca queda en cola detrás de una sincronización lenta.
+ */
+public final class AppExecutors {
+    private static final String TAG = "AppExecutors";
+    private static AppExecutors instance;
+
+    private static final int DISK_READ_THREADS = 3;
+    private static final int NETWORK_THREADS = 4;
+    private static final int SYNC_OPERATION_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    // Profundidad de cola a partir de la cual se avisa en el log
+    private static final int QUEUE_WARNING_THRESHOLD = 16;
+
+    private final TrackedExecutor diskRead;
+    private final TrackedExecutor diskWrite;
+    private final TrackedExecutor network;
+    private final TrackedExecutor syncOperations;
+
+    private AppExecutors() {
+        this.diskRead = new TrackedExecutor("habitus-db-read", DISK_READ_THREADS);
+        this.diskWrite = new TrackedExecutor("habitus-db-write", 1);
+        this.network = new TrackedExecutor("habitus-network", NETWORK_THREADS);
+        this.syncOperations = new TrackedExecutor("habitus-sync-ops", SYNC_OPERATION_THREADS);
+    }
+
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+
+    /** Lecturas de la base de datos local */
+    public TrackedExecutor diskRead() {
+        return diskRead;
+    }
+
+    /** Escrituras de la base de datos local (serializadas, en orden de llegada) */
+    public TrackedExecutor diskWrite() {
+        return diskWrite;
+    }
+
+    /** Sincronización y trabajo que bloquea esperando respuestas del servidor */
+    public TrackedExecutor network() {
+        return network;
+    }
+
+    /**
+     * Operaciones pendientes que se reproducen en paralelo durante una sincronización.
+     * Es un pool aparte porque la sincronización corre en network() y espera a estas tareas:
+     * si compartieran pool, los hilos ocupados esperando podrían dejarlas en cola para siempre.
+     */
+    public TrackedExecutor syncOperations() {
+        return syncOperations;
+    }
+
+    /**
+     * Escribe en el log el estado de las colas.
+     */
+    public void logStats() {
+        Log.d(TAG, "📊 " + diskRead.getStats());
+        Log.d(TAG, "📊 " + diskWrite.getStats());
+        Log.d(TAG, "📊 " + network.getStats());
+        Log.d(TAG, "📊 " + syncOperations.getStats());
+    }
+
+    /**
+     * Pool de tamaño fijo con hilos con nombre y métricas de la cola.
+     */
+    public static final class TrackedExecutor extends ThreadPoolExecutor {
+        private final String name;
+        private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+        TrackedExecutor(String name, int threads) {
+            super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamedThreadFactory(name));
+            this.name = name;
+            // Los hilos inactivos se liberan; se recrean al llegar trabajo
+            allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            super.execute(command);
+            int depth = getQueue().size();
+            int peak = peakQueueDepth.get();
+            while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth)) {
+                peak = peakQueueDepth.get();
+            }
+            if (depth == QUEUE_WARNING_THRESHOLD) {
+                Log.w(TAG, "⚠️ Cola " + name + " con " + depth + " tareas en espera (" + getActiveCount() + " activas)");
+            }
+        }
+
+        /** Tareas en espera de un hilo libre */
+        public int getQueueDepth() {
+            return getQueue().size();
+        }
+
+        /** Mayor número de tareas en espera observado */
+        public int getPeakQueueDepth() {
+            return peakQueueDepth.get();
+        }
+
+        public String getStats() {
+            return name + ": activas=" + getActiveCount() + ", en cola=" + getQueueDepth()
+                    + ", pico cola=" + getPeakQueueDepth() + ", completadas=" + getCompletedTaskCount();
+        }
+    }
+
+    /**
+     * Crea hilos con nombre ("habitus-db-read-1", ...) y prioridad de segundo plano.
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(1);
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, prefix + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
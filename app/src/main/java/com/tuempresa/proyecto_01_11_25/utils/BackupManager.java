@@ -1,25 +1,40 @@
 package com.tuempresa.proyecto_01_11_25.utils;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 import android.util.Log;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.lang.reflect.Type;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+/**
+ * Exporta e importa copias de seguridad en JSON: {"habits": [...], "scores": [...], "timestamp": ...}.
+ * Ambas operaciones van en streaming, tabla por tabla: la memoria usada no depende del tamaño
+ * del archivo. La importación se aplica en transacciones de BATCH_SIZE registros.
+ */
 public class BackupManager {
 
     private static final String TAG = "BackupManager";
+    // Registros por transacción al importar y por página al exportar
+    private static final int BATCH_SIZE = 500;
+
     private final Context context;
     private final HabitDatabaseHelper dbHelper;
     private final Gson gson;
@@ -30,38 +45,57 @@ public class BackupManager {
         this.gson = new Gson();
     }
 
-    public static class BackupData {
-        public List<Habit> habits;
-        public List<HabitDatabaseHelper.ScoreEntry> scores;
-        public long timestamp;
-
-        public BackupData(List<Habit> habits, List<HabitDatabaseHelper.ScoreEntry> scores) {
-            this.habits = habits;
-            this.scores = scores;
-            this.timestamp = System.currentTimeMillis();
-        }
-    }
-
     public void exportData(Uri uri, OnBackupListener listener) {
         new Thread(() -> {
-            try {
-                List<Habit> habits = dbHelper.getAllHabits();
-                List<HabitDatabaseHelper.ScoreEntry> scores = dbHelper.getAllScores();
-                BackupData backupData = new BackupData(habits, scores);
-
-                String json = gson.toJson(backupData);
-
-                try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri)) {
-                    if (outputStream != null) {
-                        outputStream.write(json.getBytes());
-                        if (listener != null) {
-                            listener.onSuccess("Copia de seguridad exportada correctamente.");
-                        }
-                    } else {
-                        if (listener != null) {
-                            listener.onError("No se pudo abrir el archivo para escribir.");
-                        }
+            try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri)) {
+                if (outputStream == null) {
+                    if (listener != null) {
+                        listener.onError("No se pudo abrir el archivo para escribir.");
                     }
+                    return;
+                }
+
+                int exported = 0;
+                JsonWriter writer = new JsonWriter(new BufferedWriter(
+                        new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+                writer.beginObject();
+
+                writer.name("habits").beginArray();
+                for (Habit habit : dbHelper.getAllHabits()) {
+                    gson.toJson(habit, Habit.class, writer);
+                    exported++;
+                }
+                writer.endArray();
+
+                // Los scores crecen con el historial: se leen por páginas
+                writer.name("scores").beginArray();
+                long lastId = 0;
+                List<HabitDatabaseHelper.ScoreEntry> page;
+                do {
+                    page = dbHelper.getScoresPage(lastId, BATCH_SIZE);
+                    for (HabitDatabaseHelper.ScoreEntry score : page) {
+                        writer.beginObject();
+                        writer.name("id").value(score.getId());
+                        writer.name("habitTitle").value(score.getHabitTitle());
+                        writer.name("points").value(score.getPoints());
+                        writer.name("date").value(score.getDate());
+                        writer.endObject();
+                        lastId = score.getId();
+                    }
+                    exported += page.size();
+                    if (listener != null) {
+                        listener.onProgress(exported, -1);
+                    }
+                } while (page.size() == BATCH_SIZE);
+                writer.endArray();
+
+                writer.name("timestamp").value(System.currentTimeMillis());
+                writer.endObject();
+                writer.flush();
+
+                Log.d(TAG, "Copia exportada: " + exported + " registros");
+                if (listener != null) {
+                    listener.onSuccess("Copia de seguridad exportada correctamente.");
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error exportando datos", e);
@@ -74,62 +108,48 @@ public class BackupManager {
 
     public void importData(Uri uri, OnBackupListener listener) {
         new Thread(() -> {
-            try {
-                StringBuilder stringBuilder = new StringBuilder();
-                try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-                     BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        stringBuilder.append(line);
+            long totalBytes = getFileLength(uri);
+            ImportProgress progress = new ImportProgress(listener, totalBytes);
+            try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+                if (inputStream == null) {
+                    if (listener != null) {
+                        listener.onError("No se pudo abrir el archivo de respaldo.");
                     }
+                    return;
                 }
+                CountingInputStream counting = new CountingInputStream(inputStream);
+                progress.input = counting;
+                JsonReader reader = new JsonReader(new BufferedReader(
+                        new InputStreamReader(counting, StandardCharsets.UTF_8)));
 
-                String json = stringBuilder.toString();
-                Type type = new TypeToken<BackupData>() {}.getType();
-                BackupData backupData = gson.fromJson(json, type);
-
-                if (backupData == null || backupData.habits == null) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
                     if (listener != null) {
                         listener.onError("Archivo de respaldo inválido o corrupto.");
                     }
                     return;
                 }
 
-                // Restaurar datos usando estrategia de "Merge Inteligente":
-                // Si el hábito existe (por título), actualizamos. Si no, creamos.
-                
+                boolean hasHabits = false;
                 int habitsRestored = 0;
-                for (Habit habit : backupData.habits) {
-                    long existingId = dbHelper.getHabitIdByTitle(habit.getTitle());
-                    if (existingId > 0) {
-                        // Actualizar
-                        dbHelper.updateHabitFull(existingId, habit.getTitle(), habit.getGoal(), habit.getCategory(), 
-                                habit.getType().name(), habit.getPoints(), habit.getTargetValue(), habit.getTargetUnit(),
-                                habit.getPagesPerDay(), habit.getReminderTimes(), habit.getDurationMinutes(),
-                                habit.isDndMode(), habit.getMusicId(), habit.isJournalEnabled(),
-                                habit.getGymDays(), habit.getWaterGoalGlasses(), habit.getWalkGoalMeters(), habit.getWalkGoalSteps(),
-                                habit.isOneClickComplete(), habit.isEnglishMode(), habit.isCodingMode(), habit.getHabitIcon());
-                        // También actualizar estado completado
-                        dbHelper.updateHabitCompleted(habit.getTitle(), habit.isCompleted());
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("habits".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        hasHabits = true;
+                        habitsRestored = importHabits(reader, progress);
+                    } else if ("scores".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        importScores(reader, progress);
                     } else {
-                        // Insertar
-                        dbHelper.insertHabitFull(habit.getTitle(), habit.getGoal(), habit.getCategory(), 
-                                habit.getType().name(), habit.getPoints(), habit.getTargetValue(), habit.getTargetUnit(),
-                                habit.getPagesPerDay(), habit.getReminderTimes(), habit.getDurationMinutes(),
-                                habit.isDndMode(), habit.getMusicId(), habit.isJournalEnabled(),
-                                habit.getGymDays(), habit.getWaterGoalGlasses(), habit.getWalkGoalMeters(), habit.getWalkGoalSteps(),
-                                habit.isOneClickComplete(), habit.isEnglishMode(), habit.isCodingMode(), habit.getHabitIcon());
+                        reader.skipValue();
                     }
-                    habitsRestored++;
                 }
+                reader.endObject();
 
-                // Restaurar Scores
-                // TODO: Mejorar HabitDatabaseHelper para permitir insertar scores con fecha original
-                // Actualmente addScore usa fecha actual, perdiendo la fecha original del backup
-                if (backupData.scores != null) {
-                    for (HabitDatabaseHelper.ScoreEntry score : backupData.scores) {
-                        dbHelper.addScore(score.getHabitTitle(), score.getPoints());
+                if (!hasHabits) {
+                    if (listener != null) {
+                        listener.onError("Archivo de respaldo inválido o corrupto.");
                     }
+                    return;
                 }
 
                 if (listener != null) {
@@ -137,7 +157,7 @@ public class BackupManager {
                 }
 
             } catch (Exception e) {
-                Log.e(TAG, "Error importando datos", e);
+                Log.e(TAG, "Error importando datos (" + progress.processed + " registros ya aplicados)", e);
                 if (listener != null) {
                     listener.onError("Error al importar: " + e.getMessage());
                 }
@@ -145,8 +165,171 @@ public class BackupManager {
         }).start();
     }
 
+    /**
+     * Restaura los hábitos usando estrategia de "Merge Inteligente":
+     * si el hábito existe (por título), se actualiza; si no, se crea.
+     */
+    private int importHabits(JsonReader reader, ImportProgress progress) throws IOException {
+        int[] restored = new int[1];
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int before = restored[0];
+            applyBatch(() -> {
+                for (int i = 0; i < BATCH_SIZE && reader.hasNext(); i++) {
+                    Habit habit = gson.fromJson(reader, Habit.class);
+                    if (habit == null || habit.getTitle() == null || habit.getType() == null) {
+                        Log.w(TAG, "Hábito inválido en el respaldo, se omite");
+                        continue;
+                    }
+                    restoreHabit(habit);
+                    restored[0]++;
+                }
+            });
+            progress.add(restored[0] - before);
+        }
+        reader.endArray();
+        return restored[0];
+    }
+
+    private void restoreHabit(Habit habit) {
+        long existingId = dbHelper.getHabitIdByTitle(habit.getTitle());
+        if (existingId > 0) {
+            // Actualizar
+            dbHelper.updateHabitFull(existingId, habit.getTitle(), habit.getGoal(), habit.getCategory(),
+                    habit.getType().name(), habit.getPoints(), habit.getTargetValue(), habit.getTargetUnit(),
+                    habit.getPagesPerDay(), habit.getReminderTimes(), habit.getDurationMinutes(),
+                    habit.isDndMode(), habit.getMusicId(), habit.isJournalEnabled(),
+                    habit.getGymDays(), habit.getWaterGoalGlasses(), habit.getWalkGoalMeters(), habit.getWalkGoalSteps(),
+                    habit.isOneClickComplete(), habit.isEnglishMode(), habit.isCodingMode(), habit.getHabitIcon());
+            // También actualizar estado completado
+            dbHelper.updateHabitCompleted(habit.getTitle(), habit.isCompleted());
+        } else {
+            // Insertar
+            dbHelper.insertHabitFull(habit.getTitle(), habit.getGoal(), habit.getCategory(),
+                    habit.getType().name(), habit.getPoints(), habit.getTargetValue(), habit.getTargetUnit(),
+                    habit.getPagesPerDay(), habit.getReminderTimes(), habit.getDurationMinutes(),
+                    habit.isDndMode(), habit.getMusicId(), habit.isJournalEnabled(),
+                    habit.getGymDays(), habit.getWaterGoalGlasses(), habit.getWalkGoalMeters(), habit.getWalkGoalSteps(),
+                    habit.isOneClickComplete(), habit.isEnglishMode(), habit.isCodingMode(), habit.getHabitIcon());
+        }
+    }
+
+    /**
+     * Restaura los scores con su fecha original; los que ya existen (mismo hábito y fecha) se omiten.
+     */
+    private void importScores(JsonReader reader, ImportProgress progress) throws IOException {
+        int[] read = new int[1];
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int before = read[0];
+            applyBatch(() -> {
+                for (int i = 0; i < BATCH_SIZE && reader.hasNext(); i++) {
+                    HabitDatabaseHelper.ScoreEntry score = gson.fromJson(reader, HabitDatabaseHelper.ScoreEntry.class);
+                    if (score != null && score.getHabitTitle() != null) {
+                        dbHelper.restoreScore(score.getHabitTitle(), score.getPoints(), score.getDate());
+                    }
+                    read[0]++;
+                }
+            });
+            progress.add(read[0] - before);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Aplica en una sola transacción los registros que lee work
+     */
+    private void applyBatch(BatchWork work) throws IOException {
+        try {
+            dbHelper.runInTransaction(() -> {
+                try {
+                    work.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private interface BatchWork {
+        void run() throws IOException;
+    }
+
+    /**
+     * Tamaño del archivo en bytes, o -1 si el proveedor no lo informa
+     */
+    private long getFileLength(Uri uri) {
+        try (AssetFileDescriptor descriptor = context.getContentResolver().openAssetFileDescriptor(uri, "r")) {
+            return descriptor != null ? descriptor.getLength() : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Lleva la cuenta de registros aplicados y la convierte en porcentaje según los bytes leídos.
+     */
+    private static final class ImportProgress {
+        private final OnBackupListener listener;
+        private final long totalBytes;
+        private CountingInputStream input;
+        private int processed;
+
+        ImportProgress(OnBackupListener listener, long totalBytes) {
+            this.listener = listener;
+            this.totalBytes = totalBytes;
+        }
+
+        /** Suma los registros de una transacción confirmada y avisa al listener */
+        void add(int batchCount) {
+            processed += batchCount;
+            if (listener == null) {
+                return;
+            }
+            int percent = totalBytes > 0 && input != null
+                    ? (int) Math.min(100, input.count * 100 / totalBytes) : -1;
+            listener.onProgress(processed, percent);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
     public interface OnBackupListener {
         void onSuccess(String message);
         void onError(String error);
+
+        /**
+         * Avance de una exportación o importación larga (en el hilo de la copia).
+         * @param processed registros escritos o aplicados hasta ahora
+         * @param percent porcentaje del archivo leído, o -1 si no se conoce
+         */
+        default void onProgress(int processed, int percent) {
+        }
     }
 }
@@ -0,0 +1,125 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Reloj de días compartido: devuelve el día local actual como clave entera
+ * (LocalDate.toEpochDay(), días desde 1970-01-01).
+ *
+ * Los límites del día se calculan una vez y se guardan; mientras la hora actual caiga
+ * dentro de ellos, today() solo compara dos números, sin crear formateadores ni objetos.
+ * Al pasar la medianoche (o si el reloj se mueve fuera del día) se recalculan. La zona
+ * horaria se vuelve a leer como mucho una vez por minuto, para detectar cambios de zona.
+ */
+public final class DayClock {
+
+    private static final long ZONE_CHECK_INTERVAL_MS = 60_000;
+
+    private static volatile Snapshot current = compute(System.currentTimeMillis(), ZoneId.systemDefault());
+
+    private DayClock() {
+    }
+
+    /**
+     * Día local actual
+     */
+    public static long today() {
+        return snapshot(System.currentTimeMillis()).day;
+    }
+
+    /**
+     * Día local del instante indicado (sin cálculos si cae en el día actual)
+     */
+    public static long dayOf(long epochMillis) {
+        Snapshot snapshot = snapshot(System.currentTimeMillis());
+        if (epochMillis >= snapshot.startMillis && epochMillis < snapshot.endMillis) {
+            return snapshot.day;
+        }
+        return StreakEngine.dayOf(epochMillis, snapshot.zone);
+    }
+
+    /**
+     * Inicio (00:00 local) del día actual, en segundos desde 1970
+     */
+    public static long todayStartSeconds() {
+        return snapshot(System.currentTimeMillis()).startMillis / 1000;
+    }
+
+    /**
+     * Fecha 'yyyy-MM-dd' de un día (con dígitos ASCII, sin depender del idioma del dispositivo).
+     * La de hoy se devuelve cacheada.
+     */
+    public static String format(long day) {
+        Snapshot snapshot = snapshot(System.currentTimeMillis());
+        return day == snapshot.day ? snapshot.formatted : LocalDate.ofEpochDay(day).toString();
+    }
+
+    /**
+     * Fecha 'yyyy-MM-dd' de hoy
+     */
+    public static String todayString() {
+        return snapshot(System.currentTimeMillis()).formatted;
+    }
+
+    /**
+     * Descarta los límites guardados (por ejemplo, tras un cambio de zona horaria conocido)
+     */
+    public static void invalidate() {
+        current = compute(System.currentTimeMillis(), ZoneId.systemDefault());
+    }
+
+    private static Snapshot snapshot(long now) {
+        Snapshot snapshot = current;
+        if (now >= snapshot.startMillis && now < snapshot.endMillis && now < snapshot.zoneCheckDueMillis) {
+            return snapshot;
+        }
+        return snapshot(now, ZoneId.systemDefault());
+    }
+
+    /**
+     * Límites del día para la hora y la zona indicadas, reutilizando los guardados si siguen
+     * valiendo. Separado de la hora y la zona del sistema para poder probarlo.
+     */
+    static Snapshot snapshot(long now, ZoneId zone) {
+        Snapshot snapshot = current;
+        if (now >= snapshot.startMillis && now < snapshot.endMillis && zone.equals(snapshot.zone)) {
+            if (now < snapshot.zoneCheckDueMillis) {
+                return snapshot;
+            }
+            // Mismo día y misma zona: solo se aplaza la próxima comprobación de zona
+            snapshot = new Snapshot(snapshot.day, snapshot.startMillis, snapshot.endMillis, zone,
+                    snapshot.formatted, now + ZONE_CHECK_INTERVAL_MS);
+        } else {
+            snapshot = compute(now, zone);
+        }
+        current = snapshot;
+        return snapshot;
+    }
+
+    private static Snapshot compute(long now, ZoneId zone) {
+        LocalDate date = LocalDate.ofEpochDay(StreakEngine.dayOf(now, zone));
+        // atStartOfDay tiene en cuenta los días cuyo 00:00 no existe por el cambio de hora
+        long start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        return new Snapshot(date.toEpochDay(), start, end, zone, date.toString(), now + ZONE_CHECK_INTERVAL_MS);
+    }
+
+    static final class Snapshot {
+        final long day;
+        final long startMillis;
+        final long endMillis;
+        final ZoneId zone;
+        final String formatted;
+        final long zoneCheckDueMillis;
+
+        Snapshot(long day, long startMillis, long endMillis, ZoneId zone, String formatted, long zoneCheckDueMillis) {
+            this.day = day;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.zone = zone;
+            this.formatted = formatted;
+            this.zoneCheckDueMillis = zoneCheckDueMillis;
+        }
+    }
+}
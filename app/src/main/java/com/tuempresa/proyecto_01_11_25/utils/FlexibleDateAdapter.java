@@ -6,34 +6,40 @@ import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * Adaptador flexible para parsear fechas en diferentes formatos.
- * Maneja fechas ISO 8601 con y sin zona horaria.
+ * Maneja fechas ISO 8601 con y sin zona horaria, y timestamps en milisegundos.
+ *
+ * La fecha se lee en una sola pasada sobre la cadena, sin crear formateadores ni lanzar
+ * excepciones por cada formato que no coincide. Formatos aceptados:
+ * <ul>
+ *   <li>yyyy-MM-dd (medianoche UTC)</li>
+ *   <li>yyyy-MM-dd'T'HH:mm[:ss[.fracción]] con cualquier número de dígitos de fracción
+ *       (la API envía 7: 2025-12-02T15:04:55.1293097); se conservan los milisegundos</li>
+ *   <li>cualquiera de los anteriores con zona: Z, ±HH:mm, ±HHmm o ±HH. Sin zona se asume UTC</li>
+ *   <li>un número entero: milisegundos desde 1970</li>
+ * </ul>
+ * La instancia no guarda estado, así que puede compartirse entre hilos.
  */
 public class FlexibleDateAdapter extends TypeAdapter<Date> {
-    
-    // Formatos de fecha que intentaremos parsear
-    private static final String[] DATE_FORMATS = {
-        "yyyy-MM-dd'T'HH:mm:ss.SSSSSSS",  // Formato de la API: 2025-12-02T15:04:55.1293097
-        "yyyy-MM-dd'T'HH:mm:ss.SSSSSS",   // Con 6 dígitos de microsegundos
-        "yyyy-MM-dd'T'HH:mm:ss.SSSSS",    // Con 5 dígitos
-        "yyyy-MM-dd'T'HH:mm:ss.SSSS",     // Con 4 dígitos
-        "yyyy-MM-dd'T'HH:mm:ss.SSS",      // Con 3 dígitos (milisegundos)
-        "yyyy-MM-dd'T'HH:mm:ss.SS",       // Con 2 dígitos
-        "yyyy-MM-dd'T'HH:mm:ss.S",        // Con 1 dígito
-        "yyyy-MM-dd'T'HH:mm:ss",          // Sin fracciones de segundo
-        "yyyy-MM-dd'T'HH:mm:ss'Z'",       // Con Z al final
-        "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'",   // Con milisegundos y Z
-        "yyyy-MM-dd'T'HH:mm:ssXXX",       // Con offset de zona horaria (+00:00)
-        "yyyy-MM-dd'T'HH:mm:ss.SSSXXX",  // Con milisegundos y offset
-    };
-    
+
+    // Formato de escritura: ISO 8601 en UTC con milisegundos (DateTimeFormatter es inmutable)
+    private static final DateTimeFormatter OUTPUT_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    // Marca de error de parseMillis (no es un instante que la API pueda enviar)
+    static final long INVALID = Long.MIN_VALUE;
+
     @Override
     public void write(JsonWriter out, Date value) throws IOException {
         if (value == null) {
@@ -41,49 +47,177 @@ public class FlexibleDateAdapter extends TypeAdapter<Date> {
             return;
         }
         // Escribir en formato ISO 8601 estándar
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        out.value(sdf.format(value));
+        out.value(OUTPUT_FORMAT.format(Instant.ofEpochMilli(value.getTime())));
     }
-    
+
     @Override
     public Date read(JsonReader in) throws IOException {
         if (in.peek() == JsonToken.NULL) {
             in.nextNull();
             return null;
         }
-        
+
         String dateString = in.nextString();
         if (dateString == null || dateString.isEmpty()) {
             return null;
         }
-        
-        // Intentar parsear con cada formato
-        for (String format : DATE_FORMATS) {
-            try {
-                SimpleDateFormat sdf = new SimpleDateFormat(format, Locale.US);
-                // Si el formato no tiene zona horaria, asumir UTC
-                if (!format.contains("XXX") && !format.contains("'Z'")) {
-                    sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        long millis = parseMillis(dateString);
+        if (millis == INVALID) {
+            throw new IOException("No se pudo parsear la fecha: " + dateString);
+        }
+        return new Date(millis);
+    }
+
+    /**
+     * Convierte una fecha ISO 8601 o un timestamp en milisegundos desde 1970 (UTC).
+     * @return los milisegundos, o INVALID si el texto no tiene un formato aceptado
+     */
+    static long parseMillis(String s) {
+        int length = s.length();
+        // Timestamp: solo dígitos (con signo opcional). Una fecha ISO siempre tiene '-' en la posición 4
+        if (length < 5 || s.charAt(4) != '-') {
+            return parseEpochMillis(s);
+        }
+        if (length < 10 || s.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return INVALID;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        if (length == 10) {
+            return millis;
+        }
+
+        // Hora: 'T' (o espacio) HH:mm, segundos y fracción opcionales
+        char separator = s.charAt(10);
+        if ((separator != 'T' && separator != 't' && separator != ' ') || length < 16 || s.charAt(13) != ':') {
+            return INVALID;
+        }
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return INVALID;
+        }
+        millis += hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE;
+        int pos = 16;
+        if (pos < length && s.charAt(pos) == ':') {
+            int second = digits(s, pos + 1, 2);
+            // 60 admite el segundo intercalar, como hacía SimpleDateFormat
+            if (second < 0 || second > 60) {
+                return INVALID;
+            }
+            millis += second * MILLIS_PER_SECOND;
+            pos += 3;
+            if (pos < length && (s.charAt(pos) == '.' || s.charAt(pos) == ',')) {
+                pos++;
+                int start = pos;
+                int fraction = 0;
+                while (pos < length && isDigit(s.charAt(pos))) {
+                    // Solo cuentan los tres primeros dígitos; el resto es precisión por debajo del milisegundo
+                    if (pos - start < 3) {
+                        fraction = fraction * 10 + (s.charAt(pos) - '0');
+                    }
+                    pos++;
+                }
+                int count = pos - start;
+                if (count == 0) {
+                    return INVALID;
                 }
-                Date date = sdf.parse(dateString);
-                if (date != null) {
-                    return date;
+                for (int i = count; i < 3; i++) {
+                    fraction *= 10;
                 }
-            } catch (ParseException e) {
-                // Continuar con el siguiente formato
-                continue;
+                millis += fraction;
             }
         }
-        
-        // Si ningún formato funcionó, intentar parsear como timestamp (milisegundos)
-        try {
-            long timestamp = Long.parseLong(dateString);
-            return new Date(timestamp);
-        } catch (NumberFormatException e) {
-            // Si tampoco es un número, lanzar excepción
-            throw new IOException("No se pudo parsear la fecha: " + dateString, e);
+
+        // Zona: sin zona se asume UTC
+        if (pos == length) {
+            return millis;
+        }
+        char zone = s.charAt(pos);
+        if ((zone == 'Z' || zone == 'z') && pos + 1 == length) {
+            return millis;
         }
+        if (zone != '+' && zone != '-') {
+            return INVALID;
+        }
+        int offsetHours = digits(s, pos + 1, 2);
+        int offsetMinutes = 0;
+        int rest = length - (pos + 3);
+        if (rest == 3 && s.charAt(pos + 3) == ':') {
+            offsetMinutes = digits(s, pos + 4, 2);
+        } else if (rest == 2) {
+            offsetMinutes = digits(s, pos + 3, 2);
+        } else if (rest != 0) {
+            return INVALID;
+        }
+        if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+            return INVALID;
+        }
+        long offset = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+        // La hora local es UTC + offset, así que se resta para obtener el instante
+        return zone == '+' ? millis - offset : millis + offset;
+    }
+
+    private static long parseEpochMillis(String s) {
+        int length = s.length();
+        if (length == 0) {
+            return INVALID;
+        }
+        int pos = s.charAt(0) == '-' || s.charAt(0) == '+' ? 1 : 0;
+        // Hasta 18 dígitos caben en un long sin desbordar
+        if (pos == length || length - pos > 18) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = pos; i < length; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return s.charAt(0) == '-' ? -value : value;
     }
-}
 
+    /**
+     * Número de count dígitos ASCII a partir de start, o -1 si falta alguno
+     */
+    private static int digits(String s, int start, int count) {
+        if (start + count > s.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Días desde 1970-01-01 de una fecha del calendario gregoriano (sin crear objetos).
+     * Un día mayor que el del mes se desborda al mes siguiente, como con SimpleDateFormat.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        // Algoritmo de H. Hinnant: años que empiezan en marzo, así febrero queda al final
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,141 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Codificación geohash (base32) de coordenadas.
+ *
+ * Los puntos cercanos comparten prefijo, así que un índice sobre la columna geohash permite
+ * buscar por área con rangos de texto: todos los puntos de la celda "9g3w" cumplen
+ * geohash >= "9g3w" AND geohash < "9g3w{" ('{' es el carácter siguiente a 'z').
+ */
+public final class GeoHash {
+
+    /** Precisión guardada en la base de datos: celdas de unos 5 x 5 m */
+    public static final int STORED_PRECISION = 9;
+    /** Carácter inmediatamente posterior a cualquier carácter base32, para cerrar rangos */
+    public static final String RANGE_END = "{";
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private GeoHash() {
+    }
+
+    public static String encode(double latitude, double longitude) {
+        return encode(latitude, longitude, STORED_PRECISION);
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        char[] hash = new char[precision];
+        boolean evenBit = true; // los bits pares son de longitud
+        int bit = 0;
+        int ch = 0;
+        int length = 0;
+        while (length < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLng = mid;
+                } else {
+                    ch <<= 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash[length++] = BASE32[ch];
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return new String(hash);
+    }
+
+    /**
+     * Prefijos cuyas celdas cubren el rectángulo indicado, con la mayor precisión que no supere
+     * maxCells celdas. Si el rectángulo cruza el antimeridiano (west > east) se cubren las dos mitades.
+     * Las celdas pueden sobresalir del rectángulo: hay que filtrar después por latitud/longitud.
+     * Nunca devuelve más de maxCells prefijos: si ni siquiera con precisión 1 caben (un rectángulo
+     * muy ancho puede tocar las 32 celdas), devuelve una lista vacía y el llamador debe buscar
+     * solo por rango de latitud/longitud.
+     */
+    public static List<String> coveringPrefixes(double south, double west, double north, double east, int maxCells) {
+        south = Math.max(-90, Math.min(90, south));
+        north = Math.max(-90, Math.min(90, north));
+        int best = 0;
+        for (int precision = 1; precision <= STORED_PRECISION; precision++) {
+            if (cellCount(south, west, north, east, precision) > maxCells) {
+                break;
+            }
+            best = precision;
+        }
+        if (best == 0) {
+            return new ArrayList<>();
+        }
+
+        Set<String> prefixes = new LinkedHashSet<>();
+        if (west <= east) {
+            addCells(prefixes, south, west, north, east, best);
+        } else {
+            addCells(prefixes, south, west, north, 180, best);
+            addCells(prefixes, south, -180, north, east, best);
+        }
+        return new ArrayList<>(prefixes);
+    }
+
+    private static long cellCount(double south, double west, double north, double east, int precision) {
+        double width = cellWidth(precision);
+        double height = cellHeight(precision);
+        long rows = (long) Math.floor((north + 90) / height) - (long) Math.floor((south + 90) / height) + 1;
+        long columns;
+        if (west <= east) {
+            columns = (long) Math.floor((east + 180) / width) - (long) Math.floor((west + 180) / width) + 1;
+        } else {
+            columns = (long) Math.ceil(360 / width) - (long) Math.floor((west + 180) / width)
+                    + (long) Math.floor((east + 180) / width) + 1;
+        }
+        return rows * columns;
+    }
+
+    private static void addCells(Set<String> out, double south, double west, double north, double east, int precision) {
+        double width = cellWidth(precision);
+        double height = cellHeight(precision);
+        long firstRow = (long) Math.floor((south + 90) / height);
+        long lastRow = (long) Math.floor((north + 90) / height);
+        long firstColumn = (long) Math.floor((west + 180) / width);
+        long lastColumn = (long) Math.floor((east + 180) / width);
+        for (long row = firstRow; row <= lastRow; row++) {
+            // Centro de la celda, limitado al rango válido
+            double lat = Math.min(90 - height / 2, -90 + (row + 0.5) * height);
+            for (long column = firstColumn; column <= lastColumn; column++) {
+                double lng = Math.min(180 - width / 2, -180 + (column + 0.5) * width);
+                out.add(encode(lat, lng, precision));
+            }
+        }
+    }
+
+    private static double cellWidth(int precision) {
+        int lngBits = (5 * precision + 1) / 2;
+        return 360.0 / (1L << lngBits);
+    }
+
+    private static double cellHeight(int precision) {
+        int latBits = (5 * precision) / 2;
+        return 180.0 / (1L << latBits);
+    }
+}
@@ -1,15 +1,40 @@
 package com.tuempresa.proyecto_01_11_25.utils;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
 import androidx.core.content.ContextCompat;
 import com.tuempresa.proyecto_01_11_25.R;
 import com.tuempresa.proyecto_01_11_25.model.Habit;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Utilidades para manejar íconos de hábitos
  */
 public class HabitIconUtils {
     
+    // Nombre de ícono guardado -> recurso; se construye una sola vez
+    private static final Map<String, Integer> ICONS_BY_NAME = new HashMap<>();
+    static {
+        ICONS_BY_NAME.put("ic_habit_book", R.drawable.ic_menu_book_24);
+        ICONS_BY_NAME.put("ic_habit_vitamins", R.drawable.ic_habit_vitamins);
+        ICONS_BY_NAME.put("ic_habit_meditation", R.drawable.ic_habit_meditation);
+        ICONS_BY_NAME.put("ic_habit_journal", R.drawable.ic_habit_journal);
+        ICONS_BY_NAME.put("ic_habit_gym", R.drawable.ic_fitness_center_24);
+        ICONS_BY_NAME.put("ic_habit_water", R.drawable.ic_habit_water);
+        ICONS_BY_NAME.put("ic_habit_cold_shower", R.drawable.ic_habit_cold_shower);
+        ICONS_BY_NAME.put("ic_habit_english", R.drawable.ic_habit_english);
+        ICONS_BY_NAME.put("ic_habit_coding", R.drawable.ic_habit_coding);
+        ICONS_BY_NAME.put("ic_habit_walk", R.drawable.ic_directions_walk_24);
+    }
+
+    // Estado compartido de los vectores ya inflados, por recurso (hay pocos íconos distintos)
+    private static final int MAX_CACHED_DRAWABLES = 32;
+    private static final LruCache<Integer, Drawable.ConstantState> DRAWABLE_CACHE =
+            new LruCache<>(MAX_CACHED_DRAWABLES);
+
     /**
      * Obtiene el drawable ID del ícono según el nombre guardado
      */
@@ -17,32 +42,38 @@ public class HabitIconUtils {
         if (iconName == null || iconName.isEmpty()) {
             return getDefaultIconForType(null);
         }
-        
-        // Mapeo de nombres de íconos a recursos
-        switch (iconName) {
-            case "ic_habit_book":
-                return R.drawable.ic_menu_book_24;
-            case "ic_habit_vitamins":
-                return R.drawable.ic_habit_vitamins;
-            case "ic_habit_meditation":
-                return R.drawable.ic_habit_meditation;
-            case "ic_habit_journal":
-                return R.drawable.ic_habit_journal;
-            case "ic_habit_gym":
-                return R.drawable.ic_fitness_center_24;
-            case "ic_habit_water":
-                return R.drawable.ic_habit_water;
-            case "ic_habit_cold_shower":
-                return R.drawable.ic_habit_cold_shower;
-            case "ic_habit_english":
-                return R.drawable.ic_habit_english;
-            case "ic_habit_coding":
-                return R.drawable.ic_habit_coding;
-            case "ic_habit_walk":
-                return R.drawable.ic_directions_walk_24;
-            default:
-                return getDefaultIconForType(null);
+        Integer drawableId = ICONS_BY_NAME.get(iconName);
+        return drawableId != null ? drawableId : getDefaultIconForType(null);
+    }
+
+    /**
+     * Drawable ID del ícono de un hábito: el personalizado si existe, sino el del tipo
+     */
+    public static int getIconDrawableId(Context context, String iconName, Habit.HabitType type) {
+        if (iconName != null && !iconName.isEmpty()) {
+            return getIconDrawableId(context, iconName);
+        }
+        return getDefaultIconForType(type);
+    }
+
+    /**
+     * Devuelve una instancia nueva del drawable sin volver a inflar el XML del vector:
+     * las instancias comparten el ConstantState cacheado. Null si el recurso no existe.
+     */
+    public static Drawable getIconDrawable(Context context, int drawableId) {
+        Drawable.ConstantState state = DRAWABLE_CACHE.get(drawableId);
+        if (state != null) {
+            return state.newDrawable(context.getResources());
+        }
+        Drawable drawable = ContextCompat.getDrawable(context, drawableId);
+        if (drawable == null) {
+            return null;
+        }
+        Drawable.ConstantState newState = drawable.getConstantState();
+        if (newState != null) {
+            DRAWABLE_CACHE.put(drawableId, newState);
         }
+        return drawable;
     }
     
     /**
@@ -3,7 +3,10 @@ package com.tuempresa.proyecto_01_11_25.utils;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
+import android.util.LruCache;
 import androidx.core.content.ContextCompat;
 import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
@@ -14,48 +17,64 @@ import com.tuempresa.proyecto_01_11_25.R;
  * Utilidades para renderizar marcadores personalizados en el mapa
  */
 public class MapMarkerRenderer {
-    
+
     private static final int MARKER_SIZE_DP = 64; // Tamaño del marcador en dp
+    private static final int CLUSTER_SIZE_DP = 44; // Tamaño del círculo de un grupo en dp
     private static final float DENSITY = 3.0f; // Factor de densidad para mejor calidad
-    
+    private static final int BYTES_PER_PIXEL = 4; // ARGB_8888
+    // Memoria máxima para bitmaps de marcadores (unos 20 íconos de 192x192)
+    private static final int MAX_CACHE_BYTES = 3 * 1024 * 1024;
+
+    /**
+     * Marcadores ya dibujados, por recurso y tamaño. Todos los marcadores del mismo ícono
+     * comparten el mismo bitmap en lugar de crear uno nuevo por marcador.
+     */
+    private static final LruCache<String, CachedMarker> MARKER_CACHE =
+            new LruCache<String, CachedMarker>(MAX_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, CachedMarker value) {
+                    return value.bytes;
+                }
+            };
+
     /**
      * Convierte un drawable vectorial en BitmapDescriptor para Google Maps
      */
     public static BitmapDescriptor bitmapDescriptorFromVector(Context context, int vectorResId) {
-        Drawable vectorDrawable = ContextCompat.getDrawable(context, vectorResId);
+        int width = (int) (MARKER_SIZE_DP * DENSITY);
+        int height = (int) (MARKER_SIZE_DP * DENSITY);
+        String key = vectorResId + "@" + width + "x" + height;
+
+        CachedMarker cached = MARKER_CACHE.get(key);
+        if (cached != null) {
+            return cached.descriptor;
+        }
+
+        Drawable vectorDrawable = HabitIconUtils.getIconDrawable(context, vectorResId);
         if (vectorDrawable == null) {
             return BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_RED);
         }
-        
-        int width = (int) (MARKER_SIZE_DP * DENSITY);
-        int height = (int) (MARKER_SIZE_DP * DENSITY);
+
         vectorDrawable.setBounds(0, 0, width, height);
-        
+
         Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
         Canvas canvas = new Canvas(bitmap);
         vectorDrawable.draw(canvas);
-        
-        return BitmapDescriptorFactory.fromBitmap(bitmap);
+
+        BitmapDescriptor descriptor = BitmapDescriptorFactory.fromBitmap(bitmap);
+        MARKER_CACHE.put(key, new CachedMarker(descriptor, width * height * BYTES_PER_PIXEL));
+        return descriptor;
     }
-    
+
     /**
      * Obtiene el BitmapDescriptor para un hábito específico
      * Usa el ícono personalizado si existe, sino el por defecto según el tipo
      */
     public static BitmapDescriptor getMarkerIcon(Context context, Habit habit) {
-        int drawableId;
-        
-        // Si el hábito tiene un ícono personalizado, usarlo
-        if (habit.getHabitIcon() != null && !habit.getHabitIcon().isEmpty()) {
-            drawableId = HabitIconUtils.getIconDrawableId(context, habit.getHabitIcon());
-        } else {
-            // Usar ícono por defecto según el tipo
-            drawableId = HabitIconUtils.getDefaultIconForType(habit.getType());
-        }
-        
+        int drawableId = HabitIconUtils.getIconDrawableId(context, habit.getHabitIcon(), habit.getType());
         return bitmapDescriptorFromVector(context, drawableId);
     }
-    
+
     /**
      * Obtiene el BitmapDescriptor para un tipo de evento de hábito
      * (Para compatibilidad con HabitEvent)
@@ -64,5 +83,71 @@ public class MapMarkerRenderer {
         int drawableId = HabitIconUtils.getDefaultIconForType(type);
         return bitmapDescriptorFromVector(context, drawableId);
     }
-}
 
+    /**
+     * Círculo con el número de completados de un grupo. Los números se redondean
+     * ("20+", "300+", "1k+") para que basten unos pocos bitmaps cacheados.
+     */
+    public static BitmapDescriptor getClusterIcon(Context context, int count) {
+        String label = clusterLabel(count);
+        int size = (int) (CLUSTER_SIZE_DP * DENSITY);
+        String key = "cluster:" + label + "@" + size;
+
+        CachedMarker cached = MARKER_CACHE.get(key);
+        if (cached != null) {
+            return cached.descriptor;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        float radius = size / 2f;
+
+        Paint circle = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circle.setColor(ContextCompat.getColor(context, R.color.orange));
+        canvas.drawCircle(radius, radius, radius, circle);
+        circle.setColor(Color.WHITE);
+        circle.setStyle(Paint.Style.STROKE);
+        circle.setStrokeWidth(2 * DENSITY);
+        canvas.drawCircle(radius, radius, radius - DENSITY, circle);
+
+        Paint text = new Paint(Paint.ANTI_ALIAS_FLAG);
+        text.setColor(Color.WHITE);
+        text.setFakeBoldText(true);
+        text.setTextAlign(Paint.Align.CENTER);
+        text.setTextSize(size * (label.length() > 3 ? 0.28f : 0.36f));
+        float baseline = radius - (text.descent() + text.ascent()) / 2f;
+        canvas.drawText(label, radius, baseline, text);
+
+        BitmapDescriptor descriptor = BitmapDescriptorFactory.fromBitmap(bitmap);
+        MARKER_CACHE.put(key, new CachedMarker(descriptor, size * size * BYTES_PER_PIXEL));
+        return descriptor;
+    }
+
+    private static String clusterLabel(int count) {
+        if (count < 10) {
+            return String.valueOf(count);
+        } else if (count < 100) {
+            return (count / 10 * 10) + "+";
+        } else if (count < 1000) {
+            return (count / 100 * 100) + "+";
+        }
+        return (count / 1000) + "k+";
+    }
+
+    /**
+     * Libera los bitmaps cacheados (por ejemplo, al cerrar el mapa con poca memoria)
+     */
+    public static void clearCache() {
+        MARKER_CACHE.evictAll();
+    }
+
+    private static final class CachedMarker {
+        final BitmapDescriptor descriptor;
+        final int bytes;
+
+        CachedMarker(BitmapDescriptor descriptor, int bytes) {
+            this.descriptor = descriptor;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Agrupa completados con ubicación en celdas de una rejilla sobre la proyección Mercator del mapa.
+ *
+ * Los puntos se ordenan una sola vez por su código Morton (Z-order), de modo que cada celda
+ * de la rejilla, a cualquier nivel de zoom, es un rango contiguo del arreglo ordenado.
+ * Contar los puntos de una celda y calcular su centro son dos búsquedas binarias más
+ * sumas prefijas, así que una consulta solo recorre las celdas visibles y no los puntos.
+ */
+public class MarkerClusterEngine {
+
+    // Bits por eje de la rejilla más fina (unos 2,4 m en el ecuador)
+    private static final int GRID_BITS = 24;
+    // Nivel de celda = zoom + 2: celdas de unos 64 dp (el mundo mide 256 dp en zoom 0)
+    private static final int CELL_LEVEL_OFFSET = 2;
+    // Una celda extra en cada borde para que al desplazar el mapa ya haya marcadores
+    private static final int VIEWPORT_PADDING_CELLS = 1;
+    // Máximo de celdas a recorrer por consulta; si se supera se usan celdas más grandes
+    private static final int MAX_CELLS_PER_QUERY = 2048;
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private final long[] codes;
+    private final HabitCompletion[] items;
+    private final double[] latPrefix;
+    private final double[] lngPrefix;
+
+    /**
+     * Grupo de completados visible: un marcador individual si count == 1.
+     */
+    public static final class Cluster {
+        private final long key;
+        private final int count;
+        private final double latitude;
+        private final double longitude;
+        private final HabitCompletion first;
+
+        Cluster(long key, int count, double latitude, double longitude, HabitCompletion first) {
+            this.key = key;
+            this.count = count;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.first = first;
+        }
+
+        /** Identificador estable de la celda (nivel + posición), para reutilizar su marcador */
+        public long getKey() { return key; }
+        public int getCount() { return count; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+        /** Completado de la celda (el único si count == 1) */
+        public HabitCompletion getFirst() { return first; }
+        public boolean isSingle() { return count == 1; }
+    }
+
+    /**
+     * @param completions completados con coordenadas válidas
+     */
+    public MarkerClusterEngine(List<HabitCompletion> completions) {
+        int n = completions.size();
+        long[][] sortable = new long[n][];
+        for (int i = 0; i < n; i++) {
+            HabitCompletion completion = completions.get(i);
+            long x = gridX(completion.getLongitude(), GRID_BITS);
+            long y = gridY(completion.getLatitude(), GRID_BITS);
+            sortable[i] = new long[] {interleave(x, y), i};
+        }
+        Arrays.sort(sortable, (a, b) -> Long.compare(a[0], b[0]));
+
+        codes = new long[n];
+        items = new HabitCompletion[n];
+        latPrefix = new double[n + 1];
+        lngPrefix = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            HabitCompletion completion = completions.get((int) sortable[i][1]);
+            codes[i] = sortable[i][0];
+            items[i] = completion;
+            latPrefix[i + 1] = latPrefix[i] + completion.getLatitude();
+            lngPrefix[i + 1] = lngPrefix[i] + completion.getLongitude();
+        }
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Grupos de las celdas que cortan el área visible, con el tamaño de celda del zoom indicado.
+     * Si el área cruza el antimeridiano (west > east) se consultan las dos mitades.
+     */
+    public List<Cluster> getClusters(double south, double west, double north, double east, float zoom) {
+        List<Cluster> clusters = new ArrayList<>();
+        if (items.length == 0) {
+            return clusters;
+        }
+        int level = Math.max(0, Math.min(GRID_BITS, (int) Math.floor(zoom) + CELL_LEVEL_OFFSET));
+        long minY = gridY(north, level) - VIEWPORT_PADDING_CELLS;
+        long maxY = gridY(south, level) + VIEWPORT_PADDING_CELLS;
+        long minX = gridX(west, level) - VIEWPORT_PADDING_CELLS;
+        long maxX = gridX(east, level) + VIEWPORT_PADDING_CELLS;
+        long columns = west <= east ? maxX - minX + 1 : (1L << level) - minX + maxX + 1;
+        while (level > 0 && columns * (maxY - minY + 1) > MAX_CELLS_PER_QUERY) {
+            level--;
+            minY >>= 1;
+            maxY >>= 1;
+            minX >>= 1;
+            maxX >>= 1;
+            columns = west <= east ? maxX - minX + 1 : (1L << level) - minX + maxX + 1;
+        }
+
+        long cellsPerAxis = 1L << level;
+        minY = Math.max(0, minY);
+        maxY = Math.min(cellsPerAxis - 1, maxY);
+        if (west <= east) {
+            collect(clusters, level, Math.max(0, minX), Math.min(cellsPerAxis - 1, maxX), minY, maxY);
+        } else {
+            collect(clusters, level, Math.max(0, minX), cellsPerAxis - 1, minY, maxY);
+            collect(clusters, level, 0, Math.min(cellsPerAxis - 1, maxX), minY, maxY);
+        }
+        return clusters;
+    }
+
+    private void collect(List<Cluster> out, int level, long minX, long maxX, long minY, long maxY) {
+        int shift = 2 * (GRID_BITS - level);
+        for (long y = minY; y <= maxY; y++) {
+            for (long x = minX; x <= maxX; x++) {
+                long prefix = interleave(x, y);
+                int from = lowerBound(prefix << shift);
+                int to = lowerBound((prefix + 1) << shift);
+                int count = to - from;
+                if (count == 0) {
+                    continue;
+                }
+                long key = ((long) level << 50) | prefix;
+                if (count == 1) {
+                    HabitCompletion single = items[from];
+                    out.add(new Cluster(key, 1, single.getLatitude(), single.getLongitude(), single));
+                } else {
+                    double lat = (latPrefix[to] - latPrefix[from]) / count;
+                    double lng = (lngPrefix[to] - lngPrefix[from]) / count;
+                    out.add(new Cluster(key, count, lat, lng, items[from]));
+                }
+            }
+        }
+    }
+
+    /** Primer índice cuyo código es >= code */
+    private int lowerBound(long code) {
+        int low = 0;
+        int high = codes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (codes[mid] < code) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long gridX(double longitude, int level) {
+        double x = (longitude + 180.0) / 360.0;
+        return clampCell((long) Math.floor(x * (1L << level)), level);
+    }
+
+    private static long gridY(double latitude, int level) {
+        double lat = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        double sin = Math.sin(Math.toRadians(lat));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return clampCell((long) Math.floor(y * (1L << level)), level);
+    }
+
+    private static long clampCell(long cell, int level) {
+        return Math.max(0, Math.min((1L << level) - 1, cell));
+    }
+
+    /** Intercala los bits de x e y (código Morton) */
+    private static long interleave(long x, long y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+}
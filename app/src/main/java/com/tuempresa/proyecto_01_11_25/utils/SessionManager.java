@@ -10,6 +10,7 @@ public class SessionManager {
     private static final String KEY_USER_EMAIL = "userEmail";
     private static final String KEY_JWT_TOKEN = "jwtToken";
     private static final String KEY_DISPLAY_NAME = "displayName";
+    private static final String KEY_SYNC_WATERMARK_PREFIX = "syncWatermark_";
 
     private SharedPreferences pref;
     private SharedPreferences.Editor editor;
@@ -85,4 +86,45 @@ public class SessionManager {
     public void logout() {
         logoutUser();
     }
+
+    /**
+     * Obtiene la marca de la última sincronización incremental del usuario actual.
+     * @return serverTime de la última descarga aplicada o 0 si hay que descargar todo
+     */
+    public long getSyncWatermark() {
+        return pref.getLong(KEY_SYNC_WATERMARK_PREFIX + getUserId(), 0);
+    }
+
+    /**
+     * Guarda la marca de sincronización incremental del usuario actual.
+     * @param serverTime Hora del servidor devuelta en la última descarga (0 fuerza una descarga completa)
+     */
+    public void setSyncWatermark(long serverTime) {
+        editor.putLong(KEY_SYNC_WATERMARK_PREFIX + getUserId(), serverTime);
+        editor.apply();
+    }
+
+    /**
+     * Borra las marcas de sincronización de todos los usuarios. Llamar cuando se borran los
+     * datos locales: una marca sin sus datos haría que solo se descargaran los cambios.
+     */
+    public void clearSyncWatermarks() {
+        removeSyncWatermarks(null);
+    }
+
+    /**
+     * Borra las marcas de sincronización de los demás usuarios (sus hábitos locales se eliminaron).
+     */
+    public void clearOtherUsersSyncWatermarks() {
+        removeSyncWatermarks(KEY_SYNC_WATERMARK_PREFIX + getUserId());
+    }
+
+    private void removeSyncWatermarks(String keepKey) {
+        for (String key : pref.getAll().keySet()) {
+            if (key.startsWith(KEY_SYNC_WATERMARK_PREFIX) && !key.equals(keepKey)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
 }
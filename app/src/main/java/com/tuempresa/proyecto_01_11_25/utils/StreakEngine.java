@@ -0,0 +1,142 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Reglas de la racha diaria, sin acceso a la base de datos.
+ *
+ * Un día cuenta para la racha cuando el usuario registra al menos DAILY_GOAL completados;
+ * la racha es el número de días seguidos que cumplieron el objetivo. Sigue viva mientras
+ * el último día cumplido sea hoy o ayer, así que hoy aún se puede mantener.
+ *
+ * Los días son claves enteras (LocalDate.toEpochDay() en la zona del dispositivo), de modo
+ * que los cambios de hora o de zona no alteran la cuenta: un día con 23 o 25 horas sigue
+ * siendo un día. Cada completado actualiza el estado en O(1) con {@link #onCompletion};
+ * reconstruirlo desde el historial es aplicar {@link #withDayCount} a cada día en orden.
+ */
+public final class StreakEngine {
+
+    /** Completados necesarios en un día para que cuente en la racha */
+    public static final int DAILY_GOAL = 3;
+    /** Sin día registrado (el 1970-01-01 nunca es un día de actividad real) */
+    public static final long NO_DAY = 0;
+
+    private StreakEngine() {
+    }
+
+    /**
+     * Estado guardado por usuario: el contador del último día con actividad y la racha
+     * que termina en el último día que cumplió el objetivo.
+     */
+    public static final class State {
+        public static final State EMPTY = new State(NO_DAY, 0, 0, NO_DAY);
+
+        private final long day;
+        private final int completedOnDay;
+        private final int streak;
+        private final long lastQualifiedDay;
+
+        public State(long day, int completedOnDay, int streak, long lastQualifiedDay) {
+            this.day = day;
+            this.completedOnDay = completedOnDay;
+            this.streak = streak;
+            this.lastQualifiedDay = lastQualifiedDay;
+        }
+
+        /** Último día con actividad, o NO_DAY */
+        public long getDay() { return day; }
+        /** Completados registrados en getDay() */
+        public int getCompletedOnDay() { return completedOnDay; }
+        /** Días seguidos que cumplieron el objetivo hasta getLastQualifiedDay() */
+        public int getStreak() { return streak; }
+        /** Último día que cumplió el objetivo, o NO_DAY */
+        public long getLastQualifiedDay() { return lastQualifiedDay; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return day == other.day && completedOnDay == other.completedOnDay
+                    && streak == other.streak && lastQualifiedDay == other.lastQualifiedDay;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(day);
+            result = 31 * result + completedOnDay;
+            result = 31 * result + streak;
+            return 31 * result + Long.hashCode(lastQualifiedDay);
+        }
+
+        @Override
+        public String toString() {
+            return "State{day=" + day + ", completedOnDay=" + completedOnDay + ", streak=" + streak +
+                    ", lastQualifiedDay=" + lastQualifiedDay + "}";
+        }
+    }
+
+    /**
+     * Aplica un completado nuevo registrado en day.
+     * @return el estado nuevo, o null si day es anterior al último día del estado
+     *         (evento fuera de orden: hay que reconstruir desde el historial)
+     */
+    public static State onCompletion(State state, long day) {
+        int before = day == state.day ? state.completedOnDay : 0;
+        return withDayCount(state, day, before + 1);
+    }
+
+    /**
+     * Fija en count los completados de day (por ejemplo, tras borrar uno) y ajusta la racha
+     * si el día pasa a cumplir o deja de cumplir el objetivo. Aplicado a cada día del historial
+     * en orden ascendente, a partir de State.EMPTY, reconstruye el estado en una pasada.
+     * @return el estado nuevo, o null si day es anterior al último día del estado
+     */
+    public static State withDayCount(State state, long day, int count) {
+        if (state.day != NO_DAY && day < state.day) {
+            return null;
+        }
+        count = Math.max(0, count);
+        int before = day == state.day ? state.completedOnDay : 0;
+        boolean wasQualified = before >= DAILY_GOAL;
+        boolean isQualified = count >= DAILY_GOAL;
+
+        int streak = state.streak;
+        long lastQualifiedDay = state.lastQualifiedDay;
+        if (isQualified && !wasQualified) {
+            // El día entra en la racha: la continúa si ayer también cumplió
+            streak = lastQualifiedDay != NO_DAY && lastQualifiedDay == day - 1 ? streak + 1 : 1;
+            lastQualifiedDay = day;
+        } else if (wasQualified && !isQualified) {
+            // El día sale de la racha (lastQualifiedDay era day): queda la que terminaba ayer
+            streak--;
+            lastQualifiedDay = streak > 0 ? day - 1 : NO_DAY;
+        }
+        return new State(day, count, streak, lastQualifiedDay);
+    }
+
+    /**
+     * Racha visible en today: la guardada si el último día cumplido fue hoy o ayer, si no 0.
+     */
+    public static int currentStreak(State state, long today) {
+        if (state.lastQualifiedDay == NO_DAY || state.lastQualifiedDay < today - 1) {
+            return 0;
+        }
+        return state.streak;
+    }
+
+    /**
+     * Completados registrados en today (0 si el último día con actividad fue otro)
+     */
+    public static int completedOn(State state, long today) {
+        return state.day == today ? state.completedOnDay : 0;
+    }
+
+    /**
+     * Clave de día de un instante en la zona indicada
+     */
+    public static long dayOf(long epochMillis, ZoneId zone) {
+        return Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate().toEpochDay();
+    }
+}
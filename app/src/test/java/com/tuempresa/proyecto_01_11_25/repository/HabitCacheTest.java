@@ -0,0 +1,241 @@
+package com.tuempresa.proyecto_01_11_25.repository;
+
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelper;
+import com.tuempresa.proyecto_01_11_25.model.Habit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de HabitCache con un origen en memoria y un reloj manual: invalidación por hábito,
+ * invalidación completa, TTL y cambio de usuario.
+ */
+public class HabitCacheTest {
+
+    private FakeSource source;
+    private long now;
+    private HabitCache cache;
+
+    @Before
+    public void setUp() {
+        source = new FakeSource();
+        source.userId = 1;
+        source.put(habit(10, 1, "Leer", Habit.HabitType.READ_BOOK), 100L);
+        source.put(habit(11, 1, "Caminar", Habit.HabitType.WALK), null);
+        now = 1_000_000;
+        cache = new HabitCache(source, () -> now);
+    }
+
+    @Test
+    public void reads_loadOnce() {
+        assertEquals(2, cache.getAll().size());
+        assertEquals("Leer", cache.getById(10).getTitle());
+        assertEquals("Leer", cache.getByServerId(100).getTitle());
+        assertNull(cache.getByServerId(101));
+        assertEquals(1, source.fullLoads);
+        assertEquals(0, source.rowLoads);
+    }
+
+    @Test
+    public void returnsCopies() {
+        String first = cache.getAll().get(0).getTitle();
+        cache.getById(10).setTitle("Cambiado");
+        cache.getAll().get(0).setTitle("Cambiado");
+        assertEquals("Leer", cache.getById(10).getTitle());
+        assertEquals(first, cache.getAll().get(0).getTitle());
+    }
+
+    @Test
+    public void habitChange_reloadsOnlyThatRow() {
+        cache.getAll();
+        source.put(habit(10, 1, "Leer más", Habit.HabitType.READ_BOOK), 200L);
+        cache.onHabitsChanged(10);
+
+        assertEquals("Leer más", cache.getById(10).getTitle());
+        assertEquals("Leer más", cache.getByServerId(200).getTitle());
+        assertNull(cache.getByServerId(100));
+        assertEquals(1, source.fullLoads);
+        assertEquals(1, source.rowLoads);
+
+        // Sin más avisos no se vuelve a leer
+        cache.getAll();
+        assertEquals(1, source.rowLoads);
+    }
+
+    @Test
+    public void habitChange_addsAndRemoves() {
+        cache.getAll();
+        source.put(habit(12, 1, "Meditar", Habit.HabitType.MEDITATE), null);
+        source.remove(11);
+        cache.onHabitsChanged(12);
+        cache.onHabitsChanged(11);
+
+        List<Habit> habits = cache.getAll();
+        assertEquals(2, habits.size());
+        // Los nuevos van al principio (más recientes primero)
+        assertEquals(12, habits.get(0).getId());
+        assertEquals(10, habits.get(1).getId());
+        assertNull(cache.getById(11));
+        assertEquals(1, source.fullLoads);
+    }
+
+    @Test
+    public void habitChange_ofAnotherUserIsDropped() {
+        cache.getAll();
+        source.put(habit(11, 2, "Caminar", Habit.HabitType.WALK), null);
+        cache.onHabitsChanged(11);
+        assertNull(cache.getById(11));
+        assertEquals(1, cache.getAll().size());
+    }
+
+    @Test
+    public void habitChange_beforeFirstLoadIsIgnored() {
+        cache.onHabitsChanged(10);
+        cache.getAll();
+        assertEquals(1, source.fullLoads);
+        assertEquals(0, source.rowLoads);
+    }
+
+    @Test
+    public void allHabitsChange_reloadsEverything() {
+        cache.getAll();
+        source.put(habit(12, 1, "Meditar", Habit.HabitType.MEDITATE), null);
+        cache.onHabitsChanged(HabitDatabaseHelper.ALL_HABITS);
+        assertEquals(3, cache.getAll().size());
+        assertEquals(2, source.fullLoads);
+
+        cache.invalidate();
+        cache.getAll();
+        assertEquals(3, source.fullLoads);
+    }
+
+    @Test
+    public void ttl_expiresAfterOneMinute() {
+        cache.getAll();
+        // Escritura sin aviso: solo el TTL la recoge
+        source.put(habit(10, 1, "Sin aviso", Habit.HabitType.READ_BOOK), 100L);
+
+        now += 60_000;
+        assertEquals("Leer", cache.getById(10).getTitle());
+        assertEquals(1, source.fullLoads);
+
+        now += 1;
+        assertEquals("Sin aviso", cache.getById(10).getTitle());
+        assertEquals(2, source.fullLoads);
+    }
+
+    @Test
+    public void ttl_notExtendedByRowReloads() {
+        cache.getAll();
+        now += 59_000;
+        cache.onHabitsChanged(10);
+        cache.getAll();
+        now += 2_000;
+        cache.getAll();
+        assertEquals(2, source.fullLoads);
+    }
+
+    @Test
+    public void userChange_reloads() {
+        cache.getAll();
+        source.userId = 2;
+        source.clear();
+        source.put(habit(20, 2, "Gimnasio", Habit.HabitType.GYM), null);
+        List<Habit> habits = cache.getAll();
+        assertEquals(1, habits.size());
+        assertEquals(20, habits.get(0).getId());
+        assertEquals(2, source.fullLoads);
+    }
+
+    @Test
+    public void byType_indexes() {
+        assertEquals(10, cache.getFirstByType(Habit.HabitType.READ_BOOK).getId());
+        assertEquals(1, cache.getByType(Habit.HabitType.WALK).size());
+        assertNull(cache.getFirstByType(Habit.HabitType.GYM));
+        assertTrue(cache.getByType(Habit.HabitType.GYM).isEmpty());
+
+        source.put(habit(11, 1, "Caminar", Habit.HabitType.GYM), null);
+        cache.onHabitsChanged(11);
+        assertNull(cache.getFirstByType(Habit.HabitType.WALK));
+        assertEquals(11, cache.getFirstByType(Habit.HabitType.GYM).getId());
+    }
+
+    private static Habit habit(long id, long userId, String title, Habit.HabitType type) {
+        Habit habit = new Habit(title, "", "", type);
+        habit.setId(id);
+        habit.setUserId(userId);
+        return habit;
+    }
+
+    /**
+     * Tabla de hábitos en memoria, en orden de inserción inverso (más recientes primero)
+     */
+    private static final class FakeSource implements HabitCache.Source {
+        long userId;
+        int fullLoads;
+        int rowLoads;
+        private final Map<Long, Habit> habits = new LinkedHashMap<>();
+        private final Map<Long, Long> serverIds = new HashMap<>();
+
+        void put(Habit habit, Long serverId) {
+            habits.put(habit.getId(), habit);
+            if (serverId != null) {
+                serverIds.put(habit.getId(), serverId);
+            } else {
+                serverIds.remove(habit.getId());
+            }
+        }
+
+        void remove(long localId) {
+            habits.remove(localId);
+            serverIds.remove(localId);
+        }
+
+        void clear() {
+            habits.clear();
+            serverIds.clear();
+        }
+
+        @Override
+        public long getUserId() {
+            return userId;
+        }
+
+        @Override
+        public List<Habit> getAllHabits() {
+            fullLoads++;
+            List<Habit> result = new ArrayList<>();
+            for (Habit habit : habits.values()) {
+                if (habit.getUserId() == userId) {
+                    result.add(0, habit.copy());
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Map<Long, Long> getServerIdsByLocalId() {
+            return new HashMap<>(serverIds);
+        }
+
+        @Override
+        public Habit getHabitById(long localId) {
+            rowLoads++;
+            Habit habit = habits.get(localId);
+            return habit != null ? habit.copy() : null;
+        }
+
+        @Override
+        public Long getServerId(long localId) {
+            return serverIds.get(localId);
+        }
+    }
+}
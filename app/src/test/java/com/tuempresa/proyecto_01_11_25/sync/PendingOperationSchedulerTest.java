@@ -0,0 +1,130 @@
+package com.tuempresa.proyecto_01_11_25.sync;
+
+import com.tuempresa.proyecto_01_11_25.database.HabitDatabaseHelperSync.PendingOperation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de la agrupación y el backoff de PendingOperationScheduler con colas aleatorias (semilla fija).
+ */
+public class PendingOperationSchedulerTest {
+
+    private static final int RUNS = 2000;
+    private static final String[] TYPES = {"CREATE", "UPDATE", "DELETE"};
+    private static final String[] ENTITIES = {"HABIT", "SCORE"};
+
+    @Test
+    public void groupByEntity_keepsQueueOrderWithinEntity() {
+        // Un UPDATE encolado tras un DELETE se queda detrás, aunque tenga el mismo created_at
+        List<PendingOperation> operations = new ArrayList<>();
+        operations.add(op(3, "HABIT", 1, "UPDATE", 100, 1));
+        operations.add(op(1, "HABIT", 1, "CREATE", 100, 1));
+        operations.add(op(2, "HABIT", 1, "DELETE", 100, 1));
+        operations.add(op(4, "HABIT", 1, "CREATE", 90, 1));
+
+        List<List<PendingOperation>> groups = PendingOperationScheduler.groupByEntity(operations);
+        assertEquals(1, groups.size());
+        assertEquals(4, groups.get(0).get(0).id);
+        assertEquals(1, groups.get(0).get(1).id);
+        assertEquals(2, groups.get(0).get(2).id);
+        assertEquals(3, groups.get(0).get(3).id);
+    }
+
+    @Test
+    public void groupByEntity_ordersGroupsByPriorityThenAge() {
+        List<PendingOperation> operations = new ArrayList<>();
+        operations.add(op(1, "SCORE", 7, "CREATE", 10, 5));
+        operations.add(op(2, "HABIT", 7, "UPDATE", 50, 1));
+        operations.add(op(3, "HABIT", 8, "UPDATE", 20, 1));
+        operations.add(op(4, "SCORE", 7, "UPDATE", 60, 0));
+
+        List<List<PendingOperation>> groups = PendingOperationScheduler.groupByEntity(operations);
+        assertEquals(3, groups.size());
+        // SCORE:7 contiene prioridad 0; después los de prioridad 1, el más antiguo primero
+        assertEquals("SCORE", groups.get(0).get(0).entityType);
+        assertEquals(8, groups.get(1).get(0).entityId);
+        assertEquals(7, groups.get(2).get(0).entityId);
+        assertEquals("HABIT", groups.get(2).get(0).entityType);
+    }
+
+    @Test
+    public void groupByEntity_randomQueues() {
+        Random random = new Random(42);
+        for (int run = 0; run < RUNS; run++) {
+            List<PendingOperation> operations = new ArrayList<>();
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                operations.add(op(i + 1, ENTITIES[random.nextInt(ENTITIES.length)], random.nextInt(5),
+                        TYPES[random.nextInt(TYPES.length)], random.nextInt(10), random.nextInt(3)));
+            }
+            Collections.shuffle(operations, random);
+
+            List<List<PendingOperation>> groups = PendingOperationScheduler.groupByEntity(operations);
+            Set<String> keys = new HashSet<>();
+            Set<Long> ids = new HashSet<>();
+            int previousPriority = Integer.MIN_VALUE;
+            for (List<PendingOperation> group : groups) {
+                assertFalse(group.isEmpty());
+                String key = group.get(0).entityType + ":" + group.get(0).entityId;
+                assertTrue("entidad repetida en run " + run, keys.add(key));
+                int best = Integer.MAX_VALUE;
+                for (int i = 0; i < group.size(); i++) {
+                    PendingOperation op = group.get(i);
+                    assertEquals(key, op.entityType + ":" + op.entityId);
+                    assertTrue(ids.add(op.id));
+                    best = Math.min(best, op.priority);
+                    if (i > 0) {
+                        PendingOperation previous = group.get(i - 1);
+                        assertTrue("orden de llegada en run " + run, previous.createdAt < op.createdAt
+                                || (previous.createdAt == op.createdAt && previous.id < op.id));
+                    }
+                }
+                assertTrue("prioridad en run " + run, best >= previousPriority);
+                previousPriority = best;
+            }
+            assertEquals(operations.size(), ids.size());
+        }
+    }
+
+    @Test
+    public void backoffSeconds_growsWithJitterAndCap() {
+        for (int retry = 0; retry < 30; retry++) {
+            long expected = Math.min(30L << Math.min(retry, 20), 6 * 60 * 60);
+            for (int i = 0; i < 200; i++) {
+                long delay = PendingOperationScheduler.backoffSeconds(retry);
+                assertTrue("retry " + retry + ": " + delay, delay >= expected - expected / 5);
+                assertTrue("retry " + retry + ": " + delay, delay <= expected + expected / 5);
+            }
+        }
+    }
+
+    @Test
+    public void backoffSeconds_isSpread() {
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            delays.add(PendingOperationScheduler.backoffSeconds(3));
+        }
+        assertTrue(delays.size() > 10);
+    }
+
+    private static PendingOperation op(long id, String entityType, long entityId, String operationType,
+                                       long createdAt, int priority) {
+        PendingOperation op = new PendingOperation();
+        op.id = id;
+        op.entityType = entityType;
+        op.entityId = entityId;
+        op.operationType = operationType;
+        op.createdAt = createdAt;
+        op.priority = priority;
+        return op;
+    }
+}
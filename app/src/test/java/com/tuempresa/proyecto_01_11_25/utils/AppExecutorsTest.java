@@ -0,0 +1,105 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de AppExecutors: hilos con nombre por pool, escrituras en orden, lecturas que no
+ * esperan detrás de una escritura bloqueada y métricas de la cola.
+ */
+public class AppExecutorsTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @Test
+    public void pools_useNamedThreads() throws Exception {
+        AppExecutors executors = AppExecutors.getInstance();
+        assertTrue(threadName(executors.diskRead()).startsWith("habitus-db-read-"));
+        assertTrue(threadName(executors.diskWrite()).startsWith("habitus-db-write-"));
+        assertTrue(threadName(executors.network()).startsWith("habitus-network-"));
+        assertTrue(threadName(executors.syncOperations()).startsWith("habitus-sync-ops-"));
+    }
+
+    @Test
+    public void diskRead_doesNotWaitBehindBlockedWrite() throws Exception {
+        AppExecutors executors = AppExecutors.getInstance();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        executors.diskWrite().execute(() -> {
+            writeStarted.countDown();
+            await(release);
+        });
+        try {
+            assertTrue(writeStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            CountDownLatch read = new CountDownLatch(1);
+            executors.diskRead().execute(read::countDown);
+            assertTrue("la lectura quedó en cola detrás de la escritura", read.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void diskWrite_runsInSubmissionOrder() throws Exception {
+        AppExecutors.TrackedExecutor writes = AppExecutors.getInstance().diskWrite();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int task = i;
+            writes.execute(() -> order.add(task));
+            expected.add(i);
+        }
+        writes.submit(() -> { }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(expected, order);
+    }
+
+    @Test
+    public void trackedExecutor_recordsPeakQueueDepth() throws Exception {
+        AppExecutors.TrackedExecutor executor = new AppExecutors.TrackedExecutor("habitus-test", 1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            CountDownLatch queued = new CountDownLatch(5);
+            for (int i = 0; i < 5; i++) {
+                executor.execute(queued::countDown);
+            }
+            assertEquals(5, executor.getQueueDepth());
+            assertEquals(5, executor.getPeakQueueDepth());
+
+            release.countDown();
+            assertTrue(queued.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(0, executor.getQueueDepth());
+            // El pico se conserva para el log de estadísticas
+            assertEquals(5, executor.getPeakQueueDepth());
+            assertTrue(executor.getStats().startsWith("habitus-test: "));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String threadName(AppExecutors.TrackedExecutor executor) throws Exception {
+        Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+        return name.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
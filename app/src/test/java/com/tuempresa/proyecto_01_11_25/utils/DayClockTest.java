@@ -0,0 +1,138 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de DayClock con hora y zona fijadas: paso de medianoche, días sin 00:00 por el
+ * cambio de hora y cambios de zona.
+ */
+public class DayClockTest {
+
+    private static final int RUNS = 5000;
+
+    private static final String[] ZONES = {
+            "UTC", "America/Santiago", "America/Sao_Paulo", "Europe/Madrid",
+            "Australia/Lord_Howe", "Pacific/Kiritimati", "Pacific/Pago_Pago", "Asia/Kathmandu"
+    };
+
+    @After
+    public void restoreSystemClock() {
+        DayClock.invalidate();
+    }
+
+    @Test
+    public void midnightRollover_startsNewDay() {
+        ZoneId zone = ZoneId.of("Europe/Madrid");
+        long midnight = ZonedDateTime.of(2025, 3, 11, 0, 0, 0, 0, zone).toInstant().toEpochMilli();
+
+        DayClock.Snapshot before = DayClock.snapshot(midnight - 1, zone);
+        assertEquals(LocalDate.of(2025, 3, 10).toEpochDay(), before.day);
+        assertEquals("2025-03-10", before.formatted);
+        assertEquals(midnight, before.endMillis);
+
+        DayClock.Snapshot after = DayClock.snapshot(midnight, zone);
+        assertEquals(LocalDate.of(2025, 3, 11).toEpochDay(), after.day);
+        assertEquals("2025-03-11", after.formatted);
+        assertEquals(midnight, after.startMillis);
+        assertEquals(Duration.ofHours(24).toMillis(), after.endMillis - after.startMillis);
+    }
+
+    @Test
+    public void withinDay_reusesSnapshot() {
+        ZoneId zone = ZoneId.of("America/Santiago");
+        long now = ZonedDateTime.of(2025, 6, 1, 12, 0, 0, 0, zone).toInstant().toEpochMilli();
+        DayClock.Snapshot first = DayClock.snapshot(now, zone);
+        assertSame(first, DayClock.snapshot(now + 1000, zone));
+
+        // Pasado el intervalo de comprobación se conserva el día y solo se aplaza la siguiente
+        DayClock.Snapshot later = DayClock.snapshot(now + Duration.ofMinutes(5).toMillis(), zone);
+        assertEquals(first.day, later.day);
+        assertEquals(first.startMillis, later.startMillis);
+        assertEquals(first.endMillis, later.endMillis);
+    }
+
+    @Test
+    public void dstDayWithoutMidnight_startsAtFirstValidTime() {
+        // Santiago 2024-09-08 y São Paulo 2018-11-04 pasan de 00:00 a 01:00
+        assertShortDayStartsAtOne(ZoneId.of("America/Santiago"), LocalDate.of(2024, 9, 8));
+        assertShortDayStartsAtOne(ZoneId.of("America/Sao_Paulo"), LocalDate.of(2018, 11, 4));
+    }
+
+    @Test
+    public void dstLongDay_lastsTwentyFiveHours() {
+        // Santiago 2025-04-06: a las 00:00 se vuelve a las 23:00 del día 5
+        ZoneId zone = ZoneId.of("America/Santiago");
+        long noon = ZonedDateTime.of(2025, 4, 5, 12, 0, 0, 0, zone).toInstant().toEpochMilli();
+        DayClock.Snapshot snapshot = DayClock.snapshot(noon, zone);
+        assertEquals(LocalDate.of(2025, 4, 5).toEpochDay(), snapshot.day);
+        assertEquals(Duration.ofHours(25).toMillis(), snapshot.endMillis - snapshot.startMillis);
+
+        // La hora repetida (23:00-24:00) sigue siendo el día 5
+        DayClock.Snapshot repeated = DayClock.snapshot(snapshot.endMillis - Duration.ofMinutes(30).toMillis(), zone);
+        assertEquals(snapshot.day, repeated.day);
+    }
+
+    @Test
+    public void zoneChange_recomputesDayImmediately() {
+        ZoneId utc = ZoneId.of("UTC");
+        ZoneId kiritimati = ZoneId.of("Pacific/Kiritimati"); // UTC+14
+        long now = ZonedDateTime.of(2025, 7, 1, 15, 0, 0, 0, utc).toInstant().toEpochMilli();
+
+        DayClock.Snapshot inUtc = DayClock.snapshot(now, utc);
+        assertEquals(LocalDate.of(2025, 7, 1).toEpochDay(), inUtc.day);
+
+        // Un segundo después, en otra zona, ya es el día siguiente aunque no haya pasado el intervalo
+        DayClock.Snapshot moved = DayClock.snapshot(now + 1000, kiritimati);
+        assertEquals(LocalDate.of(2025, 7, 2).toEpochDay(), moved.day);
+        assertEquals(kiritimati, moved.zone);
+        assertEquals(ZonedDateTime.of(2025, 7, 2, 0, 0, 0, 0, kiritimati).toInstant().toEpochMilli(), moved.startMillis);
+
+        // Y de vuelta
+        assertEquals(inUtc.day, DayClock.snapshot(now + 2000, utc).day);
+    }
+
+    @Test
+    public void randomInstants_matchJavaTime() {
+        Random random = new Random(42);
+        long from = LocalDate.of(2010, 1, 1).atStartOfDay(ZoneId.of("UTC")).toInstant().toEpochMilli();
+        long span = Duration.ofDays(365L * 20).toMillis();
+        for (int run = 0; run < RUNS; run++) {
+            ZoneId zone = ZoneId.of(ZONES[random.nextInt(ZONES.length)]);
+            long now = from + (long) (random.nextDouble() * span);
+            DayClock.Snapshot snapshot = DayClock.snapshot(now, zone);
+
+            LocalDate expected = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+            String message = zone + " " + Instant.ofEpochMilli(now);
+            assertEquals(message, expected.toEpochDay(), snapshot.day);
+            assertEquals(message, expected.toString(), snapshot.formatted);
+            assertEquals(message, expected.atStartOfDay(zone).toInstant().toEpochMilli(), snapshot.startMillis);
+            assertEquals(message, expected.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli(), snapshot.endMillis);
+            assertTrue(message, now >= snapshot.startMillis && now < snapshot.endMillis);
+        }
+    }
+
+    private static void assertShortDayStartsAtOne(ZoneId zone, LocalDate date) {
+        // 00:00 no existe, así que se construye con LocalDateTime a la 01:00
+        long oneAm = LocalDateTime.of(date, LocalTime.of(1, 0)).atZone(zone).toInstant().toEpochMilli();
+        DayClock.Snapshot previous = DayClock.snapshot(oneAm - 1, zone);
+        assertEquals(date.minusDays(1).toEpochDay(), previous.day);
+        assertEquals(oneAm, previous.endMillis);
+
+        DayClock.Snapshot snapshot = DayClock.snapshot(oneAm, zone);
+        assertEquals(zone.toString(), date.toEpochDay(), snapshot.day);
+        assertEquals(oneAm, snapshot.startMillis);
+        assertEquals(Duration.ofHours(23).toMillis(), snapshot.endMillis - snapshot.startMillis);
+    }
+}
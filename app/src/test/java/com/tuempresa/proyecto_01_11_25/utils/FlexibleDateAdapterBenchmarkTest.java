@@ -0,0 +1,158 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Micro-benchmark de lectura de fechas: FlexibleDateAdapter frente al adaptador anterior, que
+ * creaba un SimpleDateFormat por formato y probaba el siguiente tras cada ParseException.
+ * Usa las mismas fechas aleatorias (semilla fija) en los formatos que envía la API.
+ */
+public class FlexibleDateAdapterBenchmarkTest {
+
+    private static final int DATES = 10_000;
+    private static final int WARMUP = 3;
+    private static final int ROUNDS = 5;
+    // Margen amplio frente a lo medido (decenas de veces más rápido) para no depender de la máquina
+    private static final int MIN_SPEEDUP = 5;
+
+    private static final DateTimeFormatter API_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSS", Locale.US);
+
+    @Test
+    public void read_fasterThanSimpleDateFormatChain() throws IOException {
+        List<String> json = randomApiDates(new Random(42));
+        TypeAdapter<Date> current = new FlexibleDateAdapter();
+        TypeAdapter<Date> legacy = new LegacyDateAdapter();
+
+        // Ambos leen lo mismo en los formatos que el anterior ya entendía (milisegundos o número)
+        for (int i = 0; i < json.size(); i += 3) {
+            String value = json.get(i + 1);
+            assertEquals(value, legacy.fromJson(value), current.fromJson(value));
+            value = json.get(i + 2);
+            assertEquals(value, legacy.fromJson(value), current.fromJson(value));
+        }
+
+        for (int i = 0; i < WARMUP; i++) {
+            readAll(current, json);
+            readAll(legacy, json);
+        }
+        long currentNanos = Long.MAX_VALUE;
+        long legacyNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            currentNanos = Math.min(currentNanos, readAll(current, json));
+            legacyNanos = Math.min(legacyNanos, readAll(legacy, json));
+        }
+
+        assertTrue("actual " + currentNanos / 1_000_000 + " ms, anterior " + legacyNanos / 1_000_000 + " ms para "
+                        + json.size() + " fechas",
+                currentNanos * MIN_SPEEDUP < legacyNanos);
+    }
+
+    /**
+     * Lee todas las fechas y devuelve los nanosegundos empleados.
+     */
+    private static long readAll(TypeAdapter<Date> adapter, List<String> json) throws IOException {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (String value : json) {
+            checksum += adapter.fromJson(value).getTime();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertNotEquals(0, checksum);
+        return elapsed;
+    }
+
+    /**
+     * Por cada fecha: el formato de la API (7 dígitos), milisegundos con Z y epoch en milisegundos.
+     */
+    private static List<String> randomApiDates(Random random) {
+        long from = LocalDate.of(2000, 1, 1).toEpochDay() * 86_400L;
+        long to = LocalDate.of(2100, 1, 1).toEpochDay() * 86_400L;
+        List<String> json = new ArrayList<>(DATES * 3);
+        for (int i = 0; i < DATES; i++) {
+            long seconds = from + (long) (random.nextDouble() * (to - from));
+            int nanos = random.nextInt(10_000_000) * 100;
+            LocalDateTime local = LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+            long millis = local.toInstant(ZoneOffset.UTC).toEpochMilli();
+            json.add("\"" + API_FORMAT.format(local) + "\"");
+            json.add("\"" + DateTimeFormatter.ISO_INSTANT.format(local.withNano(nanos / 1_000_000 * 1_000_000)
+                    .toInstant(ZoneOffset.UTC)) + "\"");
+            json.add("\"" + millis + "\"");
+        }
+        return json;
+    }
+
+    /**
+     * Lectura del adaptador anterior, tal como estaba.
+     */
+    private static final class LegacyDateAdapter extends TypeAdapter<Date> {
+        private static final String[] DATE_FORMATS = {
+                "yyyy-MM-dd'T'HH:mm:ss.SSSSSSS",
+                "yyyy-MM-dd'T'HH:mm:ss.SSSSSS",
+                "yyyy-MM-dd'T'HH:mm:ss.SSSSS",
+                "yyyy-MM-dd'T'HH:mm:ss.SSSS",
+                "yyyy-MM-dd'T'HH:mm:ss.SSS",
+                "yyyy-MM-dd'T'HH:mm:ss.SS",
+                "yyyy-MM-dd'T'HH:mm:ss.S",
+                "yyyy-MM-dd'T'HH:mm:ss",
+                "yyyy-MM-dd'T'HH:mm:ss'Z'",
+                "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'",
+                "yyyy-MM-dd'T'HH:mm:ssXXX",
+                "yyyy-MM-dd'T'HH:mm:ss.SSSXXX",
+        };
+
+        @Override
+        public void write(JsonWriter out, Date value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String dateString = in.nextString();
+            for (String format : DATE_FORMATS) {
+                try {
+                    SimpleDateFormat sdf = new SimpleDateFormat(format, Locale.US);
+                    if (!format.contains("XXX") && !format.contains("'Z'")) {
+                        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    }
+                    Date date = sdf.parse(dateString);
+                    if (date != null) {
+                        return date;
+                    }
+                } catch (ParseException e) {
+                    // siguiente formato
+                }
+            }
+            try {
+                return new Date(Long.parseLong(dateString));
+            } catch (NumberFormatException e) {
+                throw new IOException("No se pudo parsear la fecha: " + dateString, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de FlexibleDateAdapter: cada formato aceptado, entradas inválidas y comparación con
+ * java.time sobre fechas aleatorias con 7 dígitos de fracción, como las que envía la API (semilla fija).
+ */
+public class FlexibleDateAdapterTest {
+
+    private static final int RUNS = 5000;
+
+    private static final DateTimeFormatter API_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSS", Locale.US);
+
+    @Test
+    public void apiFormat_sevenDigitFraction() {
+        assertEquals(utc(2025, 12, 2, 15, 4, 55, 129), FlexibleDateAdapter.parseMillis("2025-12-02T15:04:55.1293097"));
+        assertEquals(utc(2025, 12, 2, 15, 4, 55, 129), FlexibleDateAdapter.parseMillis("2025-12-02T15:04:55.1293097Z"));
+    }
+
+    @Test
+    public void fractions_anyNumberOfDigits() {
+        long base = utc(2025, 1, 15, 8, 30, 0, 0);
+        assertEquals(base + 500, FlexibleDateAdapter.parseMillis("2025-01-15T08:30:00.5"));
+        assertEquals(base + 120, FlexibleDateAdapter.parseMillis("2025-01-15T08:30:00.12"));
+        assertEquals(base + 123, FlexibleDateAdapter.parseMillis("2025-01-15T08:30:00.123"));
+        assertEquals(base + 999, FlexibleDateAdapter.parseMillis("2025-01-15T08:30:00.999999999"));
+        assertEquals(base + 250, FlexibleDateAdapter.parseMillis("2025-01-15T08:30:00,25"));
+    }
+
+    @Test
+    public void optionalSecondsAndSeparators() {
+        long base = utc(2025, 1, 15, 8, 30, 0, 0);
+        assertEquals(base, FlexibleDateAdapter.parseMillis("2025-01-15T08:30"));
+        assertEquals(base, FlexibleDateAdapter.parseMillis("2025-01-15T08:30:00"));
+        assertEquals(base, FlexibleDateAdapter.parseMillis("2025-01-15 08:30:00"));
+        assertEquals(base, FlexibleDateAdapter.parseMillis("2025-01-15t08:30z"));
+    }
+
+    @Test
+    public void offsets_allForms() {
+        long utc = utc(2025, 6, 1, 10, 0, 0, 0);
+        assertEquals(utc, FlexibleDateAdapter.parseMillis("2025-06-01T10:00:00Z"));
+        assertEquals(utc - 5 * 3600_000L - 30 * 60_000L, FlexibleDateAdapter.parseMillis("2025-06-01T10:00:00+05:30"));
+        assertEquals(utc - 5 * 3600_000L - 30 * 60_000L, FlexibleDateAdapter.parseMillis("2025-06-01T10:00:00+0530"));
+        assertEquals(utc + 4 * 3600_000L, FlexibleDateAdapter.parseMillis("2025-06-01T10:00:00-04"));
+        assertEquals(utc + 4 * 3600_000L, FlexibleDateAdapter.parseMillis("2025-06-01T10:00:00-04:00"));
+        assertEquals(utc + 4 * 3600_000L, FlexibleDateAdapter.parseMillis("2025-06-01T10:00:00-0400"));
+        assertEquals(utc - 3600_000L + 129, FlexibleDateAdapter.parseMillis("2025-06-01T10:00:00.1293097+01:00"));
+        assertEquals(utc - 3600_000L, FlexibleDateAdapter.parseMillis("2025-06-01T10:00+01"));
+    }
+
+    @Test
+    public void dateOnly_isUtcMidnight() {
+        assertEquals(LocalDate.of(2025, 3, 9).toEpochDay() * 86_400_000L, FlexibleDateAdapter.parseMillis("2025-03-09"));
+        assertEquals(0L, FlexibleDateAdapter.parseMillis("1970-01-01"));
+        assertEquals(-86_400_000L, FlexibleDateAdapter.parseMillis("1969-12-31"));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay() * 86_400_000L, FlexibleDateAdapter.parseMillis("2024-02-29"));
+    }
+
+    @Test
+    public void dayOverflow_rollsIntoNextMonth() {
+        assertEquals(FlexibleDateAdapter.parseMillis("2025-03-02"), FlexibleDateAdapter.parseMillis("2025-02-30"));
+        assertEquals(FlexibleDateAdapter.parseMillis("2025-03-01"), FlexibleDateAdapter.parseMillis("2025-02-29"));
+        assertEquals(FlexibleDateAdapter.parseMillis("2025-05-01T12:00"), FlexibleDateAdapter.parseMillis("2025-04-31T12:00"));
+        assertEquals(FlexibleDateAdapter.parseMillis("2025-10-01"), FlexibleDateAdapter.parseMillis("2025-09-31"));
+    }
+
+    @Test
+    public void epochMillis() {
+        assertEquals(1733151895129L, FlexibleDateAdapter.parseMillis("1733151895129"));
+        assertEquals(0L, FlexibleDateAdapter.parseMillis("0"));
+        assertEquals(1234L, FlexibleDateAdapter.parseMillis("+1234"));
+        assertEquals(-1000L, FlexibleDateAdapter.parseMillis("-1000"));
+        assertEquals(999_999_999_999_999_999L, FlexibleDateAdapter.parseMillis("999999999999999999"));
+    }
+
+    @Test
+    public void invalidInputs() {
+        String[] invalid = {
+                "", "-", "+", "abc", "12a45", "1234567890123456789",
+                "2025/12/02", "2025-1-02", "2025-12-2", "2025-00-10", "2025-13-01", "2025-12-00", "2025-12-32",
+                "2025-12-02X", "2025-12-02T", "2025-12-02T15", "2025-12-02T15:4", "2025-12-02T1504",
+                "2025-12-02T24:00", "2025-12-02T15:60", "2025-12-02T15:04:61", "2025-12-02T15:04:5",
+                "2025-12-02T15:04:55.", "2025-12-02T15:04:55.12a", "2025-12-02T15:04:55ZZ",
+                "2025-12-02T15:04:55+5", "2025-12-02T15:04:55+05:3", "2025-12-02T15:04:55+053",
+                "2025-12-02T15:04:55+19:00", "2025-12-02T15:04:55+05:60", "2025-12-02T15:04:55 +05:00",
+                "２０２５-12-02"
+        };
+        for (String text : invalid) {
+            assertEquals("'" + text + "'", FlexibleDateAdapter.INVALID, FlexibleDateAdapter.parseMillis(text));
+        }
+    }
+
+    @Test
+    public void invalidInput_readThrows() {
+        try {
+            new FlexibleDateAdapter().fromJson("\"2025-13-01\"");
+            fail("Se esperaba IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("2025-13-01"));
+        }
+    }
+
+    @Test
+    public void randomApiDates_matchJavaTime() {
+        Random random = new Random(42);
+        long from = LocalDate.of(1900, 1, 1).toEpochDay() * 86_400L;
+        long to = LocalDate.of(2100, 1, 1).toEpochDay() * 86_400L;
+        for (int run = 0; run < RUNS; run++) {
+            long seconds = from + (long) (random.nextDouble() * (to - from));
+            int nanos = random.nextInt(10_000_000) * 100; // 7 dígitos, como la API
+            LocalDateTime local = LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+            String text = API_FORMAT.format(local);
+
+            long expected = local.toInstant(ZoneOffset.UTC).toEpochMilli();
+            assertEquals(text, expected, FlexibleDateAdapter.parseMillis(text));
+            assertEquals(text, expected, FlexibleDateAdapter.parseMillis(text + "Z"));
+
+            // Mismo texto con un desfase de -18:00 a +18:00 en minutos completos
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds((random.nextInt(18 * 60 * 2 + 1) - 18 * 60) * 60);
+            String withOffset = text + offset.getId().replace("Z", "+00:00");
+            long expectedWithOffset = OffsetDateTime.of(local, offset).toInstant().toEpochMilli();
+            assertEquals(withOffset, expectedWithOffset, FlexibleDateAdapter.parseMillis(withOffset));
+            assertEquals(withOffset, expectedWithOffset, FlexibleDateAdapter.parseMillis(withOffset.substring(0, withOffset.length() - 3)
+                    + withOffset.substring(withOffset.length() - 2)));
+        }
+    }
+
+    @Test
+    public void writeThenRead_roundTrips() throws IOException {
+        FlexibleDateAdapter adapter = new FlexibleDateAdapter();
+        Random random = new Random(7);
+        for (int run = 0; run < RUNS; run++) {
+            Date date = new Date((long) (random.nextDouble() * 4_102_444_800_000L));
+            String json = adapter.toJson(date);
+            assertEquals(json, date, adapter.fromJson(json));
+            assertEquals(json, Instant.parse(json.substring(1, json.length() - 1)).toEpochMilli(), date.getTime());
+        }
+        assertNull(adapter.fromJson("null"));
+        assertEquals("null", adapter.toJson(null));
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute, int second, int millis) {
+        return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000)
+                .toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
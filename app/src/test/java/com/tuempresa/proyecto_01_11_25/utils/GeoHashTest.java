@@ -0,0 +1,112 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de GeoHash: valores conocidos de encode y cobertura de rectángulos aleatorios (semilla fija).
+ */
+public class GeoHashTest {
+
+    private static final int RUNS = 2000;
+    private static final int MAX_CELLS = 16;
+
+    @Test
+    public void encode_matchesKnownValues() {
+        assertEquals("u4pruydqq", GeoHash.encode(57.64911, 10.40744));
+        assertEquals("ezs42", GeoHash.encode(42.6, -5.6, 5));
+        assertEquals("66jc", GeoHash.encode(-33.45, -70.66, 4));
+        assertEquals("s0000", GeoHash.encode(0, 0, 5));
+        assertEquals("zzzzz", GeoHash.encode(90, 180, 5));
+        assertEquals("00000", GeoHash.encode(-90, -180, 5));
+    }
+
+    @Test
+    public void encode_shorterPrecisionIsPrefix() {
+        Random random = new Random(7);
+        for (int run = 0; run < RUNS; run++) {
+            double lat = -90 + random.nextDouble() * 180;
+            double lng = -180 + random.nextDouble() * 360;
+            String full = GeoHash.encode(lat, lng);
+            assertEquals(GeoHash.STORED_PRECISION, full.length());
+            for (int precision = 1; precision < GeoHash.STORED_PRECISION; precision++) {
+                assertTrue(full.startsWith(GeoHash.encode(lat, lng, precision)));
+            }
+        }
+    }
+
+    @Test
+    public void coveringPrefixes_coverEveryPointInsideTheBox() {
+        Random random = new Random(42);
+        for (int run = 0; run < RUNS; run++) {
+            // Tamaños de una calle a un continente
+            double height = Math.pow(10, -4 + random.nextDouble() * 5.5);
+            double width = Math.pow(10, -4 + random.nextDouble() * 5.5);
+            double south = -90 + random.nextDouble() * (180 - Math.min(height, 180));
+            double north = Math.min(90, south + height);
+            double west = -180 + random.nextDouble() * 360;
+            double east = west + Math.min(width, 359);
+            if (east > 180) {
+                east -= 360; // cruza el antimeridiano
+            }
+
+            List<String> prefixes = GeoHash.coveringPrefixes(south, west, north, east, MAX_CELLS);
+            assertTrue("celdas en run " + run + ": " + prefixes.size(), prefixes.size() <= MAX_CELLS);
+            if (prefixes.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < 20; i++) {
+                double lat = south + random.nextDouble() * (north - south);
+                double span = west <= east ? east - west : east + 360 - west;
+                double lng = west + random.nextDouble() * span;
+                if (lng > 180) {
+                    lng -= 360;
+                }
+                assertTrue("punto fuera de la cobertura en run " + run, covered(prefixes, GeoHash.encode(lat, lng)));
+            }
+        }
+    }
+
+    @Test
+    public void coveringPrefixes_smallBoxUsesFinePrecision() {
+        // Una manzana de Santiago: pocas celdas y mucho más finas que la precisión 1
+        List<String> prefixes = GeoHash.coveringPrefixes(-33.4410, -70.6520, -33.4400, -70.6500, MAX_CELLS);
+        assertFalse(prefixes.isEmpty());
+        assertTrue(prefixes.size() <= MAX_CELLS);
+        assertTrue(prefixes.get(0).length() >= 5);
+        assertTrue(covered(prefixes, GeoHash.encode(-33.4405, -70.6510)));
+    }
+
+    @Test
+    public void coveringPrefixes_neverExceedsMaxCells() {
+        // Todo el mundo y un hemisferio tocan más de 16 celdas incluso con precisión 1
+        assertTrue(GeoHash.coveringPrefixes(-90, -180, 90, 180, MAX_CELLS).isEmpty());
+        assertTrue(GeoHash.coveringPrefixes(-60, -170, 60, 170, MAX_CELLS).isEmpty());
+        assertTrue(GeoHash.coveringPrefixes(-10, 170, 10, 160, MAX_CELLS).isEmpty());
+        for (int maxCells = 1; maxCells <= 40; maxCells++) {
+            assertTrue(GeoHash.coveringPrefixes(-80, -170, 80, 170, maxCells).size() <= maxCells);
+        }
+    }
+
+    @Test
+    public void coveringPrefixes_antimeridianCoversBothSides() {
+        List<String> prefixes = GeoHash.coveringPrefixes(-18, 178, -16, -178, MAX_CELLS);
+        assertFalse(prefixes.isEmpty());
+        assertTrue(covered(prefixes, GeoHash.encode(-17, 179)));
+        assertTrue(covered(prefixes, GeoHash.encode(-17, -179)));
+    }
+
+    private static boolean covered(List<String> prefixes, String hash) {
+        for (String prefix : prefixes) {
+            // El mismo rango de texto que usa la consulta: [prefix, prefix + RANGE_END)
+            if (hash.compareTo(prefix) >= 0 && hash.compareTo(prefix + GeoHash.RANGE_END) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
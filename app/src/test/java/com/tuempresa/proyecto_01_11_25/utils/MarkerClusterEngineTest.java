@@ -0,0 +1,202 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import com.tuempresa.proyecto_01_11_25.model.HabitCompletion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de MarkerClusterEngine contra un agrupado por fuerza bruta con puntos aleatorios (semilla fija).
+ */
+public class MarkerClusterEngineTest {
+
+    private static final int RUNS = 300;
+    private static final double MAX_LATITUDE = 85.05112878;
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void empty_returnsNoClusters() {
+        MarkerClusterEngine engine = new MarkerClusterEngine(new ArrayList<>());
+        assertEquals(0, engine.size());
+        assertTrue(engine.getClusters(-90, -180, 90, 180, 3).isEmpty());
+    }
+
+    @Test
+    public void singlePoint_isSingleMarker() {
+        HabitCompletion completion = completion(-33.4489, -70.6693);
+        MarkerClusterEngine engine = new MarkerClusterEngine(List.of(completion));
+        List<MarkerClusterEngine.Cluster> clusters = engine.getClusters(-34, -71, -33, -70, 10);
+        assertEquals(1, clusters.size());
+        assertTrue(clusters.get(0).isSingle());
+        assertSame(completion, clusters.get(0).getFirst());
+        assertEquals(-33.4489, clusters.get(0).getLatitude(), 0);
+        assertEquals(-70.6693, clusters.get(0).getLongitude(), 0);
+    }
+
+    @Test
+    public void wholeWorld_matchesBruteForceCells() {
+        Random random = new Random(42);
+        for (int run = 0; run < RUNS; run++) {
+            List<HabitCompletion> completions = randomCompletions(random, 1 + random.nextInt(300));
+            // En zoom 0..3 el mundo entero cabe en el límite de celdas, así que no se reduce el nivel
+            int zoom = random.nextInt(4);
+            int level = zoom + 2;
+            MarkerClusterEngine engine = new MarkerClusterEngine(completions);
+            List<MarkerClusterEngine.Cluster> clusters = engine.getClusters(-90, -180, 90, 180, zoom + 0.5f);
+
+            Map<Long, List<HabitCompletion>> expected = new HashMap<>();
+            for (HabitCompletion completion : completions) {
+                expected.computeIfAbsent(cell(completion, level), k -> new ArrayList<>()).add(completion);
+            }
+            assertEquals("celdas en run " + run, expected.size(), clusters.size());
+
+            Set<Long> keys = new HashSet<>();
+            int total = 0;
+            for (MarkerClusterEngine.Cluster cluster : clusters) {
+                assertTrue("clave repetida en run " + run, keys.add(cluster.getKey()));
+                HabitCompletion first = cluster.getFirst();
+                List<HabitCompletion> members = expected.get(cell(first, level));
+                assertNotNull(members);
+                assertEquals("tamaño de celda en run " + run, members.size(), cluster.getCount());
+                assertEquals(members.size() == 1, cluster.isSingle());
+                double lat = 0;
+                double lng = 0;
+                for (HabitCompletion member : members) {
+                    lat += member.getLatitude();
+                    lng += member.getLongitude();
+                }
+                assertEquals(lat / members.size(), cluster.getLatitude(), EPSILON);
+                assertEquals(lng / members.size(), cluster.getLongitude(), EPSILON);
+                total += cluster.getCount();
+            }
+            assertEquals(completions.size(), total);
+        }
+    }
+
+    @Test
+    public void viewport_includesEveryVisiblePoint() {
+        Random random = new Random(7);
+        for (int run = 0; run < RUNS; run++) {
+            // Puntos repartidos por un barrio y una vista de unos 40 m con zoom 21 (celdas de unos 5 m)
+            double centerLat = -60 + random.nextDouble() * 120;
+            double centerLng = -170 + random.nextDouble() * 340;
+            List<HabitCompletion> completions = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                completions.add(completion(centerLat + (random.nextDouble() - 0.5) * 0.002,
+                        centerLng + (random.nextDouble() - 0.5) * 0.002));
+            }
+            double south = centerLat - 0.0002;
+            double north = centerLat + 0.0002;
+            double west = centerLng - 0.0003;
+            double east = centerLng + 0.0003;
+            int level = 21 + 2;
+
+            Map<Long, Integer> expected = new HashMap<>();
+            for (HabitCompletion completion : completions) {
+                expected.merge(cell(completion, level), 1, Integer::sum);
+            }
+            MarkerClusterEngine engine = new MarkerClusterEngine(completions);
+            Map<Long, Integer> shown = new HashMap<>();
+            int total = 0;
+            for (MarkerClusterEngine.Cluster cluster : engine.getClusters(south, west, north, east, 21)) {
+                shown.put(cell(cluster.getFirst(), level), cluster.getCount());
+                total += cluster.getCount();
+            }
+            for (HabitCompletion completion : completions) {
+                if (completion.getLatitude() >= south && completion.getLatitude() <= north
+                        && completion.getLongitude() >= west && completion.getLongitude() <= east) {
+                    long cell = cell(completion, level);
+                    assertEquals("punto visible sin su celda en run " + run, expected.get(cell), shown.get(cell));
+                }
+            }
+            // Solo se recorren las celdas visibles: los puntos lejanos no aparecen
+            assertTrue("run " + run + ": " + total, total < completions.size());
+        }
+    }
+
+    @Test
+    public void wideViewportAtHighZoom_coarsensCells() {
+        Random random = new Random(3);
+        List<HabitCompletion> completions = randomCompletions(random, 5000);
+        MarkerClusterEngine engine = new MarkerClusterEngine(completions);
+        // Todo el mundo con zoom 18 supera el límite de celdas y se agrupa con celdas más grandes
+        List<MarkerClusterEngine.Cluster> clusters = engine.getClusters(-90, -180, 90, 180, 18);
+        assertTrue(clusters.size() <= 2048);
+        int total = 0;
+        for (MarkerClusterEngine.Cluster cluster : clusters) {
+            total += cluster.getCount();
+        }
+        assertEquals(completions.size(), total);
+    }
+
+    @Test
+    public void antimeridian_queriesBothSides() {
+        HabitCompletion east = completion(-17, 179.5);
+        HabitCompletion west = completion(-17, -179.5);
+        HabitCompletion far = completion(-17, 0);
+        MarkerClusterEngine engine = new MarkerClusterEngine(List.of(east, west, far));
+        List<MarkerClusterEngine.Cluster> clusters = engine.getClusters(-18, 179, -16, -179, 8);
+
+        Set<HabitCompletion> shown = identitySet();
+        for (MarkerClusterEngine.Cluster cluster : clusters) {
+            shown.add(cluster.getFirst());
+        }
+        assertTrue(shown.contains(east));
+        assertTrue(shown.contains(west));
+        assertFalse(shown.contains(far));
+    }
+
+    private static List<HabitCompletion> randomCompletions(Random random, int count) {
+        List<HabitCompletion> completions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && random.nextInt(4) == 0) {
+                // Repetir ubicaciones: varios completados en el mismo sitio
+                HabitCompletion other = completions.get(random.nextInt(completions.size()));
+                completions.add(completion(other.getLatitude(), other.getLongitude()));
+            } else {
+                completions.add(completion(-MAX_LATITUDE + random.nextDouble() * 2 * MAX_LATITUDE,
+                        -180 + random.nextDouble() * 360));
+            }
+        }
+        return completions;
+    }
+
+    private static HabitCompletion completion(double latitude, double longitude) {
+        HabitCompletion completion = new HabitCompletion();
+        completion.setLatitude(latitude);
+        completion.setLongitude(longitude);
+        return completion;
+    }
+
+    private static Set<HabitCompletion> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static long cell(HabitCompletion completion, int level) {
+        return cellX(completion.getLongitude(), level) << 32 | cellY(completion.getLatitude(), level);
+    }
+
+    private static long cellX(double longitude, int level) {
+        long cells = 1L << level;
+        return Math.max(0, Math.min(cells - 1, (long) Math.floor((longitude + 180) / 360 * cells)));
+    }
+
+    private static long cellY(double latitude, int level) {
+        long cells = 1L << level;
+        double lat = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        double sin = Math.sin(Math.toRadians(lat));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return Math.max(0, Math.min(cells - 1, (long) Math.floor(y * cells)));
+    }
+}
@@ -0,0 +1,187 @@
+package com.tuempresa.proyecto_01_11_25.utils;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de propiedades de StreakEngine con secuencias aleatorias (semilla fija).
+ */
+public class StreakEngineTest {
+
+    private static final int RUNS = 2000;
+    private static final long START_DAY = LocalDate.of(2025, 1, 1).toEpochDay();
+
+    // Zonas con cambio de hora a medianoche, media hora de DST y desfases extremos
+    private static final String[] ZONES = {
+            "UTC", "America/Santiago", "America/Sao_Paulo", "Europe/Madrid",
+            "Australia/Lord_Howe", "Pacific/Kiritimati", "Pacific/Pago_Pago", "Asia/Kathmandu"
+    };
+
+    @Test
+    public void incremental_matchesRebuildFromHistory() {
+        Random random = new Random(42);
+        for (int run = 0; run < RUNS; run++) {
+            StreakEngine.State incremental = StreakEngine.State.EMPTY;
+            TreeMap<Long, Integer> history = new TreeMap<>();
+            long day = START_DAY + random.nextInt(30);
+            int events = 1 + random.nextInt(60);
+            for (int i = 0; i < events; i++) {
+                // Avanzar 0, 1 o 2+ días (saltos que rompen la racha)
+                int gap = random.nextInt(10);
+                day += gap < 6 ? 0 : gap < 9 ? 1 : 2 + random.nextInt(3);
+                int count = history.getOrDefault(day, 0);
+                if (count > 0 && random.nextInt(5) == 0) {
+                    // Desmarcar un hábito de hoy
+                    history.put(day, count - 1);
+                    incremental = StreakEngine.withDayCount(incremental, day, count - 1);
+                } else {
+                    history.put(day, count + 1);
+                    incremental = StreakEngine.onCompletion(incremental, day);
+                }
+                assertNotNull(incremental);
+            }
+
+            StreakEngine.State rebuilt = StreakEngine.State.EMPTY;
+            for (java.util.Map.Entry<Long, Integer> entry : history.entrySet()) {
+                rebuilt = StreakEngine.withDayCount(rebuilt, entry.getKey(), entry.getValue());
+            }
+
+            for (long today = day; today <= day + 2; today++) {
+                assertEquals("racha en run " + run, StreakEngine.currentStreak(rebuilt, today),
+                        StreakEngine.currentStreak(incremental, today));
+                assertEquals(StreakEngine.completedOn(rebuilt, today), StreakEngine.completedOn(incremental, today));
+            }
+            assertEquals(expectedStreak(history, day), StreakEngine.currentStreak(incremental, day));
+        }
+    }
+
+    @Test
+    public void streak_isZeroOrOneAfterGapsAndNeverExceedsActiveDays() {
+        Random random = new Random(7);
+        for (int run = 0; run < RUNS; run++) {
+            StreakEngine.State state = StreakEngine.State.EMPTY;
+            long day = START_DAY;
+            int activeDays = 0;
+            for (int d = 0; d < 40; d++) {
+                day += 1 + (random.nextInt(8) == 0 ? 1 : 0);
+                activeDays++;
+                int completions = random.nextInt(5);
+                for (int i = 0; i < completions; i++) {
+                    state = StreakEngine.onCompletion(state, day);
+                }
+                int streak = StreakEngine.currentStreak(state, day);
+                assertTrue(streak >= 0);
+                assertTrue(streak <= activeDays);
+                // Sin actividad durante dos días, la racha se pierde
+                assertEquals(0, StreakEngine.currentStreak(state, day + 2));
+            }
+        }
+    }
+
+    @Test
+    public void goalReachedToday_startsOrExtendsStreak() {
+        StreakEngine.State state = StreakEngine.State.EMPTY;
+        for (int i = 0; i < StreakEngine.DAILY_GOAL; i++) {
+            assertEquals(0, StreakEngine.currentStreak(state, START_DAY));
+            state = StreakEngine.onCompletion(state, START_DAY);
+        }
+        assertEquals(1, StreakEngine.currentStreak(state, START_DAY));
+        // Al día siguiente sigue viva hasta cumplir el objetivo otra vez
+        assertEquals(1, StreakEngine.currentStreak(state, START_DAY + 1));
+        for (int i = 0; i < StreakEngine.DAILY_GOAL; i++) {
+            state = StreakEngine.onCompletion(state, START_DAY + 1);
+        }
+        assertEquals(2, StreakEngine.currentStreak(state, START_DAY + 1));
+        // Desmarcar hoy deja la racha que terminaba ayer
+        state = StreakEngine.withDayCount(state, START_DAY + 1, StreakEngine.DAILY_GOAL - 1);
+        assertEquals(1, StreakEngine.currentStreak(state, START_DAY + 1));
+    }
+
+    @Test
+    public void outOfOrderEvent_requestsRebuild() {
+        StreakEngine.State state = StreakEngine.onCompletion(StreakEngine.State.EMPTY, START_DAY + 5);
+        assertNull(StreakEngine.onCompletion(state, START_DAY + 4));
+        assertNull(StreakEngine.withDayCount(state, START_DAY + 4, 1));
+    }
+
+    @Test
+    public void dayOf_changesExactlyAtLocalMidnight() {
+        Random random = new Random(3);
+        for (String zoneId : ZONES) {
+            ZoneId zone = ZoneId.of(zoneId);
+            for (int run = 0; run < RUNS; run++) {
+                LocalDate date = LocalDate.ofEpochDay(START_DAY - 1000 + random.nextInt(3000));
+                // atStartOfDay resuelve los días en que las 00:00 no existen por el cambio de hora
+                long midnight = date.atStartOfDay(zone).toInstant().toEpochMilli();
+                assertEquals(zoneId + " " + date, date.toEpochDay(), StreakEngine.dayOf(midnight, zone));
+                assertEquals(zoneId + " " + date, date.toEpochDay() - 1, StreakEngine.dayOf(midnight - 1, zone));
+                long endOfDay = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+                assertEquals(zoneId + " " + date, date.toEpochDay(), StreakEngine.dayOf(endOfDay, zone));
+            }
+        }
+    }
+
+    @Test
+    public void completionsLateAtNight_keepStreakAcrossDstChanges() {
+        Random random = new Random(11);
+        for (String zoneId : ZONES) {
+            ZoneId zone = ZoneId.of(zoneId);
+            for (int run = 0; run < 200; run++) {
+                // Un año entero cruza los dos cambios de hora de la zona
+                LocalDate first = LocalDate.ofEpochDay(START_DAY + random.nextInt(365));
+                StreakEngine.State state = StreakEngine.State.EMPTY;
+                int days = 366;
+                for (int d = 0; d < days; d++) {
+                    LocalDate date = first.plusDays(d);
+                    for (int i = 0; i < StreakEngine.DAILY_GOAL; i++) {
+                        // Completados entre las 23:00 y las 23:59 locales
+                        LocalTime time = LocalTime.of(23, random.nextInt(60), random.nextInt(60));
+                        long millis = ZonedDateTime.of(LocalDateTime.of(date, time), zone).toInstant().toEpochMilli();
+                        state = StreakEngine.onCompletion(state, StreakEngine.dayOf(millis, zone));
+                    }
+                }
+                long lastDay = first.plusDays(days - 1).toEpochDay();
+                assertEquals(zoneId, days, StreakEngine.currentStreak(state, lastDay));
+            }
+        }
+    }
+
+    @Test
+    public void completionsAroundMidnight_countForTheirOwnDay() {
+        for (String zoneId : ZONES) {
+            ZoneId zone = ZoneId.of(zoneId);
+            LocalDate date = LocalDate.ofEpochDay(START_DAY);
+            long midnight = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            StreakEngine.State state = StreakEngine.State.EMPTY;
+            // Dos antes de medianoche y uno después: ningún día llega al objetivo
+            state = StreakEngine.onCompletion(state, StreakEngine.dayOf(midnight - 60_000, zone));
+            state = StreakEngine.onCompletion(state, StreakEngine.dayOf(midnight - 1, zone));
+            state = StreakEngine.onCompletion(state, StreakEngine.dayOf(midnight, zone));
+            assertEquals(zoneId, 0, StreakEngine.currentStreak(state, date.toEpochDay() + 1));
+            assertEquals(zoneId, 1, StreakEngine.completedOn(state, date.toEpochDay() + 1));
+        }
+    }
+
+    /**
+     * Racha esperada contada directamente sobre el historial: días seguidos que cumplen
+     * el objetivo terminando hoy, o ayer si hoy aún no lo cumple.
+     */
+    private static int expectedStreak(TreeMap<Long, Integer> history, long today) {
+        long day = history.getOrDefault(today, 0) >= StreakEngine.DAILY_GOAL ? today : today - 1;
+        int streak = 0;
+        while (history.getOrDefault(day, 0) >= StreakEngine.DAILY_GOAL) {
+            streak++;
+            day--;
+        }
+        return streak;
+    }
+}